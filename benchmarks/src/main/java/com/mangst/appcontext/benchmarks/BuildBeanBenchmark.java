@@ -0,0 +1,55 @@
+package com.mangst.appcontext.benchmarks;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.mangst.appcontext.ApplicationContextGenerator;
+import com.mangst.appcontext.JavaClass;
+import com.mangst.appcontext.ScanningJavaSourceParser;
+
+/**
+ * Measures how long it takes to build a &lt;bean /&gt; element from class
+ * information that was already extracted, and add it to the DOM.
+ * @author mangst
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class BuildBeanBenchmark {
+	@Param({ "small", "medium", "huge" })
+	public String size;
+
+	private JavaClass javaClass;
+	private ApplicationContextGenerator generator;
+
+	@Setup
+	public void setup() {
+		javaClass = new ScanningJavaSourceParser().parse(Sources.javaClass(size, "Benchmark"));
+	}
+
+	@Setup(Level.Iteration)
+	public void newDocument() {
+		generator = new ApplicationContextGenerator("2.5");
+	}
+
+	@Benchmark
+	public ApplicationContextGenerator buildBean() throws IOException {
+		return generator.addBean(javaClass);
+	}
+}
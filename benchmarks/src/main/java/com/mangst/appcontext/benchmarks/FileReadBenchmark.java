@@ -0,0 +1,82 @@
+package com.mangst.appcontext.benchmarks;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.mangst.appcontext.SourceFileReader;
+
+/**
+ * Measures how long it takes to read a source file into memory.
+ * @author mangst
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class FileReadBenchmark {
+	@Param({ "small", "medium", "huge" })
+	public String size;
+
+	private File file;
+	private SourceFileReader sourceFileReader;
+
+	@Setup
+	public void setup() throws IOException {
+		file = File.createTempFile("Benchmark", ".java");
+		Sources.write(file, Sources.javaClass(size, "Benchmark"));
+		sourceFileReader = new SourceFileReader(StandardCharsets.UTF_8);
+	}
+
+	@TearDown
+	public void tearDown() {
+		file.delete();
+	}
+
+	/**
+	 * Reads the file using {@link SourceFileReader}.
+	 */
+	@Benchmark
+	public CharSequence sourceFileReader() throws IOException {
+		return sourceFileReader.read(file);
+	}
+
+	/**
+	 * Reads the file the way the generator originally did (a
+	 * {@link BufferedReader} copied into a {@link StringBuilder}), as a
+	 * baseline.
+	 */
+	@Benchmark
+	public CharSequence bufferedReader() throws IOException {
+		BufferedReader in = new BufferedReader(new FileReader(file));
+		try {
+			StringBuilder sb = new StringBuilder();
+			char buffer[] = new char[1024];
+			int len;
+			while ((len = in.read(buffer)) != -1) {
+				sb.append(buffer, 0, len);
+			}
+			return sb.toString();
+		} finally {
+			in.close();
+		}
+	}
+}
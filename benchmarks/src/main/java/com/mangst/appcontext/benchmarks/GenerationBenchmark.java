@@ -0,0 +1,102 @@
+package com.mangst.appcontext.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.mangst.appcontext.ApplicationContextGenerator;
+import com.mangst.appcontext.CorpusGenerator;
+import com.mangst.appcontext.SourceFileReader;
+import com.mangst.appcontext.XmlContextWriter;
+
+/**
+ * Measures how long it takes to generate the application context for an
+ * entire source tree, from reading the files to writing the XML. The tree is
+ * generated by {@link CorpusGenerator}.
+ * @author mangst
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+@Fork(1)
+@State(Scope.Benchmark)
+public class GenerationBenchmark {
+	@Param({ "2000", "20000" })
+	public int classes;
+
+	@Param({ "1", "4" })
+	public int threads;
+
+	private File dir;
+	private List<File> files;
+
+	@Setup
+	public void setup() throws IOException {
+		dir = File.createTempFile("benchmark", "");
+		dir.delete();
+		dir.mkdir();
+
+		CorpusGenerator.Corpus corpus = new CorpusGenerator(42).setClasses(classes).generate(dir);
+		files = new ArrayList<File>();
+		collect(corpus.getRootPackageDir(), files);
+		Collections.sort(files);
+	}
+
+	@TearDown
+	public void tearDown() {
+		CorpusGenerator.delete(dir);
+	}
+
+	@Benchmark
+	public void generate() throws IOException {
+		XmlContextWriter writer = new XmlContextWriter(new NullOutputStream(), "2.5");
+		ApplicationContextGenerator generator = new ApplicationContextGenerator("2.5", writer);
+		generator.setSourceFileReader(new SourceFileReader(StandardCharsets.UTF_8));
+		generator.addBeans(files, threads);
+		writer.close();
+	}
+
+	private static void collect(File dir, List<File> files) {
+		for (File child : dir.listFiles()) {
+			if (child.isDirectory()) {
+				collect(child, files);
+			} else if (child.getName().endsWith(".java")) {
+				files.add(child);
+			}
+		}
+	}
+
+	/**
+	 * Discards everything that is written to it.
+	 */
+	static class NullOutputStream extends OutputStream {
+		@Override
+		public void write(int b) {
+			//discard
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) {
+			//discard
+		}
+	}
+}
@@ -0,0 +1,53 @@
+package com.mangst.appcontext.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.mangst.appcontext.JavaClass;
+import com.mangst.appcontext.JavaSourceParser;
+import com.mangst.appcontext.RegexJavaSourceParser;
+import com.mangst.appcontext.ScanningJavaSourceParser;
+
+/**
+ * Measures how long it takes to extract the class information from a source
+ * file that is already in memory.
+ * @author mangst
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ParseBenchmark {
+	@Param({ "small", "medium", "huge" })
+	public String size;
+
+	@Param({ "scanner", "regex" })
+	public String parserName;
+
+	private String source;
+	private JavaSourceParser parser;
+
+	@Setup
+	public void setup() {
+		source = Sources.javaClass(size, "Benchmark");
+		parser = "regex".equals(parserName) ? new RegexJavaSourceParser() : new ScanningJavaSourceParser();
+	}
+
+	@Benchmark
+	public JavaClass parse() {
+		return parser.parse(source);
+	}
+}
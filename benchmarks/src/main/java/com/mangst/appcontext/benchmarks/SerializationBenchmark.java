@@ -0,0 +1,85 @@
+package com.mangst.appcontext.benchmarks;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import javax.xml.transform.OutputKeys;
+import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerException;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.stream.StreamResult;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.mangst.appcontext.ApplicationContextGenerator;
+import com.mangst.appcontext.JavaClass;
+import com.mangst.appcontext.ScanningJavaSourceParser;
+import com.mangst.appcontext.XmlContextWriter;
+
+/**
+ * Measures how long it takes to turn already-parsed beans into XML text. The
+ * original approach (building the whole DOM and serializing it with a
+ * {@link Transformer}) is compared with {@link XmlContextWriter}.
+ * @author mangst
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SerializationBenchmark {
+	@Param({ "1000" })
+	public int beans;
+
+	private List<JavaClass> classes;
+
+	@Setup
+	public void setup() {
+		classes = new ArrayList<JavaClass>();
+		ScanningJavaSourceParser parser = new ScanningJavaSourceParser();
+		for (int i = 0; i < beans; i++) {
+			classes.add(parser.parse(Sources.javaClass("medium", "Class" + i)));
+		}
+	}
+
+	@Benchmark
+	public String transformer() throws IOException, TransformerException {
+		ApplicationContextGenerator generator = new ApplicationContextGenerator("2.5");
+		for (JavaClass javaClass : classes) {
+			generator.addBean(javaClass);
+		}
+
+		Transformer trans = TransformerFactory.newInstance().newTransformer();
+		trans.setOutputProperty(OutputKeys.INDENT, "yes");
+		StringWriter sw = new StringWriter();
+		trans.transform(new DOMSource(generator.getDocument()), new StreamResult(sw));
+		return sw.toString();
+	}
+
+	@Benchmark
+	public String xmlContextWriter() throws IOException {
+		StringWriter sw = new StringWriter();
+		XmlContextWriter writer = new XmlContextWriter(sw, "2.5");
+		ApplicationContextGenerator generator = new ApplicationContextGenerator("2.5", writer);
+		for (JavaClass javaClass : classes) {
+			generator.addBean(javaClass);
+		}
+		writer.close();
+		return sw.toString();
+	}
+}
@@ -0,0 +1,114 @@
+package com.mangst.appcontext.benchmarks;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Generates the Java source code that the benchmarks run against.
+ * @author mangst
+ */
+final class Sources {
+	/**
+	 * Generates the source code of a class.
+	 * @param size "small" (a few members), "medium" (dozens of members), or
+	 * "huge" (thousands of members, with comments and method bodies)
+	 * @param className the class name
+	 * @return the source code
+	 */
+	static String javaClass(String size, String className) {
+		if ("small".equals(size)) {
+			return javaClass("com.example", className, 2, 2, 1, 0);
+		}
+		if ("medium".equals(size)) {
+			return javaClass("com.example", className, 20, 20, 5, 10);
+		}
+		if ("huge".equals(size)) {
+			return javaClass("com.example", className, 1000, 1000, 20, 1000);
+		}
+		throw new IllegalArgumentException("Unknown size: " + size);
+	}
+
+	/**
+	 * Generates the source code of a class.
+	 * @param packageName the package name
+	 * @param className the class name
+	 * @param fields the number of public fields
+	 * @param setters the number of setter methods
+	 * @param constructorParams the number of parameters the constructor has
+	 * @param otherMethods the number of other methods (each with a Javadoc
+	 * comment and a body)
+	 * @return the source code
+	 */
+	static String javaClass(String packageName, String className, int fields, int setters, int constructorParams, int otherMethods) {
+		StringBuilder sb = new StringBuilder();
+		sb.append("/*\n * Copyright (c) Example Corp.\n * All rights reserved.\n */\n");
+		sb.append("package ").append(packageName).append(";\n\n");
+		sb.append("import java.util.List;\nimport java.util.Map;\n\n");
+		sb.append("/**\n * A generated class.\n */\n");
+		sb.append("public class ").append(className).append(" {\n");
+
+		for (int i = 0; i < fields; i++) {
+			switch (i % 4) {
+			case 0:
+				sb.append("\tpublic int field").append(i).append(" = ").append(i).append(";\n");
+				break;
+			case 1:
+				sb.append("\tpublic String field").append(i).append(" = \"value ").append(i).append("\";\n");
+				break;
+			case 2:
+				sb.append("\tpublic List field").append(i).append(";\n");
+				break;
+			default:
+				sb.append("\tprivate Map<String, Integer> hidden").append(i).append(";\n");
+				break;
+			}
+		}
+		sb.append('\n');
+
+		sb.append("\tpublic ").append(className).append('(');
+		for (int i = 0; i < constructorParams; i++) {
+			if (i > 0) {
+				sb.append(", ");
+			}
+			sb.append((i % 2 == 0) ? "String" : "Service").append(" arg").append(i);
+		}
+		sb.append(") {\n\t}\n\n");
+
+		for (int i = 0; i < setters; i++) {
+			sb.append("\tpublic void setProperty").append(i).append('(').append((i % 2 == 0) ? "long" : "Dao").append(" value) {\n");
+			sb.append("\t\t//store the value\n\t}\n\n");
+		}
+
+		for (int i = 0; i < otherMethods; i++) {
+			sb.append("\t/**\n\t * Computes something. public void setNotASetter(int x) {}\n\t * @return the result\n\t */\n");
+			sb.append("\tpublic int compute").append(i).append("() {\n");
+			sb.append("\t\tString s = \"public int notAField;\";\n");
+			sb.append("\t\treturn s.length() * ").append(i).append(";\n\t}\n\n");
+		}
+
+		sb.append("}\n");
+		return sb.toString();
+	}
+
+	/**
+	 * Writes a file in UTF-8.
+	 * @param file the file
+	 * @param contents the file contents
+	 * @throws IOException if there's a problem writing the file
+	 */
+	static void write(File file, String contents) throws IOException {
+		OutputStream out = new FileOutputStream(file);
+		try {
+			out.write(contents.getBytes(StandardCharsets.UTF_8));
+		} finally {
+			out.close();
+		}
+	}
+
+	private Sources() {
+		//hide
+	}
+}
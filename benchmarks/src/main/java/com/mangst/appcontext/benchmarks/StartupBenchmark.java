@@ -0,0 +1,140 @@
+package com.mangst.appcontext.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.mangst.appcontext.ApplicationContextGenerator;
+
+/**
+ * Measures how long it takes a new JVM to start the generator and print the
+ * first &lt;bean /&gt; element of a one-class package. The "appcds" run uses
+ * a class data sharing archive that is recorded from a training run in
+ * {@link #setup}, the way the "appcds" Maven profile does (requires JDK 13 or
+ * later).
+ * @author mangst
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 20)
+@Fork(1)
+@State(Scope.Benchmark)
+public class StartupBenchmark {
+	@Param({ "default", "appcds" })
+	public String archive;
+
+	private File dir;
+	private File archiveFile;
+	private Process process;
+
+	@Setup
+	public void setup() throws Exception {
+		dir = File.createTempFile("benchmark", "");
+		dir.delete();
+		dir.mkdir();
+
+		File packageDir = new File(dir, "com/example");
+		packageDir.mkdirs();
+		Sources.write(new File(packageDir, "Benchmark.java"), Sources.javaClass("small", "Benchmark"));
+
+		if ("appcds".equals(archive)) {
+			archiveFile = new File(dir, "appcontext.jsa");
+			Process training = start("-XX:ArchiveClassesAtExit=" + archiveFile.getPath());
+			drain(training.getInputStream());
+			if (training.waitFor() != 0 || !archiveFile.exists()) {
+				throw new IllegalStateException("The training run did not create a class data sharing archive.");
+			}
+		}
+	}
+
+	@TearDown
+	public void tearDown() {
+		delete(dir);
+	}
+
+	@TearDown(Level.Invocation)
+	public void waitForExit() throws Exception {
+		//let the JVM finish writing the XML, outside of the measurement
+		drain(process.getInputStream());
+		process.waitFor();
+	}
+
+	/**
+	 * Starts the generator in a new JVM and waits for it to print the first
+	 * &lt;bean /&gt; element.
+	 */
+	@Benchmark
+	public int firstBean() throws IOException {
+		process = (archiveFile == null) ? start() : start("-XX:SharedArchiveFile=" + archiveFile.getPath());
+
+		Reader in = new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8);
+		String tag = "<bean ";
+		int matched = 0;
+		int read = 0;
+		int c;
+		while ((c = in.read()) != -1) {
+			read++;
+			matched = (c == tag.charAt(matched)) ? matched + 1 : ((c == tag.charAt(0)) ? 1 : 0);
+			if (matched == tag.length()) {
+				return read;
+			}
+		}
+		throw new IllegalStateException("The generator did not print a <bean /> element.");
+	}
+
+	private Process start(String... jvmOptions) throws IOException {
+		List<String> command = new ArrayList<String>();
+		command.add(System.getProperty("java.home") + File.separator + "bin" + File.separator + "java");
+		for (String jvmOption : jvmOptions) {
+			command.add(jvmOption);
+		}
+		command.add("-cp");
+		command.add(System.getProperty("java.class.path"));
+		command.add(ApplicationContextGenerator.class.getName());
+		command.add("--source=" + dir.getPath());
+		command.add("--package=com.example");
+
+		ProcessBuilder builder = new ProcessBuilder(command);
+		builder.redirectError(ProcessBuilder.Redirect.INHERIT);
+		return builder.start();
+	}
+
+	private static void drain(InputStream in) throws IOException {
+		byte buffer[] = new byte[4096];
+		while (in.read(buffer) != -1) {
+			//discard
+		}
+		in.close();
+	}
+
+	private static void delete(File file) {
+		File children[] = file.listFiles();
+		if (children != null) {
+			for (File child : children) {
+				delete(child);
+			}
+		}
+		file.delete();
+	}
+}
@@ -0,0 +1,408 @@
+package com.mangst.appcontext.maven;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.maven.model.Resource;
+import org.apache.maven.plugin.AbstractMojo;
+import org.apache.maven.plugin.MojoExecution;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugins.annotations.Component;
+import org.apache.maven.plugins.annotations.LifecyclePhase;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+import org.apache.maven.project.MavenProject;
+import org.sonatype.plexus.build.incremental.BuildContext;
+
+import com.mangst.appcontext.ApplicationContextGenerator;
+import com.mangst.appcontext.GenerationStats;
+import com.mangst.appcontext.JavaClass;
+import com.mangst.appcontext.JavaSourceParser;
+import com.mangst.appcontext.PackageSelection;
+import com.mangst.appcontext.ParseCache;
+import com.mangst.appcontext.RegexJavaSourceParser;
+import com.mangst.appcontext.ScanningJavaSourceParser;
+import com.mangst.appcontext.ShardedContextWriter;
+import com.mangst.appcontext.SourceFileReader;
+import com.mangst.appcontext.SourceWalker;
+import com.mangst.appcontext.TypeIndex;
+import com.mangst.appcontext.XmlContextWriter;
+
+/**
+ * Generates a Spring XML application context inside the Maven JVM.
+ * <p>
+ * The goal is skipped if none of the source files in the configured packages
+ * changed since the last build. In a command line build, this is determined
+ * by comparing the path, size, and last-modified time of every source file
+ * (and the goal's configuration) with the previous build. In an IDE that
+ * supports incremental builds (such as Eclipse with m2e), the IDE's change
+ * detection is used instead. Files that did change are looked up in a parse
+ * cache, so only they are parsed again.
+ * </p>
+ * <p>
+ * The goal does not keep any static state, so it can be used in parallel
+ * reactor builds ("mvn -T").
+ * </p>
+ * @author mangst
+ */
+@Mojo(name = "generate", defaultPhase = LifecyclePhase.GENERATE_RESOURCES, threadSafe = true)
+public class GenerateMojo extends AbstractMojo {
+	@Parameter(defaultValue = "${project}", readonly = true, required = true)
+	private MavenProject project;
+
+	@Parameter(defaultValue = "${mojoExecution}", readonly = true, required = true)
+	private MojoExecution execution;
+
+	@Component
+	private BuildContext buildContext;
+
+	/**
+	 * The directory that the Java source code is located in.
+	 */
+	@Parameter(defaultValue = "${project.build.sourceDirectory}", required = true)
+	private File sourceDirectory;
+
+	/**
+	 * The packages whose public classes are added to the application context.
+	 * Use a blank value for the default package.
+	 */
+	@Parameter(required = true)
+	private List<String> packages;
+
+	/**
+	 * Whether to include the classes in sub-packages.
+	 */
+	@Parameter(defaultValue = "false")
+	private boolean recurse;
+
+	/**
+	 * Packages (and their sub-packages) to skip.
+	 */
+	@Parameter
+	private List<String> excludePackages;
+
+	/**
+	 * Only include the source files that match these glob patterns.
+	 */
+	@Parameter
+	private List<String> includes;
+
+	/**
+	 * Skip the source files and directories that match these glob patterns.
+	 */
+	@Parameter
+	private List<String> excludes;
+
+	/**
+	 * The version of Spring (for specifying the XML schema).
+	 */
+	@Parameter(defaultValue = "2.5")
+	private String springVersion;
+
+	/**
+	 * The file to write the XML to.
+	 */
+	@Parameter(defaultValue = "${project.build.directory}/generated-resources/appcontext/applicationContext.xml")
+	private File outputFile;
+
+	/**
+	 * If set, the XML is split into one file per package (or into files of
+	 * {@code shardSize} beans) and written to this directory, along with a
+	 * master file that imports them. {@code outputFile} is ignored.
+	 */
+	@Parameter
+	private File outputDirectory;
+
+	/**
+	 * Used with {@code outputDirectory}. The number of beans in each file or
+	 * 0 to create one file per package.
+	 */
+	@Parameter(defaultValue = "0")
+	private int shardSize;
+
+	/**
+	 * Used with {@code outputDirectory}. The maximum number of beans to keep
+	 * in memory or 0 for no limit. Beyond the limit, beans are moved to a
+	 * temporary file until the files are written.
+	 */
+	@Parameter(defaultValue = "0")
+	private int maxHeapBeans;
+
+	/**
+	 * Resolve each "ref" attribute to a generated bean using the class'
+	 * imports and package. References to types that have no bean are logged
+	 * as warnings.
+	 */
+	@Parameter(defaultValue = "false")
+	private boolean resolveRefs;
+
+	/**
+	 * The character encoding of the source files.
+	 */
+	@Parameter(defaultValue = "${project.build.sourceEncoding}")
+	private String encoding;
+
+	/**
+	 * How the source files are parsed: "scanner", "regex", or "bytecode" (to
+	 * read compiled class files, point {@code sourceDirectory} at
+	 * "${project.build.outputDirectory}" and bind the goal to a phase after
+	 * "compile").
+	 */
+	@Parameter(defaultValue = "scanner")
+	private String parser;
+
+	/**
+	 * The number of threads to read and parse the source files with or 0 to
+	 * use the number of available processors.
+	 */
+	@Parameter(defaultValue = "0")
+	private int threads;
+
+	/**
+	 * The number of source files to read at once on separate I/O threads
+	 * (virtual threads on Java 21 or later) or 0 to read each file on the
+	 * thread that parses it. Useful when the sources are on a network file
+	 * system.
+	 */
+	@Parameter(defaultValue = "0")
+	private int ioThreads;
+
+	/**
+	 * The directory that the parse cache and the record of the last build are
+	 * kept in.
+	 */
+	@Parameter(defaultValue = "${project.build.directory}/appcontext")
+	private File workDirectory;
+
+	/**
+	 * Whether to add the directory that the XML is written to as a resource
+	 * directory, so that the XML is packaged with the project.
+	 */
+	@Parameter(defaultValue = "true")
+	private boolean addResource;
+
+	/**
+	 * Whether to skip the goal.
+	 */
+	@Parameter(property = "appcontext.skip", defaultValue = "false")
+	private boolean skip;
+
+	@Override
+	public void execute() throws MojoExecutionException {
+		if (skip) {
+			getLog().info("Skipping application context generation.");
+			return;
+		}
+
+		File outputDir = (outputDirectory == null) ? outputFile.getParentFile() : outputDirectory;
+		if (addResource) {
+			Resource resource = new Resource();
+			resource.setDirectory(outputDir.getAbsolutePath());
+			project.addResource(resource);
+		}
+
+		if (!sourceDirectory.isDirectory()) {
+			getLog().warn("Source directory \"" + sourceDirectory + "\" does not exist.");
+			return;
+		}
+
+		try {
+			generate();
+		} catch (IOException e) {
+			throw new MojoExecutionException("Could not generate the application context: " + e.getMessage(), e);
+		}
+	}
+
+	private void generate() throws IOException, MojoExecutionException {
+		//combine the packages into a prefix tree, so overlapping packages are only walked once
+		PackageSelection selection = new PackageSelection();
+		for (String packageStr : packages) {
+			selection.include((packageStr == null) ? "" : packageStr, recurse);
+		}
+		if (excludePackages != null) {
+			for (String packageStr : excludePackages) {
+				selection.exclude(packageStr);
+			}
+		}
+
+		boolean outputExists = (outputDirectory == null) ? outputFile.isFile() : outputDirectory.isDirectory();
+
+		//in an incremental IDE build, the IDE knows which files changed
+		if (buildContext.isIncremental() && outputExists && !hasDelta(selection)) {
+			getLog().debug("No source files changed.");
+			return;
+		}
+
+		SourceWalker walker = new SourceWalker().setPackageSelection(selection);
+		try {
+			if (includes != null) {
+				for (String include : includes) {
+					walker.include(include);
+				}
+			}
+			if (excludes != null) {
+				for (String exclude : excludes) {
+					walker.exclude(exclude);
+				}
+			}
+		} catch (IllegalArgumentException e) {
+			throw new MojoExecutionException("Invalid glob pattern: " + e.getMessage(), e);
+		}
+
+		JavaSourceParser sourceParser;
+		if ("scanner".equals(parser)) {
+			sourceParser = new ScanningJavaSourceParser();
+		} else if ("regex".equals(parser)) {
+			sourceParser = new RegexJavaSourceParser();
+		} else if ("bytecode".equals(parser)) {
+			sourceParser = new ScanningJavaSourceParser();
+			walker.setFileExtension(".class");
+		} else {
+			throw new MojoExecutionException("The parser must be \"scanner\", \"regex\", or \"bytecode\".");
+		}
+
+		Charset charset = (encoding == null) ? Charset.defaultCharset() : Charset.forName(encoding);
+		int threadCount = (threads <= 0) ? Runtime.getRuntime().availableProcessors() : threads;
+		walker.setThreads(threadCount);
+		List<Path> files = walker.walkPaths(Collections.singletonList(sourceDirectory.toPath()));
+
+		//skip the run if no file (and none of the configuration) changed since the last build
+		String configuration = sourceParser.getClass().getName() + "," + charset.name();
+		workDirectory.mkdirs();
+		File stateFile = new File(workDirectory, execution.getExecutionId() + ".state");
+		String fingerprint = fingerprint(configuration, files);
+		if (outputExists && stateFile.isFile() && fingerprint.equals(new String(Files.readAllBytes(stateFile.toPath()), StandardCharsets.UTF_8))) {
+			getLog().info("Application context is up to date.");
+			return;
+		}
+
+		File cacheFile = new File(workDirectory, execution.getExecutionId() + ".cache");
+		ParseCache parseCache = ParseCache.load(cacheFile, configuration);
+		GenerationStats stats = new GenerationStats();
+		TypeIndex typeIndex = resolveRefs ? new TypeIndex() : null;
+
+		if (outputDirectory == null) {
+			outputFile.getParentFile().mkdirs();
+			OutputStream out = buildContext.newFileOutputStream(outputFile);
+			XmlContextWriter writer = new XmlContextWriter(out, springVersion);
+			try {
+				ApplicationContextGenerator generator = new ApplicationContextGenerator(springVersion, writer);
+				configure(generator, sourceParser, charset, parseCache, typeIndex, stats);
+				generator.addBeanPaths(files, threadCount);
+			} finally {
+				try {
+					writer.close();
+				} finally {
+					out.close();
+				}
+			}
+		} else {
+			ApplicationContextGenerator generator = new ApplicationContextGenerator(springVersion);
+			configure(generator, sourceParser, charset, parseCache, typeIndex, stats);
+
+			ShardedContextWriter sharded = new ShardedContextWriter(outputDirectory, springVersion);
+			sharded.setShardSize(shardSize);
+			sharded.setMaxHeapBeans(maxHeapBeans);
+			sharded.setTypeIndex(typeIndex);
+			sharded.setStats(stats);
+			int chunkSize = (maxHeapBeans > 0) ? maxHeapBeans : Math.max(files.size(), 1);
+			for (int from = 0; from < files.size(); from += chunkSize) {
+				for (JavaClass javaClass : generator.parsePaths(files.subList(from, Math.min(from + chunkSize, files.size())), threadCount)) {
+					if (javaClass != null) {
+						sharded.add(javaClass);
+					}
+				}
+			}
+			sharded.write(threadCount);
+			buildContext.refresh(outputDirectory);
+		}
+		if (typeIndex != null) {
+			for (String unresolved : typeIndex.getUnresolved()) {
+				getLog().warn(unresolved);
+			}
+		}
+		parseCache.save(cacheFile);
+		Files.write(stateFile.toPath(), fingerprint.getBytes(StandardCharsets.UTF_8));
+
+		stats.finish();
+		getLog().info("Generated " + stats.getBeans() + " bean(s) from " + files.size() + " file(s) (" + parseCache.getMisses() + " parsed) in " + stats.getWallMillis() + " ms.");
+	}
+
+	private void configure(ApplicationContextGenerator generator, JavaSourceParser sourceParser, Charset charset, ParseCache parseCache, TypeIndex typeIndex, GenerationStats stats) {
+		generator.setParser(sourceParser);
+		generator.setSourceFileReader(new SourceFileReader(charset));
+		generator.setIoThreads(ioThreads);
+		generator.setParseCache(parseCache);
+		generator.setTypeIndex(typeIndex);
+		generator.setStats(stats);
+	}
+
+	/**
+	 * Determines whether any of the package directories changed, according
+	 * to the IDE.
+	 * @param selection the selected packages
+	 * @return true if something changed, false if not
+	 */
+	private boolean hasDelta(PackageSelection selection) {
+		for (String packageStr : selection.getPackages()) {
+			String relative = packageStr.replace('.', '/');
+			if (buildContext.hasDelta(relative.isEmpty() ? sourceDirectory : new File(sourceDirectory, relative))) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Creates a fingerprint of the source files and the goal's configuration.
+	 * @param configuration the parser and character encoding
+	 * @param files the source files
+	 * @return the fingerprint
+	 * @throws IOException if there's a problem reading a file's attributes
+	 */
+	String fingerprint(String configuration, List<Path> files) throws IOException {
+		MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			//every JVM supports SHA-256
+			throw new RuntimeException(e);
+		}
+
+		List<String> settings = new ArrayList<String>();
+		settings.add(configuration);
+		settings.add(springVersion);
+		settings.add(String.valueOf(outputFile));
+		settings.add(String.valueOf(outputDirectory));
+		settings.add(String.valueOf(shardSize));
+		settings.add(String.valueOf(resolveRefs));
+		for (String setting : settings) {
+			digest.update(setting.getBytes(StandardCharsets.UTF_8));
+			digest.update((byte) 0);
+		}
+
+		for (Path file : files) {
+			BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+			digest.update(file.toString().getBytes(StandardCharsets.UTF_8));
+			digest.update((attributes.size() + "," + attributes.lastModifiedTime().toMillis()).getBytes(StandardCharsets.UTF_8));
+			digest.update((byte) 0);
+		}
+
+		StringBuilder sb = new StringBuilder();
+		for (byte b : digest.digest()) {
+			sb.append(String.format("%02x", b));
+		}
+		return sb.toString();
+	}
+}
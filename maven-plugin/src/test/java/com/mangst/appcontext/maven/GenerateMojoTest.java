@@ -0,0 +1,147 @@
+package com.mangst.appcontext.maven;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.lang.reflect.Field;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.maven.plugin.MojoExecution;
+import org.apache.maven.plugin.descriptor.MojoDescriptor;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.apache.maven.project.MavenProject;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.sonatype.plexus.build.incremental.DefaultBuildContext;
+
+/**
+ * Tests the GenerateMojo class.
+ * @author mangst
+ */
+public class GenerateMojoTest {
+	@Rule
+	public TemporaryFolder temp = new TemporaryFolder();
+
+	private File sourceDirectory;
+	private File outputFile;
+	private File source;
+	private GenerateMojo mojo;
+	private RecordingLog log;
+
+	@Before
+	public void before() throws Exception {
+		sourceDirectory = temp.newFolder("src");
+		File packageDir = new File(sourceDirectory, "com/example");
+		packageDir.mkdirs();
+		source = new File(packageDir, "Clazz.java");
+		write(source, "package com.example; public class Clazz{ public int a = 1; }", 1000);
+		outputFile = new File(temp.getRoot(), "out/applicationContext.xml");
+
+		mojo = new GenerateMojo();
+		set("project", new MavenProject());
+		set("execution", new MojoExecution(new MojoDescriptor(), "default"));
+		set("buildContext", new DefaultBuildContext());
+		set("sourceDirectory", sourceDirectory);
+		set("packages", Arrays.asList("com.example"));
+		set("springVersion", "2.5");
+		set("outputFile", outputFile);
+		set("encoding", "UTF-8");
+		set("parser", "scanner");
+		set("workDirectory", new File(temp.getRoot(), "work"));
+		set("addResource", false);
+		log = new RecordingLog();
+		mojo.setLog(log);
+	}
+
+	/**
+	 * The fingerprint should change when a file or a setting changes, and
+	 * only then.
+	 * @throws Exception
+	 */
+	@Test
+	public void testFingerprint() throws Exception {
+		List<Path> files = new ArrayList<Path>(Arrays.asList(source.toPath()));
+		String fingerprint = mojo.fingerprint("config", files);
+		Assert.assertEquals(fingerprint, mojo.fingerprint("config", files));
+		Assert.assertFalse(fingerprint.equals(mojo.fingerprint("other config", files)));
+
+		//a file was modified
+		source.setLastModified(2000);
+		String modified = mojo.fingerprint("config", files);
+		Assert.assertFalse(fingerprint.equals(modified));
+
+		//a file was added
+		File added = new File(source.getParentFile(), "Added.java");
+		write(added, "package com.example; public class Added{}", 1000);
+		files.add(added.toPath());
+		String withAdded = mojo.fingerprint("config", files);
+		Assert.assertFalse(modified.equals(withAdded));
+
+		//a setting changed
+		set("springVersion", "3.0");
+		Assert.assertFalse(withAdded.equals(mojo.fingerprint("config", files)));
+	}
+
+	/**
+	 * The goal should be skipped if nothing changed since the last build.
+	 * @throws Exception
+	 */
+	@Test
+	public void testUpToDate() throws Exception {
+		mojo.execute();
+		Assert.assertTrue(outputFile.isFile());
+		Assert.assertTrue(log.infos.get(0).startsWith("Generated 1 bean(s) from 1 file(s) (1 parsed)"));
+
+		log.infos.clear();
+		mojo.execute();
+		Assert.assertEquals(Arrays.asList("Application context is up to date."), log.infos);
+
+		//a source file changed
+		log.infos.clear();
+		write(source, "package com.example; public class Clazz{ public int a = 2; }", 2000);
+		mojo.execute();
+		Assert.assertTrue(log.infos.get(0).startsWith("Generated 1 bean(s) from 1 file(s) (1 parsed)"));
+
+		//the output file was deleted
+		log.infos.clear();
+		outputFile.delete();
+		mojo.execute();
+		Assert.assertTrue(outputFile.isFile());
+		Assert.assertTrue(log.infos.get(0).startsWith("Generated 1 bean(s) from 1 file(s) (0 parsed)"));
+	}
+
+	private void set(String name, Object value) throws Exception {
+		Field field = GenerateMojo.class.getDeclaredField(name);
+		field.setAccessible(true);
+		field.set(mojo, value);
+	}
+
+	private static void write(File file, String contents, long lastModified) throws Exception {
+		OutputStream out = new FileOutputStream(file);
+		try {
+			out.write(contents.getBytes(StandardCharsets.UTF_8));
+		} finally {
+			out.close();
+		}
+		file.setLastModified(lastModified);
+	}
+
+	/**
+	 * Records the info messages.
+	 */
+	private static class RecordingLog extends SystemStreamLog {
+		private final List<String> infos = new ArrayList<String>();
+
+		@Override
+		public void info(CharSequence content) {
+			infos.add(content.toString());
+		}
+	}
+}
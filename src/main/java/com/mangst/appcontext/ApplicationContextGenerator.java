@@ -1,446 +1,1929 @@
-package com.mangst.appcontext;
-
-import java.io.BufferedReader;
-import java.io.File;
-import java.io.FileFilter;
-import java.io.FileReader;
-import java.io.IOException;
-import java.io.Reader;
-import java.io.StringWriter;
-import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.Collection;
-import java.util.LinkedList;
-import java.util.List;
-import java.util.Queue;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
-
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.parsers.ParserConfigurationException;
-import javax.xml.transform.OutputKeys;
-import javax.xml.transform.Transformer;
-import javax.xml.transform.TransformerFactory;
-import javax.xml.transform.dom.DOMSource;
-import javax.xml.transform.stream.StreamResult;
-
-import org.w3c.dom.Document;
-import org.w3c.dom.Element;
-
-//http://static.springsource.org/spring/docs/2.5.x/reference/beans.html
-//http://stackoverflow.com/questions/6060475/spring-xml-from-existing-beans-how
-//TODO support public fields like "public int a, b, c;"
-//TODO refactor regex searches into classes so you can do regex.getType() regex.getName(), implement Iterator ?
-//TODO what if: "class Foo{ public class Bar {} }"
-//TODO handle arrays ("public String[] strs;", "public void setFoo(String[] foo){}"
-//TODO ignore comments!
-/**
- * Spring Application Context Generator.<br>
- * Generates the bean definitions for a Spring XML application context file from
- * the source code of Java classes.
- * @author mangst
- */
-public class ApplicationContextGenerator {
-	/**
-	 * Runs this utility from the command line.
-	 * @param args the command line arguments
-	 */
-	public static void main(String[] args) throws Exception {
-		Arguments arguments = new Arguments(args);
-
-		//display help message
-		if (arguments.exists("h", "help")) {
-			System.out.println("Spring Application Context Generator");
-			System.out.println("by Michael Angstadt - github.com/mangstadt");
-			System.out.println();
-			System.out.println("Generates the bean definitions for a Spring XML application context file from");
-			System.out.println("the source code of Java classes.");
-			System.out.println("It creates:");
-			System.out.println(" * A <bean /> element for each public class");
-			System.out.println(" * A <property /> element for each public field and public setter method.");
-			System.out.println(" * A list of <constructor-arg /> elements if (1) there is only one constructor");
-			System.out.println("   and (2) that constructor is not the default constructor.");
-			System.out.println();
-			System.out.println("Example");
-			System.out.println("java -jar appcontext.jar \\");
-			System.out.println(" --source=path/to/src \\");
-			System.out.println(" --package=com.example.foo --package=com.example.bar");
-			System.out.println();
-			System.out.println("Arguments");
-			System.out.println("-s=PATH, --source=PATH (required)");
-			System.out.println("   The directory that the Java source code is located in.");
-			System.out.println("-p=NAME, --package=NAME (required)");
-			System.out.println("   All public classes in the specified packages will be added to the bean");
-			System.out.println("   definition file. Use this parameter multiple times to specify. Use a blank");
-			System.out.println("   value for the default package (\"-p=\")");
-			System.out.println("   multiple packages.");
-			System.out.println("-v=N, --springVersion=N");
-			System.out.println("   The version of Spring you are using (for specifying the XML schema).");
-			System.out.println("   (defaults to \"2.5\")");
-			System.out.println("-r, --recurse");
-			System.out.println("   Recurse into sub-packages (example: specifying \"-r -p=com.foo\" will also");
-			System.out.println("   include \"com.foo.bar\").");
-			System.out.println("-h, --help");
-			System.out.println("   Displays this help message.");
-			System.exit(0);
-		}
-
-		List<String> errors = new ArrayList<String>();
-
-		//get the source directory
-		String source = arguments.value("s", "source");
-		if (source == null) {
-			errors.add("The source directory must be specified (example: \"--source=path/to/src\").");
-		}
-
-		//get the Spring version
-		String springVersion = arguments.value("v", "springVersion", "2.5");
-
-		//get the packages
-		Collection<String> packages = arguments.valueList("p", "package");
-		if (packages.isEmpty()) {
-			errors.add("At least one package must be specified (example: \"--package=com.example\").  Use a blank value for the default package (example: \"--package=\").");
-		}
-
-		//recurse into sub-packages?
-		boolean recurse = arguments.exists("r", "recurse");
-
-		//display an error message if any of the required fields were not specified
-		if (!errors.isEmpty()) {
-			for (String error : errors) {
-				System.err.println(error);
-			}
-			System.err.println("Type \"--help\" for help.");
-			System.exit(1);
-		}
-
-		//create File objects for each package
-		File sourceDir = new File(source);
-		Queue<File> packageDirs = new LinkedList<File>();
-		for (String packageStr : packages) {
-			if (packageStr == null) {
-				packageStr = "";
-			}
-			packageStr = packageStr.replaceAll("\\.", File.separator);
-			packageDirs.add(new File(sourceDir, packageStr));
-		}
-
-		//generate the application context XML
-		ApplicationContextGenerator generator = new ApplicationContextGenerator(springVersion);
-		JavaFileFilter javaFileFilter = new JavaFileFilter();
-		while (!packageDirs.isEmpty()) {
-			File directory = packageDirs.poll();
-			File files[] = directory.listFiles(javaFileFilter);
-
-			//iterate over each file
-			for (File file : files) {
-				if (recurse && file.isDirectory()) {
-					//if recurse is on, append this directory to the list of packages
-					packageDirs.add(file);
-				} else if (file.isFile()) {
-					generator.addBean(new FileReader(file));
-				}
-			}
-		}
-		Document document = generator.getDocument();
-
-		//output the XML
-		String xmlString;
-		{
-			TransformerFactory transfac = TransformerFactory.newInstance();
-			Transformer trans = transfac.newTransformer();
-			trans.setOutputProperty(OutputKeys.INDENT, "yes");
-			StringWriter sw = new StringWriter();
-			StreamResult result = new StreamResult(sw);
-			DOMSource domSource = new DOMSource(document);
-			trans.transform(domSource, result);
-			xmlString = sw.toString();
-		}
-		System.out.println(xmlString);
-	}
-
-	/**
-	 * A file filter that only returns directories and .java files.
-	 * @author mangstadt
-	 */
-	private static class JavaFileFilter implements FileFilter {
-		@Override
-		public boolean accept(File file) {
-			//ignore SVN directories
-			if (file.isDirectory() && !file.getName().equals(".svn")) {
-				return true;
-			}
-
-			//include all Java files
-			if (file.getName().endsWith(".java")) {
-				return true;
-			}
-
-			return false;
-		}
-	}
-
-	/**
-	 * Regex that is used to find the class' package.
-	 */
-	private static final Pattern packageRegex = Pattern.compile("^\\s*package\\s+(.*?)\\s*;", Pattern.DOTALL);
-
-	/**
-	 * Regex that is used to find the class' name.
-	 */
-	private static final Pattern classNameRegex = Pattern.compile("public\\s+class\\s+(\\w+)");
-
-	/**
-	 * Regex that is used to pull parameters out of a method's parameter list.
-	 */
-	private static final Pattern parameterRegex = Pattern.compile("([a-zA-Z_0-9<>\\.]+)\\s+(\\w+)");
-
-	/**
-	 * Regex that is used to find a class' setter methods.
-	 */
-	private static final Pattern setterRegex = Pattern.compile("public\\s+\\w+\\s+set(\\w+)\\s*\\(\\s*([a-zA-Z_0-9\\.]+)\\s+\\w+\\s*\\)");
-
-	/**
-	 * Regex that is used to find a class' public fields.
-	 */
-	private static final Pattern publicFieldRegex = Pattern.compile("public\\s+([a-zA-Z_0-9\\.]+)\\s+(\\w+)\\s*(=\\s*(.*?))?;", Pattern.DOTALL);
-
-	/**
-	 * The list of Java primative types.
-	 */
-	private static final List<String> primatives = Arrays.asList(new String[] { "byte", "short", "char", "int", "long", "float", "double", "boolean" });
-
-	/**
-	 * The list of Java wrapper classes (includes String).
-	 */
-	private static final List<String> wrappers = Arrays.asList(new String[] { "Byte", "Short", "Character", "Integer", "Long", "Float", "Double", "Boolean", "String" });
-
-	/**
-	 * The XML document.
-	 */
-	private final Document document;
-
-	/**
-	 * The XML root element.
-	 */
-	private final Element root;
-
-	/**
-	 * Constructs a new application context generator.
-	 * @param springVersion the Spring version
-	 */
-	public ApplicationContextGenerator(String springVersion) {
-		//create the XML document
-		DocumentBuilderFactory dbfac = DocumentBuilderFactory.newInstance();
-		DocumentBuilder docBuilder = null;
-		try {
-			docBuilder = dbfac.newDocumentBuilder();
-		} catch (ParserConfigurationException e) {
-			//never thrown in my case, so ignore it
-		}
-		document = docBuilder.newDocument();
-
-		//create the root element
-		root = document.createElementNS("http://www.springframework.org/schema/beans", "beans");
-		root.setAttributeNS("http://www.w3.org/2001/XMLSchema-instance", "schemaLocation", "http://www.springframework.org/schema/beans http://www.springframework.org/schema/beans/spring-beans-" + springVersion + ".xsd");
-		document.appendChild(root);
-	}
-
-	/**
-	 * Gets the generated XML document.
-	 * @return the XML document
-	 */
-	public Document getDocument() {
-		return document;
-	}
-
-	/**
-	 * Adds a bean to the application context using a Java source file. Only
-	 * public classes are added.
-	 * @param reader the input stream to the Java source file (this is closed
-	 * after it is read)
-	 * @return this
-	 * @throws IOException if there's a problem reading the file
-	 */
-	public ApplicationContextGenerator addBean(Reader reader) throws IOException {
-		String contentsString = getFileContents(reader);
-
-		//build a "bean" element for each class
-		Element beanElement = buildBeanElement(contentsString);
-		if (beanElement != null) {
-			root.appendChild(beanElement);
-		} else {
-			//System.err.println("Warning: Could not find public class in \"" + file + "\".");
-		}
-		return this;
-	}
-
-	/**
-	 * Gets the entire contents of a text file.
-	 * @param reader the input stream to the file
-	 * @return the entire context of the file
-	 * @throws IOException if there's a problem reading the file
-	 */
-	private String getFileContents(Reader reader) throws IOException {
-		BufferedReader in = null;
-		try {
-			in = new BufferedReader(reader);
-			StringBuilder sb = new StringBuilder();
-			char buffer[] = new char[1024];
-			int len;
-			while ((len = in.read(buffer)) != -1) {
-				sb.append(buffer, 0, len);
-			}
-			return sb.toString();
-		} finally {
-			if (in != null) in.close();
-		}
-	}
-
-	/**
-	 * Creates the &lt;bean /&gt; element.
-	 * @param javaSource the Java source code
-	 * @return the &lt;bean /&gt; element or null if there were no public
-	 * classes.
-	 */
-	private Element buildBeanElement(String javaSource) {
-		Matcher matcher;
-
-		//get the name of the class
-		String className = null;
-		matcher = classNameRegex.matcher(javaSource);
-		if (matcher.find()) {
-			className = matcher.group(1);
-		} else {
-			return null;
-		}
-
-		//get the name of the package
-		String packageName = null;
-		matcher = packageRegex.matcher(javaSource);
-		if (matcher.find()) {
-			packageName = matcher.group(1);
-		}
-
-		//create <bean /> element
-		Element beanElement = document.createElement("bean");
-		String classNameLower = className.substring(0, 1).toLowerCase() + className.substring(1);
-		beanElement.setAttribute("id", classNameLower);
-		String classAttr = (packageName == null) ? className : packageName + "." + className;
-		beanElement.setAttribute("class", classAttr);
-
-		//create <constructor-arg /> elements
-		Pattern constructorRegex = Pattern.compile("public\\s+" + className + "\\s*\\(\\s*(.*?)\\s*\\)");
-		matcher = constructorRegex.matcher(javaSource);
-		List<String> constructors = new ArrayList<String>();
-		boolean defaultConstructor = false;
-		while (matcher.find()) {
-			String parameters = matcher.group(1);
-			if (parameters.isEmpty()) {
-				//there is a default constructor, so we won't create <constructor-arg /> elements
-				defaultConstructor = true;
-				break;
-			}
-			constructors.add(parameters);
-		}
-		if (!defaultConstructor && constructors.size() == 1) {
-			//if there is only one constructor and that constructor is not a default constructor, then generate the <constructor-arg /> elements
-			matcher = parameterRegex.matcher(constructors.get(0));
-			int index = 0;
-			while (matcher.find()) {
-				String type = matcher.group(1);
-				//String name = matcher.group(2);
-
-				Element constructorArgElement = document.createElement("constructor-arg");
-
-				if (wrappers.contains(type) || primatives.contains(type)) {
-					if (wrappers.contains(type)) {
-						type = "java.lang." + type;
-					}
-					constructorArgElement.setAttribute("type", type);
-					constructorArgElement.setAttribute("value", "");
-				} else {
-					String typeLower = type.substring(0, 1).toLowerCase() + type.substring(1);
-					constructorArgElement.setAttribute("ref", typeLower);
-				}
-
-				constructorArgElement.setAttribute("index", index + "");
-				index++;
-
-				beanElement.appendChild(constructorArgElement);
-			}
-		}
-
-		//get all the class' properties from the public fields and setter methods.
-		List<ClassProperty> properties = new ArrayList<ClassProperty>();
-		matcher = publicFieldRegex.matcher(javaSource);
-		while (matcher.find()) {
-			ClassProperty p = new ClassProperty();
-			p.type = matcher.group(1);
-			p.name = matcher.group(2);
-
-			String value = matcher.group(4);
-			if (value == null) {
-				value = "";
-			} else {
-				value = value.trim();
-			}
-			if (value.startsWith("\"")) {
-				//remove the quotes that surround Strings
-				value = value.substring(1, value.length() - 1);
-			} else if (value.startsWith("'")) {
-				//remove the quotes that surround characters
-				value = value.substring(1, value.length() - 1);
-			} else if (value.endsWith("d") || value.endsWith("D") || value.endsWith("f") || value.endsWith("F") || value.endsWith("l") || value.endsWith("L")) {
-				//remove the "double", "float", or "long" letters if they are there
-				value = value.substring(0, value.length() - 1);
-			}
-			p.value = value;
-
-			properties.add(p);
-		}
-		matcher = setterRegex.matcher(javaSource);
-		while (matcher.find()) {
-			ClassProperty p = new ClassProperty();
-			String name = matcher.group(1);
-			p.name = name.substring(0, 1).toLowerCase() + name.substring(1); //the first letter will be upper-cased, ("setFoo"), so lower-case it
-			p.type = matcher.group(2);
-			p.value = "";
-			properties.add(p);
-		}
-
-		//add all properties as <property /> elements
-		for (ClassProperty p : properties) {
-			Element propertyElement = document.createElement("property");
-			propertyElement.setAttribute("name", p.name);
-			if (primatives.contains(p.type) || wrappers.contains(p.type)) {
-				propertyElement.setAttribute("value", p.value);
-			} else if ("List".equals(p.type) || "java.util.List".equals(p.type)) {
-				Element listElement = document.createElement("list");
-				propertyElement.appendChild(listElement);
-			} else if ("Set".equals(p.type) || "java.util.Set".equals(p.type)) {
-				Element listElement = document.createElement("set");
-				propertyElement.appendChild(listElement);
-			} else if ("Map".equals(p.type) || "java.util.Map".equals(p.type)) {
-				Element listElement = document.createElement("map");
-				propertyElement.appendChild(listElement);
-			} else if ("Properties".equals(p.type) || "java.util.Properties".equals(p.type)) {
-				Element listElement = document.createElement("props");
-				propertyElement.appendChild(listElement);
-			} else {
-				String typeLower = p.type.substring(0, 1).toLowerCase() + p.type.substring(1);
-				propertyElement.setAttribute("ref", typeLower);
-			}
-			beanElement.appendChild(propertyElement);
-		}
-
-		return beanElement;
-	}
-
-	private class ClassProperty {
-		public String name;
-		public String type;
-		public String value;
-	}
-}
+package com.mangst.appcontext;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+//http://static.springsource.org/spring/docs/2.5.x/reference/beans.html
+//http://stackoverflow.com/questions/6060475/spring-xml-from-existing-beans-how
+/**
+ * Spring Application Context Generator.<br>
+ * Generates the bean definitions for a Spring XML application context file from
+ * the source code of Java classes.
+ * @author mangst
+ */
+public class ApplicationContextGenerator {
+	/**
+	 * Runs this utility from the command line.
+	 * @param args the command line arguments
+	 */
+	public static void main(String[] args) throws Exception {
+		Arguments arguments = new Arguments(args);
+
+		//run as a daemon that other invocations can hand their arguments to
+		if (arguments.exists(null, "daemon")) {
+			System.exit(GeneratorDaemon.main(arguments));
+		}
+
+		//forward the arguments to a running daemon
+		if (arguments.exists(null, "use-daemon") || arguments.exists(null, "stop-daemon")) {
+			System.exit(DaemonClient.main(arguments, args));
+		}
+
+		int status = run(arguments, null, System.out, System.err, null);
+		if (status != 0) {
+			System.exit(status);
+		}
+	}
+
+	/**
+	 * Generates an application context.
+	 * @param arguments the command line arguments
+	 * @param workingDir the directory that relative paths are resolved against
+	 * or null to use the current working directory
+	 * @param stdout the stream that the help message and the XML (if no
+	 * output file is given) are written to
+	 * @param stderr the stream that errors, warnings, and statistics are
+	 * written to
+	 * @param daemon the daemon that is running the request or null if it is
+	 * being run from the command line
+	 * @return the exit code
+	 * @throws Exception if there's a problem generating the application
+	 * context
+	 */
+	static int run(Arguments arguments, File workingDir, PrintStream stdout, PrintStream stderr, GeneratorDaemon daemon) throws Exception {
+
+		//display help message
+		if (arguments.exists("h", "help")) {
+			stdout.println("Spring Application Context Generator");
+			stdout.println("by Michael Angstadt - github.com/mangstadt");
+			stdout.println();
+			stdout.println("Generates the bean definitions for a Spring XML application context file from");
+			stdout.println("the source code of Java classes.");
+			stdout.println("It creates:");
+			stdout.println(" * A <bean /> element for each public class");
+			stdout.println(" * A <property /> element for each public field and public setter method.");
+			stdout.println(" * A list of <constructor-arg /> elements if (1) there is only one constructor");
+			stdout.println("   and (2) that constructor is not the default constructor.");
+			stdout.println();
+			stdout.println("Example");
+			stdout.println("java -jar appcontext.jar \\");
+			stdout.println(" --source=path/to/src \\");
+			stdout.println(" --package=com.example.foo --package=com.example.bar");
+			stdout.println();
+			stdout.println("Arguments");
+			stdout.println("-s=PATH, --source=PATH (required)");
+			stdout.println("   The directory that the Java source code is located in. This can also be a");
+			stdout.println("   JAR or ZIP file (such as a \"-sources.jar\" file), which is read without");
+			stdout.println("   extracting it. Use this parameter multiple times to generate the beans of");
+			stdout.println("   several source directories at once. If a class is in more than one of");
+			stdout.println("   them, only the first one is used.");
+			stdout.println("--discover-modules=PATH");
+			stdout.println("   Find the modules of a Maven multi-module build (every directory under PATH");
+			stdout.println("   that contains a \"pom.xml\" file) and use each module's \"src/main/java\"");
+			stdout.println("   directory (\"target/classes\" with \"--parser=bytecode\") as a source");
+			stdout.println("   directory. Can be used instead of or along with \"--source\".");
+			stdout.println("-p=NAME, --package=NAME (required)");
+			stdout.println("   All public classes in the specified packages will be added to the bean");
+			stdout.println("   definition file. Use this parameter multiple times to specify. Use a blank");
+			stdout.println("   value for the default package (\"-p=\")");
+			stdout.println("   multiple packages.");
+			stdout.println("-v=N, --springVersion=N");
+			stdout.println("   The version of Spring you are using (for specifying the XML schema).");
+			stdout.println("   (defaults to \"2.5\")");
+			stdout.println("-r, --recurse");
+			stdout.println("   Recurse into sub-packages (example: specifying \"-r -p=com.foo\" will also");
+			stdout.println("   include \"com.foo.bar\").");
+			stdout.println("--exclude-package=NAME");
+			stdout.println("   Skip a package and its sub-packages (example: specifying \"-r -p=com.foo");
+			stdout.println("   --exclude-package=com.foo.legacy\" will include \"com.foo.bar\" but not");
+			stdout.println("   \"com.foo.legacy\"). Use this parameter multiple times to specify multiple");
+			stdout.println("   packages.");
+			stdout.println("--include=GLOB");
+			stdout.println("   Only include the source files that match a glob pattern. Patterns without a");
+			stdout.println("   \"/\" are matched against the file name, other patterns are matched against");
+			stdout.println("   the path relative to the source directory. Use this parameter multiple");
+			stdout.println("   times to specify multiple patterns (example: \"--include=*Dao.java\").");
+			stdout.println("--exclude=GLOB");
+			stdout.println("   Skip the source files and directories that match a glob pattern. Use this");
+			stdout.println("   parameter multiple times to specify multiple patterns (example:");
+			stdout.println("   \"--exclude=generated\"). The .svn, .git, .hg, target, and node_modules");
+			stdout.println("   directories are always skipped.");
+			stdout.println("-o=PATH, --output=PATH");
+			stdout.println("   The file to write the XML to. The XML is written to standard output if this");
+			stdout.println("   is not specified.");
+			stdout.println("-d=PATH, --output-dir=PATH");
+			stdout.println("   Split the XML into one file per package and write the files to this");
+			stdout.println("   directory, along with an \"applicationContext.xml\" file that imports them.");
+			stdout.println("   Files whose contents did not change are not rewritten, and files from an");
+			stdout.println("   earlier run that are no longer imported are deleted.");
+			stdout.println("--merge-into=PATH");
+			stdout.println("   Add the generated beans to an existing XML file instead of writing a new");
+			stdout.println("   one. Beans are matched by ID, or by class if the ID does not match.");
+			stdout.println("   Beans that are not in the file yet are added to the end of it, and");
+			stdout.println("   properties that a bean does not have yet are added to the end of the");
+			stdout.println("   bean. Everything that is already in the file is left exactly as it is.");
+			stdout.println("--diff");
+			stdout.println("   Used with \"--merge-into\". List the beans and properties that would be");
+			stdout.println("   added without changing the file. Exits with status 2 if anything would be");
+			stdout.println("   added.");
+			stdout.println("--shard-size=N");
+			stdout.println("   Used with \"--output-dir\". Put N beans in each file instead of creating one");
+			stdout.println("   file per package.");
+			stdout.println("--max-heap-beans=N");
+			stdout.println("   Used with \"--output-dir\". Keep at most N beans in memory. When the limit");
+			stdout.println("   is reached, the beans are moved to a temporary file and read back when");
+			stdout.println("   the files are written. (without \"--output-dir\", each bean is written as");
+			stdout.println("   soon as it is built, so memory use is already bounded)");
+			stdout.println("--resolve-refs");
+			stdout.println("   Resolve the type of each property and constructor argument using the");
+			stdout.println("   class' imports and package, so that each \"ref\" attribute points to a");
+			stdout.println("   generated bean. If two classes have the same simple name, their beans are");
+			stdout.println("   given their fully qualified class names as IDs. References to types that");
+			stdout.println("   have no bean are listed as warnings.");
+			stdout.println("-c=PATH, --cache=PATH");
+			stdout.println("   The file to cache the parsed source files in. When the generator is run");
+			stdout.println("   again with the same cache file, files that have not changed are not read");
+			stdout.println("   or parsed again. The file is created if it does not exist.");
+			stdout.println("-t=N, --threads=N");
+			stdout.println("   The number of threads to read and parse the source files with. The output");
+			stdout.println("   is the same no matter how many threads are used.");
+			stdout.println("   (defaults to the number of available processors)");
+			stdout.println("--io-threads=N");
+			stdout.println("   Read up to N source files at once on separate I/O threads, while the");
+			stdout.println("   \"--threads\" threads parse them. Use this when the source files are on a");
+			stdout.println("   network file system, where reading a file is slow but uses little CPU.");
+			stdout.println("   Virtual threads are used if the JVM supports them (Java 21 or later).");
+			stdout.println("   (defaults to 0, which reads each file on the thread that parses it)");
+			stdout.println("--pipeline");
+			stdout.println("   Find, read, parse, and write the source files in separate stages that run");
+			stdout.println("   at the same time, connected by bounded queues, so that a slow disk or a");
+			stdout.println("   slow output only holds up its own stage. \"--io-threads\" sets the number");
+			stdout.println("   of reading threads (defaults to \"--threads\") and \"--threads\" sets the");
+			stdout.println("   number of parsing threads. Use \"--stats\" to see which stage is the");
+			stdout.println("   bottleneck. Cannot be used with \"--output-dir\".");
+			stdout.println("--queue-capacity=N");
+			stdout.println("   Used with \"--pipeline\". The number of files each queue can hold.");
+			stdout.println("   (defaults to 256)");
+			stdout.println("-e=NAME, --encoding=NAME");
+			stdout.println("   The character encoding of the source files.");
+			stdout.println("   (defaults to the platform's default encoding)");
+			stdout.println("--parser=NAME");
+			stdout.println("   How the source files are parsed. \"scanner\" walks over each file once,");
+			stdout.println("   skipping comments and string literals. \"regex\" runs a series of regular");
+			stdout.println("   expressions over each file. \"bytecode\" reads compiled .class files instead");
+			stdout.println("   of source files (point \"--source\" at the compiled output directory or a");
+			stdout.println("   JAR file). Field values cannot be read from .class files.");
+			stdout.println("   (defaults to \"scanner\")");
+			stdout.println("-w, --watch");
+			stdout.println("   Keep running after the XML is generated and regenerate it whenever a source");
+			stdout.println("   file in one of the packages is created, modified, or deleted. Only the");
+			stdout.println("   files that changed are parsed again. Requires \"--output\".");
+			stdout.println("--stats[=FORMAT]");
+			stdout.println("   Print how long each phase of the run took (finding, reading, and parsing the");
+			stdout.println("   source files, and building and writing the XML), how many files, bytes,");
+			stdout.println("   beans, properties, and constructor arguments were processed, the");
+			stdout.println("   throughput, and the peak heap usage. FORMAT is \"text\" or \"json\".");
+			stdout.println("   (defaults to \"text\")");
+			stdout.println("--stats-file=PATH");
+			stdout.println("   The file to write the statistics to. They are written to standard error if");
+			stdout.println("   this is not specified.");
+			stdout.println("--jfr[=PATH]");
+			stdout.println("   Create JDK Flight Recorder events for finding the source files, reading and");
+			stdout.println("   parsing each file, and building and writing each bean. If PATH is given,");
+			stdout.println("   a recording is started and written to that file when the run finishes.");
+			stdout.println("   Otherwise, start a recording with \"-XX:StartFlightRecording\" or \"jcmd\".");
+			stdout.println("--daemon");
+			stdout.println("   Start a daemon that keeps running and generates application contexts for");
+			stdout.println("   \"--use-daemon\" invocations, so that each of them doesn't have to pay for");
+			stdout.println("   starting and warming up a JVM. The daemon listens on the loopback interface");
+			stdout.println("   and writes its port and a secret token to the daemon file.");
+			stdout.println("--port=N");
+			stdout.println("   Used with \"--daemon\". The port to listen on.");
+			stdout.println("   (defaults to any free port)");
+			stdout.println("--memory-cache");
+			stdout.println("   Used with \"--daemon\". Keep the parsed source files in memory, so that");
+			stdout.println("   files that have not changed since an earlier request are not parsed again.");
+			stdout.println("   Requests that specify \"--cache\" use the cache file instead.");
+			stdout.println("--use-daemon");
+			stdout.println("   Send the rest of the arguments to the running daemon and print its output.");
+			stdout.println("   Relative paths are resolved against this process' working directory. If no");
+			stdout.println("   daemon is running, the application context is generated in this process.");
+			stdout.println("--stop-daemon");
+			stdout.println("   Stop the running daemon.");
+			stdout.println("--daemon-file=PATH");
+			stdout.println("   The file the daemon's port and token are written to and read from.");
+			stdout.println("   (defaults to \".appcontext-daemon\" in the user's home directory)");
+			stdout.println("-h, --help");
+			stdout.println("   Displays this help message.");
+			return 0;
+		}
+
+		List<String> errors = new ArrayList<String>();
+
+		//get the source directories
+		Collection<String> sources = arguments.valueList("s", "source");
+		String discoverModules = arguments.value(null, "discover-modules");
+		if ((sources.isEmpty() && discoverModules == null) || sources.contains(null)) {
+			errors.add("The source directory must be specified (example: \"--source=path/to/src\").");
+		}
+		if (arguments.exists(null, "discover-modules") && (discoverModules == null || !resolve(workingDir, discoverModules).isDirectory())) {
+			errors.add("The directory to discover the modules in does not exist: " + discoverModules);
+		}
+
+		//get the Spring version
+		String springVersion = arguments.value("v", "springVersion", "2.5");
+
+		//get the output file (the XML is written to stdout if not specified)
+		String output = arguments.value("o", "output");
+
+		//get the output directory (the XML is split into several files)
+		String outputDir = arguments.value("d", "output-dir");
+		if (outputDir != null && output != null) {
+			errors.add("Only one of \"--output\" and \"--output-dir\" can be specified.");
+		}
+
+		//get the existing file to add the beans to
+		String mergeInto = arguments.value(null, "merge-into");
+		if (mergeInto != null && (output != null || outputDir != null)) {
+			errors.add("\"--merge-into\" cannot be used with \"--output\" or \"--output-dir\".");
+		} else if (mergeInto != null && !resolve(workingDir, mergeInto).isFile()) {
+			errors.add("The file to merge into does not exist: " + mergeInto);
+		}
+		boolean diff = arguments.exists(null, "diff");
+		if (diff && mergeInto == null) {
+			errors.add("\"--diff\" requires \"--merge-into\".");
+		}
+
+		//get the packages
+		Collection<String> packages = arguments.valueList("p", "package");
+		if (packages.isEmpty()) {
+			errors.add("At least one package must be specified (example: \"--package=com.example\").  Use a blank value for the default package (example: \"--package=\").");
+		}
+
+		//recurse into sub-packages?
+		boolean recurse = arguments.exists("r", "recurse");
+
+		//combine the packages into a prefix tree, so overlapping packages are only walked once
+		PackageSelection selection = new PackageSelection();
+		for (String packageStr : packages) {
+			selection.include(packageStr, recurse);
+		}
+		for (String packageStr : arguments.valueList(null, "exclude-package")) {
+			selection.exclude(packageStr);
+		}
+
+		//get the file name patterns
+		SourceWalker walker = new SourceWalker().setPackageSelection(selection);
+		for (String include : arguments.valueList(null, "include")) {
+			try {
+				walker.include(include);
+			} catch (IllegalArgumentException e) {
+				errors.add("Invalid include pattern \"" + include + "\" (example: \"--include=*Dao.java\").");
+			}
+		}
+		for (String exclude : arguments.valueList(null, "exclude")) {
+			try {
+				walker.exclude(exclude);
+			} catch (IllegalArgumentException e) {
+				errors.add("Invalid exclude pattern \"" + exclude + "\" (example: \"--exclude=generated\").");
+			}
+		}
+
+		//get the source code parser
+		JavaSourceParser parser = null;
+		String parserName = arguments.value(null, "parser", "scanner");
+		if ("scanner".equals(parserName)) {
+			parser = new ScanningJavaSourceParser();
+		} else if ("regex".equals(parserName)) {
+			parser = new RegexJavaSourceParser();
+		} else if ("bytecode".equals(parserName)) {
+			//the source files are class files, which are not decoded or parsed by a JavaSourceParser
+			parser = new ScanningJavaSourceParser();
+			walker.setFileExtension(".class");
+		} else {
+			errors.add("The parser must be \"scanner\", \"regex\", or \"bytecode\" (example: \"--parser=regex\").");
+		}
+
+		//get the character encoding of the source files
+		Charset encoding = null;
+		String encodingName = arguments.value("e", "encoding");
+		try {
+			encoding = (encodingName == null) ? Charset.defaultCharset() : Charset.forName(encodingName);
+		} catch (IllegalArgumentException e) {
+			errors.add("Unknown character encoding \"" + encodingName + "\" (example: \"--encoding=UTF-8\").");
+		}
+
+		//get the parse cache file
+		String cache = arguments.value("c", "cache");
+
+		//get the number of threads
+		Integer threads = null;
+		try {
+			threads = arguments.valueInt("t", "threads", Runtime.getRuntime().availableProcessors());
+		} catch (NumberFormatException e) {
+			errors.add("The number of threads must be a number (example: \"--threads=4\").");
+		}
+
+		//get the number of files to read at once on the I/O threads
+		Integer ioThreads = null;
+		try {
+			ioThreads = arguments.valueInt(null, "io-threads", 0);
+		} catch (NumberFormatException e) {
+			errors.add("The number of I/O threads must be a number (example: \"--io-threads=256\").");
+		}
+
+		//run the stages at the same time?
+		boolean usePipeline = arguments.exists(null, "pipeline");
+		Integer queueCapacity = null;
+		try {
+			queueCapacity = arguments.valueInt(null, "queue-capacity", GenerationPipeline.DEFAULT_QUEUE_CAPACITY);
+		} catch (NumberFormatException e) {
+			errors.add("The queue capacity must be a number (example: \"--queue-capacity=256\").");
+		}
+		if (arguments.exists(null, "queue-capacity") && !usePipeline) {
+			errors.add("\"--queue-capacity\" can only be used with \"--pipeline\".");
+		}
+		if (usePipeline && outputDir != null) {
+			errors.add("\"--pipeline\" cannot be used with \"--output-dir\".");
+		}
+
+		//get the number of beans in each file
+		Integer shardSize = null;
+		try {
+			shardSize = arguments.valueInt(null, "shard-size", 0);
+		} catch (NumberFormatException e) {
+			errors.add("The shard size must be a number (example: \"--shard-size=500\").");
+		}
+
+		//get the maximum number of beans to keep in memory
+		Integer maxHeapBeans = null;
+		try {
+			maxHeapBeans = arguments.valueInt(null, "max-heap-beans", 0);
+		} catch (NumberFormatException e) {
+			errors.add("The maximum number of beans must be a number (example: \"--max-heap-beans=50000\").");
+		}
+		if (maxHeapBeans != null && maxHeapBeans > 0 && outputDir == null) {
+			errors.add("\"--max-heap-beans\" can only be used with \"--output-dir\".");
+		}
+
+		//resolve the references to other beans?
+		boolean resolveRefs = arguments.exists(null, "resolve-refs");
+
+		//keep running and regenerate the XML whenever a source file changes?
+		boolean watch = arguments.exists("w", "watch");
+		if (watch && mergeInto != null) {
+			errors.add("\"--merge-into\" cannot be used in watch mode.");
+		}
+		if (watch && outputDir != null) {
+			errors.add("\"--output-dir\" cannot be used in watch mode.");
+		} else if (watch && output == null) {
+			errors.add("An output file must be specified in watch mode (example: \"--output=applicationContext.xml\").");
+		}
+		if (watch && usePipeline) {
+			errors.add("\"--pipeline\" cannot be used in watch mode.");
+		}
+		if (watch && resolveRefs) {
+			errors.add("\"--resolve-refs\" cannot be used in watch mode.");
+		}
+		if (watch && daemon != null) {
+			errors.add("Watch mode cannot be used with the daemon.");
+		}
+		for (String source : sources) {
+			if (watch && source != null && resolve(workingDir, source).isFile()) {
+				errors.add("A JAR or ZIP file cannot be watched. The source must be a directory in watch mode.");
+			}
+		}
+
+		//print timing and throughput statistics?
+		String statsFormat = null;
+		if (arguments.exists(null, "stats")) {
+			statsFormat = arguments.value(null, "stats", "text");
+			if (statsFormat == null) {
+				statsFormat = "text";
+			}
+			if (!"text".equals(statsFormat) && !"json".equals(statsFormat)) {
+				errors.add("The statistics format must be \"text\" or \"json\" (example: \"--stats=json\").");
+			}
+		}
+		String statsFile = arguments.value(null, "stats-file");
+		if (statsFile != null && statsFormat == null) {
+			errors.add("\"--stats-file\" requires \"--stats\".");
+		}
+		if (statsFormat != null && watch) {
+			errors.add("\"--stats\" cannot be used in watch mode.");
+		}
+		GenerationStats stats = (statsFormat == null) ? null : new GenerationStats();
+
+		//create Flight Recorder events?
+		boolean jfr = arguments.exists(null, "jfr");
+		String jfrFile = arguments.value(null, "jfr");
+		if (jfrFile != null && watch) {
+			errors.add("A Flight Recorder file cannot be written in watch mode. Use \"--jfr\" without a file name and start a recording with \"jcmd\" instead.");
+		}
+
+		//display an error message if any of the required fields were not specified
+		if (!errors.isEmpty()) {
+			for (String error : errors) {
+				stderr.println(error);
+			}
+			stderr.println("Type \"--help\" for help.");
+			return 1;
+		}
+
+		//only load the Flight Recorder classes if the events are turned on
+		FlightRecorderEvents events = null;
+		if (jfr) {
+			events = new FlightRecorderEvents();
+			if (jfrFile != null) {
+				events.startRecording();
+			}
+		}
+
+		//find the source directories of the modules
+		List<File> sourceFiles = new ArrayList<File>();
+		for (String source : sources) {
+			sourceFiles.add(resolve(workingDir, source));
+		}
+		if (discoverModules != null) {
+			String moduleSourceDir = "bytecode".equals(parserName) ? "target/classes" : ModuleFinder.DEFAULT_SOURCE_DIRECTORY;
+			List<File> moduleSourceDirs = new ModuleFinder().setSourceDirectory(moduleSourceDir).find(resolve(workingDir, discoverModules));
+			if (moduleSourceDirs.isEmpty()) {
+				stderr.println("Warning: No modules with a \"" + moduleSourceDir + "\" directory were found in \"" + discoverModules + "\".");
+			}
+			sourceFiles.addAll(moduleSourceDirs);
+		}
+
+		//open the source directories and archives
+		List<FileSystem> archives = new ArrayList<FileSystem>();
+		List<Path> sourceRoots = new ArrayList<Path>();
+		for (File sourceFile : sourceFiles) {
+			if (sourceFile.isFile()) {
+				//read the entries of the JAR or ZIP file in place, without extracting them
+				FileSystem archive = FileSystems.newFileSystem(sourceFile.toPath(), (ClassLoader) null);
+				archives.add(archive);
+				sourceRoots.add(archive.getRootDirectories().iterator().next());
+			} else {
+				sourceRoots.add(sourceFile.toPath());
+			}
+		}
+
+		//warn about packages that don't exist
+		for (String packageStr : selection.getPackages()) {
+			boolean exists = false;
+			for (Path sourceRoot : sourceRoots) {
+				Path packageDir = sourceRoot.resolve(packageStr.replace(".", sourceRoot.getFileSystem().getSeparator()));
+				if (Files.isDirectory(packageDir)) {
+					exists = true;
+				} else if (sourceRoots.size() == 1) {
+					stderr.println("Warning: Package directory \"" + packageDir + "\" does not exist.");
+				}
+			}
+			if (!exists && sourceRoots.size() > 1) {
+				stderr.println("Warning: Package \"" + packageStr + "\" does not exist in any of the source directories.");
+			}
+		}
+
+		//when there are several source directories, the same class may be in more than one of them
+		boolean skipDuplicates = (sourceRoots.size() > 1);
+
+		//find the Java source files in a single walk of the source directory (the pipeline walks the directory while the files are being parsed)
+		walker.setThreads(threads);
+		List<Path> javaFiles = null;
+		GenerationPipeline pipeline = null;
+		if (usePipeline) {
+			pipeline = new GenerationPipeline(walker);
+			pipeline.setReadThreads((ioThreads > 0) ? ioThreads : threads);
+			pipeline.setParseThreads(threads);
+			pipeline.setQueueCapacity(queueCapacity);
+			pipeline.setStats(stats);
+		} else {
+			long walkStart = System.nanoTime();
+			FlightRecorderEvents.ScanEvent scanEvent = (events == null) ? null : events.beginScan();
+			javaFiles = walker.walkPaths(sourceRoots);
+			if (scanEvent != null) {
+				scanEvent.end(sourceRoots, javaFiles.size());
+			}
+			if (stats != null) {
+				stats.addTime(GenerationStats.Phase.WALK, System.nanoTime() - walkStart);
+			}
+		}
+
+		//load the results of the last run
+		File cacheFile = null;
+		ParseCache parseCache = null;
+		String cacheConfiguration = parser.getClass().getName() + "," + encoding.name();
+		if (cache != null) {
+			cacheFile = resolve(workingDir, cache);
+			parseCache = ParseCache.load(cacheFile, cacheConfiguration);
+		} else if (daemon != null) {
+			//the daemon keeps the results of earlier requests in memory
+			parseCache = daemon.getParseCache(cacheConfiguration);
+		}
+
+		//index the generated beans, so that references can be resolved
+		TypeIndex typeIndex = resolveRefs ? new TypeIndex() : null;
+
+		//keep regenerating the application context XML whenever a source file changes
+		if (watch) {
+			ApplicationContextGenerator generator = new ApplicationContextGenerator(springVersion);
+			generator.setParser(parser);
+			generator.setSourceFileReader(new SourceFileReader(encoding));
+			generator.setIoThreads(ioThreads);
+			generator.setFlightRecorderEvents(events);
+			if (parseCache != null) {
+				generator.setParseCache(parseCache);
+				final ParseCache finalParseCache = parseCache;
+				final File finalCacheFile = cacheFile;
+				final PrintStream finalStderr = stderr;
+				Runtime.getRuntime().addShutdownHook(new Thread() {
+					@Override
+					public void run() {
+						try {
+							finalParseCache.save(finalCacheFile);
+						} catch (IOException e) {
+							finalStderr.println("Warning: Could not save the cache file: " + e.getMessage());
+						}
+					}
+				});
+			}
+
+			ContextWatcher watcher = new ContextWatcher(generator, springVersion, sourceFiles, walker, resolve(workingDir, output));
+			watcher.setThreads(threads);
+			watcher.setSkipDuplicates(skipDuplicates);
+			watcher.setStderr(stderr);
+			watcher.start();
+			stderr.println("Watching " + selection.getPackages().size() + " package(s) for changes. Press Ctrl+C to stop.");
+			watcher.run();
+			return 0;
+		}
+
+		//split the application context XML into several files
+		if (outputDir != null) {
+			try {
+				ApplicationContextGenerator generator = new ApplicationContextGenerator(springVersion);
+				generator.setParser(parser);
+				generator.setSourceFileReader(new SourceFileReader(encoding));
+				generator.setIoThreads(ioThreads);
+				generator.setSkipDuplicates(skipDuplicates);
+				generator.setTypeIndex(typeIndex);
+				generator.setStats(stats);
+				generator.setFlightRecorderEvents(events);
+				if (parseCache != null) {
+					generator.setParseCache(parseCache);
+				}
+
+				ShardedContextWriter sharded = new ShardedContextWriter(resolve(workingDir, outputDir), springVersion);
+				sharded.setShardSize(shardSize);
+				sharded.setMaxHeapBeans(maxHeapBeans);
+				sharded.setTypeIndex(typeIndex);
+				sharded.setStats(stats);
+				sharded.setFlightRecorderEvents(events);
+
+				//when memory is bounded, parse the files in chunks so that only one chunk's worth of beans are held at a time
+				int chunkSize = (maxHeapBeans > 0) ? maxHeapBeans : Math.max(javaFiles.size(), 1);
+				for (int from = 0; from < javaFiles.size(); from += chunkSize) {
+					List<Path> chunk = javaFiles.subList(from, Math.min(from + chunkSize, javaFiles.size()));
+					for (JavaClass javaClass : generator.parsePaths(chunk, threads)) {
+						if (javaClass != null) {
+							sharded.add(javaClass);
+						}
+					}
+				}
+				printDuplicates(generator, stderr);
+				sharded.write(threads);
+				stderr.println("Wrote " + sharded.getFilesWritten() + " file(s) to " + outputDir + " (" + sharded.getFilesUnchanged() + " unchanged" + ((sharded.getFilesDeleted() > 0) ? ", " + sharded.getFilesDeleted() + " old shard(s) deleted" : "") + ((sharded.getBeansSpilled() > 0) ? ", " + sharded.getBeansSpilled() + " bean(s) spilled to disk" : "") + ").");
+			} finally {
+				close(archives);
+			}
+			finishCache(parseCache, cacheFile, daemon);
+			printUnresolved(typeIndex, stderr);
+			printStats(stats, parseCache, statsFormat, resolve(workingDir, statsFile), stderr);
+			if (jfrFile != null) {
+				events.stopRecording(resolve(workingDir, jfrFile));
+			}
+			return 0;
+		}
+
+		//add the beans to an existing file, keeping everything that's already in it
+		if (mergeInto != null) {
+			ApplicationContextGenerator generator = new ApplicationContextGenerator(springVersion);
+			try {
+				generator.setParser(parser);
+				generator.setSourceFileReader(new SourceFileReader(encoding));
+				generator.setIoThreads(ioThreads);
+				generator.setSkipDuplicates(skipDuplicates);
+				generator.setTypeIndex(typeIndex);
+				generator.setStats(stats);
+				generator.setFlightRecorderEvents(events);
+				if (parseCache != null) {
+					generator.setParseCache(parseCache);
+				}
+				if (pipeline != null) {
+					pipeline.run(generator, sourceRoots);
+				} else {
+					generator.addBeanPaths(javaFiles, threads);
+				}
+				printDuplicates(generator, stderr);
+			} finally {
+				close(archives);
+			}
+
+			long mergeStart = System.nanoTime();
+			ContextMerger merger = new ContextMerger(generator.getDocument());
+			boolean changed = merger.merge(resolve(workingDir, mergeInto), !diff);
+			if (stats != null) {
+				stats.addTime(GenerationStats.Phase.WRITE, System.nanoTime() - mergeStart);
+			}
+
+			finishCache(parseCache, cacheFile, daemon);
+			printUnresolved(typeIndex, stderr);
+			printStats(stats, parseCache, statsFormat, resolve(workingDir, statsFile), stderr);
+			if (jfrFile != null) {
+				events.stopRecording(resolve(workingDir, jfrFile));
+			}
+
+			if (diff) {
+				for (String change : merger.getChanges()) {
+					stdout.println(change);
+				}
+				stdout.flush();
+				return changed ? 2 : 0;
+			}
+			if (changed) {
+				stderr.println("Added " + merger.getBeansAdded() + " bean(s) and " + merger.getPropertiesAdded() + " property(ies) to " + mergeInto + ".");
+			} else {
+				stderr.println(mergeInto + " is up to date.");
+			}
+			return 0;
+		}
+
+		//generate the application context XML, writing each bean as soon as it is built
+		File outputFile = resolve(workingDir, output);
+		OutputStream out = (outputFile == null) ? stdout : new FileOutputStream(outputFile);
+		XmlContextWriter writer = new XmlContextWriter(out, springVersion);
+		try {
+			ApplicationContextGenerator generator = new ApplicationContextGenerator(springVersion, writer);
+			generator.setParser(parser);
+			generator.setSourceFileReader(new SourceFileReader(encoding));
+			generator.setIoThreads(ioThreads);
+			generator.setSkipDuplicates(skipDuplicates);
+			generator.setTypeIndex(typeIndex);
+			generator.setStats(stats);
+			generator.setFlightRecorderEvents(events);
+			if (parseCache != null) {
+				generator.setParseCache(parseCache);
+			}
+			if (pipeline != null) {
+				pipeline.run(generator, sourceRoots);
+			} else {
+				generator.addBeanPaths(javaFiles, threads);
+			}
+			printDuplicates(generator, stderr);
+		} finally {
+			long closeStart = System.nanoTime();
+			FlightRecorderEvents.WriteFileEvent writeEvent = (events == null) ? null : events.beginWriteFile();
+			try {
+				writer.close();
+			} finally {
+				if (outputFile != null) {
+					out.close();
+				}
+			}
+			if (writeEvent != null) {
+				writeEvent.end(output, (outputFile == null) ? -1 : outputFile.length());
+			}
+			if (stats != null) {
+				stats.addTime(GenerationStats.Phase.WRITE, System.nanoTime() - closeStart);
+			}
+			close(archives);
+		}
+		finishCache(parseCache, cacheFile, daemon);
+		printUnresolved(typeIndex, stderr);
+		printStats(stats, parseCache, statsFormat, resolve(workingDir, statsFile), stderr);
+		if (jfrFile != null) {
+			events.stopRecording(resolve(workingDir, jfrFile));
+		}
+		return 0;
+	}
+
+	/**
+	 * Prints a warning for each class that was in more than one source
+	 * directory.
+	 * @param generator the generator
+	 * @param stderr the stream to print to
+	 */
+	private static void printDuplicates(ApplicationContextGenerator generator, PrintStream stderr) {
+		for (String className : generator.getDuplicates()) {
+			stderr.println("Warning: Class \"" + className + "\" is in more than one source directory. Only the first one was used.");
+		}
+	}
+
+	/**
+	 * Closes the archives that the source files were read from.
+	 * @param archives the archives
+	 * @throws IOException if there's a problem closing an archive
+	 */
+	private static void close(List<FileSystem> archives) throws IOException {
+		for (FileSystem archive : archives) {
+			archive.close();
+		}
+	}
+
+	/**
+	 * Resolves a path that was passed in as an argument.
+	 * @param workingDir the directory to resolve relative paths against or
+	 * null to use the current working directory
+	 * @param path the path or null
+	 * @return the file or null if the path is null
+	 */
+	private static File resolve(File workingDir, String path) {
+		if (path == null) {
+			return null;
+		}
+		File file = new File(path);
+		return (workingDir == null || file.isAbsolute()) ? file : new File(workingDir, path);
+	}
+
+	/**
+	 * Saves the parse cache after a run.
+	 * @param parseCache the parse cache or null if there isn't one
+	 * @param cacheFile the cache file or null if the cache is kept in memory
+	 * by the daemon
+	 * @param daemon the daemon that is running the request or null
+	 * @throws IOException if there's a problem writing the cache file
+	 */
+	private static void finishCache(ParseCache parseCache, File cacheFile, GeneratorDaemon daemon) throws IOException {
+		if (parseCache == null) {
+			return;
+		}
+		if (cacheFile != null) {
+			parseCache.save(cacheFile);
+		} else {
+			daemon.putParseCache(parseCache);
+		}
+	}
+
+	/**
+	 * Prints the references that could not be resolved to generated beans.
+	 * @param typeIndex the type index or null if references were not resolved
+	 * @param stderr standard error
+	 */
+	private static void printUnresolved(TypeIndex typeIndex, PrintStream stderr) {
+		if (typeIndex == null) {
+			return;
+		}
+		for (String unresolved : typeIndex.getUnresolved()) {
+			stderr.println("Warning: " + unresolved);
+		}
+	}
+
+	/**
+	 * Prints the timing and throughput statistics of a run.
+	 * @param stats the statistics or null if they were not collected
+	 * @param parseCache the parse cache or null if there isn't one
+	 * @param format "text" or "json"
+	 * @param file the file to write the statistics to or null to write them
+	 * to standard error
+	 * @param stderr standard error
+	 * @throws IOException if there's a problem writing to the file
+	 */
+	private static void printStats(GenerationStats stats, ParseCache parseCache, String format, File file, PrintStream stderr) throws IOException {
+		if (stats == null) {
+			return;
+		}
+
+		stats.finish();
+		if (parseCache != null) {
+			stats.setCache(parseCache);
+		}
+		String report = "json".equals(format) ? stats.toJson() + System.getProperty("line.separator") : stats.toText();
+		if (file == null) {
+			stderr.print(report);
+			return;
+		}
+
+		Writer out = new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8);
+		try {
+			out.write(report);
+		} finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * The list of Java primative types.
+	 */
+	private static final List<String> primatives = Arrays.asList(new String[] { "byte", "short", "char", "int", "long", "float", "double", "boolean" });
+
+	/**
+	 * The list of Java wrapper classes (includes String).
+	 */
+	private static final List<String> wrappers = Arrays.asList(new String[] { "Byte", "Short", "Character", "Integer", "Long", "Float", "Double", "Boolean", "String" });
+
+	/**
+	 * The namespace of the Spring beans XML schema.
+	 */
+	static final String BEANS_NAMESPACE = "http://www.springframework.org/schema/beans";
+
+	/**
+	 * The namespace of the XML schema instance attributes.
+	 */
+	static final String XSI_NAMESPACE = "http://www.w3.org/2001/XMLSchema-instance";
+
+	/**
+	 * When the beans are being written to a stream, the maximum number of
+	 * files each thread parses before the parsed beans are written (keeps
+	 * memory usage bounded no matter how many files there are).
+	 */
+	private static final int FILES_PER_THREAD_PER_CHUNK = 256;
+
+	/**
+	 * The Spring version.
+	 */
+	private final String springVersion;
+
+	/**
+	 * The XML document or null if it hasn't been needed yet (a generator whose
+	 * files are only parsed never creates one).
+	 */
+	private Document document;
+
+	/**
+	 * The XML root element.
+	 */
+	private Element root;
+
+	/**
+	 * The writer to stream the &lt;bean /&gt; elements to or null to add them
+	 * to the XML document.
+	 */
+	private final XmlContextWriter writer;
+
+	/**
+	 * The parser used to extract the class information from the Java source
+	 * files.
+	 */
+	private JavaSourceParser parser = new ScanningJavaSourceParser();
+
+	/**
+	 * The parser used to extract the class information from compiled class
+	 * files.
+	 */
+	private final ClassFileParser classFileParser = new ClassFileParser();
+
+	/**
+	 * Reads the contents of the Java source files.
+	 */
+	private SourceFileReader sourceFileReader = new SourceFileReader();
+
+	/**
+	 * Remembers the class information of files that were parsed in a previous
+	 * run or null to always parse every file.
+	 */
+	private ParseCache parseCache;
+
+	/**
+	 * Resolves the "ref" attributes to the IDs of generated beans or null to
+	 * derive them from the type names alone.
+	 */
+	private TypeIndex typeIndex;
+
+	/**
+	 * Collects timing and throughput statistics or null not to collect them.
+	 */
+	private GenerationStats stats;
+
+	/**
+	 * Creates Flight Recorder events for each phase or null not to create
+	 * them.
+	 */
+	private FlightRecorderEvents events;
+
+	/**
+	 * Wraps {@link #sourceFileReader} to record how long reading takes, or
+	 * null if neither statistics nor Flight Recorder events are being
+	 * collected.
+	 */
+	private InstrumentedSourceFileReader instrumentedReader;
+
+	/**
+	 * The maximum number of files that are read at once on the I/O threads,
+	 * or 0 to read each file on the thread that parses it.
+	 */
+	private int ioThreads;
+
+	/**
+	 * The fully qualified names of the classes that have been added, or null
+	 * if classes are not de-duplicated.
+	 */
+	private Set<String> beanClasses;
+
+	/**
+	 * The fully qualified names of the classes that were skipped because they
+	 * had already been added.
+	 */
+	private final List<String> duplicates = new ArrayList<String>();
+
+	/**
+	 * Constructs a new application context generator. The beans are added to
+	 * an XML document, which can be retrieved with {@link #getDocument}.
+	 * @param springVersion the Spring version
+	 */
+	public ApplicationContextGenerator(String springVersion) {
+		this(springVersion, null);
+	}
+
+	/**
+	 * Constructs a new application context generator that streams each bean
+	 * to a writer as soon as it is built. The beans are not added to the XML
+	 * document returned by {@link #getDocument}.
+	 * @param springVersion the Spring version
+	 * @param writer the writer to stream the beans to or null to add them to
+	 * the XML document
+	 */
+	public ApplicationContextGenerator(String springVersion, XmlContextWriter writer) {
+		this.springVersion = springVersion;
+		this.writer = writer;
+	}
+
+	/**
+	 * Gets the XML document, creating it the first time it's needed. The DOM
+	 * implementation is not loaded until then, which shortens the start-up
+	 * time of runs that don't build any beans.
+	 * @return the XML document
+	 */
+	private Document document() {
+		if (document != null) {
+			return document;
+		}
+
+		//create the XML document
+		DocumentBuilder docBuilder = null;
+		try {
+			synchronized (DocumentBuilderFactoryHolder.factory) {
+				docBuilder = DocumentBuilderFactoryHolder.factory.newDocumentBuilder();
+			}
+		} catch (ParserConfigurationException e) {
+			//never thrown in my case, so ignore it
+		}
+		document = docBuilder.newDocument();
+
+		//create the root element
+		root = document.createElementNS(BEANS_NAMESPACE, "beans");
+		root.setAttributeNS(XSI_NAMESPACE, "schemaLocation", schemaLocation(springVersion));
+		document.appendChild(root);
+		return document;
+	}
+
+	/**
+	 * Builds the value of the root element's "xsi:schemaLocation" attribute.
+	 * @param springVersion the Spring version
+	 * @return the attribute value
+	 */
+	static String schemaLocation(String springVersion) {
+		return BEANS_NAMESPACE + " " + BEANS_NAMESPACE + "/spring-beans-" + springVersion + ".xsd";
+	}
+
+	/**
+	 * Sets the parser that is used to extract the class information from the
+	 * Java source files.
+	 * @param parser the parser (defaults to {@link ScanningJavaSourceParser})
+	 * @return this
+	 */
+	public ApplicationContextGenerator setParser(JavaSourceParser parser) {
+		this.parser = parser;
+		return this;
+	}
+
+	/**
+	 * Sets the object that is used to read the contents of the Java source
+	 * files (for example, to change the character encoding).
+	 * @param sourceFileReader the source file reader (defaults to a reader
+	 * that uses the platform's default character encoding)
+	 * @return this
+	 */
+	public ApplicationContextGenerator setSourceFileReader(SourceFileReader sourceFileReader) {
+		this.sourceFileReader = sourceFileReader;
+		instrument();
+		return this;
+	}
+
+	/**
+	 * Sets the cache that is used to skip parsing files that have not changed
+	 * since the last run.
+	 * @param parseCache the cache or null to always parse every file
+	 * (defaults to null)
+	 * @return this
+	 */
+	public ApplicationContextGenerator setParseCache(ParseCache parseCache) {
+		this.parseCache = parseCache;
+		return this;
+	}
+
+	/**
+	 * Sets the index that is used to resolve the "ref" attributes of
+	 * properties and constructor arguments to the IDs of generated beans.
+	 * Every file this generator parses is added to the index. When an index
+	 * is set, {@link #addBeanPaths} parses all of the files before it builds
+	 * the first bean. References that can't be resolved are recorded in the
+	 * index.
+	 * @param typeIndex the index or null to derive each reference from the
+	 * type name alone (the lower-cased simple name), whether or not such a
+	 * bean exists (defaults to null)
+	 * @return this
+	 */
+	public ApplicationContextGenerator setTypeIndex(TypeIndex typeIndex) {
+		this.typeIndex = typeIndex;
+		return this;
+	}
+
+	/**
+	 * Sets the object that timing and throughput statistics are recorded in.
+	 * @param stats the statistics or null not to collect them (defaults to
+	 * null)
+	 * @return this
+	 */
+	public ApplicationContextGenerator setStats(GenerationStats stats) {
+		this.stats = stats;
+		instrument();
+		return this;
+	}
+
+	/**
+	 * Sets the object that creates Flight Recorder events for each phase (the
+	 * reading and parsing of each file and the building and writing of each
+	 * bean).
+	 * @param events the event factory or null not to create events (defaults
+	 * to null)
+	 * @return this
+	 */
+	public ApplicationContextGenerator setFlightRecorderEvents(FlightRecorderEvents events) {
+		this.events = events;
+		instrument();
+		return this;
+	}
+
+	/**
+	 * Sets the maximum number of files that are read at once. When this is
+	 * set, {@link #addBeanPaths} and {@link #parsePaths} read the files on
+	 * separate I/O threads (virtual threads, if the JVM supports them) and
+	 * hand the bytes to the parsing threads. This helps when the files are on
+	 * a network file system, where each read spends most of its time waiting
+	 * for the server and very little using the CPU. The beans are still added
+	 * in the same order as the list. If a parse cache is set, only the files
+	 * that changed are read.
+	 * @param ioThreads the maximum number of reads in flight or 0 to read each
+	 * file on the thread that parses it (defaults to 0)
+	 * @return this
+	 */
+	public ApplicationContextGenerator setIoThreads(int ioThreads) {
+		this.ioThreads = ioThreads;
+		return this;
+	}
+
+	/**
+	 * Sets whether a class that has already been added is skipped when it is
+	 * found again (for example, when the same class is in more than one
+	 * source directory). The first one that is found is kept.
+	 * @param skipDuplicates true to skip the classes that have already been
+	 * added, false to add a bean every time (defaults to false)
+	 * @return this
+	 */
+	public ApplicationContextGenerator setSkipDuplicates(boolean skipDuplicates) {
+		beanClasses = skipDuplicates ? new HashSet<String>() : null;
+		return this;
+	}
+
+	/**
+	 * Gets the classes that were skipped because they had already been added
+	 * (see {@link #setSkipDuplicates}).
+	 * @return the fully qualified class names, in the order they were skipped
+	 */
+	public List<String> getDuplicates() {
+		return duplicates;
+	}
+
+	/**
+	 * Determines whether a parse cache is set.
+	 * @return true if one is set, false if not
+	 */
+	boolean hasParseCache() {
+		return parseCache != null;
+	}
+
+	/**
+	 * Determines whether a type index is set (if so, every file must be
+	 * parsed before the first bean is built).
+	 * @return true if one is set, false if not
+	 */
+	boolean hasTypeIndex() {
+		return typeIndex != null;
+	}
+
+	private void instrument() {
+		instrumentedReader = (stats == null && events == null) ? null : new InstrumentedSourceFileReader(sourceFileReader, stats, events);
+	}
+
+	/**
+	 * Gets the generated XML document.
+	 * @return the XML document
+	 */
+	public Document getDocument() {
+		return document();
+	}
+
+	/**
+	 * Adds a bean to the application context using a Java source file. Only
+	 * public classes are added.
+	 * @param reader the input stream to the Java source file (this is closed
+	 * after it is read)
+	 * @return this
+	 * @throws IOException if there's a problem reading the file
+	 */
+	public ApplicationContextGenerator addBean(Reader reader) throws IOException {
+		String contentsString = getFileContents(reader);
+
+		//build a "bean" element for each class
+		JavaClass javaClass = parser.parse(contentsString);
+		if (javaClass != null) {
+			addBean(javaClass);
+		} else {
+			//System.err.println("Warning: Could not find public class in \"" + file + "\".");
+		}
+		return this;
+	}
+
+	/**
+	 * Adds a bean to the application context using a Java source file. Only
+	 * public classes are added.
+	 * @param file the Java source file
+	 * @return this
+	 * @throws IOException if there's a problem reading the file or writing to
+	 * the stream
+	 */
+	public ApplicationContextGenerator addBean(File file) throws IOException {
+		return addBean(file.toPath());
+	}
+
+	/**
+	 * Adds a bean to the application context using a Java source file. Only
+	 * public classes are added.
+	 * @param path the Java source file (it can also be an entry in a zip file
+	 * system)
+	 * @return this
+	 * @throws IOException if there's a problem reading the file or writing to
+	 * the stream
+	 */
+	public ApplicationContextGenerator addBean(Path path) throws IOException {
+		JavaClass javaClass = parseFile(path);
+		if (javaClass != null) {
+			addBean(javaClass);
+		}
+		return this;
+	}
+
+	/**
+	 * Adds a bean to the application context using information that was
+	 * already extracted from a Java class.
+	 * @param javaClass the class information
+	 * @return this
+	 * @throws IOException if the beans are being streamed and there's a
+	 * problem writing to the stream
+	 */
+	public ApplicationContextGenerator addBean(JavaClass javaClass) throws IOException {
+		if (isDuplicate(javaClass)) {
+			return this;
+		}
+
+		if (stats == null && events == null) {
+			appendBean(buildBeanElement(javaClass));
+			return this;
+		}
+
+		long start = System.nanoTime();
+		FlightRecorderEvents.BuildBeanEvent buildEvent = (events == null) ? null : events.beginBuildBean();
+		Element beanElement = buildBeanElement(javaClass);
+		if (buildEvent != null) {
+			buildEvent.end(javaClass);
+		}
+
+		long built = System.nanoTime();
+		FlightRecorderEvents.WriteBeanEvent writeEvent = (events == null) ? null : events.beginWriteBean();
+		appendBean(beanElement);
+		if (writeEvent != null) {
+			writeEvent.end(javaClass);
+		}
+
+		if (stats != null) {
+			stats.addTime(GenerationStats.Phase.BUILD, built - start);
+			stats.addTime(GenerationStats.Phase.WRITE, System.nanoTime() - built);
+			stats.addBean(javaClass);
+		}
+		return this;
+	}
+
+	private void appendBean(Element beanElement) throws IOException {
+		if (writer == null) {
+			document();
+			root.appendChild(beanElement);
+		} else {
+			writer.writeBean(beanElement);
+		}
+	}
+
+	/**
+	 * Adds a bean to the application context for each of the given Java source
+	 * files. The files are read and parsed in parallel, but the beans are
+	 * added in the same order as the list, so the generated XML is identical
+	 * to the XML that is generated by calling {@link #addBean(File)} on each
+	 * file one after another.
+	 * @param files the Java source files
+	 * @param threads the number of threads to use (if 1 or less, all the files
+	 * are processed on the current thread)
+	 * @return this
+	 * @throws IOException if there's a problem reading one of the files or
+	 * writing to the stream
+	 */
+	public ApplicationContextGenerator addBeans(List<File> files, int threads) throws IOException {
+		return addBeanPaths(toPaths(files), threads);
+	}
+
+	/**
+	 * Adds a bean to the application context for each of the given Java source
+	 * files. The files are read and parsed in parallel, but the beans are
+	 * added in the same order as the list, so the generated XML is identical
+	 * to the XML that is generated by calling {@link #addBean(Path)} on each
+	 * file one after another.
+	 * @param paths the Java source files (they can also be entries in a zip
+	 * file system)
+	 * @param threads the number of threads to use (if 1 or less, all the files
+	 * are processed on the current thread)
+	 * @return this
+	 * @throws IOException if there's a problem reading one of the files or
+	 * writing to the stream
+	 */
+	public ApplicationContextGenerator addBeanPaths(List<Path> paths, int threads) throws IOException {
+		if (threads <= 1 && typeIndex == null && ioThreads <= 0) {
+			for (Path path : paths) {
+				addBean(path);
+			}
+			return this;
+		}
+
+		//when streaming, parse the files in chunks so that only one chunk's worth of beans are held in memory
+		//(unless references are being resolved, in which case every class must be indexed before the first bean is built)
+		int chunkSize = (writer == null || typeIndex != null) ? Math.max(paths.size(), 1) : threads * FILES_PER_THREAD_PER_CHUNK;
+		ForkJoinPool pool = new ForkJoinPool(Math.max(threads, 1));
+		try {
+			for (int from = 0; from < paths.size(); from += chunkSize) {
+				List<Path> chunk = paths.subList(from, Math.min(from + chunkSize, paths.size()));
+				JavaClass[] results = parseFiles(chunk, pool);
+
+				//the DOM is not thread-safe, so the elements are built on this thread
+				for (JavaClass javaClass : results) {
+					if (javaClass != null) {
+						addBean(javaClass);
+					}
+				}
+			}
+		} finally {
+			pool.shutdown();
+		}
+		return this;
+	}
+
+	/**
+	 * Extracts the class information from a list of Java source files.
+	 * @param files the Java source files
+	 * @param threads the number of threads to use (if 1 or less, all the files
+	 * are processed on the current thread)
+	 * @return the class information of each file, in the same order as the
+	 * list (an element is null if its file does not contain a public class)
+	 * @throws IOException if there's a problem reading one of the files
+	 */
+	JavaClass[] parseFiles(List<File> files, int threads) throws IOException {
+		return parsePaths(toPaths(files), threads);
+	}
+
+	/**
+	 * Extracts the class information from a list of Java source files.
+	 * @param paths the Java source files (they can also be entries in a zip
+	 * file system)
+	 * @param threads the number of threads to use (if 1 or less, all the files
+	 * are processed on the current thread)
+	 * @return the class information of each file, in the same order as the
+	 * list (an element is null if its file does not contain a public class, or
+	 * if duplicates are skipped and the class has already been returned or
+	 * added)
+	 * @throws IOException if there's a problem reading one of the files
+	 */
+	public JavaClass[] parsePaths(List<Path> paths, int threads) throws IOException {
+		JavaClass[] results;
+		if (threads <= 1 && ioThreads <= 0) {
+			results = new JavaClass[paths.size()];
+			for (int i = 0; i < results.length; i++) {
+				results[i] = parseFile(paths.get(i));
+			}
+		} else {
+			ForkJoinPool pool = new ForkJoinPool(Math.max(threads, 1));
+			try {
+				results = parseFiles(paths, pool);
+			} finally {
+				pool.shutdown();
+			}
+		}
+
+		//the classes are returned instead of added, so skip the duplicates here
+		for (int i = 0; i < results.length; i++) {
+			if (results[i] != null && isDuplicate(results[i])) {
+				results[i] = null;
+			}
+		}
+		return results;
+	}
+
+	/**
+	 * Records that a class is being added, if duplicates are skipped.
+	 * @param javaClass the class information
+	 * @return true if the class has already been added and should be
+	 * skipped, false if not
+	 */
+	private boolean isDuplicate(JavaClass javaClass) {
+		if (beanClasses == null) {
+			return false;
+		}
+		String qualifiedName = (javaClass.packageName == null) ? javaClass.className : javaClass.packageName + "." + javaClass.className;
+		if (beanClasses.add(qualifiedName)) {
+			return false;
+		}
+		duplicates.add(qualifiedName);
+		return true;
+	}
+
+	/**
+	 * Extracts the class information from a list of Java source files in
+	 * parallel.
+	 * @param paths the Java source files
+	 * @param pool the thread pool
+	 * @return the class information of each file, in the same order as the
+	 * list (an element is null if its file does not contain a public class)
+	 * @throws IOException if there's a problem reading one of the files
+	 */
+	private JavaClass[] parseFiles(List<Path> paths, ForkJoinPool pool) throws IOException {
+		if (ioThreads > 0) {
+			return prefetchFiles(paths, pool);
+		}
+
+		JavaClass[] results = new JavaClass[paths.size()];
+		try {
+			pool.invoke(new ParseTask(paths, results, 0, paths.size()));
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		}
+		return results;
+	}
+
+	/**
+	 * Reads a list of Java source files on the I/O threads and parses them
+	 * in parallel on the thread pool. No more than {@link #ioThreads} files
+	 * are read or waiting to be parsed at once, which bounds the memory that
+	 * the prefetched bytes take up.
+	 * @param paths the Java source files
+	 * @param pool the thread pool that parses the files
+	 * @return the class information of each file, in the same order as the
+	 * list (an element is null if its file does not contain a public class)
+	 * @throws IOException if there's a problem reading one of the files
+	 */
+	private JavaClass[] prefetchFiles(List<Path> paths, final ForkJoinPool pool) throws IOException {
+		final JavaClass[] results = new JavaClass[paths.size()];
+		final Semaphore permits = new Semaphore(ioThreads);
+		final CountDownLatch done = new CountDownLatch(paths.size());
+		final AtomicReference<Throwable> error = new AtomicReference<Throwable>();
+
+		ExecutorService io = IoExecutors.newExecutor(ioThreads);
+		try {
+			for (int i = 0; i < paths.size(); i++) {
+				final int index = i;
+				final Path path = paths.get(i);
+				permits.acquire();
+				io.execute(new Runnable() {
+					@Override
+					public void run() {
+						//once a file fails, skip the rest
+						if (error.get() != null) {
+							permits.release();
+							done.countDown();
+							return;
+						}
+
+						final ByteBuffer bytes;
+						try {
+							//the parse cache doesn't read the files that haven't changed
+							bytes = (parseCache != null && parseCache.isUpToDate(path)) ? null : readFile(path);
+						} catch (Throwable e) {
+							error.compareAndSet(null, e);
+							permits.release();
+							done.countDown();
+							return;
+						}
+
+						pool.execute(new Runnable() {
+							@Override
+							public void run() {
+								try {
+									results[index] = parseFile(path, bytes);
+								} catch (Throwable e) {
+									error.compareAndSet(null, e);
+								} finally {
+									permits.release();
+									done.countDown();
+								}
+							}
+						});
+					}
+				});
+			}
+			done.await();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while reading the source files.");
+		} finally {
+			io.shutdown();
+		}
+
+		Throwable e = error.get();
+		if (e instanceof IOException) {
+			throw (IOException) e;
+		}
+		if (e instanceof RuntimeException) {
+			throw (RuntimeException) e;
+		}
+		if (e instanceof Error) {
+			throw (Error) e;
+		}
+		return results;
+	}
+
+	/**
+	 * Extracts the class information from a Java source file. This method
+	 * does not touch the XML document, so it can be called from multiple
+	 * threads at once.
+	 * @param file the Java source file
+	 * @return the class information or null if there is no public class in the
+	 * file
+	 * @throws IOException if there's a problem reading the file
+	 */
+	JavaClass parseFile(File file) throws IOException {
+		return parseFile(file.toPath());
+	}
+
+	/**
+	 * Extracts the class information from a Java source file. This method
+	 * does not touch the XML document, so it can be called from multiple
+	 * threads at once.
+	 * @param path the Java source file (it can also be an entry in a zip file
+	 * system)
+	 * @return the class information or null if there is no public class in the
+	 * file
+	 * @throws IOException if there's a problem reading the file
+	 */
+	JavaClass parseFile(Path path) throws IOException {
+		return parseFile(path, (ByteBuffer) null);
+	}
+
+	/**
+	 * Reads the contents of a Java source file into a new buffer, so that it
+	 * can be parsed on another thread with {@link #parseFile(Path,
+	 * ByteBuffer)}. This method can be called from multiple threads at once.
+	 * @param path the Java source file
+	 * @return the contents of the file
+	 * @throws IOException if there's a problem reading the file
+	 */
+	ByteBuffer readFile(Path path) throws IOException {
+		return ((instrumentedReader == null) ? sourceFileReader : instrumentedReader).readNewBytes(path);
+	}
+
+	/**
+	 * Extracts the class information from a Java source file whose bytes may
+	 * already have been read. This method does not touch the XML document, so
+	 * it can be called from multiple threads at once.
+	 * @param path the Java source file
+	 * @param prefetched the contents of the file or null to read it
+	 * @return the class information or null if there is no public class in the
+	 * file
+	 * @throws IOException if there's a problem reading the file
+	 */
+	JavaClass parseFile(Path path, ByteBuffer prefetched) throws IOException {
+		if (instrumentedReader == null) {
+			return parseFile(path, (prefetched == null) ? sourceFileReader : new PrefetchedSourceFileReader(sourceFileReader, path, prefetched));
+		}
+
+		//the reader records the time spent reading, everything else is counted as parsing
+		long start = System.nanoTime();
+		long readBefore = instrumentedReader.getThreadReadNanos();
+		FlightRecorderEvents.ParseFileEvent event = (events == null) ? null : events.beginParseFile();
+		JavaClass javaClass = parseFile(path, (prefetched == null) ? instrumentedReader : new PrefetchedSourceFileReader(instrumentedReader, path, prefetched));
+		if (event != null) {
+			event.end(path, javaClass);
+		}
+		if (stats != null) {
+			long read = instrumentedReader.getThreadReadNanos() - readBefore;
+			stats.addTime(GenerationStats.Phase.PARSE, System.nanoTime() - start - read);
+			stats.addFile();
+		}
+		return javaClass;
+	}
+
+	private JavaClass parseFile(Path path, SourceFileReader sourceFileReader) throws IOException {
+		JavaClass javaClass;
+		if (path.getFileName().toString().endsWith(".class")) {
+			if (parseCache != null) {
+				javaClass = parseCache.parse(path, sourceFileReader, classFileParser);
+			} else {
+				javaClass = classFileParser.parse(sourceFileReader.readBytes(path));
+			}
+		} else if (parseCache != null) {
+			javaClass = parseCache.parse(path, sourceFileReader, parser);
+		} else {
+			javaClass = parser.parse(sourceFileReader.read(path));
+		}
+
+		if (typeIndex != null && javaClass != null) {
+			typeIndex.add(javaClass);
+		}
+		return javaClass;
+	}
+
+	private static List<Path> toPaths(List<File> files) {
+		List<Path> paths = new ArrayList<Path>(files.size());
+		for (File file : files) {
+			paths.add(file.toPath());
+		}
+		return paths;
+	}
+
+	/**
+	 * Gets the entire contents of a text file.
+	 * @param reader the input stream to the file
+	 * @return the entire context of the file
+	 * @throws IOException if there's a problem reading the file
+	 */
+	private String getFileContents(Reader reader) throws IOException {
+		BufferedReader in = null;
+		try {
+			in = new BufferedReader(reader);
+			StringBuilder sb = new StringBuilder();
+			char buffer[] = new char[1024];
+			int len;
+			while ((len = in.read(buffer)) != -1) {
+				sb.append(buffer, 0, len);
+			}
+			return sb.toString();
+		} finally {
+			if (in != null) in.close();
+		}
+	}
+
+	/**
+	 * Creates the &lt;bean /&gt; element.
+	 * @param javaClass the class information
+	 * @return the &lt;bean /&gt; element
+	 */
+	private Element buildBeanElement(JavaClass javaClass) {
+		String className = javaClass.className;
+		String packageName = javaClass.packageName;
+
+		//create <bean /> element
+		Document document = document();
+		Element beanElement = document.createElement("bean");
+		String id = (typeIndex == null) ? className.substring(0, 1).toLowerCase() + className.substring(1) : typeIndex.getBeanId(javaClass);
+		beanElement.setAttribute("id", id);
+		String classAttr = (packageName == null) ? className : packageName + "." + className;
+		beanElement.setAttribute("class", classAttr);
+
+		//create <constructor-arg /> elements
+		List<List<String>> constructors = javaClass.constructors;
+		if (constructors.size() == 1 && !constructors.get(0).isEmpty()) {
+			//if there is only one constructor and that constructor is not a default constructor, then generate the <constructor-arg /> elements
+			int index = 0;
+			for (String type : constructors.get(0)) {
+				Element constructorArgElement = document.createElement("constructor-arg");
+
+				if (isValueType(type)) {
+					if (wrappers.contains(type)) {
+						type = "java.lang." + type;
+					}
+					constructorArgElement.setAttribute("type", type);
+					constructorArgElement.setAttribute("value", "");
+				} else if (type.endsWith("[]") || type.endsWith("...")) {
+					//arrays and varargs (the regex parser keeps the "...")
+					constructorArgElement.appendChild(document.createElement("list"));
+				} else {
+					constructorArgElement.setAttribute("ref", refId(type, javaClass, id, "constructor-arg " + index));
+				}
+
+				constructorArgElement.setAttribute("index", index + "");
+				index++;
+
+				beanElement.appendChild(constructorArgElement);
+			}
+		}
+
+		//add all properties as <property /> elements
+		for (ClassProperty p : javaClass.properties) {
+			Element propertyElement = document.createElement("property");
+			propertyElement.setAttribute("name", p.name);
+			if (isValueType(p.type)) {
+				propertyElement.setAttribute("value", p.value);
+			} else if ("List".equals(p.type) || "java.util.List".equals(p.type) || p.type.endsWith("[]")) {
+				Element listElement = document.createElement("list");
+				propertyElement.appendChild(listElement);
+			} else if ("Set".equals(p.type) || "java.util.Set".equals(p.type)) {
+				Element listElement = document.createElement("set");
+				propertyElement.appendChild(listElement);
+			} else if ("Map".equals(p.type) || "java.util.Map".equals(p.type)) {
+				Element listElement = document.createElement("map");
+				propertyElement.appendChild(listElement);
+			} else if ("Properties".equals(p.type) || "java.util.Properties".equals(p.type)) {
+				Element listElement = document.createElement("props");
+				propertyElement.appendChild(listElement);
+			} else {
+				propertyElement.setAttribute("ref", refId(p.type, javaClass, id, "property \"" + p.name + "\""));
+			}
+			beanElement.appendChild(propertyElement);
+		}
+
+		return beanElement;
+	}
+
+	/**
+	 * Determines whether a type is a primitive type or a wrapper class (these
+	 * are given values instead of references to other beans).
+	 * @param type the type (it may be fully qualified, as in
+	 * "java.lang.Integer")
+	 * @return true if it's a primitive type or a wrapper class, false if not
+	 */
+	private static boolean isValueType(String type) {
+		if (primatives.contains(type) || wrappers.contains(type)) {
+			return true;
+		}
+		return type.startsWith("java.lang.") && wrappers.contains(type.substring("java.lang.".length()));
+	}
+
+	/**
+	 * Determines the ID of the bean that a property or constructor argument
+	 * refers to, using the type index if there is one.
+	 * @param type the type of the property or constructor argument
+	 * @param from the class that contains the property or constructor
+	 * @param id the ID of the class' bean
+	 * @param name describes the property or constructor argument (for the
+	 * list of unresolved references)
+	 * @return the bean ID
+	 */
+	private String refId(String type, JavaClass from, String id, String name) {
+		if (typeIndex == null) {
+			return beanId(type);
+		}
+
+		String qualifiedName = typeIndex.resolve(type, from);
+		if (qualifiedName == null) {
+			typeIndex.addUnresolved(id, name, type);
+			return beanId(type);
+		}
+		return typeIndex.getBeanId(qualifiedName);
+	}
+
+	/**
+	 * Determines the ID of the bean that a property or constructor argument of
+	 * the given type refers to.
+	 * @param type the type (it may be fully qualified, as in
+	 * "com.example.FooDao")
+	 * @return the bean ID (example: "fooDao")
+	 */
+	private static String beanId(String type) {
+		String simpleName = type.substring(type.lastIndexOf('.') + 1);
+		if (simpleName.isEmpty() || !Character.isJavaIdentifierStart(simpleName.charAt(0))) {
+			//not a class name (for example, the regex parser returns varargs types as "int...")
+			return type;
+		}
+		return simpleName.substring(0, 1).toLowerCase() + simpleName.substring(1);
+	}
+
+	/**
+	 * Holds the factory that creates the XML documents. Looking up the factory
+	 * implementation searches the classpath, so it is only done once, the
+	 * first time a document is created (the factory is not thread-safe, so
+	 * access to it is synchronized).
+	 * @author mangst
+	 */
+	private static class DocumentBuilderFactoryHolder {
+		private static final DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+	}
+
+	/**
+	 * Records how long it takes to read and decode files and how many bytes
+	 * are read.
+	 * @author mangst
+	 */
+	private static class InstrumentedSourceFileReader extends SourceFileReader {
+		private final SourceFileReader reader;
+		private final GenerationStats stats;
+		private final FlightRecorderEvents events;
+
+		/**
+		 * The total time the current thread has spent reading (used to
+		 * subtract the reading time from the parsing time).
+		 */
+		private final ThreadLocal<long[]> threadReadNanos = new ThreadLocal<long[]>() {
+			@Override
+			protected long[] initialValue() {
+				return new long[1];
+			}
+		};
+
+		/**
+		 * @param reader the reader to delegate to
+		 * @param stats the statistics to record the times in or null
+		 * @param events the Flight Recorder event factory or null
+		 */
+		public InstrumentedSourceFileReader(SourceFileReader reader, GenerationStats stats, FlightRecorderEvents events) {
+			super(reader.getCharset());
+			this.reader = reader;
+			this.stats = stats;
+			this.events = events;
+		}
+
+		@Override
+		public ByteBuffer readBytes(Path path) throws IOException {
+			return readBytes(path, false);
+		}
+
+		@Override
+		public ByteBuffer readNewBytes(Path path) throws IOException {
+			return readBytes(path, true);
+		}
+
+		private ByteBuffer readBytes(Path path, boolean newBuffer) throws IOException {
+			long start = System.nanoTime();
+			FlightRecorderEvents.ReadFileEvent event = (events == null) ? null : events.beginReadFile();
+			ByteBuffer bytes = newBuffer ? reader.readNewBytes(path) : reader.readBytes(path);
+			if (event != null) {
+				event.end(path, bytes.remaining());
+			}
+			record(System.nanoTime() - start);
+			if (stats != null) {
+				stats.addBytes(bytes.remaining());
+			}
+			return bytes;
+		}
+
+		@Override
+		public CharBuffer decode(ByteBuffer bytes) throws IOException {
+			long start = System.nanoTime();
+			CharBuffer chars = reader.decode(bytes);
+			record(System.nanoTime() - start);
+			return chars;
+		}
+
+		/**
+		 * Gets the total time the current thread has spent reading.
+		 * @return the time in nanoseconds
+		 */
+		public long getThreadReadNanos() {
+			return threadReadNanos.get()[0];
+		}
+
+		private void record(long nanos) {
+			threadReadNanos.get()[0] += nanos;
+			if (stats != null) {
+				stats.addTime(GenerationStats.Phase.READ, nanos);
+			}
+		}
+	}
+
+	/**
+	 * Returns the bytes of a file that has already been read instead of
+	 * reading it again.
+	 * @author mangst
+	 */
+	private static class PrefetchedSourceFileReader extends SourceFileReader {
+		private final SourceFileReader reader;
+		private final Path path;
+		private final ByteBuffer bytes;
+
+		/**
+		 * @param reader the reader to delegate to
+		 * @param path the file that has already been read
+		 * @param bytes the contents of the file
+		 */
+		public PrefetchedSourceFileReader(SourceFileReader reader, Path path, ByteBuffer bytes) {
+			super(reader.getCharset());
+			this.reader = reader;
+			this.path = path;
+			this.bytes = bytes;
+		}
+
+		@Override
+		public ByteBuffer readBytes(Path path) throws IOException {
+			return path.equals(this.path) ? bytes.duplicate() : reader.readBytes(path);
+		}
+
+		@Override
+		public ByteBuffer readNewBytes(Path path) throws IOException {
+			return path.equals(this.path) ? bytes.duplicate() : reader.readNewBytes(path);
+		}
+
+		@Override
+		public CharBuffer decode(ByteBuffer bytes) throws IOException {
+			return reader.decode(bytes);
+		}
+	}
+
+	/**
+	 * Reads and parses a slice of a list of Java source files, splitting the
+	 * slice in half until it is small enough to process directly.
+	 * @author mangst
+	 */
+	private class ParseTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		/**
+		 * If a slice contains this many files or fewer, it is not split any
+		 * further.
+		 */
+		private static final int THRESHOLD = 16;
+
+		private final List<Path> files;
+		private final JavaClass[] results;
+		private final int from, to;
+
+		/**
+		 * @param files the Java source files
+		 * @param results the array to store the parsed classes in (each
+		 * class is stored at the same index as its file, so the order of the
+		 * files is preserved)
+		 * @param from the index of the first file in the slice (inclusive)
+		 * @param to the index of the last file in the slice (exclusive)
+		 */
+		public ParseTask(List<Path> files, JavaClass[] results, int from, int to) {
+			this.files = files;
+			this.results = results;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from <= THRESHOLD) {
+				for (int i = from; i < to; i++) {
+					try {
+						results[i] = parseFile(files.get(i));
+					} catch (IOException e) {
+						throw new UncheckedIOException(e);
+					}
+				}
+				return;
+			}
+
+			int middle = (from + to) >>> 1;
+			invokeAll(new ParseTask(files, results, from, middle), new ParseTask(files, results, middle, to));
+		}
+	}
+}
@@ -0,0 +1,284 @@
+package com.mangst.appcontext;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.ProcessingEnvironment;
+import javax.annotation.processing.RoundEnvironment;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.NestingKind;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.Types;
+import javax.tools.Diagnostic;
+import javax.tools.FileObject;
+import javax.tools.StandardLocation;
+
+/**
+ * Generates the application context while the classes are being compiled,
+ * using the compiler's model of each class instead of reading the source
+ * files again. The XML is written to the class output directory through the
+ * {@link javax.annotation.processing.Filer}, so it ends up next to the
+ * compiled classes.
+ * <p>
+ * The processor is only registered in the JAR with the "processor"
+ * classifier. With the main JAR, it must be named with "-processor". Only the
+ * classes that are being compiled are seen, so an incremental compile writes
+ * a context that contains just the recompiled classes.
+ * </p>
+ * <p>
+ * The processor is configured with these options ("-Aname=value"):
+ * </p>
+ * <ul>
+ * <li><b>appcontext.packages</b> (required): A comma-separated list of the
+ * packages to include. If this option is not given, the processor does
+ * nothing.</li>
+ * <li><b>appcontext.recurse</b>: "true" to include sub-packages (defaults to
+ * "false").</li>
+ * <li><b>appcontext.excludePackages</b>: A comma-separated list of packages
+ * to skip (along with their sub-packages).</li>
+ * <li><b>appcontext.springVersion</b>: The Spring version (defaults to
+ * "2.5").</li>
+ * <li><b>appcontext.output</b>: The path of the XML file, relative to the
+ * class output directory (defaults to "applicationContext.xml").</li>
+ * </ul>
+ * <p>
+ * Types are fully qualified and type arguments are erased (for example,
+ * "java.util.List"), as with {@link ClassFileParser}. Field values are not
+ * available from the compiler's model, so properties that come from fields
+ * are given empty values.
+ * </p>
+ * @author mangst
+ */
+public class ApplicationContextProcessor extends AbstractProcessor {
+	/**
+	 * The option that lists the packages to include.
+	 */
+	public static final String PACKAGES_OPTION = "appcontext.packages";
+
+	/**
+	 * The option that determines whether sub-packages are included.
+	 */
+	public static final String RECURSE_OPTION = "appcontext.recurse";
+
+	/**
+	 * The option that lists the packages to skip.
+	 */
+	public static final String EXCLUDE_PACKAGES_OPTION = "appcontext.excludePackages";
+
+	/**
+	 * The option that sets the Spring version.
+	 */
+	public static final String SPRING_VERSION_OPTION = "appcontext.springVersion";
+
+	/**
+	 * The option that sets the path of the XML file.
+	 */
+	public static final String OUTPUT_OPTION = "appcontext.output";
+
+	private PackageSelection selection;
+	private Types types;
+
+	/**
+	 * The classes that were found in all rounds so far (the XML is written
+	 * in the last round).
+	 */
+	private final List<JavaClass> classes = new ArrayList<JavaClass>();
+
+	@Override
+	public Set<String> getSupportedAnnotationTypes() {
+		//every class is looked at, not just annotated ones
+		return Collections.singleton("*");
+	}
+
+	@Override
+	public Set<String> getSupportedOptions() {
+		return new HashSet<String>(Arrays.asList(PACKAGES_OPTION, RECURSE_OPTION, EXCLUDE_PACKAGES_OPTION, SPRING_VERSION_OPTION, OUTPUT_OPTION));
+	}
+
+	@Override
+	public SourceVersion getSupportedSourceVersion() {
+		return SourceVersion.latestSupported();
+	}
+
+	@Override
+	public synchronized void init(ProcessingEnvironment processingEnv) {
+		super.init(processingEnv);
+		types = processingEnv.getTypeUtils();
+
+		String packages = processingEnv.getOptions().get(PACKAGES_OPTION);
+		if (packages == null) {
+			return;
+		}
+
+		boolean recurse = Boolean.parseBoolean(processingEnv.getOptions().get(RECURSE_OPTION));
+		selection = new PackageSelection();
+		for (String packageStr : packages.split(",", -1)) {
+			selection.include(packageStr.trim(), recurse);
+		}
+		String excludePackages = processingEnv.getOptions().get(EXCLUDE_PACKAGES_OPTION);
+		if (excludePackages != null) {
+			for (String packageStr : excludePackages.split(",")) {
+				selection.exclude(packageStr.trim());
+			}
+		}
+	}
+
+	@Override
+	public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+		if (selection == null) {
+			return false;
+		}
+
+		if (!roundEnv.processingOver()) {
+			for (Element element : roundEnv.getRootElements()) {
+				if (element.getKind() == ElementKind.CLASS) {
+					JavaClass javaClass = toJavaClass((TypeElement) element);
+					if (javaClass != null) {
+						classes.add(javaClass);
+					}
+				}
+			}
+			return false;
+		}
+
+		try {
+			write();
+		} catch (IOException e) {
+			processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, "Could not write the application context: " + e.getMessage());
+		}
+		return false;
+	}
+
+	/**
+	 * Extracts the class information from a class.
+	 * @param type the class
+	 * @return the class information or null if the class is not public, is
+	 * abstract, is nested, or is not in one of the selected packages
+	 */
+	private JavaClass toJavaClass(TypeElement type) {
+		Set<Modifier> modifiers = type.getModifiers();
+		if (!modifiers.contains(Modifier.PUBLIC) || modifiers.contains(Modifier.ABSTRACT) || type.getNestingKind() != NestingKind.TOP_LEVEL) {
+			return null;
+		}
+
+		PackageElement packageElement = processingEnv.getElementUtils().getPackageOf(type);
+		String packageName = packageElement.isUnnamed() ? "" : packageElement.getQualifiedName().toString();
+		if (!selection.contains(packageName)) {
+			return null;
+		}
+
+		JavaClass javaClass = new JavaClass();
+		javaClass.packageName = packageName.isEmpty() ? null : packageName;
+		javaClass.className = type.getSimpleName().toString();
+
+		for (Element member : type.getEnclosedElements()) {
+			Set<Modifier> memberModifiers = member.getModifiers();
+			if (!memberModifiers.contains(Modifier.PUBLIC) || memberModifiers.contains(Modifier.STATIC)) {
+				continue;
+			}
+
+			switch (member.getKind()) {
+			case FIELD:
+				if (memberModifiers.contains(Modifier.FINAL)) {
+					break;
+				}
+				ClassProperty field = new ClassProperty();
+				field.name = member.getSimpleName().toString();
+				field.type = typeName(member.asType());
+				field.value = "";
+				javaClass.properties.add(field);
+				break;
+			case METHOD:
+				ExecutableElement method = (ExecutableElement) member;
+				String name = method.getSimpleName().toString();
+				List<? extends VariableElement> parameters = method.getParameters();
+				if (name.length() > 3 && name.startsWith("set") && parameters.size() == 1) {
+					ClassProperty setter = new ClassProperty();
+					setter.name = name.substring(3, 4).toLowerCase() + name.substring(4); //the first letter will be upper-cased, ("setFoo"), so lower-case it
+					setter.type = typeName(parameters.get(0).asType());
+					setter.value = "";
+					javaClass.properties.add(setter);
+				}
+				break;
+			case CONSTRUCTOR:
+				List<String> constructor = new ArrayList<String>();
+				for (VariableElement parameter : ((ExecutableElement) member).getParameters()) {
+					constructor.add(typeName(parameter.asType()));
+				}
+				javaClass.constructors.add(constructor);
+				break;
+			default:
+				break;
+			}
+		}
+
+		return javaClass;
+	}
+
+	/**
+	 * Gets the name of a type, with its type arguments removed.
+	 * @param type the type
+	 * @return the name (example: "java.util.List" or "int[]")
+	 */
+	private String typeName(TypeMirror type) {
+		return types.erasure(type).toString();
+	}
+
+	/**
+	 * Writes the application context XML file.
+	 * @throws IOException if there's a problem writing the file
+	 */
+	private void write() throws IOException {
+		//sort the classes the same way the source walker orders the files
+		Collections.sort(classes, new Comparator<JavaClass>() {
+			@Override
+			public int compare(JavaClass a, JavaClass b) {
+				String aPackage = (a.packageName == null) ? "" : a.packageName;
+				String bPackage = (b.packageName == null) ? "" : b.packageName;
+				int c = aPackage.compareTo(bPackage);
+				return (c == 0) ? a.className.compareTo(b.className) : c;
+			}
+		});
+
+		String springVersion = processingEnv.getOptions().get(SPRING_VERSION_OPTION);
+		if (springVersion == null) {
+			springVersion = "2.5";
+		}
+		String output = processingEnv.getOptions().get(OUTPUT_OPTION);
+		if (output == null) {
+			output = "applicationContext.xml";
+		}
+
+		FileObject file = processingEnv.getFiler().createResource(StandardLocation.CLASS_OUTPUT, "", output);
+		OutputStream out = file.openOutputStream();
+		XmlContextWriter writer = new XmlContextWriter(out, springVersion);
+		try {
+			ApplicationContextGenerator generator = new ApplicationContextGenerator(springVersion, writer);
+			for (JavaClass javaClass : classes) {
+				generator.addBean(javaClass);
+			}
+		} finally {
+			try {
+				writer.close();
+			} finally {
+				out.close();
+			}
+		}
+		processingEnv.getMessager().printMessage(Diagnostic.Kind.NOTE, "Wrote " + classes.size() + " bean(s) to " + file.toUri() + ".");
+	}
+}
@@ -0,0 +1,329 @@
+package com.mangst.appcontext;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Extracts class information from a compiled class file. Only the parts of
+ * the class file that are needed are read: the constant pool, the access
+ * flags and name of the class, and the field and method tables. Types are
+ * fully qualified (for example, "java.util.List" or "com.example.Foo[]").
+ * <p>
+ * Unlike the source parsers, this parser cannot tell what values fields are
+ * initialized to, since those assignments are compiled into the
+ * constructors.
+ * </p>
+ * @author mangst
+ */
+public class ClassFileParser {
+	private static final int MAGIC = 0xCAFEBABE;
+
+	private static final int ACC_PUBLIC = 0x0001;
+	private static final int ACC_STATIC = 0x0008;
+	private static final int ACC_FINAL = 0x0010;
+	private static final int ACC_BRIDGE = 0x0040;
+	private static final int ACC_INTERFACE = 0x0200;
+	private static final int ACC_ABSTRACT = 0x0400;
+	private static final int ACC_SYNTHETIC = 0x1000;
+	private static final int ACC_ANNOTATION = 0x2000;
+	private static final int ACC_ENUM = 0x4000;
+	private static final int ACC_MODULE = 0x8000;
+
+	/**
+	 * The superclass of every record class.
+	 */
+	private static final String RECORD = "java/lang/Record";
+
+	private static final int CONSTANT_UTF8 = 1;
+	private static final int CONSTANT_INTEGER = 3;
+	private static final int CONSTANT_FLOAT = 4;
+	private static final int CONSTANT_LONG = 5;
+	private static final int CONSTANT_DOUBLE = 6;
+	private static final int CONSTANT_CLASS = 7;
+	private static final int CONSTANT_STRING = 8;
+	private static final int CONSTANT_FIELDREF = 9;
+	private static final int CONSTANT_METHODREF = 10;
+	private static final int CONSTANT_INTERFACE_METHODREF = 11;
+	private static final int CONSTANT_NAME_AND_TYPE = 12;
+	private static final int CONSTANT_METHOD_HANDLE = 15;
+	private static final int CONSTANT_METHOD_TYPE = 16;
+	private static final int CONSTANT_DYNAMIC = 17;
+	private static final int CONSTANT_INVOKE_DYNAMIC = 18;
+	private static final int CONSTANT_MODULE = 19;
+	private static final int CONSTANT_PACKAGE = 20;
+
+	/**
+	 * Extracts the class information from a class file.
+	 * @param classFile the contents of the class file (the buffer's position
+	 * is not changed)
+	 * @return the class information or null if the class file doesn't contain
+	 * a public, non-abstract, top-level class (records are skipped, as they are
+	 * by the source parsers)
+	 * @throws IOException if the class file is malformed
+	 */
+	public JavaClass parse(ByteBuffer classFile) throws IOException {
+		ByteBuffer in = classFile.duplicate();
+		try {
+			return parseClass(in);
+		} catch (BufferUnderflowException e) {
+			throw new IOException("Class file is truncated.", e);
+		} catch (IndexOutOfBoundsException e) {
+			throw new IOException("Class file is malformed.", e);
+		} catch (IllegalArgumentException e) {
+			throw new IOException("Class file is malformed.", e);
+		}
+	}
+
+	private JavaClass parseClass(ByteBuffer in) throws IOException {
+		if (in.getInt() != MAGIC) {
+			throw new IOException("Not a class file.");
+		}
+		in.getShort(); //minor version
+		in.getShort(); //major version
+
+		//record where each UTF-8 constant is, so that only the ones that are used are decoded
+		int constantPoolCount = in.getShort() & 0xFFFF;
+		int[] offsets = new int[constantPoolCount];
+		for (int i = 1; i < constantPoolCount; i++) {
+			int tag = in.get() & 0xFF;
+			offsets[i] = in.position();
+			switch (tag) {
+			case CONSTANT_UTF8:
+				int length = in.getShort() & 0xFFFF;
+				in.position(in.position() + length);
+				break;
+			case CONSTANT_CLASS:
+			case CONSTANT_STRING:
+			case CONSTANT_METHOD_TYPE:
+			case CONSTANT_MODULE:
+			case CONSTANT_PACKAGE:
+				in.position(in.position() + 2);
+				break;
+			case CONSTANT_METHOD_HANDLE:
+				in.position(in.position() + 3);
+				break;
+			case CONSTANT_INTEGER:
+			case CONSTANT_FLOAT:
+			case CONSTANT_FIELDREF:
+			case CONSTANT_METHODREF:
+			case CONSTANT_INTERFACE_METHODREF:
+			case CONSTANT_NAME_AND_TYPE:
+			case CONSTANT_DYNAMIC:
+			case CONSTANT_INVOKE_DYNAMIC:
+				in.position(in.position() + 4);
+				break;
+			case CONSTANT_LONG:
+			case CONSTANT_DOUBLE:
+				//takes up two entries
+				in.position(in.position() + 8);
+				i++;
+				break;
+			default:
+				throw new IOException("Unknown constant pool tag " + tag + ".");
+			}
+		}
+
+		int access = in.getShort() & 0xFFFF;
+		if ((access & ACC_PUBLIC) == 0 || (access & (ACC_INTERFACE | ACC_ABSTRACT | ACC_SYNTHETIC | ACC_ANNOTATION | ACC_ENUM | ACC_MODULE)) != 0) {
+			return null;
+		}
+
+		int thisClass = in.getShort() & 0xFFFF;
+		String internalName = utf8(in, offsets, in.getShort(offsets[thisClass]) & 0xFFFF);
+		int slash = internalName.lastIndexOf('/');
+
+		JavaClass javaClass = new JavaClass();
+		javaClass.packageName = (slash < 0) ? null : internalName.substring(0, slash).replace('/', '.');
+		javaClass.className = internalName.substring(slash + 1);
+
+		int superClass = in.getShort() & 0xFFFF;
+		if (superClass != 0 && RECORD.equals(utf8(in, offsets, in.getShort(offsets[superClass]) & 0xFFFF))) {
+			return null;
+		}
+		int interfaces = in.getShort() & 0xFFFF;
+		in.position(in.position() + interfaces * 2);
+
+		//fields
+		int fields = in.getShort() & 0xFFFF;
+		for (int i = 0; i < fields; i++) {
+			int fieldAccess = in.getShort() & 0xFFFF;
+			int nameIndex = in.getShort() & 0xFFFF;
+			int descriptorIndex = in.getShort() & 0xFFFF;
+			skipAttributes(in);
+
+			if ((fieldAccess & ACC_PUBLIC) == 0 || (fieldAccess & (ACC_STATIC | ACC_FINAL | ACC_SYNTHETIC)) != 0) {
+				continue;
+			}
+
+			String descriptor = utf8(in, offsets, descriptorIndex);
+			ClassProperty p = new ClassProperty();
+			p.name = utf8(in, offsets, nameIndex);
+			p.type = parseType(descriptor, new int[] { 0 });
+			p.value = "";
+			javaClass.properties.add(p);
+		}
+
+		//methods
+		int methods = in.getShort() & 0xFFFF;
+		for (int i = 0; i < methods; i++) {
+			int methodAccess = in.getShort() & 0xFFFF;
+			int nameIndex = in.getShort() & 0xFFFF;
+			int descriptorIndex = in.getShort() & 0xFFFF;
+			skipAttributes(in);
+
+			if ((methodAccess & ACC_PUBLIC) == 0 || (methodAccess & (ACC_STATIC | ACC_SYNTHETIC | ACC_BRIDGE)) != 0) {
+				continue;
+			}
+
+			String name = utf8(in, offsets, nameIndex);
+			boolean constructor = name.equals("<init>");
+			boolean setter = name.length() > 3 && name.startsWith("set");
+			if (!constructor && !setter) {
+				continue;
+			}
+
+			List<String> parameters = parseParameters(utf8(in, offsets, descriptorIndex));
+			if (constructor) {
+				javaClass.constructors.add(parameters);
+			} else if (parameters.size() == 1) {
+				ClassProperty p = new ClassProperty();
+				p.name = name.substring(3, 4).toLowerCase() + name.substring(4); //the first letter will be upper-cased, ("setFoo"), so lower-case it
+				p.type = parameters.get(0);
+				p.value = "";
+				javaClass.properties.add(p);
+			}
+		}
+
+		//a nested class lists itself in its InnerClasses attribute (a "$" in the name doesn't mean anything, since it's a legal character in a class name)
+		int attributes = in.getShort() & 0xFFFF;
+		for (int i = 0; i < attributes; i++) {
+			String name = utf8(in, offsets, in.getShort() & 0xFFFF);
+			int length = in.getInt();
+			int end = in.position() + length;
+			if (name.equals("InnerClasses")) {
+				int classes = in.getShort() & 0xFFFF;
+				for (int j = 0; j < classes; j++) {
+					int innerClass = in.getShort() & 0xFFFF;
+					in.position(in.position() + 6); //outer class, inner name, and access flags
+					if (innerClass == thisClass) {
+						return null;
+					}
+				}
+			}
+			in.position(end);
+		}
+
+		return javaClass;
+	}
+
+	private static void skipAttributes(ByteBuffer in) {
+		int attributes = in.getShort() & 0xFFFF;
+		for (int i = 0; i < attributes; i++) {
+			in.getShort(); //name
+			int length = in.getInt();
+			in.position(in.position() + length);
+		}
+	}
+
+	/**
+	 * Parses the parameter types of a method descriptor.
+	 * @param descriptor the method descriptor (example:
+	 * "(ILjava/lang/String;)V")
+	 * @return the parameter types (example: "int", "java.lang.String")
+	 */
+	private static List<String> parseParameters(String descriptor) {
+		List<String> parameters = new ArrayList<String>();
+		int[] pos = { 1 };
+		while (descriptor.charAt(pos[0]) != ')') {
+			parameters.add(parseType(descriptor, pos));
+		}
+		return parameters;
+	}
+
+	/**
+	 * Parses a type in a field or method descriptor.
+	 * @param descriptor the descriptor
+	 * @param pos the position of the type in the descriptor (this is advanced
+	 * past the type)
+	 * @return the type (example: "int[]" or "java.util.Map.Entry")
+	 */
+	private static String parseType(String descriptor, int[] pos) {
+		int dimensions = 0;
+		while (descriptor.charAt(pos[0]) == '[') {
+			dimensions++;
+			pos[0]++;
+		}
+
+		String type;
+		char c = descriptor.charAt(pos[0]++);
+		switch (c) {
+		case 'B':
+			type = "byte";
+			break;
+		case 'C':
+			type = "char";
+			break;
+		case 'D':
+			type = "double";
+			break;
+		case 'F':
+			type = "float";
+			break;
+		case 'I':
+			type = "int";
+			break;
+		case 'J':
+			type = "long";
+			break;
+		case 'S':
+			type = "short";
+			break;
+		case 'Z':
+			type = "boolean";
+			break;
+		case 'L':
+			int end = descriptor.indexOf(';', pos[0]);
+			type = descriptor.substring(pos[0], end).replace('/', '.').replace('$', '.');
+			pos[0] = end + 1;
+			break;
+		default:
+			throw new IllegalArgumentException("Invalid descriptor: " + descriptor);
+		}
+
+		for (int i = 0; i < dimensions; i++) {
+			type += "[]";
+		}
+		return type;
+	}
+
+	/**
+	 * Decodes a UTF-8 constant (class files use a modified form of UTF-8).
+	 * @param in the class file
+	 * @param offsets the position of each constant in the class file
+	 * @param index the index of the constant
+	 * @return the string
+	 */
+	private static String utf8(ByteBuffer in, int[] offsets, int index) {
+		int pos = offsets[index];
+		int length = in.getShort(pos) & 0xFFFF;
+		pos += 2;
+		int end = pos + length;
+
+		char[] chars = new char[length];
+		int count = 0;
+		while (pos < end) {
+			int b = in.get(pos++) & 0xFF;
+			if (b < 0x80) {
+				chars[count++] = (char) b;
+			} else if ((b & 0xE0) == 0xC0) {
+				chars[count++] = (char) (((b & 0x1F) << 6) | (in.get(pos++) & 0x3F));
+			} else {
+				chars[count++] = (char) (((b & 0x0F) << 12) | ((in.get(pos++) & 0x3F) << 6) | (in.get(pos++) & 0x3F));
+			}
+		}
+		return new String(chars, 0, count);
+	}
+}
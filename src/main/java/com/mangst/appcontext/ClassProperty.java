@@ -0,0 +1,50 @@
+package com.mangst.appcontext;
+
+/**
+ * A property of a Java class (a public field or a public setter method).
+ * @author mangst
+ */
+public class ClassProperty {
+	/**
+	 * The name of the property.
+	 */
+	public String name;
+
+	/**
+	 * The property's type, as it appears in the source code (example:
+	 * "String", "java.util.List").
+	 */
+	public String type;
+
+	/**
+	 * The property's initial value or empty string if it has none.
+	 */
+	public String value;
+
+	/**
+	 * Converts the initial value of a public field, as it appears in the
+	 * source code, to a property value.
+	 * @param expression the expression that the field is initialized to or
+	 * null if it is not initialized
+	 * @return the property value (example: "foo" is returned for "\"foo\"",
+	 * "56" is returned for "56L")
+	 */
+	static String parseValue(String expression) {
+		if (expression == null) {
+			return "";
+		}
+
+		String value = expression.trim();
+		if (value.startsWith("\"")) {
+			//remove the quotes that surround Strings
+			value = value.substring(1, value.length() - 1);
+		} else if (value.startsWith("'")) {
+			//remove the quotes that surround characters
+			value = value.substring(1, value.length() - 1);
+		} else if (value.endsWith("d") || value.endsWith("D") || value.endsWith("f") || value.endsWith("F") || value.endsWith("l") || value.endsWith("L")) {
+			//remove the "double", "float", or "long" letters if they are there
+			value = value.substring(0, value.length() - 1);
+		}
+		return value;
+	}
+}
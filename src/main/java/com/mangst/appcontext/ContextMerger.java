@@ -0,0 +1,588 @@
+package com.mangst.appcontext;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.XMLStreamWriter;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+
+/**
+ * Adds generated beans to an existing, hand-maintained application context
+ * XML file without touching anything that is already there. The existing
+ * file is streamed once with StAX (it is never loaded into a DOM). Each
+ * top-level &lt;bean /&gt; element is matched to a generated bean by its "id"
+ * attribute, or by its "class" attribute if the ID doesn't match. Generated
+ * properties that a matched bean doesn't have are added to the end of the
+ * bean, and generated beans that have no match are added to the end of the
+ * file. Every other character of the file is kept as-is, including comments,
+ * formatting, and the values of existing properties.
+ * @author mangst
+ */
+public class ContextMerger {
+	/**
+	 * Finds the character encoding in the XML declaration.
+	 */
+	private static final Pattern encodingRegex = Pattern.compile("^\\s*<\\?xml[^>]*?encoding\\s*=\\s*[\"']([\\w\\.\\-:]+)[\"']");
+
+	private final List<Element> beans = new ArrayList<Element>();
+	private final List<String> changes = new ArrayList<String>();
+	private int beansAdded, propertiesAdded;
+
+	/**
+	 * @param generated the generated application context (see
+	 * {@link ApplicationContextGenerator#getDocument})
+	 */
+	public ContextMerger(Document generated) {
+		for (Node node = generated.getDocumentElement().getFirstChild(); node != null; node = node.getNextSibling()) {
+			if (node instanceof Element && "bean".equals(node.getNodeName())) {
+				beans.add((Element) node);
+			}
+		}
+	}
+
+	/**
+	 * Merges the generated beans into an XML file.
+	 * @param file the existing XML file
+	 * @param write true to write the merged XML back to the file (if anything
+	 * was added), false to only determine what would be added
+	 * @return true if anything was (or would be) added, false if the file
+	 * already contains all of the generated beans and properties
+	 * @throws IOException if there's a problem reading or parsing the file or
+	 * writing the merged XML
+	 */
+	public boolean merge(File file, boolean write) throws IOException {
+		byte[] bytes = Files.readAllBytes(file.toPath());
+		Charset charset = encodingOf(bytes);
+		String merged = merge(new String(bytes, charset));
+		if (changes.isEmpty() || !write) {
+			return !changes.isEmpty();
+		}
+
+		//write to a temporary file first, so the file is never left half-written
+		File temp = File.createTempFile(file.getName(), ".tmp", file.getAbsoluteFile().getParentFile());
+		OutputStream out = new FileOutputStream(temp);
+		try {
+			out.write(merged.getBytes(charset));
+		} finally {
+			out.close();
+		}
+		Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		return true;
+	}
+
+	/**
+	 * Merges the generated beans into an XML document.
+	 * @param existing the existing XML document
+	 * @return the merged XML document (the same string if nothing was added)
+	 * @throws IOException if the existing document can't be parsed
+	 */
+	public String merge(String existing) throws IOException {
+		changes.clear();
+		beansAdded = propertiesAdded = 0;
+
+		//the reader doesn't accept a byte order mark in a string, so skip it
+		int base = existing.startsWith("\uFEFF") ? 1 : 0;
+		String newline = existing.contains("\r\n") ? "\r\n" : "\n";
+
+		Map<String, Element> byId = new LinkedHashMap<String, Element>();
+		Map<String, Element> byClass = new LinkedHashMap<String, Element>();
+		for (Element bean : beans) {
+			byId.put(bean.getAttribute("id"), bean);
+			byClass.put(bean.getAttribute("class"), bean);
+		}
+		Set<Element> matched = Collections.newSetFromMap(new IdentityHashMap<Element, Boolean>());
+
+		List<Edit> edits = new ArrayList<Edit>();
+		String beanIndent = null;
+		try {
+			XMLStreamReader reader;
+			synchronized (InputFactoryHolder.factory) {
+				reader = InputFactoryHolder.factory.createXMLStreamReader(new StringReader(existing.substring(base)));
+			}
+			try {
+				//the reader's locations are not exact, so the tags are found by walking over the text alongside the reader
+				TagCursor cursor = new TagCursor(existing, base);
+				int depth = 0;
+				boolean emptyElement = false;
+				ExistingBean root = null, current = null;
+				while (reader.hasNext()) {
+					int event = reader.next();
+					if (event == XMLStreamConstants.START_ELEMENT) {
+						depth++;
+						int start = cursor.nextTag(false);
+						int end = cursor.pos;
+						emptyElement = (existing.charAt(end - 2) == '/');
+						String name = reader.getLocalName();
+						if (depth == 1) {
+							root = new ExistingBean(null, qualifiedName(reader), end, emptyElement, nullToEmpty(lineIndent(existing, start)));
+						} else if (depth == 2 && "bean".equals(name)) {
+							String id = reader.getAttributeValue(null, "id");
+							String className = reader.getAttributeValue(null, "class");
+							Element generated = (id == null) ? null : byId.get(id);
+							if (generated == null || matched.contains(generated)) {
+								generated = (className == null) ? null : byClass.get(className);
+							}
+							if (generated != null && !matched.add(generated)) {
+								generated = null;
+							}
+
+							String indent = lineIndent(existing, start);
+							if (beanIndent == null) {
+								beanIndent = indent;
+							}
+							current = new ExistingBean(generated, qualifiedName(reader), end, emptyElement, indent);
+							current.label = (id == null) ? className : id;
+						} else if (depth == 2) {
+							current = null;
+						} else if (depth == 3 && current != null && current.generated != null) {
+							if (current.childIndent == null) {
+								current.childIndent = lineIndent(existing, start);
+							}
+							if ("property".equals(name)) {
+								current.propertyNames.add(reader.getAttributeValue(null, "name"));
+							}
+						}
+					} else if (event == XMLStreamConstants.END_ELEMENT) {
+						//an empty element's end event has no tag of its own
+						int endTagStart = emptyElement ? -1 : cursor.nextTag(true);
+						emptyElement = false;
+						if (depth == 2 && current != null) {
+							List<Element> missing = new ArrayList<Element>();
+							Node first = (current.generated == null) ? null : current.generated.getFirstChild();
+							for (Node node = first; node != null; node = node.getNextSibling()) {
+								if (node instanceof Element && "property".equals(node.getNodeName()) && !current.propertyNames.contains(((Element) node).getAttribute("name"))) {
+									missing.add((Element) node);
+									changes.add("Missing property \"" + ((Element) node).getAttribute("name") + "\" in bean \"" + current.label + "\".");
+								}
+							}
+							if (!missing.isEmpty()) {
+								String unit = indentUnit(current.indent, current.childIndent, beanIndent);
+								String childIndent = (current.childIndent == null) ? nullToEmpty(current.indent) + unit : current.childIndent;
+								edits.add(insertBeforeEnd(existing, current, endTagStart, fragment(missing, newline + childIndent, unit), newline));
+								propertiesAdded += missing.size();
+							}
+							current = null;
+						} else if (depth == 1) {
+							//add the beans that aren't in the file yet to the end of the root element
+							List<Element> missing = new ArrayList<Element>();
+							for (Element bean : beans) {
+								if (!matched.contains(bean)) {
+									missing.add(bean);
+									changes.add("Missing bean \"" + bean.getAttribute("id") + "\" (" + bean.getAttribute("class") + ").");
+								}
+							}
+							if (!missing.isEmpty()) {
+								String unit = indentUnit(root.indent, beanIndent, null);
+								String indent = (beanIndent == null) ? root.indent + unit : beanIndent;
+								edits.add(insertBeforeEnd(existing, root, endTagStart, fragment(missing, newline + indent, unit), newline));
+								beansAdded += missing.size();
+							}
+						}
+						depth--;
+					}
+				}
+			} finally {
+				reader.close();
+			}
+		} catch (XMLStreamException e) {
+			throw new IOException(e);
+		}
+
+		if (edits.isEmpty()) {
+			return existing;
+		}
+
+		//copy the existing document, applying the edits in order
+		StringBuilder sb = new StringBuilder(existing.length() + 1024);
+		int pos = 0;
+		for (Edit edit : edits) {
+			sb.append(existing, pos, edit.start);
+			sb.append(edit.text);
+			pos = edit.end;
+		}
+		sb.append(existing, pos, existing.length());
+		return sb.toString();
+	}
+
+	/**
+	 * Gets the changes that were found by the last merge.
+	 * @return a description of each bean and property that was (or would be)
+	 * added
+	 */
+	public List<String> getChanges() {
+		return changes;
+	}
+
+	/**
+	 * Gets the number of beans that were added by the last merge.
+	 * @return the number of beans
+	 */
+	public int getBeansAdded() {
+		return beansAdded;
+	}
+
+	/**
+	 * Gets the number of properties that were added to existing beans by the
+	 * last merge.
+	 * @return the number of properties
+	 */
+	public int getPropertiesAdded() {
+		return propertiesAdded;
+	}
+
+	/**
+	 * Builds the edit that inserts text at the end of an element's contents.
+	 * If the element's end tag is on its own line, the text is inserted before
+	 * that line break. If the element is empty ("&lt;bean /&gt;"), it is given
+	 * an end tag.
+	 * @param existing the existing document
+	 * @param element the element
+	 * @param endTagStart the offset of the element's end tag (ignored if the
+	 * element is empty)
+	 * @param text the text to insert (each element in it starts on a new
+	 * line)
+	 * @param newline the line break
+	 * @return the edit
+	 */
+	private static Edit insertBeforeEnd(String existing, ExistingBean element, int endTagStart, String text, String newline) {
+		if (element.empty) {
+			//replace the "/>"
+			String close = newline + nullToEmpty(element.indent) + "</" + element.qualifiedName + ">";
+			return new Edit(element.startTagEnd - 2, element.startTagEnd, ">" + text + close);
+		}
+
+		int pos = endTagStart;
+		while (pos > 0 && (existing.charAt(pos - 1) == ' ' || existing.charAt(pos - 1) == '\t')) {
+			pos--;
+		}
+		if (pos > 0 && existing.charAt(pos - 1) == '\n') {
+			pos--;
+			if (pos > 0 && existing.charAt(pos - 1) == '\r') {
+				pos--;
+			}
+			return new Edit(pos, pos, text);
+		}
+
+		//the end tag is on the same line as the last child, so put it on its own line
+		return new Edit(endTagStart, endTagStart, text + newline + nullToEmpty(element.indent));
+	}
+
+	/**
+	 * Serializes generated elements.
+	 * @param elements the elements
+	 * @param newline the string that starts each line
+	 * @param unit the string used to indent each level
+	 * @return the XML
+	 * @throws XMLStreamException if there's a problem serializing the
+	 * elements
+	 */
+	private static String fragment(List<Element> elements, String newline, String unit) throws XMLStreamException {
+		StringWriter sw = new StringWriter();
+		XMLStreamWriter writer = XmlContextWriter.createXMLStreamWriter(sw);
+		for (Element element : elements) {
+			XmlContextWriter.writeElement(writer, element, newline, unit, 0);
+		}
+		writer.writeCharacters(""); //closes the last tag if it is an empty element
+		writer.flush();
+		return sw.toString();
+	}
+
+	/**
+	 * Determines how the existing document indents each level.
+	 * @param parentIndent the indentation of an element or null if unknown
+	 * @param childIndent the indentation of one of its children or null if
+	 * unknown
+	 * @param beanIndent the indentation of the top-level beans or null if
+	 * unknown
+	 * @return the indentation of one level
+	 */
+	private static String indentUnit(String parentIndent, String childIndent, String beanIndent) {
+		if (childIndent != null && !childIndent.isEmpty()) {
+			String parent = nullToEmpty(parentIndent);
+			if (childIndent.startsWith(parent) && childIndent.length() > parent.length()) {
+				return childIndent.substring(parent.length());
+			}
+		}
+		if (beanIndent != null && !beanIndent.isEmpty()) {
+			return beanIndent;
+		}
+		return XmlContextWriter.INDENT;
+	}
+
+	/**
+	 * Gets the whitespace that a tag is indented with.
+	 * @param existing the document
+	 * @param tagStart the offset of the tag's "&lt;"
+	 * @return the whitespace or null if there is something other than
+	 * whitespace before the tag on its line
+	 */
+	private static String lineIndent(String existing, int tagStart) {
+		int pos = tagStart;
+		while (pos > 0 && (existing.charAt(pos - 1) == ' ' || existing.charAt(pos - 1) == '\t')) {
+			pos--;
+		}
+		if (pos > 0 && existing.charAt(pos - 1) != '\n') {
+			return null;
+		}
+		return existing.substring(pos, tagStart);
+	}
+
+	private static String qualifiedName(XMLStreamReader reader) {
+		String prefix = reader.getPrefix();
+		return (prefix == null || prefix.isEmpty()) ? reader.getLocalName() : prefix + ":" + reader.getLocalName();
+	}
+
+	private static String nullToEmpty(String s) {
+		return (s == null) ? "" : s;
+	}
+
+	/**
+	 * Determines the character encoding of an XML document from its XML
+	 * declaration.
+	 * @param bytes the document
+	 * @return the character encoding (defaults to UTF-8)
+	 */
+	static Charset encodingOf(byte[] bytes) {
+		String start = new String(bytes, 0, Math.min(bytes.length, 200), StandardCharsets.ISO_8859_1);
+		if (start.startsWith("\u00EF\u00BB\u00BF")) {
+			return StandardCharsets.UTF_8;
+		}
+		Matcher matcher = encodingRegex.matcher(start);
+		if (matcher.find()) {
+			try {
+				return Charset.forName(matcher.group(1));
+			} catch (IllegalArgumentException e) {
+				//use the default
+			}
+		}
+		return StandardCharsets.UTF_8;
+	}
+
+	/**
+	 * Reads the resources that an existing application context file imports
+	 * with its top-level &lt;import /&gt; elements.
+	 * @param file the file
+	 * @return the values of the "resource" attributes, in document order
+	 * @throws IOException if there's a problem reading or parsing the file
+	 */
+	static List<String> readImports(File file) throws IOException {
+		List<String> resources = new ArrayList<String>();
+		InputStream in = new FileInputStream(file);
+		try {
+			XMLStreamReader reader;
+			synchronized (InputFactoryHolder.factory) {
+				reader = InputFactoryHolder.factory.createXMLStreamReader(in);
+			}
+			try {
+				int depth = 0;
+				while (reader.hasNext()) {
+					int event = reader.next();
+					if (event == XMLStreamConstants.START_ELEMENT) {
+						depth++;
+						String resource = reader.getAttributeValue(null, "resource");
+						if (depth == 2 && "import".equals(reader.getLocalName()) && resource != null) {
+							resources.add(resource);
+						}
+					} else if (event == XMLStreamConstants.END_ELEMENT) {
+						depth--;
+					}
+				}
+			} finally {
+				reader.close();
+			}
+		} catch (XMLStreamException e) {
+			throw new IOException("Could not parse \"" + file + "\": " + e.getMessage(), e);
+		} finally {
+			in.close();
+		}
+		return resources;
+	}
+
+	/**
+	 * Holds the factory that creates the stream readers. It's created the
+	 * first time a file is merged, so runs that don't merge never load the
+	 * StAX implementation. DTDs are not loaded, since older Spring files
+	 * reference the Spring DTD by URL.
+	 * @author mangst
+	 */
+	private static class InputFactoryHolder {
+		private static final XMLInputFactory factory = createInputFactory();
+
+		private static XMLInputFactory createInputFactory() {
+			XMLInputFactory factory = XMLInputFactory.newInstance();
+			factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+			factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+			return factory;
+		}
+	}
+
+	/**
+	 * The root element or a top-level &lt;bean /&gt; element of the existing
+	 * document.
+	 */
+	private static class ExistingBean {
+		private final Element generated;
+		private final String qualifiedName;
+		private final int startTagEnd;
+		private final boolean empty;
+		private final Set<String> propertyNames = new HashSet<String>();
+		private final String indent;
+		private String childIndent;
+		private String label;
+
+		/**
+		 * @param generated the generated bean it matches or null if it doesn't
+		 * match one
+		 * @param qualifiedName the element's name, including its prefix
+		 * @param startTagEnd the offset of the end of the start tag
+		 * @param empty true if the element has no end tag ("&lt;bean /&gt;")
+		 * @param indent the element's indentation or null if it does not
+		 * start on its own line
+		 */
+		public ExistingBean(Element generated, String qualifiedName, int startTagEnd, boolean empty, String indent) {
+			this.generated = generated;
+			this.qualifiedName = qualifiedName;
+			this.startTagEnd = startTagEnd;
+			this.empty = empty;
+			this.indent = indent;
+		}
+	}
+
+	/**
+	 * Finds the tags in an XML document, in the same order as the events of a
+	 * stream reader. Comments, CDATA sections, processing instructions, and
+	 * the DOCTYPE are skipped, and quoted attribute values may contain "&gt;".
+	 */
+	private static class TagCursor {
+		private final String text;
+
+		/**
+		 * The offset just after the last tag that was found.
+		 */
+		private int pos;
+
+		/**
+		 * @param text the document
+		 * @param pos the offset to start at
+		 */
+		public TagCursor(String text, int pos) {
+			this.text = text;
+			this.pos = pos;
+		}
+
+		/**
+		 * Finds the next start or end tag.
+		 * @param end true to find an end tag, false to find a start tag
+		 * @return the offset of the tag (afterwards, {@link #pos} is the offset
+		 * just after the tag)
+		 * @throws XMLStreamException if the tag can't be found
+		 */
+		public int nextTag(boolean end) throws XMLStreamException {
+			while (true) {
+				int start = text.indexOf('<', pos);
+				if (start < 0) {
+					throw new XMLStreamException("Unexpected end of document.");
+				}
+
+				if (text.startsWith("<!--", start)) {
+					pos = skipPast("-->", start);
+				} else if (text.startsWith("<![CDATA[", start)) {
+					pos = skipPast("]]>", start);
+				} else if (text.startsWith("<?", start)) {
+					pos = skipPast("?>", start);
+				} else if (text.startsWith("<!", start)) {
+					pos = skipTag(start, true);
+				} else if (text.startsWith("</", start) != end) {
+					throw new XMLStreamException("Expected " + (end ? "an end" : "a start") + " tag at offset " + start + ".");
+				} else {
+					pos = skipTag(start, false);
+					return start;
+				}
+			}
+		}
+
+		private int skipPast(String terminator, int from) throws XMLStreamException {
+			int index = text.indexOf(terminator, from);
+			if (index < 0) {
+				throw new XMLStreamException("Unexpected end of document.");
+			}
+			return index + terminator.length();
+		}
+
+		/**
+		 * Skips over a tag, ignoring any "&gt;" characters in quoted strings
+		 * (and, in a DOCTYPE, in the internal subset).
+		 * @param start the offset of the tag's "&lt;"
+		 * @param doctype true if the tag is a DOCTYPE
+		 * @return the offset just after the tag
+		 * @throws XMLStreamException if the tag doesn't end
+		 */
+		private int skipTag(int start, boolean doctype) throws XMLStreamException {
+			char quote = 0;
+			int brackets = 0;
+			for (int i = start + 1; i < text.length(); i++) {
+				char c = text.charAt(i);
+				if (quote != 0) {
+					if (c == quote) {
+						quote = 0;
+					}
+				} else if (c == '"' || c == '\'') {
+					quote = c;
+				} else if (doctype && c == '[') {
+					brackets++;
+				} else if (doctype && c == ']') {
+					brackets--;
+				} else if (c == '>' && brackets == 0) {
+					return i + 1;
+				}
+			}
+			throw new XMLStreamException("Unexpected end of document.");
+		}
+	}
+
+	/**
+	 * Replaces a range of the existing document.
+	 */
+	private static class Edit {
+		private final int start, end;
+		private final String text;
+
+		/**
+		 * @param start the start of the range (inclusive)
+		 * @param end the end of the range (exclusive)
+		 * @param text the replacement text
+		 */
+		public Edit(int start, int end, String text) {
+			this.start = start;
+			this.end = end;
+			this.text = text;
+		}
+	}
+}
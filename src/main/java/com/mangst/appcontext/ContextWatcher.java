@@ -0,0 +1,388 @@
+package com.mangst.appcontext;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Regenerates an application context XML file whenever a Java source file in
+ * one of the packages is created, modified, or deleted. The class information
+ * of every file is kept in memory, so only the files that changed are parsed
+ * again.
+ * @author mangst
+ */
+public class ContextWatcher implements Closeable {
+	/**
+	 * The default number of milliseconds to wait for more changes before
+	 * regenerating the XML.
+	 */
+	public static final long DEFAULT_DEBOUNCE_MILLIS = 100;
+
+	private final ApplicationContextGenerator parser;
+	private final String springVersion;
+	private final List<File> packageDirs;
+	private final SourceWalker walker;
+	private final File output;
+	private final WatchService watchService;
+
+	/**
+	 * The directory that each watch key belongs to.
+	 */
+	private final Map<WatchKey, Path> directories = new HashMap<WatchKey, Path>();
+
+	/**
+	 * The class information of each source file (null if the file does not
+	 * contain a public class), sorted in the order that the walker finds the
+	 * files, so that files created after start-up are written in the same
+	 * place as in a full run.
+	 */
+	private final Map<File, JavaClass> classes = new TreeMap<File, JavaClass>(new WalkOrder());
+
+	private long debounceMillis = DEFAULT_DEBOUNCE_MILLIS;
+	private int threads = 1;
+	private boolean skipDuplicates;
+	private PrintStream stderr = System.err;
+
+	/**
+	 * Whether the last batch of changes could not be processed.
+	 */
+	private boolean failed = false;
+
+	/**
+	 * @param parser the generator that is used to parse the source files (its
+	 * parser, source file reader, and parse cache are used)
+	 * @param springVersion the Spring version
+	 * @param packageDirs the package directories to watch
+	 * @param recurse true to also watch sub-packages, false not to
+	 * @param output the file to write the XML to
+	 * @throws IOException if there's a problem creating the watch service
+	 */
+	public ContextWatcher(ApplicationContextGenerator parser, String springVersion, List<File> packageDirs, boolean recurse, File output) throws IOException {
+		this(parser, springVersion, packageDirs, new SourceWalker().setRecurse(recurse), output);
+	}
+
+	/**
+	 * @param parser the generator that is used to parse the source files (its
+	 * parser, source file reader, and parse cache are used)
+	 * @param springVersion the Spring version
+	 * @param packageDirs the package directories to watch (or the source
+	 * directory, if the walker has a {@link PackageSelection})
+	 * @param walker determines which files and sub-packages are included
+	 * @param output the file to write the XML to
+	 * @throws IOException if there's a problem creating the watch service
+	 */
+	public ContextWatcher(ApplicationContextGenerator parser, String springVersion, List<File> packageDirs, SourceWalker walker, File output) throws IOException {
+		this.parser = parser;
+		this.springVersion = springVersion;
+		this.packageDirs = packageDirs;
+		this.walker = walker;
+		this.output = output;
+		watchService = output.getAbsoluteFile().toPath().getFileSystem().newWatchService();
+	}
+
+	/**
+	 * Sets how long to wait for more changes before regenerating the XML, so
+	 * that several files that are saved at once only cause one regeneration.
+	 * @param debounceMillis the time to wait in milliseconds (defaults to
+	 * {@link #DEFAULT_DEBOUNCE_MILLIS})
+	 */
+	public void setDebounceMillis(long debounceMillis) {
+		this.debounceMillis = debounceMillis;
+	}
+
+	/**
+	 * Sets the number of threads to use when all of the files are parsed.
+	 * @param threads the number of threads (defaults to 1)
+	 */
+	public void setThreads(int threads) {
+		this.threads = threads;
+	}
+
+	/**
+	 * Sets whether a class that is found more than once (for example, when
+	 * the same class is in more than one source directory) only gets one
+	 * bean. The first one that is found is kept.
+	 * @param skipDuplicates true to skip the duplicates, false to add a bean
+	 * for every file (defaults to false)
+	 */
+	public void setSkipDuplicates(boolean skipDuplicates) {
+		this.skipDuplicates = skipDuplicates;
+	}
+
+	/**
+	 * Sets the stream that status messages and errors are printed to.
+	 * @param stderr the stream (defaults to {@link System#err})
+	 */
+	public void setStderr(PrintStream stderr) {
+		this.stderr = stderr;
+	}
+
+	/**
+	 * Registers the package directories with the watch service, parses all of
+	 * the source files, and writes the XML.
+	 * @throws IOException if there's a problem reading the files or writing
+	 * the XML
+	 */
+	public void start() throws IOException {
+		for (File packageDir : packageDirs) {
+			register(packageDir);
+		}
+		rescan();
+		writeOutput();
+	}
+
+	/**
+	 * Waits for changes and regenerates the XML after each batch of changes.
+	 * If a batch can't be processed (for example, a file is deleted while it
+	 * is being read), the error is printed and the watcher keeps waiting for
+	 * changes. This method blocks until {@link #close} is called.
+	 */
+	public void run() {
+		try {
+			while (true) {
+				WatchKey key = watchService.take();
+				long firstEvent = System.nanoTime();
+
+				//wait for more changes
+				Set<Path> changed = new LinkedHashSet<Path>();
+				boolean overflow = false;
+				try {
+					do {
+						overflow |= pollEvents(key, changed);
+					} while ((key = watchService.poll(debounceMillis, TimeUnit.MILLISECONDS)) != null);
+
+					if (overflow || failed) {
+						rescan();
+						failed = false;
+					} else if (!update(changed)) {
+						continue;
+					}
+					writeOutput();
+				} catch (IOException e) {
+					//some of the files may not have been parsed, so parse them all next time
+					failed = true;
+					stderr.println("Warning: Could not regenerate " + output + ": " + e.getMessage());
+					continue;
+				}
+
+				long latency = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - firstEvent);
+				stderr.println("Regenerated " + output + " (" + changed.size() + " file(s) changed, " + latency + " ms after the first change).");
+			}
+		} catch (ClosedWatchServiceException e) {
+			//close() was called
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Stops watching for changes.
+	 * @throws IOException if there's a problem closing the watch service
+	 */
+	@Override
+	public void close() throws IOException {
+		watchService.close();
+	}
+
+	/**
+	 * Reads the events of a watch key.
+	 * @param key the watch key
+	 * @param changed the set to add the source files that changed to
+	 * @return true if events were lost, false if not
+	 * @throws IOException if there's a problem registering a new directory
+	 */
+	private boolean pollEvents(WatchKey key, Set<Path> changed) throws IOException {
+		Path dir = directories.get(key);
+		boolean overflow = false;
+		for (WatchEvent<?> event : key.pollEvents()) {
+			if (event.kind() == OVERFLOW) {
+				overflow = true;
+				continue;
+			}
+
+			Path child = dir.resolve((Path) event.context());
+			if (event.kind() == ENTRY_CREATE && Files.isDirectory(child)) {
+				//a sub-package was created (its files may have been created before it was registered)
+				File packageDir = packageDirOf(child.toFile());
+				if (packageDir == null || !walker.acceptDirectory(packageDir, child.toFile())) {
+					continue;
+				}
+				register(child.toFile());
+				for (File file : walker.walk(Collections.singletonList(child.toFile()))) {
+					changed.add(file.toPath());
+				}
+			} else {
+				File packageDir = packageDirOf(child.toFile());
+				if (packageDir != null && walker.accept(packageDir, child.toFile())) {
+					changed.add(child);
+				}
+			}
+		}
+
+		if (!key.reset()) {
+			//the directory was deleted
+			directories.remove(key);
+			overflow = true;
+		}
+		return overflow;
+	}
+
+	/**
+	 * Parses the files that changed.
+	 * @param changed the files that were created, modified, or deleted
+	 * @return true if anything changed, false if not
+	 * @throws IOException if there's a problem reading a file
+	 */
+	private boolean update(Set<Path> changed) throws IOException {
+		boolean modified = false;
+		for (Path path : changed) {
+			File file = path.toFile();
+			if (file.isFile()) {
+				try {
+					classes.put(file, parser.parseFile(file));
+				} catch (NoSuchFileException e) {
+					//the file was deleted after the event was received
+					classes.remove(file);
+				}
+				modified = true;
+			} else if (classes.containsKey(file)) {
+				classes.remove(file);
+				modified = true;
+			}
+		}
+		return modified;
+	}
+
+	/**
+	 * Parses all the source files.
+	 * @throws IOException if there's a problem reading a file
+	 */
+	private void rescan() throws IOException {
+		List<File> files = walker.walk(packageDirs);
+		JavaClass[] results = parser.parseFiles(files, threads);
+		classes.clear();
+		for (int i = 0; i < results.length; i++) {
+			classes.put(files.get(i), results[i]);
+		}
+	}
+
+	/**
+	 * Writes the XML. It is written to a temporary file first, so the output
+	 * file is never left half-written.
+	 * @throws IOException if there's a problem writing the XML
+	 */
+	private void writeOutput() throws IOException {
+		File dir = output.getAbsoluteFile().getParentFile();
+		File temp = File.createTempFile(output.getName(), ".tmp", dir);
+		OutputStream out = new FileOutputStream(temp);
+		try {
+			XmlContextWriter writer = new XmlContextWriter(out, springVersion);
+			try {
+				ApplicationContextGenerator generator = new ApplicationContextGenerator(springVersion, writer);
+				generator.setSkipDuplicates(skipDuplicates);
+				for (JavaClass javaClass : classes.values()) {
+					if (javaClass != null) {
+						generator.addBean(javaClass);
+					}
+				}
+			} finally {
+				writer.close();
+			}
+		} finally {
+			out.close();
+		}
+		Files.move(temp.toPath(), output.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	/**
+	 * Finds the package directory that a file is in.
+	 * @param file the file
+	 * @return the package directory or null if the file isn't in one
+	 */
+	private File packageDirOf(File file) {
+		Path path = file.toPath();
+		for (File packageDir : packageDirs) {
+			if (path.startsWith(packageDir.toPath())) {
+				return packageDir;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Registers a directory (and its sub-directories that aren't excluded, if
+	 * recursion is enabled) with the watch service.
+	 * @param dir the directory
+	 * @throws IOException if there's a problem registering the directory
+	 */
+	private void register(File dir) throws IOException {
+		for (File d : walker.walkDirectories(Collections.singletonList(dir))) {
+			Path path = d.toPath();
+			WatchKey key = path.register(watchService, ENTRY_CREATE, ENTRY_MODIFY, ENTRY_DELETE);
+			directories.put(key, path);
+		}
+	}
+
+	/**
+	 * Sorts files in the order that {@link SourceWalker} finds them: by
+	 * package directory, then the files of each directory sorted by name,
+	 * followed by the files of each sub-directory (sorted by name).
+	 */
+	private class WalkOrder implements Comparator<File> {
+		@Override
+		public int compare(File a, File b) {
+			File packageDirA = packageDirOf(a);
+			File packageDirB = packageDirOf(b);
+			if (packageDirA != packageDirB) {
+				return packageDirs.indexOf(packageDirA) - packageDirs.indexOf(packageDirB);
+			}
+			if (packageDirA == null) {
+				return a.compareTo(b);
+			}
+
+			Path start = packageDirA.toPath();
+			Path relativeA = start.relativize(a.toPath());
+			Path relativeB = start.relativize(b.toPath());
+			int countA = relativeA.getNameCount();
+			int countB = relativeB.getNameCount();
+			for (int i = 0; i < countA && i < countB; i++) {
+				boolean fileA = (i == countA - 1);
+				boolean fileB = (i == countB - 1);
+				if (fileA != fileB) {
+					//the files of a directory come before its sub-directories
+					return fileA ? -1 : 1;
+				}
+				int c = relativeA.getName(i).compareTo(relativeB.getName(i));
+				if (c != 0) {
+					return c;
+				}
+			}
+			return countA - countB;
+		}
+	}
+}
@@ -0,0 +1,186 @@
+package com.mangst.appcontext;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ConnectException;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * Forwards command line arguments to a running {@link GeneratorDaemon} and
+ * copies the daemon's output to this process' standard output and standard
+ * error.
+ * @author mangst
+ */
+public class DaemonClient {
+	private final int port;
+	private final String token;
+
+	/**
+	 * @param port the port the daemon is listening on
+	 * @param token the daemon's token
+	 */
+	public DaemonClient(int port, String token) {
+		this.port = port;
+		this.token = token;
+	}
+
+	/**
+	 * Creates a client from the file that the daemon wrote when it started.
+	 * @param daemonFile the daemon file
+	 * @return the client or null if the file doesn't exist
+	 * @throws IOException if there's a problem reading the file
+	 */
+	public static DaemonClient fromDaemonFile(File daemonFile) throws IOException {
+		if (!daemonFile.isFile()) {
+			return null;
+		}
+
+		Properties properties = new Properties();
+		InputStream in = new FileInputStream(daemonFile);
+		try {
+			properties.load(in);
+		} finally {
+			in.close();
+		}
+		String port = properties.getProperty("port");
+		String token = properties.getProperty("token");
+		if (port == null || token == null) {
+			return null;
+		}
+		try {
+			return new DaemonClient(Integer.parseInt(port), token);
+		} catch (NumberFormatException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Sends a request to the daemon and waits for it to finish.
+	 * @param args the command line arguments
+	 * @param workingDir the directory that relative paths are resolved
+	 * against
+	 * @param stdout the stream to copy the daemon's standard output to
+	 * @param stderr the stream to copy the daemon's standard error to
+	 * @return the exit code
+	 * @throws ConnectException if the daemon is not running
+	 * @throws IOException if there's a problem communicating with the daemon
+	 */
+	public int run(List<String> args, File workingDir, OutputStream stdout, OutputStream stderr) throws IOException {
+		return send(args, workingDir, stdout, stderr);
+	}
+
+	/**
+	 * Asks the daemon to stop.
+	 * @throws ConnectException if the daemon is not running
+	 * @throws IOException if there's a problem communicating with the daemon
+	 */
+	public void stop() throws IOException {
+		send(null, new File(""), null, null);
+	}
+
+	private int send(List<String> args, File workingDir, OutputStream stdout, OutputStream stderr) throws IOException {
+		Socket socket = new Socket(InetAddress.getLoopbackAddress(), port);
+		try {
+			DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+			out.writeUTF(token);
+			out.writeUTF(workingDir.getAbsolutePath());
+			if (args == null) {
+				out.writeInt(GeneratorDaemon.STOP);
+			} else {
+				out.writeInt(args.size());
+				for (String arg : args) {
+					out.writeUTF(arg);
+				}
+			}
+			out.flush();
+
+			DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream(), 64 * 1024));
+			byte buffer[] = new byte[64 * 1024];
+			while (true) {
+				int type;
+				try {
+					type = in.readByte();
+				} catch (EOFException e) {
+					throw new IOException("The daemon closed the connection without finishing the request (is the token in the daemon file out of date?).");
+				}
+
+				if (type == GeneratorDaemon.EXIT) {
+					int status = in.readInt();
+					if (stdout != null) {
+						stdout.flush();
+						stderr.flush();
+					}
+					return status;
+				}
+
+				OutputStream target = (type == GeneratorDaemon.STDOUT) ? stdout : stderr;
+				int remaining = in.readInt();
+				while (remaining > 0) {
+					int read = Math.min(remaining, buffer.length);
+					in.readFully(buffer, 0, read);
+					target.write(buffer, 0, read);
+					remaining -= read;
+				}
+			}
+		} finally {
+			socket.close();
+		}
+	}
+
+	/**
+	 * Runs the client from the command line. If no daemon is running, the
+	 * request is run in this process instead.
+	 * @param arguments the command line arguments
+	 * @param args the raw command line arguments
+	 * @return the exit code
+	 * @throws Exception if there's a problem running the request
+	 */
+	static int main(Arguments arguments, String[] args) throws Exception {
+		String daemonFileStr = arguments.value(null, "daemon-file");
+		File daemonFile = (daemonFileStr == null) ? GeneratorDaemon.DEFAULT_DAEMON_FILE : new File(daemonFileStr);
+		DaemonClient client = fromDaemonFile(daemonFile);
+
+		if (arguments.exists(null, "stop-daemon")) {
+			try {
+				if (client == null) {
+					throw new ConnectException();
+				}
+				client.stop();
+			} catch (ConnectException e) {
+				System.err.println("No daemon is running.");
+				return 1;
+			}
+			return 0;
+		}
+
+		//don't forward the client's own arguments
+		List<String> forward = new ArrayList<String>();
+		for (String arg : args) {
+			if (!arg.equals("--use-daemon") && !arg.startsWith("--daemon-file=")) {
+				forward.add(arg);
+			}
+		}
+
+		if (client != null) {
+			try {
+				return client.run(forward, new File(""), System.out, System.err);
+			} catch (ConnectException e) {
+				//the daemon file is left over from a daemon that was killed
+			}
+		}
+		System.err.println("No daemon is running. Generating the application context in this process.");
+		return ApplicationContextGenerator.run(arguments, null, System.out, System.err, null);
+	}
+}
@@ -0,0 +1,331 @@
+package com.mangst.appcontext;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.text.ParseException;
+import java.util.Collection;
+
+import jdk.jfr.Category;
+import jdk.jfr.Configuration;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Recording;
+
+/**
+ * JDK Flight Recorder events for each phase of the generator, so that slow
+ * files can be lined up against GC and I/O activity in JDK Mission Control.
+ * <p>
+ * The events are only created when an instance of this class is passed to
+ * the generator. Code that does not use this class never loads any of the
+ * Flight Recorder classes, so there is no cost when the events are turned
+ * off. When they are turned on but nothing is being recorded, each event
+ * costs a single check.
+ * </p>
+ * @author mangst
+ */
+public class FlightRecorderEvents {
+	private static final String CATEGORY = "Spring Application Context Generator";
+
+	private Recording recording;
+
+	/**
+	 * Starts recording all of the JVM's default events along with the
+	 * generator's events. Call {@link #stopRecording} to write the recording
+	 * to disk.
+	 * @throws IOException if the default recording settings can't be read
+	 */
+	public void startRecording() throws IOException {
+		Configuration configuration;
+		try {
+			configuration = Configuration.getConfiguration("default");
+		} catch (ParseException e) {
+			throw new IOException(e);
+		}
+		recording = new Recording(configuration);
+		recording.enable(ScanEvent.class);
+		recording.enable(ReadFileEvent.class);
+		recording.enable(ParseFileEvent.class);
+		recording.enable(BuildBeanEvent.class);
+		recording.enable(WriteBeanEvent.class);
+		recording.enable(WriteFileEvent.class);
+		recording.start();
+	}
+
+	/**
+	 * Stops the recording that was started with {@link #startRecording} and
+	 * writes it to a file.
+	 * @param file the file to write the recording to
+	 * @throws IOException if there's a problem writing the file
+	 */
+	public void stopRecording(File file) throws IOException {
+		try {
+			recording.stop();
+			recording.dump(file.toPath());
+		} finally {
+			recording.close();
+			recording = null;
+		}
+	}
+
+	/**
+	 * Starts timing the search for source files.
+	 * @return the event
+	 */
+	public ScanEvent beginScan() {
+		ScanEvent event = new ScanEvent();
+		event.begin();
+		return event;
+	}
+
+	/**
+	 * Starts timing the reading of a file.
+	 * @return the event
+	 */
+	public ReadFileEvent beginReadFile() {
+		ReadFileEvent event = new ReadFileEvent();
+		event.begin();
+		return event;
+	}
+
+	/**
+	 * Starts timing the parsing of a file (including the cache lookup).
+	 * @return the event
+	 */
+	public ParseFileEvent beginParseFile() {
+		ParseFileEvent event = new ParseFileEvent();
+		event.begin();
+		return event;
+	}
+
+	/**
+	 * Starts timing the creation of a &lt;bean /&gt; element.
+	 * @return the event
+	 */
+	public BuildBeanEvent beginBuildBean() {
+		BuildBeanEvent event = new BuildBeanEvent();
+		event.begin();
+		return event;
+	}
+
+	/**
+	 * Starts timing the serialization of a &lt;bean /&gt; element.
+	 * @return the event
+	 */
+	public WriteBeanEvent beginWriteBean() {
+		WriteBeanEvent event = new WriteBeanEvent();
+		event.begin();
+		return event;
+	}
+
+	/**
+	 * Starts timing the writing of an XML file.
+	 * @return the event
+	 */
+	public WriteFileEvent beginWriteFile() {
+		WriteFileEvent event = new WriteFileEvent();
+		event.begin();
+		return event;
+	}
+
+	/**
+	 * The search for source files.
+	 */
+	@Name("com.mangst.appcontext.Scan")
+	@Label("Scan Source Files")
+	@Category(CATEGORY)
+	@Description("Walks the source directories and archives to find the source files.")
+	public static class ScanEvent extends Event {
+		@Label("Source")
+		String source;
+
+		@Label("Files Found")
+		int files;
+
+		/**
+		 * Ends and commits the event.
+		 * @param sources the source directories and archives
+		 * @param files the number of files that were found
+		 */
+		public void end(Collection<Path> sources, int files) {
+			end();
+			if (shouldCommit()) {
+				StringBuilder sb = new StringBuilder();
+				for (Path source : sources) {
+					if (sb.length() > 0) {
+						sb.append(", ");
+					}
+					sb.append(source.toUri());
+				}
+				this.source = sb.toString();
+				this.files = files;
+				commit();
+			}
+		}
+	}
+
+	/**
+	 * The reading of a source or class file.
+	 */
+	@Name("com.mangst.appcontext.ReadFile")
+	@Label("Read File")
+	@Category(CATEGORY)
+	@Description("Reads the contents of a source or class file.")
+	public static class ReadFileEvent extends Event {
+		@Label("Path")
+		String path;
+
+		@Label("Size")
+		@DataAmount
+		long size;
+
+		/**
+		 * Ends and commits the event.
+		 * @param path the file
+		 * @param size the size of the file in bytes
+		 */
+		public void end(Path path, long size) {
+			end();
+			if (shouldCommit()) {
+				this.path = path.toString();
+				this.size = size;
+				commit();
+			}
+		}
+	}
+
+	/**
+	 * The reading and parsing of a source or class file.
+	 */
+	@Name("com.mangst.appcontext.ParseFile")
+	@Label("Parse File")
+	@Category(CATEGORY)
+	@Description("Extracts the class information from a source or class file (including reading the file and looking it up in the cache).")
+	public static class ParseFileEvent extends Event {
+		@Label("Path")
+		String path;
+
+		@Label("Class Name")
+		@Description("The fully qualified name of the public class or null if the file has none.")
+		String className;
+
+		@Label("Properties")
+		int properties;
+
+		@Label("Constructors")
+		int constructors;
+
+		/**
+		 * Ends and commits the event.
+		 * @param path the file
+		 * @param javaClass the class information or null if the file has no
+		 * public class
+		 */
+		public void end(Path path, JavaClass javaClass) {
+			end();
+			if (shouldCommit()) {
+				this.path = path.toString();
+				if (javaClass != null) {
+					className = qualifiedName(javaClass);
+					properties = javaClass.properties.size();
+					constructors = javaClass.constructors.size();
+				}
+				commit();
+			}
+		}
+	}
+
+	/**
+	 * The creation of a &lt;bean /&gt; element.
+	 */
+	@Name("com.mangst.appcontext.BuildBean")
+	@Label("Build Bean")
+	@Category(CATEGORY)
+	@Description("Builds the <bean /> element of a class.")
+	public static class BuildBeanEvent extends Event {
+		@Label("Class Name")
+		String className;
+
+		@Label("Properties")
+		int properties;
+
+		@Label("Constructor Args")
+		int constructorArgs;
+
+		/**
+		 * Ends and commits the event.
+		 * @param javaClass the class information
+		 */
+		public void end(JavaClass javaClass) {
+			end();
+			if (shouldCommit()) {
+				className = qualifiedName(javaClass);
+				properties = javaClass.properties.size();
+				constructorArgs = (javaClass.constructors.size() == 1) ? javaClass.constructors.get(0).size() : 0;
+				commit();
+			}
+		}
+	}
+
+	/**
+	 * The serialization of a &lt;bean /&gt; element.
+	 */
+	@Name("com.mangst.appcontext.WriteBean")
+	@Label("Write Bean")
+	@Category(CATEGORY)
+	@Description("Serializes a <bean /> element to the output stream (or adds it to the DOM).")
+	public static class WriteBeanEvent extends Event {
+		@Label("Class Name")
+		String className;
+
+		/**
+		 * Ends and commits the event.
+		 * @param javaClass the class information
+		 */
+		public void end(JavaClass javaClass) {
+			end();
+			if (shouldCommit()) {
+				className = qualifiedName(javaClass);
+				commit();
+			}
+		}
+	}
+
+	/**
+	 * The writing of an XML file.
+	 */
+	@Name("com.mangst.appcontext.WriteFile")
+	@Label("Write File")
+	@Category(CATEGORY)
+	@Description("Finishes serializing an XML file and writes it to disk.")
+	public static class WriteFileEvent extends Event {
+		@Label("Path")
+		String path;
+
+		@Label("Size")
+		@DataAmount
+		long size;
+
+		/**
+		 * Ends and commits the event.
+		 * @param path the file or null if the XML was written to standard
+		 * output
+		 * @param size the size of the file in bytes or -1 if unknown
+		 */
+		public void end(String path, long size) {
+			end();
+			if (shouldCommit()) {
+				this.path = path;
+				this.size = size;
+				commit();
+			}
+		}
+	}
+
+	private static String qualifiedName(JavaClass javaClass) {
+		return (javaClass.packageName == null) ? javaClass.className : javaClass.packageName + "." + javaClass.className;
+	}
+}
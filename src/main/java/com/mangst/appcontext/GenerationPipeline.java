@@ -0,0 +1,516 @@
+package com.mangst.appcontext;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Generates the beans in four stages that run at the same time: finding the
+ * source files ("walk"), reading them ("read"), extracting the class
+ * information ("parse"), and building and writing the &lt;bean /&gt; elements
+ * ("emit"). The stages are connected by bounded queues. When a stage falls
+ * behind, the stages before it wait instead of piling up work in memory, so a
+ * run takes about as long as its slowest stage instead of the sum of all of
+ * them.
+ * <p>
+ * The walk and emit stages each run on a single thread, because the walk
+ * determines the order of the beans and the XML document is not thread-safe.
+ * The read and parse stages run on any number of threads. Files that finish
+ * parsing early wait for the files before them, so the beans are emitted in
+ * the order the files were found and the XML is identical to the XML that is
+ * generated by {@link ApplicationContextGenerator#addBeanPaths}. The number
+ * of files anywhere between the walk and emit stages is limited, so memory
+ * use is bounded by the queue capacity.
+ * </p>
+ * <p>
+ * If the generator has a parse cache, the read stage leaves the reading to
+ * the parse stage, which only reads the files that changed. If the generator
+ * has a type index, the emit stage holds on to the class information until
+ * every file has been parsed.
+ * </p>
+ * @author mangst
+ */
+public class GenerationPipeline {
+	/**
+	 * The default number of files each queue can hold.
+	 */
+	public static final int DEFAULT_QUEUE_CAPACITY = 256;
+
+	/**
+	 * Marks the end of a queue.
+	 */
+	private static final Item END = new Item(-1, null);
+
+	private final SourceWalker walker;
+	private int readThreads = 1;
+	private int parseThreads = 1;
+	private int queueCapacity = DEFAULT_QUEUE_CAPACITY;
+	private GenerationStats stats;
+	private List<Stage> stages = Collections.emptyList();
+
+	/**
+	 * @param walker finds the source files (its threads are used to list the
+	 * directories ahead of the walk)
+	 */
+	public GenerationPipeline(SourceWalker walker) {
+		this.walker = walker;
+	}
+
+	/**
+	 * Sets the number of threads that read the source files. The threads are
+	 * virtual threads if the JVM supports them (see {@link IoExecutors}).
+	 * @param readThreads the number of threads (defaults to 1)
+	 * @return this
+	 */
+	public GenerationPipeline setReadThreads(int readThreads) {
+		this.readThreads = Math.max(readThreads, 1);
+		return this;
+	}
+
+	/**
+	 * Sets the number of threads that parse the source files.
+	 * @param parseThreads the number of threads (defaults to 1)
+	 * @return this
+	 */
+	public GenerationPipeline setParseThreads(int parseThreads) {
+		this.parseThreads = Math.max(parseThreads, 1);
+		return this;
+	}
+
+	/**
+	 * Sets the number of files that each queue can hold.
+	 * @param queueCapacity the capacity (defaults to
+	 * {@link #DEFAULT_QUEUE_CAPACITY})
+	 * @return this
+	 */
+	public GenerationPipeline setQueueCapacity(int queueCapacity) {
+		this.queueCapacity = Math.max(queueCapacity, 1);
+		return this;
+	}
+
+	/**
+	 * Sets the object that the walk time and the stage metrics are recorded
+	 * in. The other phases are recorded by the generator.
+	 * @param stats the statistics or null not to collect them (defaults to
+	 * null)
+	 * @return this
+	 */
+	public GenerationPipeline setStats(GenerationStats stats) {
+		this.stats = stats;
+		return this;
+	}
+
+	/**
+	 * Gets the metrics of each stage of the last run.
+	 * @return the stages, in order (empty if the pipeline has not been run)
+	 */
+	public List<Stage> getStages() {
+		return stages;
+	}
+
+	/**
+	 * Adds a bean to the application context for each Java source file in a
+	 * list of package directories.
+	 * @param generator the generator to add the beans to
+	 * @param packageDirs the package directories (or the source directory, if
+	 * the walker has a package selection)
+	 * @throws IOException if there's a problem reading one of the files or
+	 * writing to the stream
+	 */
+	public void run(final ApplicationContextGenerator generator, final Collection<Path> packageDirs) throws IOException {
+		final Stage walk = new Stage("walk", 1, 0);
+		final Stage read = new Stage("read", readThreads, queueCapacity);
+		final Stage parse = new Stage("parse", parseThreads, queueCapacity);
+		final Stage emit = new Stage("emit", 1, queueCapacity);
+		stages = Collections.unmodifiableList(Arrays.asList(walk, read, parse, emit));
+
+		final BlockingQueue<Item> readQueue = new ArrayBlockingQueue<Item>(queueCapacity);
+		final BlockingQueue<Item> parseQueue = new ArrayBlockingQueue<Item>(queueCapacity);
+		final BlockingQueue<Item> emitQueue = new ArrayBlockingQueue<Item>(queueCapacity);
+
+		//limits the number of files between the walk and emit stages, including the files that are waiting for the files before them
+		final Semaphore window = new Semaphore(queueCapacity * 3 + readThreads + parseThreads);
+
+		final boolean prefetch = !generator.hasParseCache();
+		final boolean deferBeans = generator.hasTypeIndex();
+		final AtomicInteger readersLeft = new AtomicInteger(readThreads);
+		final AtomicInteger parsersLeft = new AtomicInteger(parseThreads);
+		final AtomicReference<Throwable> error = new AtomicReference<Throwable>();
+
+		final AtomicInteger threadCount = new AtomicInteger();
+		final ExecutorService cpu = Executors.newFixedThreadPool(parseThreads + 2, new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "appcontext-pipeline-" + threadCount.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		final ExecutorService io = IoExecutors.newExecutor(readThreads);
+
+		List<Future<?>> futures = new ArrayList<Future<?>>();
+		try {
+			futures.add(cpu.submit(new Worker(walk, error, cpu, io) {
+				@Override
+				protected void work() throws IOException, InterruptedException {
+					long start = System.nanoTime();
+					final long[] index = new long[1];
+					walker.walkPaths(packageDirs, new SourceWalker.Callback() {
+						@Override
+						public void found(Path file) throws IOException {
+							try {
+								walk.acquire(window);
+								walk.put(readQueue, new Item(index[0]++, file));
+							} catch (InterruptedException e) {
+								throw new InterruptedIOException("Interrupted while walking the source files.");
+							}
+							walk.items.incrementAndGet();
+						}
+					});
+					if (stats != null) {
+						//the time spent waiting for the read stage is not part of the walk
+						stats.addTime(GenerationStats.Phase.WALK, System.nanoTime() - start - walk.blockedNanos.get());
+					}
+					for (int i = 0; i < readThreads; i++) {
+						walk.put(readQueue, END);
+					}
+				}
+			}));
+
+			for (int i = 0; i < readThreads; i++) {
+				futures.add(io.submit(new Worker(read, error, cpu, io) {
+					@Override
+					protected void work() throws IOException, InterruptedException {
+						for (Item item = read.take(readQueue); item != END; item = read.take(readQueue)) {
+							if (prefetch) {
+								item.bytes = generator.readFile(item.path);
+							}
+							read.items.incrementAndGet();
+							read.put(parseQueue, item);
+						}
+
+						//the last reader to finish tells the parsers that there is nothing left
+						if (readersLeft.decrementAndGet() == 0) {
+							for (int i = 0; i < parseThreads; i++) {
+								read.put(parseQueue, END);
+							}
+						}
+					}
+				}));
+			}
+
+			for (int i = 0; i < parseThreads; i++) {
+				futures.add(cpu.submit(new Worker(parse, error, cpu, io) {
+					@Override
+					protected void work() throws IOException, InterruptedException {
+						for (Item item = parse.take(parseQueue); item != END; item = parse.take(parseQueue)) {
+							item.javaClass = generator.parseFile(item.path, item.bytes);
+							item.bytes = null;
+							parse.items.incrementAndGet();
+							parse.put(emitQueue, item);
+						}
+
+						if (parsersLeft.decrementAndGet() == 0) {
+							parse.put(emitQueue, END);
+						}
+					}
+				}));
+			}
+
+			futures.add(cpu.submit(new Worker(emit, error, cpu, io) {
+				@Override
+				protected void work() throws IOException, InterruptedException {
+					Map<Long, Item> pending = new HashMap<Long, Item>();
+					List<JavaClass> deferred = new ArrayList<JavaClass>();
+					long next = 0;
+					for (Item item = emit.take(emitQueue); item != END; item = emit.take(emitQueue)) {
+						pending.put(item.index, item);
+
+						//emit the files in the order they were found
+						while ((item = pending.remove(next)) != null) {
+							next++;
+							if (item.javaClass != null) {
+								if (deferBeans) {
+									deferred.add(item.javaClass);
+								} else {
+									generator.addBean(item.javaClass);
+								}
+							}
+							emit.items.incrementAndGet();
+							window.release();
+						}
+					}
+
+					//every class has been added to the type index, so the references can be resolved
+					for (JavaClass javaClass : deferred) {
+						generator.addBean(javaClass);
+					}
+				}
+			}));
+
+			for (Future<?> future : futures) {
+				future.get();
+			}
+		} catch (RejectedExecutionException e) {
+			//a thread failed and shut down the executors before all of the threads were started
+			for (Future<?> future : futures) {
+				try {
+					future.get();
+				} catch (ExecutionException e2) {
+					//never thrown (the workers record their errors)
+				} catch (InterruptedException e2) {
+					Thread.currentThread().interrupt();
+					throw new InterruptedIOException("Interrupted while generating the beans.");
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while generating the beans.");
+		} catch (ExecutionException e) {
+			//never thrown (the workers record their errors)
+			error.compareAndSet(null, e.getCause());
+		} finally {
+			cpu.shutdownNow();
+			io.shutdownNow();
+			if (stats != null) {
+				stats.setStages(stages);
+			}
+		}
+
+		Throwable e = error.get();
+		if (e instanceof IOException) {
+			throw (IOException) e;
+		}
+		if (e instanceof RuntimeException) {
+			throw (RuntimeException) e;
+		}
+		if (e instanceof Error) {
+			throw (Error) e;
+		}
+		if (e != null) {
+			throw new IOException(e);
+		}
+	}
+
+	/**
+	 * The metrics of one stage of the pipeline. The times are added up across
+	 * all of the stage's threads.
+	 * @author mangst
+	 */
+	public static class Stage {
+		private final String name;
+		private final int threads;
+		private final int queueCapacity;
+		private final AtomicLong items = new AtomicLong();
+		private final AtomicLong workerNanos = new AtomicLong();
+		private final AtomicLong starvedNanos = new AtomicLong();
+		private final AtomicLong blockedNanos = new AtomicLong();
+		private final AtomicLong depthSamples = new AtomicLong();
+		private final AtomicLong depthTotal = new AtomicLong();
+		private final AtomicInteger maxDepth = new AtomicInteger();
+
+		/**
+		 * @param name the name of the stage
+		 * @param threads the number of threads the stage runs on
+		 * @param queueCapacity the capacity of the queue the stage takes its
+		 * files from (0 if it has none)
+		 */
+		Stage(String name, int threads, int queueCapacity) {
+			this.name = name;
+			this.threads = threads;
+			this.queueCapacity = queueCapacity;
+		}
+
+		/**
+		 * Gets the name of the stage.
+		 * @return the name ("walk", "read", "parse", or "emit")
+		 */
+		public String getName() {
+			return name;
+		}
+
+		/**
+		 * Gets the number of threads the stage runs on.
+		 * @return the number of threads
+		 */
+		public int getThreads() {
+			return threads;
+		}
+
+		/**
+		 * Gets the number of files that went through the stage.
+		 * @return the number of files
+		 */
+		public long getItems() {
+			return items.get();
+		}
+
+		/**
+		 * Gets the time the stage spent working (neither waiting for files from
+		 * the stage before it nor for room in the queue of the stage after it).
+		 * @return the time in milliseconds
+		 */
+		public long getBusyMillis() {
+			return TimeUnit.NANOSECONDS.toMillis(workerNanos.get() - starvedNanos.get() - blockedNanos.get());
+		}
+
+		/**
+		 * Gets the time the stage spent waiting for files from the stage before
+		 * it (a sign that an earlier stage is the bottleneck).
+		 * @return the time in milliseconds
+		 */
+		public long getStarvedMillis() {
+			return TimeUnit.NANOSECONDS.toMillis(starvedNanos.get());
+		}
+
+		/**
+		 * Gets the time the stage spent waiting for room in the queue of the
+		 * stage after it (a sign that a later stage is the bottleneck).
+		 * @return the time in milliseconds
+		 */
+		public long getBlockedMillis() {
+			return TimeUnit.NANOSECONDS.toMillis(blockedNanos.get());
+		}
+
+		/**
+		 * Gets the capacity of the queue the stage takes its files from.
+		 * @return the capacity (0 if the stage has no queue)
+		 */
+		public int getQueueCapacity() {
+			return queueCapacity;
+		}
+
+		/**
+		 * Gets the largest number of files that were in the stage's queue when
+		 * the stage took a file from it.
+		 * @return the number of files
+		 */
+		public int getMaxQueueDepth() {
+			return maxDepth.get();
+		}
+
+		/**
+		 * Gets the average number of files that were in the stage's queue when
+		 * the stage took a file from it.
+		 * @return the average number of files
+		 */
+		public double getAverageQueueDepth() {
+			long samples = depthSamples.get();
+			return (samples == 0) ? 0 : (double) depthTotal.get() / samples;
+		}
+
+		private Item take(BlockingQueue<Item> queue) throws InterruptedException {
+			int depth = queue.size();
+			depthSamples.incrementAndGet();
+			depthTotal.addAndGet(depth);
+			int max;
+			while (depth > (max = maxDepth.get()) && !maxDepth.compareAndSet(max, depth)) {
+				//try again
+			}
+
+			long start = System.nanoTime();
+			Item item = queue.take();
+			starvedNanos.addAndGet(System.nanoTime() - start);
+			return item;
+		}
+
+		private void put(BlockingQueue<Item> queue, Item item) throws InterruptedException {
+			long start = System.nanoTime();
+			queue.put(item);
+			blockedNanos.addAndGet(System.nanoTime() - start);
+		}
+
+		private void acquire(Semaphore semaphore) throws InterruptedException {
+			long start = System.nanoTime();
+			semaphore.acquire();
+			blockedNanos.addAndGet(System.nanoTime() - start);
+		}
+	}
+
+	/**
+	 * Runs one thread of a stage. If the thread fails, the error is recorded
+	 * and the other threads are stopped.
+	 * @author mangst
+	 */
+	private abstract static class Worker implements Runnable {
+		private final Stage stage;
+		private final AtomicReference<Throwable> error;
+		private final ExecutorService[] executors;
+
+		/**
+		 * @param stage the stage the thread belongs to
+		 * @param error where the first error is recorded
+		 * @param executors the executors to shut down if the thread fails
+		 */
+		public Worker(Stage stage, AtomicReference<Throwable> error, ExecutorService... executors) {
+			this.stage = stage;
+			this.error = error;
+			this.executors = executors;
+		}
+
+		@Override
+		public void run() {
+			long start = System.nanoTime();
+			try {
+				work();
+			} catch (Throwable e) {
+				//threads that are interrupted because another one failed don't replace its error
+				if (error.compareAndSet(null, e)) {
+					for (ExecutorService executor : executors) {
+						executor.shutdownNow();
+					}
+				}
+			} finally {
+				stage.workerNanos.addAndGet(System.nanoTime() - start);
+			}
+		}
+
+		/**
+		 * Processes files until the stage's queue ends.
+		 * @throws IOException if there's a problem processing a file
+		 * @throws InterruptedException if another thread failed
+		 */
+		protected abstract void work() throws IOException, InterruptedException;
+	}
+
+	/**
+	 * A file that is moving through the pipeline.
+	 * @author mangst
+	 */
+	private static class Item {
+		private final long index;
+		private final Path path;
+		private ByteBuffer bytes;
+		private JavaClass javaClass;
+
+		/**
+		 * @param index the position of the file in the order it was found
+		 * @param path the file
+		 */
+		public Item(long index, Path path) {
+			this.index = index;
+			this.path = path;
+		}
+	}
+}
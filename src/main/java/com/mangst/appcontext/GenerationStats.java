@@ -0,0 +1,310 @@
+package com.mangst.appcontext;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Collects timing and throughput statistics for a run of the generator. The
+ * counters are updated with a few atomic additions per file, so collecting
+ * them costs almost nothing. This class is thread-safe.
+ * <p>
+ * The time spent in the {@link Phase#READ read} and {@link Phase#PARSE
+ * parse} phases is added up across all threads, so when several threads are
+ * used, the total can be larger than the wall-clock time of the run.
+ * </p>
+ * @author mangst
+ */
+public class GenerationStats {
+	/**
+	 * The phases of a run.
+	 */
+	public enum Phase {
+		/**
+		 * Finding the source files.
+		 */
+		WALK,
+
+		/**
+		 * Reading and decoding the source files.
+		 */
+		READ,
+
+		/**
+		 * Extracting the class information from the source files (including
+		 * cache lookups).
+		 */
+		PARSE,
+
+		/**
+		 * Building the &lt;bean /&gt; DOM elements.
+		 */
+		BUILD,
+
+		/**
+		 * Serializing the XML.
+		 */
+		WRITE
+	}
+
+	private final long startNanos = System.nanoTime();
+	private volatile long endNanos;
+	private final AtomicLongArray phaseNanos = new AtomicLongArray(Phase.values().length);
+	private final AtomicLong files = new AtomicLong();
+	private final AtomicLong bytes = new AtomicLong();
+	private final AtomicLong beans = new AtomicLong();
+	private final AtomicLong properties = new AtomicLong();
+	private final AtomicLong constructorArgs = new AtomicLong();
+	private volatile int cacheHits = -1, cacheMisses = -1;
+	private volatile List<GenerationPipeline.Stage> stages = Collections.emptyList();
+
+	/**
+	 * Creates a new statistics object. The run's wall-clock time is measured
+	 * from this point.
+	 */
+	public GenerationStats() {
+		//reset the heap high-water mark so it only covers this run
+		for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+			if (pool.getType() == MemoryType.HEAP && pool.isValid()) {
+				pool.resetPeakUsage();
+			}
+		}
+	}
+
+	/**
+	 * Adds time to a phase.
+	 * @param phase the phase
+	 * @param nanos the time in nanoseconds
+	 */
+	public void addTime(Phase phase, long nanos) {
+		phaseNanos.addAndGet(phase.ordinal(), nanos);
+	}
+
+	/**
+	 * Records that a source file was processed.
+	 */
+	public void addFile() {
+		files.incrementAndGet();
+	}
+
+	/**
+	 * Records that bytes were read from a source file. Files whose class
+	 * information is taken from the cache are usually not read at all.
+	 * @param count the number of bytes
+	 */
+	public void addBytes(long count) {
+		bytes.addAndGet(count);
+	}
+
+	/**
+	 * Records that a &lt;bean /&gt; element was built.
+	 * @param javaClass the class information the bean was built from
+	 */
+	public void addBean(JavaClass javaClass) {
+		beans.incrementAndGet();
+		properties.addAndGet(javaClass.properties.size());
+		if (javaClass.constructors.size() == 1) {
+			constructorArgs.addAndGet(javaClass.constructors.get(0).size());
+		}
+	}
+
+	/**
+	 * Records the cache statistics of the run.
+	 * @param cache the parse cache
+	 */
+	public void setCache(ParseCache cache) {
+		cacheHits = cache.getHits();
+		cacheMisses = cache.getMisses();
+	}
+
+	/**
+	 * Records the metrics of each stage of the run, if it was run by a
+	 * {@link GenerationPipeline}.
+	 * @param stages the stages
+	 */
+	public void setStages(List<GenerationPipeline.Stage> stages) {
+		this.stages = stages;
+	}
+
+	/**
+	 * Marks the end of the run.
+	 */
+	public void finish() {
+		endNanos = System.nanoTime();
+	}
+
+	/**
+	 * Gets the time spent in a phase.
+	 * @param phase the phase
+	 * @return the time in milliseconds
+	 */
+	public long getMillis(Phase phase) {
+		return TimeUnit.NANOSECONDS.toMillis(phaseNanos.get(phase.ordinal()));
+	}
+
+	/**
+	 * Gets the wall-clock time of the run.
+	 * @return the time in milliseconds (up until now, if {@link #finish} has
+	 * not been called)
+	 */
+	public long getWallMillis() {
+		long end = (endNanos == 0) ? System.nanoTime() : endNanos;
+		return TimeUnit.NANOSECONDS.toMillis(end - startNanos);
+	}
+
+	/**
+	 * Gets the number of source files that were processed.
+	 * @return the number of files
+	 */
+	public long getFiles() {
+		return files.get();
+	}
+
+	/**
+	 * Gets the number of bytes that were read from the source files.
+	 * @return the number of bytes
+	 */
+	public long getBytes() {
+		return bytes.get();
+	}
+
+	/**
+	 * Gets the number of &lt;bean /&gt; elements that were built.
+	 * @return the number of beans
+	 */
+	public long getBeans() {
+		return beans.get();
+	}
+
+	/**
+	 * Gets the number of &lt;property /&gt; elements that were built.
+	 * @return the number of properties
+	 */
+	public long getProperties() {
+		return properties.get();
+	}
+
+	/**
+	 * Gets the number of &lt;constructor-arg /&gt; elements that were built.
+	 * @return the number of constructor arguments
+	 */
+	public long getConstructorArgs() {
+		return constructorArgs.get();
+	}
+
+	/**
+	 * Gets the highest amount of heap memory that was used during the run.
+	 * @return the peak heap usage in bytes
+	 */
+	public long getPeakHeapBytes() {
+		long peak = 0;
+		for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+			if (pool.getType() == MemoryType.HEAP && pool.isValid()) {
+				peak += pool.getPeakUsage().getUsed();
+			}
+		}
+		return peak;
+	}
+
+	/**
+	 * Formats the statistics as human-readable text.
+	 * @return the text
+	 */
+	public String toText() {
+		long wall = getWallMillis();
+		StringBuilder sb = new StringBuilder();
+		sb.append(String.format(Locale.US, "Total time:       %,d ms%n", wall));
+		for (Phase phase : Phase.values()) {
+			String name = phase.name().charAt(0) + phase.name().substring(1).toLowerCase(Locale.US) + ":";
+			sb.append(String.format(Locale.US, "  %-16s%,d ms%n", name, getMillis(phase)));
+		}
+		sb.append(String.format(Locale.US, "Files:            %,d (%,.0f files/sec)%n", getFiles(), filesPerSecond(wall)));
+		sb.append(String.format(Locale.US, "Bytes read:       %,d (%,.2f MB/sec)%n", getBytes(), megabytesPerSecond(wall)));
+		if (cacheHits >= 0) {
+			sb.append(String.format(Locale.US, "Cache:            %,d hit(s), %,d miss(es)%n", cacheHits, cacheMisses));
+		}
+		sb.append(String.format(Locale.US, "Beans:            %,d%n", getBeans()));
+		sb.append(String.format(Locale.US, "Properties:       %,d%n", getProperties()));
+		sb.append(String.format(Locale.US, "Constructor args: %,d%n", getConstructorArgs()));
+		sb.append(String.format(Locale.US, "Peak heap:        %,d MB%n", getPeakHeapBytes() / (1024 * 1024)));
+		if (!stages.isEmpty()) {
+			sb.append(String.format(Locale.US, "Pipeline stages:%n"));
+			for (GenerationPipeline.Stage stage : stages) {
+				String name = stage.getName().substring(0, 1).toUpperCase(Locale.US) + stage.getName().substring(1) + ":";
+				sb.append(String.format(Locale.US, "  %-16s%,d thread(s), %,d file(s), busy %,d ms, starved %,d ms, blocked %,d ms", name, stage.getThreads(), stage.getItems(), stage.getBusyMillis(), stage.getStarvedMillis(), stage.getBlockedMillis()));
+				if (stage.getQueueCapacity() > 0) {
+					sb.append(String.format(Locale.US, ", queue depth %,.1f avg, %,d max (of %,d)", stage.getAverageQueueDepth(), stage.getMaxQueueDepth(), stage.getQueueCapacity()));
+				}
+				sb.append(String.format("%n"));
+			}
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Formats the statistics as a single-line JSON object.
+	 * @return the JSON object
+	 */
+	public String toJson() {
+		long wall = getWallMillis();
+		StringBuilder sb = new StringBuilder();
+		sb.append("{\"wallMillis\":").append(wall);
+		sb.append(",\"phaseMillis\":{");
+		for (Phase phase : Phase.values()) {
+			if (phase.ordinal() > 0) {
+				sb.append(',');
+			}
+			sb.append('"').append(phase.name().toLowerCase(Locale.US)).append("\":").append(getMillis(phase));
+		}
+		sb.append('}');
+		sb.append(",\"files\":").append(getFiles());
+		sb.append(",\"bytes\":").append(getBytes());
+		if (cacheHits >= 0) {
+			sb.append(",\"cacheHits\":").append(cacheHits);
+			sb.append(",\"cacheMisses\":").append(cacheMisses);
+		}
+		sb.append(",\"beans\":").append(getBeans());
+		sb.append(",\"properties\":").append(getProperties());
+		sb.append(",\"constructorArgs\":").append(getConstructorArgs());
+		sb.append(",\"filesPerSecond\":").append(String.format(Locale.US, "%.1f", filesPerSecond(wall)));
+		sb.append(",\"megabytesPerSecond\":").append(String.format(Locale.US, "%.2f", megabytesPerSecond(wall)));
+		sb.append(",\"peakHeapBytes\":").append(getPeakHeapBytes());
+		if (!stages.isEmpty()) {
+			sb.append(",\"stages\":[");
+			for (GenerationPipeline.Stage stage : stages) {
+				if (sb.charAt(sb.length() - 1) != '[') {
+					sb.append(',');
+				}
+				sb.append("{\"name\":\"").append(stage.getName()).append('"');
+				sb.append(",\"threads\":").append(stage.getThreads());
+				sb.append(",\"files\":").append(stage.getItems());
+				sb.append(",\"busyMillis\":").append(stage.getBusyMillis());
+				sb.append(",\"starvedMillis\":").append(stage.getStarvedMillis());
+				sb.append(",\"blockedMillis\":").append(stage.getBlockedMillis());
+				if (stage.getQueueCapacity() > 0) {
+					sb.append(",\"queueCapacity\":").append(stage.getQueueCapacity());
+					sb.append(",\"queueMaxDepth\":").append(stage.getMaxQueueDepth());
+					sb.append(",\"queueAverageDepth\":").append(String.format(Locale.US, "%.1f", stage.getAverageQueueDepth()));
+				}
+				sb.append('}');
+			}
+			sb.append(']');
+		}
+		sb.append('}');
+		return sb.toString();
+	}
+
+	private double filesPerSecond(long wallMillis) {
+		return (wallMillis == 0) ? 0 : getFiles() * 1000.0 / wallMillis;
+	}
+
+	private double megabytesPerSecond(long wallMillis) {
+		return (wallMillis == 0) ? 0 : getBytes() / (1024.0 * 1024.0) * 1000.0 / wallMillis;
+	}
+}
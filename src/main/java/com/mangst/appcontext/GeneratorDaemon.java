@@ -0,0 +1,346 @@
+package com.mangst.appcontext;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.attribute.PosixFilePermission;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * A long-running process that generates application contexts on behalf of
+ * {@link DaemonClient}. Running many generations in the same JVM avoids
+ * paying for JVM startup, class loading, XML factory lookups, and JIT
+ * warm-up every time. The daemon can also keep the class information of
+ * every file it parses in memory, so that files that didn't change since the
+ * last request are not parsed again.
+ * <p>
+ * The daemon only listens on the loopback interface. When it starts, it
+ * writes its port and a random token to a file that only the current user
+ * can read. Clients must send the token before their request is run.
+ * Requests are run concurrently, each on its own thread. Requests with the
+ * same parser and character encoding share the in-memory parse cache.
+ * </p>
+ * <p>
+ * <b>Protocol:</b> The client sends the token, its working directory, the
+ * number of arguments (or -1 to stop the daemon), and each argument (all
+ * strings are written with {@link DataOutputStream#writeUTF}). The daemon
+ * responds with a series of frames. Each frame starts with a type byte.
+ * {@link #STDOUT} and {@link #STDERR} frames contain a length and that many
+ * bytes of output. The {@link #EXIT} frame contains the exit code and is the
+ * last frame.
+ * </p>
+ * @author mangst
+ */
+public class GeneratorDaemon {
+	/**
+	 * The file that the daemon's port and token are written to if no other
+	 * file is specified.
+	 */
+	public static final File DEFAULT_DAEMON_FILE = new File(System.getProperty("user.home"), ".appcontext-daemon");
+
+	/**
+	 * A frame of standard output.
+	 */
+	static final int STDOUT = 1;
+
+	/**
+	 * A frame of standard error.
+	 */
+	static final int STDERR = 2;
+
+	/**
+	 * The exit code of the request.
+	 */
+	static final int EXIT = 3;
+
+	/**
+	 * The argument count that tells the daemon to stop.
+	 */
+	static final int STOP = -1;
+
+	private final ServerSocket server;
+	private final String token;
+	private final boolean memoryCache;
+	private final Map<String, ParseCache> parseCaches = new HashMap<String, ParseCache>();
+	private File daemonFile;
+	private volatile boolean stopped = false;
+
+	/**
+	 * Creates a daemon and binds it to a port on the loopback interface.
+	 * @param port the port or 0 to use any free port
+	 * @param memoryCache true to keep the class information of each parsed
+	 * file in memory between requests (requests that specify a cache file use
+	 * that file instead), false not to
+	 * @throws IOException if the port can't be bound
+	 */
+	public GeneratorDaemon(int port, boolean memoryCache) throws IOException {
+		server = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+		this.memoryCache = memoryCache;
+
+		byte[] random = new byte[16];
+		new SecureRandom().nextBytes(random);
+		StringBuilder sb = new StringBuilder();
+		for (byte b : random) {
+			sb.append(String.format("%02x", b));
+		}
+		token = sb.toString();
+	}
+
+	/**
+	 * Gets the port the daemon is listening on.
+	 * @return the port
+	 */
+	public int getPort() {
+		return server.getLocalPort();
+	}
+
+	/**
+	 * Writes the daemon's port and token to a file, so that clients can find
+	 * the daemon. The file is deleted when the daemon stops.
+	 * @param file the file
+	 * @throws IOException if there's a problem writing the file
+	 */
+	public void writeDaemonFile(File file) throws IOException {
+		Properties properties = new Properties();
+		properties.setProperty("port", Integer.toString(getPort()));
+		properties.setProperty("token", token);
+
+		//only the current user should be able to read the token
+		file.delete();
+		file.createNewFile();
+		try {
+			Files.setPosixFilePermissions(file.toPath(), EnumSet.of(PosixFilePermission.OWNER_READ, PosixFilePermission.OWNER_WRITE));
+		} catch (UnsupportedOperationException e) {
+			file.setReadable(false, false);
+			file.setReadable(true, true);
+		}
+		OutputStream out = new FileOutputStream(file);
+		try {
+			properties.store(out, "Spring Application Context Generator daemon");
+		} finally {
+			out.close();
+		}
+		daemonFile = file;
+	}
+
+	/**
+	 * Accepts requests until {@link #stop} is called or a client asks the
+	 * daemon to stop.
+	 * @throws IOException if there's a problem accepting a connection
+	 */
+	public void run() throws IOException {
+		while (!stopped) {
+			final Socket socket;
+			try {
+				socket = server.accept();
+			} catch (SocketException e) {
+				if (stopped) {
+					break;
+				}
+				throw e;
+			}
+
+			Thread thread = new Thread("appcontext-daemon-request") {
+				@Override
+				public void run() {
+					try {
+						handle(socket);
+					} catch (IOException e) {
+						//the client went away
+					} finally {
+						try {
+							socket.close();
+						} catch (IOException e) {
+							//ignore
+						}
+					}
+				}
+			};
+			thread.setDaemon(true);
+			thread.start();
+		}
+	}
+
+	/**
+	 * Stops accepting requests and deletes the daemon file.
+	 */
+	public void stop() {
+		stopped = true;
+		if (daemonFile != null) {
+			daemonFile.delete();
+		}
+		try {
+			server.close();
+		} catch (IOException e) {
+			//ignore
+		}
+	}
+
+	/**
+	 * Gets the in-memory parse cache for a configuration.
+	 * @param configuration the parser and character encoding
+	 * @return the cache or null if the daemon does not keep a cache in memory
+	 */
+	ParseCache getParseCache(String configuration) {
+		if (!memoryCache) {
+			return null;
+		}
+		synchronized (parseCaches) {
+			ParseCache cache = parseCaches.get(configuration);
+			if (cache == null) {
+				cache = new ParseCache(configuration);
+				parseCaches.put(configuration, cache);
+			}
+			return cache;
+		}
+	}
+
+	/**
+	 * Keeps the in-memory parse cache for the next request.
+	 * @param cache the cache that was used by the last request
+	 */
+	void putParseCache(ParseCache cache) {
+		//concurrent requests share the same cache (it is thread-safe), so only access to the map is serialized
+		ParseCache next = cache.nextRun();
+		synchronized (parseCaches) {
+			parseCaches.put(cache.getConfiguration(), next);
+		}
+	}
+
+	/**
+	 * Reads a request, runs it, and streams the output back to the client.
+	 * @param socket the connection to the client
+	 * @throws IOException if there's a problem communicating with the client
+	 */
+	private void handle(Socket socket) throws IOException {
+		DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+		final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+
+		//compare in constant time, so the token can't be guessed one character at a time
+		if (!MessageDigest.isEqual(token.getBytes(StandardCharsets.UTF_8), in.readUTF().getBytes(StandardCharsets.UTF_8))) {
+			return;
+		}
+		File workingDir = new File(in.readUTF());
+		int argc = in.readInt();
+		if (argc == STOP) {
+			stop();
+			writeExit(out, 0);
+			return;
+		}
+		String[] args = new String[argc];
+		for (int i = 0; i < argc; i++) {
+			args[i] = in.readUTF();
+		}
+
+		PrintStream stdout = new PrintStream(new BufferedOutputStream(new FrameOutputStream(out, STDOUT), 64 * 1024));
+		PrintStream stderr = new PrintStream(new BufferedOutputStream(new FrameOutputStream(out, STDERR)), true);
+		int status;
+		try {
+			status = ApplicationContextGenerator.run(new Arguments(args), workingDir, stdout, stderr, this);
+		} catch (Exception e) {
+			e.printStackTrace(stderr);
+			status = 1;
+		}
+		stdout.flush();
+		stderr.flush();
+		writeExit(out, status);
+	}
+
+	private static void writeExit(DataOutputStream out, int status) throws IOException {
+		synchronized (out) {
+			out.writeByte(EXIT);
+			out.writeInt(status);
+			out.flush();
+		}
+	}
+
+	/**
+	 * Runs the daemon from the command line.
+	 * @param arguments the command line arguments
+	 * @return the exit code
+	 * @throws IOException if the daemon can't be started
+	 */
+	static int main(Arguments arguments) throws IOException {
+		int port;
+		try {
+			port = arguments.valueInt(null, "port", 0);
+		} catch (NumberFormatException e) {
+			System.err.println("The port must be a number (example: \"--port=7654\").");
+			return 1;
+		}
+		String daemonFile = arguments.value(null, "daemon-file");
+		boolean memoryCache = arguments.exists(null, "memory-cache");
+
+		final GeneratorDaemon daemon = new GeneratorDaemon(port, memoryCache);
+		daemon.writeDaemonFile((daemonFile == null) ? DEFAULT_DAEMON_FILE : new File(daemonFile));
+		Runtime.getRuntime().addShutdownHook(new Thread() {
+			@Override
+			public void run() {
+				daemon.stop();
+			}
+		});
+		System.err.println("Daemon listening on port " + daemon.getPort() + ". Stop it with \"--stop-daemon\" or Ctrl+C.");
+		daemon.run();
+		return 0;
+	}
+
+	/**
+	 * Wraps everything that is written to it in frames.
+	 */
+	private static class FrameOutputStream extends OutputStream {
+		private final DataOutputStream out;
+		private final int type;
+
+		/**
+		 * @param out the connection to the client
+		 * @param type the frame type
+		 */
+		public FrameOutputStream(DataOutputStream out, int type) {
+			this.out = out;
+			this.type = type;
+		}
+
+		@Override
+		public void write(int b) throws IOException {
+			write(new byte[] { (byte) b }, 0, 1);
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			if (len == 0) {
+				return;
+			}
+
+			//stdout and stderr share the same connection
+			synchronized (out) {
+				out.writeByte(type);
+				out.writeInt(len);
+				out.write(b, off, len);
+			}
+		}
+
+		@Override
+		public void flush() throws IOException {
+			synchronized (out) {
+				out.flush();
+			}
+		}
+	}
+}
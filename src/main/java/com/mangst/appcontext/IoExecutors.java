@@ -0,0 +1,75 @@
+package com.mangst.appcontext;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Creates the executors that files are read on. Reading a file over a network
+ * file system is dominated by round-trip latency, not CPU, so many reads are
+ * issued at once. On Java 21 and later, each read runs on its own virtual
+ * thread. The virtual thread API is looked up reflectively, since this
+ * project is compiled for Java 8. On older JVMs, a fixed pool of platform
+ * threads is used instead.
+ * @author mangst
+ */
+public class IoExecutors {
+	/**
+	 * Creates a new virtual thread for each task or null if virtual threads
+	 * are not supported.
+	 */
+	private static final Method newVirtualThreadPerTaskExecutor = findVirtualThreadMethod();
+
+	private IoExecutors() {
+		//hide constructor
+	}
+
+	/**
+	 * Determines whether the JVM supports virtual threads.
+	 * @return true if it does, false if not
+	 */
+	public static boolean isVirtualThreadSupported() {
+		return newVirtualThreadPerTaskExecutor != null;
+	}
+
+	/**
+	 * Creates an executor for file reads. The caller is responsible for
+	 * limiting how many tasks run at once (a virtual thread executor creates
+	 * a new thread for every task).
+	 * @param threads the number of platform threads to create if virtual
+	 * threads are not supported
+	 * @return the executor (it must be shut down when it is no longer needed)
+	 */
+	public static ExecutorService newExecutor(int threads) {
+		if (newVirtualThreadPerTaskExecutor != null) {
+			try {
+				return (ExecutorService) newVirtualThreadPerTaskExecutor.invoke(null);
+			} catch (IllegalAccessException e) {
+				//fall back to platform threads
+			} catch (InvocationTargetException e) {
+				//virtual threads are a preview feature on Java 19 and 20, and throw an exception unless preview features are enabled
+			}
+		}
+
+		final AtomicInteger count = new AtomicInteger();
+		return Executors.newFixedThreadPool(threads, new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "appcontext-io-" + count.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+	}
+
+	private static Method findVirtualThreadMethod() {
+		try {
+			return Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+		} catch (NoSuchMethodException e) {
+			return null;
+		}
+	}
+}
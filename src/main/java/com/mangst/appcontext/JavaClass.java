@@ -0,0 +1,178 @@
+package com.mangst.appcontext;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The information that is extracted from a Java class in order to build its
+ * &lt;bean /&gt; element.
+ * @author mangst
+ */
+public class JavaClass {
+	/**
+	 * The name of the package the class is in or null if it's in the default
+	 * package.
+	 */
+	public String packageName;
+
+	/**
+	 * The simple name of the class.
+	 */
+	public String className;
+
+	/**
+	 * The class' import declarations, not including static imports (example:
+	 * "com.example.FooDao" or "com.example.dao.*"). These are used to resolve
+	 * the simple type names of the class' properties and constructor
+	 * parameters.
+	 */
+	public List<String> imports = new ArrayList<String>();
+
+	/**
+	 * The parameter types of each of the class' public constructors. An empty
+	 * list represents the default constructor.
+	 */
+	public List<List<String>> constructors = new ArrayList<List<String>>();
+
+	/**
+	 * The class' public fields and setter methods.
+	 */
+	public List<ClassProperty> properties = new ArrayList<ClassProperty>();
+
+	/**
+	 * Writes this class information in a compact binary form.
+	 * @param out the output stream
+	 * @throws IOException if there's a problem writing to the stream
+	 * @see #read
+	 */
+	public void write(DataOutput out) throws IOException {
+		writeString(out, packageName);
+		writeString(out, className);
+
+		out.writeInt(imports.size());
+		for (String importStr : imports) {
+			writeString(out, importStr);
+		}
+
+		out.writeInt(constructors.size());
+		for (List<String> constructor : constructors) {
+			out.writeInt(constructor.size());
+			for (String type : constructor) {
+				writeString(out, type);
+			}
+		}
+
+		out.writeInt(properties.size());
+		for (ClassProperty p : properties) {
+			writeString(out, p.name);
+			writeString(out, p.type);
+			writeString(out, p.value);
+		}
+	}
+
+	/**
+	 * Reads class information that was written with {@link #write}.
+	 * @param in the input stream
+	 * @return the class information
+	 * @throws IOException if there's a problem reading from the stream or the
+	 * data is corrupt
+	 */
+	public static JavaClass read(DataInput in) throws IOException {
+		JavaClass javaClass = new JavaClass();
+		javaClass.packageName = readString(in);
+		javaClass.className = readString(in);
+
+		int importCount = readCount(in);
+		for (int i = 0; i < importCount; i++) {
+			javaClass.imports.add(readString(in));
+		}
+
+		int constructorCount = readCount(in);
+		for (int i = 0; i < constructorCount; i++) {
+			int parameterCount = readCount(in);
+			List<String> constructor = new ArrayList<String>(Math.min(parameterCount, 16));
+			for (int j = 0; j < parameterCount; j++) {
+				constructor.add(readString(in));
+			}
+			javaClass.constructors.add(constructor);
+		}
+
+		int propertyCount = readCount(in);
+		for (int i = 0; i < propertyCount; i++) {
+			ClassProperty p = new ClassProperty();
+			p.name = readString(in);
+			p.type = readString(in);
+			p.value = readString(in);
+			javaClass.properties.add(p);
+		}
+
+		return javaClass;
+	}
+
+	/**
+	 * Writes a string, which may be null. Unlike
+	 * {@link DataOutput#writeUTF}, there is no limit on the string's length.
+	 * @param out the output stream
+	 * @param s the string
+	 * @throws IOException if there's a problem writing to the stream
+	 */
+	static void writeString(DataOutput out, String s) throws IOException {
+		if (s == null) {
+			out.writeInt(-1);
+			return;
+		}
+		byte bytes[] = s.getBytes(StandardCharsets.UTF_8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	/**
+	 * Reads a string that was written with {@link #writeString}.
+	 * @param in the input stream
+	 * @return the string (may be null)
+	 * @throws IOException if there's a problem reading from the stream or the
+	 * length is invalid
+	 */
+	static String readString(DataInput in) throws IOException {
+		int length = in.readInt();
+		if (length == -1) {
+			return null;
+		}
+		if (length < 0) {
+			throw new IOException("Invalid string length: " + length);
+		}
+
+		//read long strings in chunks so that a corrupt length can't allocate more memory than there is data
+		byte bytes[] = new byte[Math.min(length, 8192)];
+		int read = 0;
+		while (read < length) {
+			if (read == bytes.length) {
+				bytes = Arrays.copyOf(bytes, (int) Math.min(length, bytes.length * 2L));
+			}
+			int n = bytes.length - read;
+			in.readFully(bytes, read, n);
+			read += n;
+		}
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Reads the number of items in a list.
+	 * @param in the input stream
+	 * @return the number of items
+	 * @throws IOException if there's a problem reading from the stream or the
+	 * number is negative
+	 */
+	static int readCount(DataInput in) throws IOException {
+		int count = in.readInt();
+		if (count < 0) {
+			throw new IOException("Invalid count: " + count);
+		}
+		return count;
+	}
+}
@@ -0,0 +1,15 @@
+package com.mangst.appcontext;
+
+/**
+ * Extracts the information needed to build a &lt;bean /&gt; element from Java
+ * source code. Implementations must be thread-safe.
+ * @author mangst
+ */
+public interface JavaSourceParser {
+	/**
+	 * Parses a Java source file.
+	 * @param javaSource the Java source code
+	 * @return the class information or null if there were no public classes
+	 */
+	JavaClass parse(CharSequence javaSource);
+}
@@ -0,0 +1,98 @@
+package com.mangst.appcontext;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Finds the source directories of the modules of a Maven multi-module build.
+ * Every directory under the root that contains a "pom.xml" file is treated as
+ * a module, so modules are found whether or not they are listed in a parent
+ * POM. Symbolic links are not followed, and the directories in
+ * {@link SourceWalker#DEFAULT_EXCLUDED_DIRECTORIES} and the modules' "src"
+ * directories are not searched.
+ * <p>
+ * The source directories are returned in a predictable order: each module's
+ * source directory comes before the source directories of the modules nested
+ * inside it, and sibling modules are sorted by name.
+ * </p>
+ * @author mangst
+ */
+public class ModuleFinder {
+	/**
+	 * The path of a module's source directory, relative to the module's
+	 * directory.
+	 */
+	public static final String DEFAULT_SOURCE_DIRECTORY = "src/main/java";
+
+	private String sourceDirectory = DEFAULT_SOURCE_DIRECTORY;
+
+	/**
+	 * Sets the path of each module's source directory.
+	 * @param sourceDirectory the path, relative to the module's directory
+	 * (defaults to {@link #DEFAULT_SOURCE_DIRECTORY}, use "target/classes" to
+	 * find compiled classes)
+	 * @return this
+	 */
+	public ModuleFinder setSourceDirectory(String sourceDirectory) {
+		this.sourceDirectory = sourceDirectory;
+		return this;
+	}
+
+	/**
+	 * Finds the source directories of the modules under a directory. Modules
+	 * that don't have a source directory are skipped.
+	 * @param root the directory to search (usually the directory of the
+	 * parent POM)
+	 * @return the source directories
+	 * @throws IOException if there's a problem reading a directory
+	 */
+	public List<File> find(File root) throws IOException {
+		List<File> sourceDirs = new ArrayList<File>();
+		find(root.toPath(), sourceDirs);
+		return sourceDirs;
+	}
+
+	private void find(Path dir, List<File> sourceDirs) throws IOException {
+		boolean module = Files.isRegularFile(dir.resolve("pom.xml"));
+		if (module) {
+			Path sourceDir = dir.resolve(sourceDirectory.replace("/", dir.getFileSystem().getSeparator()));
+			if (Files.isDirectory(sourceDir)) {
+				sourceDirs.add(sourceDir.toFile());
+			}
+		}
+
+		List<Path> children = new ArrayList<Path>();
+		try {
+			DirectoryStream<Path> stream = Files.newDirectoryStream(dir);
+			try {
+				for (Path child : stream) {
+					if (Files.isDirectory(child, LinkOption.NOFOLLOW_LINKS)) {
+						children.add(child);
+					}
+				}
+			} finally {
+				stream.close();
+			}
+		} catch (NoSuchFileException e) {
+			//the directory was deleted while it was being searched
+			return;
+		}
+		Collections.sort(children);
+
+		for (Path child : children) {
+			String name = child.getFileName().toString();
+			if (SourceWalker.DEFAULT_EXCLUDED_DIRECTORIES.contains(name) || (module && "src".equals(name))) {
+				continue;
+			}
+			find(child, sourceDirs);
+		}
+	}
+}
@@ -0,0 +1,190 @@
+package com.mangst.appcontext;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * The set of packages to generate beans for. The packages are stored in a
+ * prefix tree, so overlapping selections (for example, "com.acme" with
+ * sub-packages and "com.acme.billing") are collapsed and every package is
+ * either selected or not. When both an inclusion and an exclusion apply to a
+ * package, the one that names the more specific package wins.
+ * @author mangst
+ */
+public class PackageSelection {
+	/**
+	 * The default package.
+	 */
+	private final Node root = new Node();
+
+	/**
+	 * Selects a package.
+	 * @param packageName the package name (a blank value or null for the
+	 * default package)
+	 * @param recurse true to also select its sub-packages, false not to
+	 * @return this
+	 */
+	public PackageSelection include(String packageName, boolean recurse) {
+		Node node = node(packageName);
+		node.included = true;
+		node.recursive |= recurse;
+		return this;
+	}
+
+	/**
+	 * Deselects a package and its sub-packages.
+	 * @param packageName the package name
+	 * @return this
+	 */
+	public PackageSelection exclude(String packageName) {
+		node(packageName).excluded = true;
+		return this;
+	}
+
+	/**
+	 * Determines whether a package is selected.
+	 * @param packageName the package name (a blank value for the default
+	 * package)
+	 * @return true if it is selected, false if not
+	 */
+	public boolean contains(String packageName) {
+		Node node = root;
+		boolean inherited = false;
+		for (String name : split(packageName)) {
+			inherited = node.inherit(inherited);
+			node = node.children.get(name);
+			if (node == null) {
+				return inherited;
+			}
+		}
+		if (node.excluded) {
+			return false;
+		}
+		return node.included || inherited;
+	}
+
+	/**
+	 * Determines whether a package or any of its sub-packages are selected.
+	 * This is used to decide whether a directory has to be walked.
+	 * @param packageName the package name (a blank value for the default
+	 * package)
+	 * @return true if the package or one of its sub-packages is selected,
+	 * false if not
+	 */
+	public boolean mayContain(String packageName) {
+		Node node = root;
+		boolean inherited = false;
+		for (String name : split(packageName)) {
+			inherited = node.inherit(inherited);
+			node = node.children.get(name);
+			if (node == null) {
+				return inherited;
+			}
+		}
+		return node.inherit(inherited) || node.selectsAnything();
+	}
+
+	/**
+	 * Gets the smallest list of packages that covers the selection. A package
+	 * is left out if it's already covered by a parent package that includes
+	 * its sub-packages.
+	 * @return the package names, in alphabetical order (a blank value for the
+	 * default package)
+	 */
+	public List<String> getPackages() {
+		List<String> packages = new ArrayList<String>();
+		collect(root, "", false, packages);
+		return packages;
+	}
+
+	private static void collect(Node node, String packageName, boolean inherited, List<String> packages) {
+		if (!node.excluded && (node.included || node.recursive) && !inherited) {
+			packages.add(packageName);
+		}
+		boolean childInherited = node.inherit(inherited);
+		for (Map.Entry<String, Node> entry : node.children.entrySet()) {
+			String childName = packageName.isEmpty() ? entry.getKey() : packageName + "." + entry.getKey();
+			collect(entry.getValue(), childName, childInherited, packages);
+		}
+	}
+
+	/**
+	 * Gets the node of a package, creating it if it doesn't exist.
+	 * @param packageName the package name
+	 * @return the node
+	 */
+	private Node node(String packageName) {
+		Node node = root;
+		for (String name : split(packageName)) {
+			Node child = node.children.get(name);
+			if (child == null) {
+				child = new Node();
+				node.children.put(name, child);
+			}
+			node = child;
+		}
+		return node;
+	}
+
+	/**
+	 * Splits a package name into its parts, ignoring whitespace and extra
+	 * dots.
+	 * @param packageName the package name (a blank value or null for the
+	 * default package)
+	 * @return the parts (empty for the default package)
+	 */
+	private static List<String> split(String packageName) {
+		List<String> names = new ArrayList<String>();
+		if (packageName == null) {
+			return names;
+		}
+		for (String name : packageName.split("\\.")) {
+			name = name.trim();
+			if (!name.isEmpty()) {
+				names.add(name);
+			}
+		}
+		return names;
+	}
+
+	/**
+	 * A package in the prefix tree.
+	 */
+	private static class Node {
+		private final Map<String, Node> children = new TreeMap<String, Node>();
+		private boolean included, recursive, excluded;
+
+		/**
+		 * Determines whether the sub-packages of this package are selected
+		 * (unless they are listed in the tree themselves).
+		 * @param inherited whether this package's parent passes its selection
+		 * down
+		 * @return true if the sub-packages are selected, false if not
+		 */
+		public boolean inherit(boolean inherited) {
+			if (excluded) {
+				return false;
+			}
+			return recursive || inherited;
+		}
+
+		/**
+		 * Determines whether this package or any of its sub-packages are
+		 * explicitly selected.
+		 * @return true if something is selected, false if not
+		 */
+		public boolean selectsAnything() {
+			if (!excluded && (included || recursive)) {
+				return true;
+			}
+			for (Node child : children.values()) {
+				if (child.selectsAnything()) {
+					return true;
+				}
+			}
+			return false;
+		}
+	}
+}
@@ -0,0 +1,337 @@
+package com.mangst.appcontext;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.CRC32;
+
+/**
+ * Remembers the class information that was extracted from each source file so
+ * that files that haven't changed since the last run don't have to be parsed
+ * again. A file is considered unchanged if its size and last-modified time
+ * are the same as last time. If only its last-modified time changed, its
+ * contents are hashed and compared with the hash from last time. This class is
+ * thread-safe.
+ * @author mangst
+ */
+public class ParseCache {
+	/**
+	 * Identifies the cache file format.
+	 */
+	private static final int MAGIC = 0x41434743; //"ACGC"
+
+	/**
+	 * The version of the cache file format.
+	 */
+	private static final int VERSION = 2;
+
+	/**
+	 * Describes how the cached information was produced (the parser and
+	 * character encoding). If it doesn't match when the cache is loaded, the
+	 * cache is discarded.
+	 */
+	private final String configuration;
+
+	/**
+	 * The cache entries from the last run, keyed by absolute file path.
+	 */
+	private final Map<String, Entry> previous;
+
+	/**
+	 * The cache entries of the files that were looked up in this run. Only
+	 * these are saved, so deleted files are dropped from the cache.
+	 */
+	private final Map<String, Entry> current = new ConcurrentHashMap<String, Entry>();
+
+	private final AtomicInteger hits = new AtomicInteger();
+	private final AtomicInteger misses = new AtomicInteger();
+
+	/**
+	 * Creates an empty cache.
+	 * @param configuration describes how the cached information is produced
+	 * (for example, the parser and character encoding that are used)
+	 */
+	public ParseCache(String configuration) {
+		this(configuration, new ConcurrentHashMap<String, Entry>());
+	}
+
+	private ParseCache(String configuration, Map<String, Entry> previous) {
+		this.configuration = configuration;
+		this.previous = previous;
+	}
+
+	/**
+	 * Loads a cache from disk.
+	 * @param file the cache file
+	 * @param configuration describes how the cached information is produced
+	 * (for example, the parser and character encoding that are used)
+	 * @return the cache or an empty cache if the file doesn't exist, is
+	 * corrupt, or was produced with a different configuration
+	 * @throws IOException if the file can't be opened
+	 */
+	public static ParseCache load(File file, String configuration) throws IOException {
+		if (!file.exists()) {
+			return new ParseCache(configuration);
+		}
+
+		DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 64 * 1024));
+		try {
+			if (in.readInt() != MAGIC || in.readInt() != VERSION || !configuration.equals(JavaClass.readString(in))) {
+				return new ParseCache(configuration);
+			}
+
+			int count = JavaClass.readCount(in);
+			Map<String, Entry> entries = new ConcurrentHashMap<String, Entry>(Math.min(count, 64 * 1024) * 4 / 3 + 1);
+			for (int i = 0; i < count; i++) {
+				String path = JavaClass.readString(in);
+				long size = in.readLong();
+				long lastModified = in.readLong();
+				int hash = in.readInt();
+				JavaClass javaClass = in.readBoolean() ? JavaClass.read(in) : null;
+				entries.put(path, new Entry(size, lastModified, hash, javaClass));
+			}
+			return new ParseCache(configuration, entries);
+		} catch (IOException | RuntimeException e) {
+			//the file is truncated or corrupt, so start over
+			return new ParseCache(configuration);
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Saves the cache to disk. Only the files that were looked up since the
+	 * cache was loaded are saved. The file is written atomically, so an
+	 * interrupted save does not corrupt the existing cache.
+	 * @param file the cache file
+	 * @throws IOException if there's a problem writing the file
+	 */
+	public void save(File file) throws IOException {
+		File parent = file.getAbsoluteFile().getParentFile();
+		File temp = File.createTempFile(file.getName(), ".tmp", parent);
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp), 64 * 1024));
+		try {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			JavaClass.writeString(out, configuration);
+
+			out.writeInt(current.size());
+			for (Map.Entry<String, Entry> e : current.entrySet()) {
+				Entry entry = e.getValue();
+				JavaClass.writeString(out, e.getKey());
+				out.writeLong(entry.size);
+				out.writeLong(entry.lastModified);
+				out.writeInt(entry.hash);
+				out.writeBoolean(entry.javaClass != null);
+				if (entry.javaClass != null) {
+					entry.javaClass.write(out);
+				}
+			}
+		} finally {
+			out.close();
+		}
+		Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	/**
+	 * Gets the class information of a source file, parsing the file only if
+	 * it changed since the last run.
+	 * @param file the source file
+	 * @param reader the object to read the file with
+	 * @param parser the parser to parse the file with
+	 * @return the class information or null if there is no public class in
+	 * the file
+	 * @throws IOException if there's a problem reading the file
+	 */
+	public JavaClass parse(File file, SourceFileReader reader, JavaSourceParser parser) throws IOException {
+		return parse(file.toPath(), reader, parser);
+	}
+
+	/**
+	 * Gets the class information of a source file, parsing the file only if
+	 * it changed since the last run.
+	 * @param file the source file (it can also be an entry in a zip file
+	 * system)
+	 * @param reader the object to read the file with
+	 * @param parser the parser to parse the file with
+	 * @return the class information or null if there is no public class in
+	 * the file
+	 * @throws IOException if there's a problem reading the file
+	 */
+	public JavaClass parse(Path file, SourceFileReader reader, final JavaSourceParser parser) throws IOException {
+		return parse(file, reader, new Parser() {
+			@Override
+			public JavaClass parse(SourceFileReader reader, ByteBuffer bytes) throws IOException {
+				return parser.parse(reader.decode(bytes));
+			}
+		});
+	}
+
+	/**
+	 * Gets the class information of a class file, parsing the file only if
+	 * it changed since the last run.
+	 * @param file the class file (it can also be an entry in a zip file
+	 * system)
+	 * @param reader the object to read the file with
+	 * @param parser the parser to parse the file with
+	 * @return the class information or null if there is no public class in
+	 * the file
+	 * @throws IOException if there's a problem reading the file
+	 */
+	public JavaClass parse(Path file, SourceFileReader reader, final ClassFileParser parser) throws IOException {
+		return parse(file, reader, new Parser() {
+			@Override
+			public JavaClass parse(SourceFileReader reader, ByteBuffer bytes) throws IOException {
+				return parser.parse(bytes);
+			}
+		});
+	}
+
+	/**
+	 * Determines whether a file's size and last-modified time match the
+	 * cache, meaning that {@link #parse} will not have to read it.
+	 * @param file the file
+	 * @return true if the file is up to date, false if not
+	 * @throws IOException if there's a problem reading the file's attributes
+	 */
+	public boolean isUpToDate(Path file) throws IOException {
+		String path = key(file);
+		Entry entry = current.get(path);
+		if (entry == null) {
+			entry = previous.get(path);
+		}
+		if (entry == null) {
+			return false;
+		}
+		BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+		return entry.size == attributes.size() && entry.lastModified == attributes.lastModifiedTime().toMillis();
+	}
+
+	/**
+	 * Gets the key that a file is cached under.
+	 * @param file the file
+	 * @return the key
+	 */
+	private static String key(Path file) {
+		//zip entries are identified by their URI, which includes the path of the zip file
+		return (file.getFileSystem() == FileSystems.getDefault()) ? file.toAbsolutePath().toString() : file.toUri().toString();
+	}
+
+	private JavaClass parse(Path file, SourceFileReader reader, Parser parser) throws IOException {
+		String path = key(file);
+		BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+		long size = attributes.size();
+		long lastModified = attributes.lastModifiedTime().toMillis();
+
+		Entry entry = current.get(path);
+		if (entry == null) {
+			entry = previous.get(path);
+		}
+		if (entry != null && entry.size == size && entry.lastModified == lastModified) {
+			hits.incrementAndGet();
+			current.put(path, entry);
+			return entry.javaClass;
+		}
+
+		ByteBuffer bytes = reader.readBytes(file);
+		int hash = hash(bytes);
+		if (entry != null && entry.size == size && entry.hash == hash) {
+			//only the last-modified time changed
+			hits.incrementAndGet();
+			current.put(path, new Entry(size, lastModified, hash, entry.javaClass));
+			return entry.javaClass;
+		}
+
+		misses.incrementAndGet();
+		JavaClass javaClass = parser.parse(reader, bytes);
+		current.put(path, new Entry(size, lastModified, hash, javaClass));
+		return javaClass;
+	}
+
+	/**
+	 * Gets the number of files that did not have to be parsed.
+	 * @return the number of cache hits
+	 */
+	public int getHits() {
+		return hits.get();
+	}
+
+	/**
+	 * Gets the number of files that had to be parsed.
+	 * @return the number of cache misses
+	 */
+	public int getMisses() {
+		return misses.get();
+	}
+
+	/**
+	 * Gets the description of how the cached information was produced.
+	 * @return the configuration (for example, the parser and character
+	 * encoding that are used)
+	 */
+	public String getConfiguration() {
+		return configuration;
+	}
+
+	/**
+	 * Creates a cache for the next run, for processes that keep the cache in
+	 * memory instead of saving it to disk. Unlike {@link #save}, every entry
+	 * is kept, including the entries of files that were not looked up in
+	 * this run (they may belong to a different source tree).
+	 * @return the cache for the next run
+	 */
+	public ParseCache nextRun() {
+		Map<String, Entry> entries = new ConcurrentHashMap<String, Entry>(previous);
+		entries.putAll(current);
+		return new ParseCache(configuration, entries);
+	}
+
+	/**
+	 * Hashes a file's contents.
+	 * @param bytes the file contents (the buffer's position is not changed)
+	 * @return the hash
+	 */
+	private static int hash(ByteBuffer bytes) {
+		CRC32 crc = new CRC32();
+		crc.update(bytes.duplicate());
+		return (int) crc.getValue();
+	}
+
+	/**
+	 * Extracts the class information from the contents of a file.
+	 */
+	private interface Parser {
+		JavaClass parse(SourceFileReader reader, ByteBuffer bytes) throws IOException;
+	}
+
+	/**
+	 * A cache entry.
+	 */
+	private static class Entry {
+		private final long size;
+		private final long lastModified;
+		private final int hash;
+		private final JavaClass javaClass;
+
+		public Entry(long size, long lastModified, int hash, JavaClass javaClass) {
+			this.size = size;
+			this.lastModified = lastModified;
+			this.hash = hash;
+			this.javaClass = javaClass;
+		}
+	}
+}
@@ -0,0 +1,107 @@
+package com.mangst.appcontext;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Parses Java source code using a series of regular expressions. Each regular
+ * expression is run over the entire source file, and comments and string
+ * literals are not ignored. Public fields that are declared together (
+ * <code>public int a, b, c;</code>) and array types are not supported.
+ * @author mangst
+ * @see ScanningJavaSourceParser
+ */
+public class RegexJavaSourceParser implements JavaSourceParser {
+	/**
+	 * Regex that is used to find the class' package.
+	 */
+	private static final Pattern packageRegex = Pattern.compile("^\\s*package\\s+(.*?)\\s*;", Pattern.DOTALL);
+
+	/**
+	 * Regex that is used to find the class' imports (static imports are not
+	 * matched).
+	 */
+	private static final Pattern importRegex = Pattern.compile("^\\s*import\\s+([\\w\\.]+(?:\\.\\*)?)\\s*;", Pattern.MULTILINE);
+
+	/**
+	 * Regex that is used to find the class' name.
+	 */
+	private static final Pattern classNameRegex = Pattern.compile("public\\s+class\\s+(\\w+)");
+
+	/**
+	 * Regex that is used to pull parameters out of a method's parameter list.
+	 */
+	private static final Pattern parameterRegex = Pattern.compile("([a-zA-Z_0-9<>\\.]+)\\s+(\\w+)");
+
+	/**
+	 * Regex that is used to find a class' setter methods.
+	 */
+	private static final Pattern setterRegex = Pattern.compile("public\\s+\\w+\\s+set(\\w+)\\s*\\(\\s*([a-zA-Z_0-9\\.]+)\\s+\\w+\\s*\\)");
+
+	/**
+	 * Regex that is used to find a class' public fields.
+	 */
+	private static final Pattern publicFieldRegex = Pattern.compile("public\\s+([a-zA-Z_0-9\\.]+)\\s+(\\w+)\\s*(=\\s*(.*?))?;", Pattern.DOTALL);
+
+	@Override
+	public JavaClass parse(CharSequence javaSource) {
+		Matcher matcher;
+		JavaClass javaClass = new JavaClass();
+
+		//get the name of the class
+		matcher = classNameRegex.matcher(javaSource);
+		if (matcher.find()) {
+			javaClass.className = matcher.group(1);
+		} else {
+			return null;
+		}
+
+		//get the name of the package
+		matcher = packageRegex.matcher(javaSource);
+		if (matcher.find()) {
+			javaClass.packageName = matcher.group(1);
+		}
+
+		//get the imports
+		matcher = importRegex.matcher(javaSource);
+		while (matcher.find()) {
+			javaClass.imports.add(matcher.group(1));
+		}
+
+		//get the parameter types of each constructor
+		Pattern constructorRegex = Pattern.compile("public\\s+" + javaClass.className + "\\s*\\(\\s*(.*?)\\s*\\)");
+		matcher = constructorRegex.matcher(javaSource);
+		while (matcher.find()) {
+			String parameters = matcher.group(1);
+			List<String> types = new ArrayList<String>();
+			Matcher parameterMatcher = parameterRegex.matcher(parameters);
+			while (parameterMatcher.find()) {
+				types.add(parameterMatcher.group(1));
+			}
+			javaClass.constructors.add(types);
+		}
+
+		//get all the class' properties from the public fields and setter methods.
+		matcher = publicFieldRegex.matcher(javaSource);
+		while (matcher.find()) {
+			ClassProperty p = new ClassProperty();
+			p.type = matcher.group(1);
+			p.name = matcher.group(2);
+			p.value = ClassProperty.parseValue(matcher.group(4));
+			javaClass.properties.add(p);
+		}
+		matcher = setterRegex.matcher(javaSource);
+		while (matcher.find()) {
+			ClassProperty p = new ClassProperty();
+			String name = matcher.group(1);
+			p.name = name.substring(0, 1).toLowerCase() + name.substring(1); //the first letter will be upper-cased, ("setFoo"), so lower-case it
+			p.type = matcher.group(2);
+			p.value = "";
+			javaClass.properties.add(p);
+		}
+
+		return javaClass;
+	}
+}
@@ -0,0 +1,737 @@
+package com.mangst.appcontext;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Parses Java source code in a single pass. The source code is broken up into
+ * tokens as it is walked over, which means that comments and string literals
+ * are skipped and only the members of the public, top-level class are looked
+ * at.
+ * <p>
+ * Unlike {@link RegexJavaSourceParser}, this parser supports public fields that
+ * are declared together (<code>public int a, b, c;</code>), array types, and
+ * class headers that contain other modifiers (
+ * <code>public final class Foo</code>). Generic type arguments are removed
+ * from all types (<code>List&lt;String&gt;</code> becomes <code>List</code>).
+ * </p>
+ * @author mangst
+ */
+public class ScanningJavaSourceParser implements JavaSourceParser {
+	@Override
+	public JavaClass parse(CharSequence javaSource) {
+		return new Scanner(javaSource).parseCompilationUnit();
+	}
+
+	/**
+	 * Walks over a single Java source file. Not thread-safe, so a new instance
+	 * is created for each file.
+	 */
+	private static class Scanner {
+		private static final int EOF = 0;
+		private static final int IDENTIFIER = 1;
+		private static final int LITERAL = 2;
+		private static final int SYMBOL = 3;
+
+		/**
+		 * Represents the "..." symbol (varargs).
+		 */
+		private static final char ELLIPSIS = '\u2026';
+
+		private final CharSequence src;
+		private final int length;
+		private int pos = 0;
+
+		/**
+		 * The type of the current token.
+		 */
+		private int type;
+
+		/**
+		 * The start (inclusive) and end (exclusive) of the current token.
+		 */
+		private int start, end;
+
+		/**
+		 * The current token's character if it is a symbol.
+		 */
+		private char symbol;
+
+		/**
+		 * The type parameters of the public class and the erasure of each one
+		 * (null if it has no bound).
+		 */
+		private Map<String, String> classTypeParameters = Collections.emptyMap();
+
+		public Scanner(CharSequence src) {
+			this.src = src;
+			length = src.length();
+		}
+
+		/**
+		 * Parses the source file, stopping after the public class has been
+		 * parsed.
+		 * @return the class information or null if there is no public class
+		 */
+		public JavaClass parseCompilationUnit() {
+			String packageName = null;
+			List<String> imports = new ArrayList<String>();
+			boolean isPublic = false, isAbstract = false;
+
+			next();
+			while (type != EOF) {
+				if (isSymbol('@')) {
+					next();
+					if (isIdentifier("interface")) {
+						skipTypeDeclaration();
+						isPublic = isAbstract = false;
+					} else {
+						skipAnnotation();
+					}
+				} else if (isIdentifier("package")) {
+					next();
+					packageName = readQualifiedName();
+				} else if (isIdentifier("import")) {
+					next();
+					if (isIdentifier("static")) {
+						skipPast(';');
+					} else {
+						imports.add(readQualifiedName());
+					}
+				} else if (isIdentifier("public")) {
+					isPublic = true;
+					next();
+				} else if (isIdentifier("abstract")) {
+					isAbstract = true;
+					next();
+				} else if (isIdentifier("class")) {
+					next();
+					if (isPublic && !isAbstract && type == IDENTIFIER) {
+						JavaClass javaClass = new JavaClass();
+						javaClass.packageName = packageName;
+						javaClass.className = text();
+						javaClass.imports = imports;
+						next();
+						if (isSymbol('<')) {
+							classTypeParameters = readTypeParameters(classTypeParameters);
+						}
+						parseClassBody(javaClass);
+						return javaClass;
+					}
+					skipTypeDeclaration();
+					isPublic = isAbstract = false;
+				} else if (isIdentifier("interface") || isIdentifier("enum") || isIdentifier("record")) {
+					skipTypeDeclaration();
+					isPublic = isAbstract = false;
+				} else if (isSymbol('{')) {
+					skipBlock('{', '}');
+					isPublic = isAbstract = false;
+				} else if (isSymbol(';')) {
+					next();
+					isPublic = isAbstract = false;
+				} else {
+					next();
+				}
+			}
+
+			return null;
+		}
+
+		/**
+		 * Parses the body of the public class.
+		 * @param javaClass the class to add the constructors and properties to
+		 */
+		private void parseClassBody(JavaClass javaClass) {
+			skipUntil('{');
+			next();
+
+			//setters are added after the public fields
+			List<ClassProperty> setters = new ArrayList<ClassProperty>();
+			while (type != EOF && !isSymbol('}')) {
+				parseMember(javaClass, setters);
+			}
+			javaClass.properties.addAll(setters);
+		}
+
+		/**
+		 * Parses a single member of the public class (a field declaration,
+		 * constructor, method, initializer, or nested type).
+		 * @param javaClass the class to add the constructors and public fields
+		 * to
+		 * @param setters the list to add the setter methods to
+		 */
+		private void parseMember(JavaClass javaClass, List<ClassProperty> setters) {
+			//read the modifiers
+			boolean isPublic = false, isStatic = false, isFinal = false;
+			Map<String, String> typeParameters = classTypeParameters;
+			while (true) {
+				if (type == EOF || isSymbol('}')) {
+					return;
+				}
+				if (isSymbol(';')) {
+					next();
+					return;
+				}
+				if (isSymbol('{')) {
+					//initializer block
+					skipBlock('{', '}');
+					return;
+				}
+				if (isSymbol('@')) {
+					next();
+					if (isIdentifier("interface")) {
+						skipTypeDeclaration();
+						return;
+					}
+					skipAnnotation();
+					continue;
+				}
+				if (isSymbol('<')) {
+					//type parameters of a generic method or constructor
+					typeParameters = readTypeParameters(typeParameters);
+					continue;
+				}
+				if (type != IDENTIFIER) {
+					next();
+					continue;
+				}
+
+				if (isIdentifier("public")) {
+					isPublic = true;
+				} else if (isIdentifier("static")) {
+					isStatic = true;
+				} else if (isIdentifier("final")) {
+					isFinal = true;
+				} else if (isIdentifier("class") || isIdentifier("interface") || isIdentifier("enum") || isIdentifier("record")) {
+					skipTypeDeclaration();
+					return;
+				} else if (!isModifier()) {
+					break;
+				}
+				next();
+			}
+
+			String typeName = readType();
+
+			//constructor
+			if (isSymbol('(')) {
+				List<String> parameters = readParameters();
+				if (isPublic && typeName.equals(javaClass.className)) {
+					for (int i = 0; i < parameters.size(); i++) {
+						String erasure = erase(parameters.get(i), typeParameters);
+						parameters.set(i, (erasure == null) ? "java.lang.Object" : erasure);
+					}
+					javaClass.constructors.add(parameters);
+				}
+				skipMethodRest();
+				return;
+			}
+
+			if (type != IDENTIFIER) {
+				skipMemberRest();
+				return;
+			}
+			String name = text();
+			next();
+
+			//method
+			if (isSymbol('(')) {
+				List<String> parameters = readParameters();
+				String parameterType = (parameters.size() == 1) ? erase(parameters.get(0), typeParameters) : null;
+				if (isPublic && !isStatic && name.length() > 3 && name.startsWith("set") && parameterType != null) {
+					ClassProperty p = new ClassProperty();
+					p.name = name.substring(3, 4).toLowerCase() + name.substring(4); //the first letter will be upper-cased, ("setFoo"), so lower-case it
+					p.type = parameterType;
+					p.value = "";
+					setters.add(p);
+				}
+				skipMethodRest();
+				return;
+			}
+
+			//one or more fields
+			while (true) {
+				String fieldType = typeName;
+				while (isSymbol('[')) {
+					skipBlock('[', ']');
+					fieldType += "[]";
+				}
+
+				String value = null;
+				if (isSymbol('=')) {
+					int valueStart = end;
+					next();
+					skipExpression();
+					value = src.subSequence(valueStart, start).toString();
+				}
+
+				fieldType = erase(fieldType, typeParameters);
+				if (isPublic && !isStatic && !isFinal && fieldType != null) {
+					ClassProperty p = new ClassProperty();
+					p.name = name;
+					p.type = fieldType;
+					p.value = ClassProperty.parseValue(value);
+					javaClass.properties.add(p);
+				}
+
+				if (isSymbol(',')) {
+					next();
+					if (type == IDENTIFIER) {
+						name = text();
+						next();
+						continue;
+					}
+				}
+				break;
+			}
+			skipMemberRest();
+		}
+
+		/**
+		 * Reads a type, removing any generic type arguments. The current token
+		 * must be the first identifier of the type. Afterwards, the current
+		 * token is the token after the type.
+		 * @return the type (example: "java.util.List" is returned for
+		 * "java.util.List&lt;String&gt;", "String[]" is returned for
+		 * "String...")
+		 */
+		private String readType() {
+			StringBuilder sb = new StringBuilder();
+			sb.append(src, start, end);
+			next();
+			while (true) {
+				if (isSymbol('.')) {
+					next();
+					if (type == IDENTIFIER) {
+						sb.append('.').append(src, start, end);
+						next();
+					}
+				} else if (isSymbol('<')) {
+					skipBlock('<', '>');
+				} else if (isSymbol('@')) {
+					//type annotation (example: "String @NonNull []")
+					next();
+					skipAnnotation();
+				} else {
+					break;
+				}
+			}
+
+			while (isSymbol('[')) {
+				skipBlock('[', ']');
+				sb.append("[]");
+			}
+			if (isSymbol(ELLIPSIS)) {
+				next();
+				sb.append("[]");
+			}
+			return sb.toString();
+		}
+
+		/**
+		 * Reads a list of type parameters (example: "&lt;T, N extends
+		 * Number&gt;"). The current token must be the opening angle bracket.
+		 * Afterwards, the current token is the token after the closing angle
+		 * bracket.
+		 * @param enclosing the type parameters that are already in scope
+		 * @return the type parameters in scope, including the new ones, and the
+		 * erasure of each one (null if it has no bound)
+		 */
+		private Map<String, String> readTypeParameters(Map<String, String> enclosing) {
+			Map<String, String> typeParameters = new HashMap<String, String>(enclosing);
+			next();
+			while (type != EOF && !isSymbol('>')) {
+				if (isSymbol('@')) {
+					next();
+					skipAnnotation();
+				} else if (type == IDENTIFIER) {
+					String name = text();
+					next();
+					String bound = null;
+					if (isIdentifier("extends")) {
+						next();
+						if (type == IDENTIFIER) {
+							//the erasure is the first bound (a bound may also be another type parameter)
+							bound = readType();
+							bound = typeParameters.containsKey(bound) ? typeParameters.get(bound) : bound;
+						}
+						while (type != EOF && !isSymbol(',') && !isSymbol('>')) {
+							if (isSymbol('<')) {
+								skipBlock('<', '>');
+							} else {
+								next();
+							}
+						}
+					}
+					typeParameters.put(name, bound);
+				} else {
+					next();
+				}
+			}
+			next();
+			return typeParameters;
+		}
+
+		/**
+		 * Replaces a type parameter with its erasure.
+		 * @param type the type (example: "T" or "T[]")
+		 * @param typeParameters the type parameters in scope
+		 * @return the erased type, the type itself if it's not a type
+		 * parameter, or null if it is a type parameter that has no bound (and
+		 * isn't an array)
+		 */
+		private static String erase(String type, Map<String, String> typeParameters) {
+			int brackets = type.indexOf('[');
+			String base = (brackets < 0) ? type : type.substring(0, brackets);
+			if (!typeParameters.containsKey(base)) {
+				return type;
+			}
+
+			String bound = typeParameters.get(base);
+			if (bound == null) {
+				return (brackets < 0) ? null : "java.lang.Object" + type.substring(brackets);
+			}
+			return bound + type.substring(base.length());
+		}
+
+		/**
+		 * Reads the types of a method's parameters. The current token must be
+		 * the opening parenthesis. Afterwards, the current token is the token
+		 * after the closing parenthesis.
+		 * @return the parameter types
+		 */
+		private List<String> readParameters() {
+			List<String> types = new ArrayList<String>();
+			next();
+			while (type != EOF && !isSymbol(')')) {
+				if (isSymbol('@')) {
+					next();
+					skipAnnotation();
+				} else if (isIdentifier("final")) {
+					next();
+				} else if (type == IDENTIFIER) {
+					String parameterType = readType();
+					if (type == IDENTIFIER) {
+						//parameter name
+						next();
+					}
+					while (isSymbol('[')) {
+						skipBlock('[', ']');
+						parameterType += "[]";
+					}
+					types.add(parameterType);
+				} else {
+					next();
+				}
+			}
+			next();
+			return types;
+		}
+
+		/**
+		 * Reads a qualified name that ends in a semicolon. Afterwards, the
+		 * current token is the token after the semicolon.
+		 * @return the name (example: "com.example" or "com.example.*")
+		 */
+		private String readQualifiedName() {
+			StringBuilder sb = new StringBuilder();
+			while (type != EOF && !isSymbol(';')) {
+				if (type == IDENTIFIER || isSymbol('.') || isSymbol('*')) {
+					sb.append(src, start, end);
+				}
+				next();
+			}
+			next();
+			return sb.toString();
+		}
+
+		/**
+		 * Skips an annotation. The current token must be the first identifier
+		 * of the annotation's name.
+		 */
+		private void skipAnnotation() {
+			next();
+			while (isSymbol('.')) {
+				next();
+				next();
+			}
+			if (isSymbol('(')) {
+				skipBlock('(', ')');
+			}
+		}
+
+		/**
+		 * Skips a type declaration, including its body.
+		 */
+		private void skipTypeDeclaration() {
+			skipUntil('{');
+			skipBlock('{', '}');
+		}
+
+		/**
+		 * Skips the rest of a constructor or method declaration after its
+		 * parameter list, including its body.
+		 */
+		private void skipMethodRest() {
+			while (type != EOF && !isSymbol('{') && !isSymbol(';') && !isSymbol('}')) {
+				next();
+			}
+			if (isSymbol('{')) {
+				skipBlock('{', '}');
+			} else if (isSymbol(';')) {
+				next();
+			}
+		}
+
+		/**
+		 * Skips the rest of a member declaration up to and including its
+		 * terminating semicolon.
+		 */
+		private void skipMemberRest() {
+			while (type != EOF && !isSymbol(';') && !isSymbol('}')) {
+				if (isSymbol('{')) {
+					skipBlock('{', '}');
+					return;
+				}
+				next();
+			}
+			if (isSymbol(';')) {
+				next();
+			}
+		}
+
+		/**
+		 * Skips an expression (such as a field's initial value). Afterwards,
+		 * the current token is the comma or semicolon that ends the expression.
+		 */
+		private void skipExpression() {
+			int depth = 0, angleDepth = 0;
+			boolean afterIdentifier = false;
+			while (type != EOF) {
+				if (type == SYMBOL) {
+					switch (symbol) {
+					case '(':
+					case '[':
+					case '{':
+						depth++;
+						break;
+					case ')':
+					case ']':
+					case '}':
+						if (depth == 0) {
+							return;
+						}
+						depth--;
+						break;
+					case '<':
+						//probably the type arguments of a generic class (example: "new HashMap<String, Integer>()")
+						if (depth == 0 && afterIdentifier) {
+							angleDepth++;
+						}
+						break;
+					case '>':
+						if (depth == 0 && angleDepth > 0) {
+							angleDepth--;
+						}
+						break;
+					case ',':
+						if (depth == 0 && angleDepth == 0) {
+							return;
+						}
+						break;
+					case ';':
+						if (depth == 0) {
+							return;
+						}
+						break;
+					}
+				}
+				afterIdentifier = (type == IDENTIFIER);
+				next();
+			}
+		}
+
+		/**
+		 * Skips a block that is delimited by the given symbols, taking nested
+		 * blocks into account. The current token must be the opening symbol.
+		 * Afterwards, the current token is the token after the closing symbol.
+		 * @param open the opening symbol
+		 * @param close the closing symbol
+		 */
+		private void skipBlock(char open, char close) {
+			int depth = 0;
+			while (type != EOF) {
+				if (isSymbol(open)) {
+					depth++;
+				} else if (isSymbol(close)) {
+					depth--;
+				}
+				next();
+				if (depth == 0) {
+					return;
+				}
+			}
+		}
+
+		/**
+		 * Advances until the current token is the given symbol.
+		 * @param c the symbol
+		 */
+		private void skipUntil(char c) {
+			while (type != EOF && !isSymbol(c)) {
+				next();
+			}
+		}
+
+		/**
+		 * Advances until the token after the given symbol.
+		 * @param c the symbol
+		 */
+		private void skipPast(char c) {
+			skipUntil(c);
+			next();
+		}
+
+		private boolean isModifier() {
+			return isIdentifier("protected") || isIdentifier("private") || isIdentifier("abstract") || isIdentifier("native") || isIdentifier("synchronized") || isIdentifier("transient") || isIdentifier("volatile") || isIdentifier("strictfp") || isIdentifier("default");
+		}
+
+		private boolean isSymbol(char c) {
+			return type == SYMBOL && symbol == c;
+		}
+
+		private boolean isIdentifier(String s) {
+			if (type != IDENTIFIER || end - start != s.length()) {
+				return false;
+			}
+			for (int i = 0; i < s.length(); i++) {
+				if (src.charAt(start + i) != s.charAt(i)) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		private String text() {
+			return src.subSequence(start, end).toString();
+		}
+
+		/**
+		 * Moves to the next token, skipping whitespace and comments.
+		 */
+		private void next() {
+			skipWhitespaceAndComments();
+			start = pos;
+			if (pos >= length) {
+				type = EOF;
+				end = pos;
+				return;
+			}
+
+			char c = src.charAt(pos);
+			if (Character.isJavaIdentifierStart(c)) {
+				pos++;
+				while (pos < length && Character.isJavaIdentifierPart(src.charAt(pos))) {
+					pos++;
+				}
+				type = IDENTIFIER;
+			} else if (isDigit(c) || (c == '.' && pos + 1 < length && isDigit(src.charAt(pos + 1)))) {
+				skipNumber();
+				type = LITERAL;
+			} else if (c == '"') {
+				if (pos + 2 < length && src.charAt(pos + 1) == '"' && src.charAt(pos + 2) == '"') {
+					skipTextBlock();
+				} else {
+					skipQuoted('"');
+				}
+				type = LITERAL;
+			} else if (c == '\'') {
+				skipQuoted('\'');
+				type = LITERAL;
+			} else if (c == '.' && pos + 2 < length && src.charAt(pos + 1) == '.' && src.charAt(pos + 2) == '.') {
+				pos += 3;
+				type = SYMBOL;
+				symbol = ELLIPSIS;
+			} else {
+				pos++;
+				type = SYMBOL;
+				symbol = c;
+			}
+			end = pos;
+		}
+
+		private void skipWhitespaceAndComments() {
+			while (pos < length) {
+				char c = src.charAt(pos);
+				if (Character.isWhitespace(c)) {
+					pos++;
+				} else if (c == '/' && pos + 1 < length && src.charAt(pos + 1) == '/') {
+					pos += 2;
+					while (pos < length && src.charAt(pos) != '\n') {
+						pos++;
+					}
+				} else if (c == '/' && pos + 1 < length && src.charAt(pos + 1) == '*') {
+					pos += 2;
+					while (pos < length && !(src.charAt(pos) == '*' && pos + 1 < length && src.charAt(pos + 1) == '/')) {
+						pos++;
+					}
+					pos = Math.min(pos + 2, length);
+				} else {
+					return;
+				}
+			}
+		}
+
+		private void skipNumber() {
+			pos++;
+			while (pos < length) {
+				char c = src.charAt(pos);
+				if (Character.isLetterOrDigit(c) || c == '_' || c == '.') {
+					pos++;
+				} else if ((c == '+' || c == '-') && isExponent(src.charAt(pos - 1))) {
+					pos++;
+				} else {
+					return;
+				}
+			}
+		}
+
+		private void skipQuoted(char quote) {
+			pos++;
+			while (pos < length) {
+				char c = src.charAt(pos++);
+				if (c == '\\') {
+					pos++;
+				} else if (c == quote || c == '\n') {
+					break;
+				}
+			}
+			pos = Math.min(pos, length);
+		}
+
+		private void skipTextBlock() {
+			pos += 3;
+			while (pos < length) {
+				char c = src.charAt(pos++);
+				if (c == '\\') {
+					pos++;
+				} else if (c == '"' && pos + 1 < length && src.charAt(pos) == '"' && src.charAt(pos + 1) == '"') {
+					pos += 2;
+					break;
+				}
+			}
+			pos = Math.min(pos, length);
+		}
+
+		private static boolean isDigit(char c) {
+			return c >= '0' && c <= '9';
+		}
+
+		private static boolean isExponent(char c) {
+			return c == 'e' || c == 'E' || c == 'p' || c == 'P';
+		}
+	}
+}
@@ -0,0 +1,544 @@
+package com.mangst.appcontext;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Splits an application context into several XML files (shards) and writes a
+ * master XML file that imports all of them. The beans are either grouped by
+ * package (one shard per package) or into shards of a fixed size. Each shard
+ * is built by its own {@link ApplicationContextGenerator}, so the shards can
+ * be serialized in parallel. A shard is only written to disk if its contents
+ * changed, so unchanged shards keep their last-modified times.
+ * <p>
+ * By default, every bean is held in memory until {@link #write} is called.
+ * If a limit is set with {@link #setMaxHeapBeans}, the beans are spilled to a
+ * temporary file in a compact binary form (see {@link JavaClass#write})
+ * whenever the limit is reached, and each shard reads its beans back, in the
+ * order they were added, when it is written.
+ * </p>
+ * @author mangst
+ */
+public class ShardedContextWriter {
+	/**
+	 * The default name of the master XML file.
+	 */
+	public static final String DEFAULT_MASTER_FILE_NAME = "applicationContext.xml";
+
+	private final File outputDir;
+	private final String springVersion;
+	private String masterFileName = DEFAULT_MASTER_FILE_NAME;
+	private int shardSize = 0;
+	private int maxHeapBeans = 0;
+	private TypeIndex typeIndex;
+	private GenerationStats stats;
+	private FlightRecorderEvents events;
+
+	/**
+	 * The beans of each shard, keyed by file name.
+	 */
+	private final Map<String, Shard> shards = new LinkedHashMap<String, Shard>();
+	private int beans = 0;
+
+	/**
+	 * The number of beans that are currently held in memory.
+	 */
+	private int heapBeans = 0;
+
+	/**
+	 * The file that beans are spilled to or null if nothing has been spilled
+	 * yet.
+	 */
+	private Path spillFile;
+	private FileChannel spillChannel;
+	private int beansSpilled = 0;
+
+	private final AtomicInteger written = new AtomicInteger();
+	private final AtomicInteger unchanged = new AtomicInteger();
+	private final AtomicInteger deleted = new AtomicInteger();
+
+	/**
+	 * @param outputDir the directory to write the XML files to (it is
+	 * created if it doesn't exist)
+	 * @param springVersion the Spring version
+	 */
+	public ShardedContextWriter(File outputDir, String springVersion) {
+		this.outputDir = outputDir;
+		this.springVersion = springVersion;
+	}
+
+	/**
+	 * Sets the name of the master XML file.
+	 * @param masterFileName the file name (defaults to
+	 * {@link #DEFAULT_MASTER_FILE_NAME})
+	 * @return this
+	 */
+	public ShardedContextWriter setMasterFileName(String masterFileName) {
+		this.masterFileName = masterFileName;
+		return this;
+	}
+
+	/**
+	 * Sets how the beans are split into shards. This must be called before
+	 * any beans are added.
+	 * @param shardSize the number of beans in each shard or 0 to create one
+	 * shard per package (defaults to 0)
+	 * @return this
+	 */
+	public ShardedContextWriter setShardSize(int shardSize) {
+		this.shardSize = shardSize;
+		return this;
+	}
+
+	/**
+	 * Sets the maximum number of beans that are held in memory. When this
+	 * many beans have been added, they are moved to a temporary file. This
+	 * must be called before any beans are added.
+	 * @param maxHeapBeans the maximum number of beans or 0 to keep all of them
+	 * in memory (defaults to 0)
+	 * @return this
+	 */
+	public ShardedContextWriter setMaxHeapBeans(int maxHeapBeans) {
+		this.maxHeapBeans = maxHeapBeans;
+		return this;
+	}
+
+	/**
+	 * Sets the index that is used to resolve the "ref" attributes to the IDs
+	 * of generated beans. Every bean must be in the index by the time
+	 * {@link #write} is called.
+	 * @param typeIndex the index or null to derive each reference from the
+	 * type name alone (defaults to null)
+	 * @return this
+	 */
+	public ShardedContextWriter setTypeIndex(TypeIndex typeIndex) {
+		this.typeIndex = typeIndex;
+		return this;
+	}
+
+	/**
+	 * Sets the object that timing and throughput statistics are recorded in.
+	 * @param stats the statistics or null not to collect them (defaults to
+	 * null)
+	 * @return this
+	 */
+	public ShardedContextWriter setStats(GenerationStats stats) {
+		this.stats = stats;
+		return this;
+	}
+
+	/**
+	 * Sets the object that creates Flight Recorder events for each bean and
+	 * file that is written.
+	 * @param events the event factory or null not to create events (defaults
+	 * to null)
+	 * @return this
+	 */
+	public ShardedContextWriter setFlightRecorderEvents(FlightRecorderEvents events) {
+		this.events = events;
+		return this;
+	}
+
+	/**
+	 * Adds a bean to the shard it belongs in.
+	 * @param javaClass the class information
+	 * @return this
+	 * @throws IOException if the beans are being spilled to disk and there's
+	 * a problem writing to the temporary file
+	 */
+	public ShardedContextWriter add(JavaClass javaClass) throws IOException {
+		String name;
+		if (shardSize > 0) {
+			name = String.format("beans-%04d.xml", beans / shardSize + 1);
+		} else {
+			name = ((javaClass.packageName == null) ? "default" : javaClass.packageName) + ".xml";
+			if (name.equals(masterFileName)) {
+				name = "beans-" + name;
+			}
+		}
+
+		Shard shard = shards.get(name);
+		if (shard == null) {
+			shard = new Shard();
+			shards.put(name, shard);
+		}
+		shard.classes.add(javaClass);
+		beans++;
+		heapBeans++;
+
+		if (maxHeapBeans > 0 && heapBeans >= maxHeapBeans) {
+			spill();
+		}
+		return this;
+	}
+
+	/**
+	 * Moves all of the beans that are held in memory to the temporary file.
+	 * The beans of each shard are written as one contiguous segment, so each
+	 * shard can read its beans back without reading anyone else's.
+	 * @throws IOException if there's a problem writing to the temporary file
+	 */
+	private void spill() throws IOException {
+		if (spillChannel == null) {
+			spillFile = Files.createTempFile("appcontext-spill", ".tmp");
+			spillChannel = FileChannel.open(spillFile, StandardOpenOption.READ, StandardOpenOption.WRITE);
+		}
+
+		ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+		for (Shard shard : shards.values()) {
+			if (shard.classes.isEmpty()) {
+				continue;
+			}
+
+			buffer.reset();
+			DataOutputStream out = new DataOutputStream(buffer);
+			for (JavaClass javaClass : shard.classes) {
+				javaClass.write(out);
+			}
+			out.flush();
+
+			long position = spillChannel.size();
+			ByteBuffer bytes = ByteBuffer.wrap(buffer.toByteArray());
+			while (bytes.hasRemaining()) {
+				spillChannel.write(bytes, position + bytes.position());
+			}
+			shard.segments.add(new Segment(position, buffer.size(), shard.classes.size()));
+			beansSpilled += shard.classes.size();
+			shard.classes.clear();
+		}
+		heapBeans = 0;
+	}
+
+	/**
+	 * Writes the shards and the master XML file.
+	 * @param threads the number of threads to serialize the shards with
+	 * @throws IOException if there's a problem writing the files
+	 */
+	public void write(int threads) throws IOException {
+		try {
+			writeShards(threads);
+		} finally {
+			if (spillChannel != null) {
+				spillChannel.close();
+				Files.deleteIfExists(spillFile);
+				spillChannel = null;
+			}
+		}
+	}
+
+	private void writeShards(int threads) throws IOException {
+		outputDir.mkdirs();
+
+		List<ShardTask> tasks = new ArrayList<ShardTask>();
+		for (Map.Entry<String, Shard> entry : shards.entrySet()) {
+			tasks.add(new ShardTask(entry.getKey(), entry.getValue()));
+		}
+		if (threads > 1) {
+			ForkJoinPool pool = new ForkJoinPool(threads);
+			try {
+				List<ForkJoinTask<?>> futures = new ArrayList<ForkJoinTask<?>>(tasks.size());
+				for (ShardTask task : tasks) {
+					futures.add(pool.submit(task));
+				}
+				for (ForkJoinTask<?> future : futures) {
+					future.join();
+				}
+			} catch (UncheckedIOException e) {
+				throw e.getCause();
+			} finally {
+				pool.shutdown();
+			}
+		} else {
+			for (ShardTask task : tasks) {
+				task.writeShard();
+			}
+		}
+
+		//remember which shards the last run wrote, so the ones that are no longer needed can be deleted
+		File file = new File(outputDir, masterFileName);
+		List<String> previousShards = file.isFile() ? ContextMerger.readImports(file) : Collections.<String> emptyList();
+
+		//write the master file
+		File temp = File.createTempFile(file.getName(), ".tmp", outputDir);
+		try {
+			OutputStream out = new BufferedOutputStream(new FileOutputStream(temp));
+			try {
+				XmlContextWriter writer = new XmlContextWriter(out, springVersion);
+				try {
+					for (String name : shards.keySet()) {
+						writer.writeImport(name);
+					}
+				} finally {
+					writer.close();
+				}
+			} finally {
+				out.close();
+			}
+			replaceIfChanged(temp, file);
+		} finally {
+			temp.delete();
+		}
+
+		//delete the shards of packages that no longer exist (or that were numbered with a different shard size)
+		for (String name : previousShards) {
+			if (shards.containsKey(name) || name.equals(masterFileName) || name.contains("/") || name.contains(":") || name.contains(File.separator)) {
+				continue;
+			}
+			if (Files.deleteIfExists(new File(outputDir, name).toPath())) {
+				deleted.incrementAndGet();
+			}
+		}
+	}
+
+	/**
+	 * Gets the number of files that were written by {@link #write}.
+	 * @return the number of files (including the master file)
+	 */
+	public int getFilesWritten() {
+		return written.get();
+	}
+
+	/**
+	 * Gets the number of beans that were moved to the temporary file because
+	 * the limit set by {@link #setMaxHeapBeans} was reached.
+	 * @return the number of beans
+	 */
+	public int getBeansSpilled() {
+		return beansSpilled;
+	}
+
+	/**
+	 * Gets the number of shards from an earlier run that were deleted by
+	 * {@link #write} because they are no longer imported by the master file.
+	 * @return the number of files
+	 */
+	public int getFilesDeleted() {
+		return deleted.get();
+	}
+
+	/**
+	 * Gets the number of files that were not written by {@link #write}
+	 * because their contents did not change.
+	 * @return the number of files (including the master file)
+	 */
+	public int getFilesUnchanged() {
+		return unchanged.get();
+	}
+
+	/**
+	 * Moves a newly written temporary file into place if its contents are
+	 * different from what is already on disk. Otherwise, the existing file is
+	 * left alone (the caller deletes the temporary file).
+	 * @param temp the temporary file (in the output directory, so it can be
+	 * moved atomically)
+	 * @param file the file
+	 * @throws IOException if there's a problem reading or moving the files
+	 */
+	private void replaceIfChanged(File temp, File file) throws IOException {
+		if (file.isFile() && file.length() == temp.length() && sameContents(temp, file)) {
+			unchanged.incrementAndGet();
+			return;
+		}
+
+		Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		written.incrementAndGet();
+	}
+
+	/**
+	 * Compares the contents of two files of the same length, a block at a
+	 * time, so neither file is held in memory.
+	 * @param a the first file
+	 * @param b the second file
+	 * @return true if the contents are the same, false if not
+	 * @throws IOException if there's a problem reading the files
+	 */
+	private static boolean sameContents(File a, File b) throws IOException {
+		InputStream inA = new FileInputStream(a);
+		try {
+			InputStream inB = new FileInputStream(b);
+			try {
+				byte bufferA[] = new byte[8192];
+				byte bufferB[] = new byte[8192];
+				int read;
+				while ((read = inA.read(bufferA)) > 0) {
+					int readB = 0;
+					while (readB < read) {
+						int r = inB.read(bufferB, readB, read - readB);
+						if (r < 0) {
+							return false;
+						}
+						readB += r;
+					}
+					for (int i = 0; i < read; i++) {
+						if (bufferA[i] != bufferB[i]) {
+							return false;
+						}
+					}
+				}
+				return inB.read() < 0;
+			} finally {
+				inB.close();
+			}
+		} finally {
+			inA.close();
+		}
+	}
+
+	/**
+	 * Reads the beans of a segment back from the temporary file.
+	 * @param segment the segment
+	 * @return the beans
+	 * @throws IOException if there's a problem reading the temporary file
+	 */
+	private List<JavaClass> readSegment(Segment segment) throws IOException {
+		//positional reads don't move the channel's position, so the shards can read in parallel
+		ByteBuffer bytes = ByteBuffer.allocate(segment.length);
+		while (bytes.hasRemaining()) {
+			if (spillChannel.read(bytes, segment.position + bytes.position()) < 0) {
+				throw new IOException("Unexpected end of spill file.");
+			}
+		}
+
+		DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes.array()));
+		List<JavaClass> classes = new ArrayList<JavaClass>(segment.count);
+		for (int i = 0; i < segment.count; i++) {
+			classes.add(JavaClass.read(in));
+		}
+		return classes;
+	}
+
+	/**
+	 * The beans of a shard.
+	 */
+	private static class Shard {
+		/**
+		 * The beans that were spilled to the temporary file, in the order
+		 * they were added.
+		 */
+		private final List<Segment> segments = new ArrayList<Segment>();
+
+		/**
+		 * The beans that are held in memory (they come after the spilled
+		 * beans).
+		 */
+		private final List<JavaClass> classes = new ArrayList<JavaClass>();
+	}
+
+	/**
+	 * A run of beans in the temporary file.
+	 */
+	private static class Segment {
+		private final long position;
+		private final int length;
+		private final int count;
+
+		/**
+		 * @param position the file offset of the first bean
+		 * @param length the number of bytes
+		 * @param count the number of beans
+		 */
+		public Segment(long position, int length, int count) {
+			this.position = position;
+			this.length = length;
+			this.count = count;
+		}
+	}
+
+	/**
+	 * Serializes a shard and writes it to disk if it changed.
+	 */
+	private class ShardTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		private final String name;
+		private final Shard shard;
+
+		/**
+		 * @param name the file name of the shard
+		 * @param shard the beans in the shard
+		 */
+		public ShardTask(String name, Shard shard) {
+			this.name = name;
+			this.shard = shard;
+		}
+
+		@Override
+		protected void compute() {
+			try {
+				writeShard();
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		}
+
+		public void writeShard() throws IOException {
+			//stream the XML to a temporary file, so that the shard is never held in memory
+			File file = new File(outputDir, name);
+			File temp = File.createTempFile(name, ".tmp", outputDir);
+			try {
+				long start;
+				OutputStream out = new BufferedOutputStream(new FileOutputStream(temp));
+				try {
+					XmlContextWriter writer = new XmlContextWriter(out, springVersion);
+					try {
+						//each shard has its own generator (and document root), since the DOM is not thread-safe
+						ApplicationContextGenerator generator = new ApplicationContextGenerator(springVersion, writer);
+						generator.setTypeIndex(typeIndex);
+						generator.setStats(stats);
+						generator.setFlightRecorderEvents(events);
+						for (Segment segment : shard.segments) {
+							for (JavaClass javaClass : readSegment(segment)) {
+								generator.addBean(javaClass);
+							}
+						}
+						for (JavaClass javaClass : shard.classes) {
+							generator.addBean(javaClass);
+						}
+					} finally {
+						start = System.nanoTime();
+						writer.close();
+					}
+				} finally {
+					out.close();
+				}
+
+				long length = temp.length();
+				FlightRecorderEvents.WriteFileEvent event = (events == null) ? null : events.beginWriteFile();
+				replaceIfChanged(temp, file);
+				if (event != null) {
+					event.end(file.getPath(), length);
+				}
+				if (stats != null) {
+					stats.addTime(GenerationStats.Phase.WRITE, System.nanoTime() - start);
+				}
+			} finally {
+				temp.delete();
+			}
+		}
+	}
+}
@@ -0,0 +1,190 @@
+package com.mangst.appcontext;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Reads the contents of source files using NIO. Large files are memory-mapped
+ * and small files are read into a direct buffer that is reused by each
+ * thread. Either way, the bytes are decoded only once, directly into the
+ * {@link CharBuffer} that is handed to the parser. This class is thread-safe.
+ * @author mangst
+ */
+public class SourceFileReader {
+	/**
+	 * The default size (in bytes) at which files are memory-mapped instead of
+	 * read.
+	 */
+	public static final int DEFAULT_MAP_THRESHOLD = 128 * 1024;
+
+	private final Charset charset;
+	private final int mapThreshold;
+
+	/**
+	 * The buffer that each thread reads small files into.
+	 */
+	private final ThreadLocal<ByteBuffer> buffers = new ThreadLocal<ByteBuffer>() {
+		@Override
+		protected ByteBuffer initialValue() {
+			return ByteBuffer.allocateDirect(mapThreshold);
+		}
+	};
+
+	/**
+	 * The decoder that each thread uses (decoders are not thread-safe).
+	 */
+	private final ThreadLocal<CharsetDecoder> decoders = new ThreadLocal<CharsetDecoder>() {
+		@Override
+		protected CharsetDecoder initialValue() {
+			return charset.newDecoder().onMalformedInput(CodingErrorAction.REPLACE).onUnmappableCharacter(CodingErrorAction.REPLACE);
+		}
+	};
+
+	/**
+	 * Creates a reader that uses the platform's default character encoding.
+	 */
+	public SourceFileReader() {
+		this(Charset.defaultCharset());
+	}
+
+	/**
+	 * @param charset the character encoding of the source files
+	 */
+	public SourceFileReader(Charset charset) {
+		this(charset, DEFAULT_MAP_THRESHOLD);
+	}
+
+	/**
+	 * @param charset the character encoding of the source files
+	 * @param mapThreshold files that are this size (in bytes) or larger are
+	 * memory-mapped, smaller files are read into a buffer
+	 */
+	public SourceFileReader(Charset charset, int mapThreshold) {
+		this.charset = charset;
+		this.mapThreshold = mapThreshold;
+	}
+
+	/**
+	 * Gets the character encoding of the source files.
+	 * @return the character encoding
+	 */
+	public Charset getCharset() {
+		return charset;
+	}
+
+	/**
+	 * Reads the entire contents of a file.
+	 * @param file the file
+	 * @return the file contents
+	 * @throws IOException if there's a problem reading the file
+	 */
+	public CharBuffer read(File file) throws IOException {
+		return read(file.toPath());
+	}
+
+	/**
+	 * Reads the entire contents of a file.
+	 * @param path the file (it can also be an entry in a zip file system)
+	 * @return the file contents
+	 * @throws IOException if there's a problem reading the file
+	 */
+	public CharBuffer read(Path path) throws IOException {
+		return decode(readBytes(path));
+	}
+
+	/**
+	 * Reads the raw bytes of a file without decoding them. If the file is
+	 * small, the returned buffer is reused by the next call to this method
+	 * (or to {@link #read}) on the same thread, so it must be used before then.
+	 * @param file the file
+	 * @return the file contents
+	 * @throws IOException if there's a problem reading the file
+	 */
+	public ByteBuffer readBytes(File file) throws IOException {
+		return readBytes(file.toPath());
+	}
+
+	/**
+	 * Reads the raw bytes of a file without decoding them. If the file is
+	 * small, the returned buffer is reused by the next call to this method
+	 * (or to {@link #read}) on the same thread, so it must be used before then.
+	 * Files that are not on the default file system (such as zip entries) are
+	 * never memory-mapped. They are decompressed directly into the buffer.
+	 * @param path the file (it can also be an entry in a zip file system)
+	 * @return the file contents
+	 * @throws IOException if there's a problem reading the file
+	 */
+	public ByteBuffer readBytes(Path path) throws IOException {
+		return readBytes(path, true);
+	}
+
+	/**
+	 * Reads the raw bytes of a file into a new heap buffer, so that the bytes
+	 * can be handed to another thread. Files are never memory-mapped by this
+	 * method, so all of the I/O is done by the calling thread (and not later,
+	 * by whichever thread touches the mapped pages). This also avoids
+	 * allocating a per-thread buffer on threads that only read a single file
+	 * (such as virtual threads).
+	 * @param path the file (it can also be an entry in a zip file system)
+	 * @return the file contents
+	 * @throws IOException if there's a problem reading the file
+	 */
+	public ByteBuffer readNewBytes(Path path) throws IOException {
+		return readBytes(path, false);
+	}
+
+	private ByteBuffer readBytes(Path path, boolean reuseBuffer) throws IOException {
+		boolean local = (path.getFileSystem() == FileSystems.getDefault());
+
+		//zip file systems extract compressed entries to a temporary file when a FileChannel is opened, so use a plain byte channel
+		SeekableByteChannel channel = local ? FileChannel.open(path, StandardOpenOption.READ) : Files.newByteChannel(path, StandardOpenOption.READ);
+		try {
+			long size = channel.size();
+			if (size > Integer.MAX_VALUE) {
+				throw new IOException("File is too large: " + path);
+			}
+
+			ByteBuffer bytes;
+			if (size >= mapThreshold || !reuseBuffer) {
+				if (local && reuseBuffer) {
+					return ((FileChannel) channel).map(FileChannel.MapMode.READ_ONLY, 0, size);
+				}
+				bytes = ByteBuffer.allocate((int) size);
+			} else {
+				bytes = buffers.get();
+				bytes.clear();
+				bytes.limit((int) size);
+			}
+			while (bytes.hasRemaining() && channel.read(bytes) >= 0) {
+				//keep reading
+			}
+			bytes.flip();
+			return bytes;
+		} finally {
+			channel.close();
+		}
+	}
+
+	/**
+	 * Decodes bytes into characters.
+	 * @param bytes the bytes
+	 * @return the characters
+	 * @throws IOException if there's a problem decoding the bytes
+	 */
+	public CharBuffer decode(ByteBuffer bytes) throws IOException {
+		CharsetDecoder decoder = decoders.get();
+		decoder.reset();
+		return decoder.decode(bytes);
+	}
+}
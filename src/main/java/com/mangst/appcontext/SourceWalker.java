@@ -0,0 +1,590 @@
+package com.mangst.appcontext;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.NotDirectoryException;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Finds the Java source files in a list of package directories. Entries whose
+ * names end with the file extension are taken to be files without looking up
+ * their attributes. Every other entry is looked up once, only to find the
+ * sub-directories. Symbolic links are followed, and symbolic links that point
+ * back to one of their parent directories are skipped.
+ * <p>
+ * The files are returned in a predictable order: the files of each directory
+ * sorted by name, followed by the files of each sub-directory (sorted by
+ * name). The order is the same no matter how many threads are used.
+ * </p>
+ * <p>
+ * Glob patterns (see {@link java.nio.file.FileSystem#getPathMatcher}) are
+ * matched against the path of each file or directory relative to the
+ * directory that the walk started from (for example, "sub/Foo.java"). A
+ * pattern that doesn't contain a slash is matched against the name of the file
+ * or directory instead (for example, "*Test.java").
+ * </p>
+ * <p>
+ * If a {@link PackageSelection} is set, the walk should start from the source
+ * directory. Only the directories that contain selected packages are walked,
+ * so each file is visited at most once no matter how the selected packages
+ * overlap.
+ * </p>
+ * @author mangst
+ */
+public class SourceWalker {
+	/**
+	 * The names of the directories that are skipped by default (version
+	 * control and build output directories).
+	 */
+	public static final List<String> DEFAULT_EXCLUDED_DIRECTORIES = Collections.unmodifiableList(Arrays.asList(".svn", ".git", ".hg", "target", "node_modules"));
+
+	private final Set<String> excludedDirectories = new LinkedHashSet<String>(DEFAULT_EXCLUDED_DIRECTORIES);
+	private final List<Glob> includes = new ArrayList<Glob>();
+	private final List<Glob> excludes = new ArrayList<Glob>();
+	private boolean recurse = true;
+	private String fileExtension = ".java";
+	private PackageSelection packages;
+	private int threads = 1;
+
+	/**
+	 * Sets whether the files in sub-directories are included.
+	 * @param recurse true to include the files in sub-directories, false to
+	 * only include the files directly inside the package directories
+	 * (defaults to true)
+	 * @return this
+	 */
+	public SourceWalker setRecurse(boolean recurse) {
+		this.recurse = recurse;
+		return this;
+	}
+
+	/**
+	 * Sets the extension of the files to include.
+	 * @param fileExtension the file extension (defaults to ".java", use
+	 * ".class" to find compiled classes)
+	 * @return this
+	 */
+	public SourceWalker setFileExtension(String fileExtension) {
+		this.fileExtension = fileExtension;
+		return this;
+	}
+
+	/**
+	 * Sets the packages to include. The directories that are walked are
+	 * treated as source directories, and only the files in the selected
+	 * packages are included.
+	 * @param packages the packages or null to include all of the files in
+	 * the directories that are walked (and their sub-directories, if recursion
+	 * is enabled) (defaults to null)
+	 * @return this
+	 */
+	public SourceWalker setPackageSelection(PackageSelection packages) {
+		this.packages = packages;
+		return this;
+	}
+
+	/**
+	 * Sets the number of threads to walk the directories with. When more than
+	 * one thread is used, the contents of the sub-directories are listed in
+	 * parallel, ahead of the walk.
+	 * @param threads the number of threads (defaults to 1)
+	 * @return this
+	 */
+	public SourceWalker setThreads(int threads) {
+		this.threads = threads;
+		return this;
+	}
+
+	/**
+	 * Sets the names of the directories that are always skipped. The package
+	 * directories themselves are never skipped.
+	 * @param names the directory names (defaults to
+	 * {@link #DEFAULT_EXCLUDED_DIRECTORIES})
+	 * @return this
+	 */
+	public SourceWalker setExcludedDirectories(Collection<String> names) {
+		excludedDirectories.clear();
+		excludedDirectories.addAll(names);
+		return this;
+	}
+
+	/**
+	 * Adds a glob pattern that a file must match in order to be included. If
+	 * no include patterns are added, all files with the right extension are
+	 * included.
+	 * @param pattern the glob pattern (example: "**&#47;*Dao.java")
+	 * @return this
+	 * @throws IllegalArgumentException if the pattern is invalid
+	 */
+	public SourceWalker include(String pattern) {
+		includes.add(new Glob(pattern));
+		return this;
+	}
+
+	/**
+	 * Adds a glob pattern for files and directories to skip. A directory that
+	 * matches is skipped along with everything inside of it.
+	 * @param pattern the glob pattern (example: "generated")
+	 * @return this
+	 * @throws IllegalArgumentException if the pattern is invalid
+	 */
+	public SourceWalker exclude(String pattern) {
+		excludes.add(new Glob(pattern));
+		return this;
+	}
+
+	/**
+	 * Finds the Java source files in a list of package directories. Package
+	 * directories that don't exist are skipped.
+	 * @param packageDirs the package directories
+	 * @return the Java source files
+	 * @throws IOException if there's a problem reading a directory
+	 */
+	public List<File> walk(Collection<File> packageDirs) throws IOException {
+		return toFiles(walk(toPaths(packageDirs), false));
+	}
+
+	/**
+	 * Finds the Java source files in a list of package directories. Package
+	 * directories that don't exist are skipped.
+	 * @param packageDirs the package directories (they can also be
+	 * directories in a zip file system)
+	 * @return the Java source files
+	 * @throws IOException if there's a problem reading a directory
+	 */
+	public List<Path> walkPaths(Collection<Path> packageDirs) throws IOException {
+		return walk(packageDirs, false);
+	}
+
+	/**
+	 * Finds the Java source files in a list of package directories, handing
+	 * each one to a callback as soon as it is found instead of collecting
+	 * them into a list. The files are found in the same order as
+	 * {@link #walkPaths(Collection)}. The directories are walked on the
+	 * current thread, and when more than one thread is used, the contents of
+	 * the sub-directories are listed in the background ahead of the walk.
+	 * Package directories that don't exist are skipped.
+	 * @param packageDirs the package directories (they can also be
+	 * directories in a zip file system)
+	 * @param callback receives each file (it's called on the current thread)
+	 * @throws IOException if there's a problem reading a directory or the
+	 * callback throws an exception
+	 */
+	public void walkPaths(Collection<Path> packageDirs, Callback callback) throws IOException {
+		walk(packageDirs, false, callback);
+	}
+
+	/**
+	 * Finds the directories that would be walked by {@link #walk} (the
+	 * package directories and, if recursion is enabled, their sub-directories
+	 * that aren't excluded). Package directories that don't exist are
+	 * skipped.
+	 * @param packageDirs the package directories
+	 * @return the directories
+	 * @throws IOException if there's a problem reading a directory
+	 */
+	public List<File> walkDirectories(Collection<File> packageDirs) throws IOException {
+		return toFiles(walk(toPaths(packageDirs), true));
+	}
+
+	/**
+	 * Determines whether a file would be returned by {@link #walk}, without
+	 * checking whether it exists.
+	 * @param packageDir the package directory
+	 * @param file the file (inside the package directory)
+	 * @return true if the file would be included, false if not
+	 */
+	public boolean accept(File packageDir, File file) {
+		Path relative = relativize(packageDir, file);
+		if (relative == null || (!descends() && relative.getNameCount() > 1)) {
+			return false;
+		}
+		return acceptParents(relative) && acceptFile(relative);
+	}
+
+	/**
+	 * Determines whether a directory would be walked by {@link #walk},
+	 * without checking whether it exists.
+	 * @param packageDir the package directory
+	 * @param dir the directory (inside the package directory)
+	 * @return true if the directory would be walked, false if not
+	 */
+	public boolean acceptDirectory(File packageDir, File dir) {
+		Path relative = relativize(packageDir, dir);
+		if (relative == null || !descends()) {
+			return false;
+		}
+		return acceptParents(relative) && acceptDirectory(relative);
+	}
+
+	private static Path relativize(File packageDir, File file) {
+		Path start = packageDir.toPath();
+		Path path = file.toPath();
+		if (!path.startsWith(start) || path.equals(start)) {
+			return null;
+		}
+		return start.relativize(path);
+	}
+
+	private boolean acceptParents(Path relative) {
+		for (int i = 1; i < relative.getNameCount(); i++) {
+			if (!acceptDirectory(relative.subpath(0, i))) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private List<Path> walk(Collection<Path> packageDirs, boolean directories) throws IOException {
+		final List<Path> found = new ArrayList<Path>();
+		walk(packageDirs, directories, new Callback() {
+			@Override
+			public void found(Path path) {
+				found.add(path);
+			}
+		});
+		return found;
+	}
+
+	/**
+	 * Walks a list of package directories.
+	 * @param packageDirs the package directories
+	 * @param directories true to find the directories that are walked, false
+	 * to find the Java source files
+	 * @param callback receives each file or directory
+	 * @throws IOException if there's a problem reading a directory or the
+	 * callback throws an exception
+	 */
+	private void walk(Collection<Path> packageDirs, boolean directories, Callback callback) throws IOException {
+		ExecutorService pool = (threads > 1 && descends()) ? Executors.newFixedThreadPool(threads) : null;
+		try {
+			for (Path start : packageDirs) {
+				BasicFileAttributes attributes = readAttributes(start);
+				if (attributes == null || !attributes.isDirectory()) {
+					continue;
+				}
+				walk(start, start, new Ancestor(fileKey(start, attributes), null), list(start, pool), pool, directories, callback);
+			}
+		} finally {
+			if (pool != null) {
+				pool.shutdownNow();
+			}
+		}
+	}
+
+	/**
+	 * Walks a directory, handing its files (or the directory itself) to the
+	 * callback before walking its sub-directories.
+	 * @param start the package directory
+	 * @param dir the directory to walk
+	 * @param ancestors the directory and its parent directories
+	 * @param listing the contents of the directory
+	 * @param pool the thread pool to list the sub-directories with or null to
+	 * list them on the current thread
+	 * @param directories true to hand the directories to the callback, false
+	 * to hand it the Java source files
+	 * @param callback receives each file or directory
+	 * @throws IOException if there's a problem reading a directory
+	 */
+	private void walk(Path start, Path dir, Ancestor ancestors, Future<List<Child>> listing, ExecutorService pool, boolean directories, Callback callback) throws IOException {
+		List<Child> children;
+		try {
+			children = listing.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while walking \"" + dir + "\".");
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof IOException) {
+				throw (IOException) e.getCause();
+			}
+			throw new IOException(e.getCause());
+		}
+
+		if (directories) {
+			callback.found(dir);
+		}
+
+		List<Path> subDirs = new ArrayList<Path>();
+		List<Ancestor> subAncestors = new ArrayList<Ancestor>();
+		List<Future<List<Child>>> subListings = new ArrayList<Future<List<Child>>>();
+		for (Child child : children) {
+			Path relative = start.relativize(child.path);
+			if (child.attributes != null) {
+				if (!descends() || !acceptDirectory(relative)) {
+					continue;
+				}
+
+				Object key = fileKey(child.path, child.attributes);
+				if (ancestors.contains(key)) {
+					//symbolic link loop
+					continue;
+				}
+				subDirs.add(child.path);
+				subAncestors.add(new Ancestor(key, ancestors));
+				subListings.add(list(child.path, pool));
+			} else if (!directories && acceptFile(relative)) {
+				callback.found(child.path);
+			}
+		}
+
+		for (int i = 0; i < subDirs.size(); i++) {
+			walk(start, subDirs.get(i), subAncestors.get(i), subListings.get(i), pool, directories, callback);
+		}
+	}
+
+	/**
+	 * Lists the contents of a directory.
+	 * @param dir the directory
+	 * @param pool the thread pool to list the directory on or null to list it
+	 * on the current thread
+	 * @return the contents of the directory
+	 * @throws IOException if there's a problem reading the directory
+	 */
+	private Future<List<Child>> list(final Path dir, ExecutorService pool) throws IOException {
+		if (pool != null) {
+			return pool.submit(new Callable<List<Child>>() {
+				@Override
+				public List<Child> call() throws IOException {
+					return list(dir);
+				}
+			});
+		}
+		return CompletableFuture.completedFuture(list(dir));
+	}
+
+	/**
+	 * Lists the contents of a directory.
+	 * @param dir the directory
+	 * @return the files that have the file extension and the sub-directories
+	 * (if sub-directories are walked), sorted by name
+	 * @throws IOException if there's a problem reading the directory
+	 */
+	private List<Child> list(Path dir) throws IOException {
+		List<Path> paths = new ArrayList<Path>();
+		try {
+			DirectoryStream<Path> stream = Files.newDirectoryStream(dir);
+			try {
+				for (Path path : stream) {
+					paths.add(path);
+				}
+			} finally {
+				stream.close();
+			}
+		} catch (NoSuchFileException e) {
+			//the directory was deleted while it was being walked
+			return Collections.emptyList();
+		} catch (NotDirectoryException e) {
+			return Collections.emptyList();
+		}
+		Collections.sort(paths);
+
+		List<Child> children = new ArrayList<Child>(paths.size());
+		for (Path path : paths) {
+			if (path.getFileName().toString().endsWith(fileExtension)) {
+				//a file name is enough to tell that it's a source file, so don't look up its attributes
+				children.add(new Child(path, null));
+			} else if (descends()) {
+				//only directories are needed from the other entries
+				BasicFileAttributes attributes = readAttributes(path);
+				if (attributes != null && attributes.isDirectory()) {
+					children.add(new Child(path, attributes));
+				}
+			}
+		}
+		return children;
+	}
+
+	private static List<Path> toPaths(Collection<File> files) {
+		List<Path> paths = new ArrayList<Path>(files.size());
+		for (File file : files) {
+			paths.add(file.toPath());
+		}
+		return paths;
+	}
+
+	private static List<File> toFiles(List<Path> paths) {
+		List<File> files = new ArrayList<File>(paths.size());
+		for (Path path : paths) {
+			files.add(path.toFile());
+		}
+		return files;
+	}
+
+	/**
+	 * Determines whether sub-directories are walked.
+	 * @return true if they are walked, false if not
+	 */
+	private boolean descends() {
+		return recurse || packages != null;
+	}
+
+	private boolean acceptDirectory(Path relative) {
+		String name = relative.getFileName().toString();
+		if (excludedDirectories.contains(name)) {
+			return false;
+		}
+		if (packages != null && !packages.mayContain(packageName(relative))) {
+			return false;
+		}
+		return !matches(excludes, relative);
+	}
+
+	private boolean acceptFile(Path relative) {
+		if (!relative.getFileName().toString().endsWith(fileExtension)) {
+			return false;
+		}
+		if (packages != null && !packages.contains(packageName(relative.getParent()))) {
+			return false;
+		}
+		if (!includes.isEmpty() && !matches(includes, relative)) {
+			return false;
+		}
+		return !matches(excludes, relative);
+	}
+
+	/**
+	 * Converts a directory path to a package name.
+	 * @param relative the path relative to the source directory (null for
+	 * the source directory itself)
+	 * @return the package name (a blank value for the default package)
+	 */
+	private static String packageName(Path relative) {
+		if (relative == null) {
+			return "";
+		}
+		StringBuilder sb = new StringBuilder();
+		for (Path name : relative) {
+			if (sb.length() > 0) {
+				sb.append('.');
+			}
+			sb.append(name);
+		}
+		return sb.toString();
+	}
+
+	private static boolean matches(List<Glob> globs, Path relative) {
+		for (Glob glob : globs) {
+			if (glob.matches(relative)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Reads the attributes of a file, following symbolic links.
+	 * @param path the file
+	 * @return the attributes or null if the file doesn't exist (or is a broken
+	 * symbolic link)
+	 * @throws IOException if there's a problem reading the attributes
+	 */
+	private static BasicFileAttributes readAttributes(Path path) throws IOException {
+		try {
+			return Files.readAttributes(path, BasicFileAttributes.class);
+		} catch (NoSuchFileException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Gets an object that uniquely identifies a directory, for detecting
+	 * symbolic link loops.
+	 * @param dir the directory
+	 * @param attributes the directory's attributes
+	 * @return the file key (the device and inode on Unix) or the directory's
+	 * real path if the file system doesn't have file keys
+	 * @throws IOException if there's a problem resolving the real path
+	 */
+	private static Object fileKey(Path dir, BasicFileAttributes attributes) throws IOException {
+		Object key = attributes.fileKey();
+		return (key == null) ? dir.toRealPath() : key;
+	}
+
+	/**
+	 * Receives the files found by {@link SourceWalker#walkPaths(Collection,
+	 * Callback)}.
+	 * @author mangst
+	 */
+	public interface Callback {
+		/**
+		 * Called when a file is found.
+		 * @param file the file
+		 * @throws IOException to stop the walk
+		 */
+		void found(Path file) throws IOException;
+	}
+
+	/**
+	 * An entry of a directory. The attributes are null for the entries that
+	 * were taken to be source files by their names.
+	 */
+	private static class Child {
+		private final Path path;
+		private final BasicFileAttributes attributes;
+
+		public Child(Path path, BasicFileAttributes attributes) {
+			this.path = path;
+			this.attributes = attributes;
+		}
+	}
+
+	/**
+	 * A directory on the path from the package directory to the directory
+	 * that is being walked.
+	 */
+	private static class Ancestor {
+		private final Object key;
+		private final Ancestor parent;
+
+		public Ancestor(Object key, Ancestor parent) {
+			this.key = key;
+			this.parent = parent;
+		}
+
+		public boolean contains(Object key) {
+			for (Ancestor a = this; a != null; a = a.parent) {
+				if (a.key.equals(key)) {
+					return true;
+				}
+			}
+			return false;
+		}
+	}
+
+	/**
+	 * A glob pattern.
+	 */
+	private static class Glob {
+		private final PathMatcher matcher;
+		private final boolean nameOnly;
+
+		public Glob(String pattern) {
+			matcher = FileSystems.getDefault().getPathMatcher("glob:" + pattern);
+			nameOnly = !pattern.contains("/");
+		}
+
+		public boolean matches(Path relative) {
+			return matcher.matches(nameOnly ? relative.getFileName() : relative);
+		}
+	}
+}
@@ -0,0 +1,179 @@
+package com.mangst.appcontext;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Maps the classes that beans are generated for to their bean IDs, so that
+ * the "ref" attributes of properties and constructor arguments point at beans
+ * that actually exist. Classes are added while the source files are being
+ * parsed (from any number of threads), and every class must be added before
+ * the first bean is built.
+ * <p>
+ * A type name is resolved the way the compiler would resolve it: a fully
+ * qualified name is looked up as-is, and a simple name is looked up using
+ * the single-type imports of the class that uses it, then the class' own
+ * package, and then its on-demand ("*") imports. Each lookup is a hash
+ * lookup. References to types that aren't in the index fall back to the
+ * lower-cased simple name and are recorded, so they can be reported.
+ * </p>
+ * <p>
+ * A bean's ID is its lower-cased simple class name (example: "fooDao"). If
+ * two classes have the same simple name, both beans are given their fully
+ * qualified class names as IDs instead, so that neither overrides the other.
+ * </p>
+ * @author mangst
+ */
+public class TypeIndex {
+	/**
+	 * The fully qualified names of the classes in the index.
+	 */
+	private final Set<String> classes = ConcurrentHashMap.newKeySet();
+
+	/**
+	 * The fully qualified names of the classes in the index, keyed by simple
+	 * name.
+	 */
+	private final ConcurrentHashMap<String, Set<String>> simpleNames = new ConcurrentHashMap<String, Set<String>>();
+
+	private final Queue<String> unresolved = new ConcurrentLinkedQueue<String>();
+
+	/**
+	 * Adds a class to the index. This method can be called from multiple
+	 * threads at once.
+	 * @param javaClass the class information
+	 */
+	public void add(JavaClass javaClass) {
+		String qualifiedName = qualifiedName(javaClass);
+		if (!classes.add(qualifiedName)) {
+			return;
+		}
+
+		Set<String> set = simpleNames.get(javaClass.className);
+		if (set == null) {
+			Set<String> newSet = ConcurrentHashMap.newKeySet();
+			set = simpleNames.putIfAbsent(javaClass.className, newSet);
+			if (set == null) {
+				set = newSet;
+			}
+		}
+		set.add(qualifiedName);
+	}
+
+	/**
+	 * Gets the number of classes in the index.
+	 * @return the number of classes
+	 */
+	public int size() {
+		return classes.size();
+	}
+
+	/**
+	 * Determines whether a class is in the index.
+	 * @param qualifiedName the fully qualified class name
+	 * @return true if it's in the index, false if not
+	 */
+	public boolean contains(String qualifiedName) {
+		return classes.contains(qualifiedName);
+	}
+
+	/**
+	 * Gets the ID of a class' bean.
+	 * @param javaClass the class information
+	 * @return the bean ID
+	 */
+	public String getBeanId(JavaClass javaClass) {
+		return getBeanId(qualifiedName(javaClass));
+	}
+
+	/**
+	 * Gets the ID of a class' bean.
+	 * @param qualifiedName the fully qualified class name
+	 * @return the bean ID
+	 */
+	public String getBeanId(String qualifiedName) {
+		String simpleName = qualifiedName.substring(qualifiedName.lastIndexOf('.') + 1);
+		Set<String> set = simpleNames.get(simpleName);
+		if (set != null && set.size() > 1) {
+			return qualifiedName;
+		}
+		return simpleName.substring(0, 1).toLowerCase() + simpleName.substring(1);
+	}
+
+	/**
+	 * Resolves the name of a type that is used in a class.
+	 * @param type the type name as it appears in the class (example: "FooDao"
+	 * or "com.example.FooDao")
+	 * @param from the class the type is used in
+	 * @return the fully qualified name of the class or null if the type does
+	 * not refer to a class in the index
+	 */
+	public String resolve(String type, JavaClass from) {
+		int dot = type.indexOf('.');
+
+		//qualified names are looked up as-is (simple names are resolved by scope below, so a default package class doesn't hide an import)
+		if (dot >= 0 && classes.contains(type)) {
+			return type;
+		}
+
+		String first = (dot < 0) ? type : type.substring(0, dot);
+		String rest = (dot < 0) ? "" : type.substring(dot);
+
+		//single-type imports (the first part of a qualified name can be an imported class, as in "Outer.Inner")
+		for (String importStr : from.imports) {
+			if (importStr.endsWith("." + first)) {
+				String qualifiedName = importStr + rest;
+				return classes.contains(qualifiedName) ? qualifiedName : null;
+			}
+		}
+
+		//the class' own package
+		String qualifiedName = (from.packageName == null) ? type : from.packageName + "." + type;
+		if (classes.contains(qualifiedName)) {
+			return qualifiedName;
+		}
+
+		//on-demand imports
+		for (String importStr : from.imports) {
+			if (importStr.endsWith(".*")) {
+				qualifiedName = importStr.substring(0, importStr.length() - 1) + type;
+				if (classes.contains(qualifiedName)) {
+					return qualifiedName;
+				}
+			}
+		}
+
+		return null;
+	}
+
+	/**
+	 * Records a reference that could not be resolved. This method can be
+	 * called from multiple threads at once.
+	 * @param beanId the ID of the bean that contains the reference
+	 * @param name the name of the property or the index of the constructor
+	 * argument
+	 * @param type the type of the property or constructor argument
+	 */
+	void addUnresolved(String beanId, String name, String type) {
+		unresolved.add("Bean \"" + beanId + "\" " + name + " refers to type \"" + type + "\", which has no bean.");
+	}
+
+	/**
+	 * Gets the references that could not be resolved.
+	 * @return a description of each unresolved reference, sorted
+	 */
+	public List<String> getUnresolved() {
+		List<String> list = new ArrayList<String>(unresolved);
+		Collections.sort(list);
+		return list;
+	}
+
+	private static String qualifiedName(JavaClass javaClass) {
+		return (javaClass.packageName == null) ? javaClass.className : javaClass.packageName + "." + javaClass.className;
+	}
+}
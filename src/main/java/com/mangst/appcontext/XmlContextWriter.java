@@ -0,0 +1,194 @@
+package com.mangst.appcontext;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+
+import org.w3c.dom.Attr;
+import org.w3c.dom.Element;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+
+/**
+ * Writes an application context XML file one &lt;bean /&gt; element at a
+ * time, so the entire document never has to be held in memory.
+ * @author mangst
+ */
+public class XmlContextWriter implements Closeable {
+	/**
+	 * The string used to indent each level of the XML document.
+	 */
+	static final String INDENT = "    ";
+
+	private final Writer out;
+	private final XMLStreamWriter writer;
+
+	/**
+	 * Constructs a new XML writer and writes the beginning of the document.
+	 * @param out the output stream to write to (the XML is encoded in UTF-8,
+	 * and the stream is not closed by {@link #close})
+	 * @param springVersion the Spring version
+	 * @throws IOException if there's a problem writing to the stream
+	 */
+	public XmlContextWriter(OutputStream out, String springVersion) throws IOException {
+		this(new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8)), springVersion);
+	}
+
+	/**
+	 * Constructs a new XML writer and writes the beginning of the document.
+	 * @param out the writer to write to (it must encode the characters in UTF-8
+	 * if they are being written to a byte stream, and it is not closed by
+	 * {@link #close})
+	 * @param springVersion the Spring version
+	 * @throws IOException if there's a problem writing to the writer
+	 */
+	public XmlContextWriter(Writer out, String springVersion) throws IOException {
+		this.out = out;
+		try {
+			writer = createXMLStreamWriter(out);
+			writer.writeStartDocument("UTF-8", "1.0");
+			writer.writeCharacters("\n");
+			writer.writeStartElement("beans");
+			writer.writeDefaultNamespace(ApplicationContextGenerator.BEANS_NAMESPACE);
+			writer.writeNamespace("xsi", ApplicationContextGenerator.XSI_NAMESPACE);
+			writer.writeAttribute("xsi", ApplicationContextGenerator.XSI_NAMESPACE, "schemaLocation", ApplicationContextGenerator.schemaLocation(springVersion));
+		} catch (XMLStreamException e) {
+			throw new IOException(e);
+		}
+	}
+
+	/**
+	 * Writes a &lt;bean /&gt; element.
+	 * @param beanElement the &lt;bean /&gt; element
+	 * @throws IOException if there's a problem writing to the stream
+	 */
+	public void writeBean(Element beanElement) throws IOException {
+		try {
+			writeElement(writer, beanElement, "\n", INDENT, 1);
+		} catch (XMLStreamException e) {
+			throw new IOException(e);
+		}
+	}
+
+	/**
+	 * Writes an &lt;import /&gt; element.
+	 * @param resource the location of the application context XML file to
+	 * import (relative to this one)
+	 * @throws IOException if there's a problem writing to the stream
+	 */
+	public void writeImport(String resource) throws IOException {
+		try {
+			indent(writer, "\n", INDENT, 1);
+			writer.writeEmptyElement("import");
+			writer.writeAttribute("resource", resource);
+		} catch (XMLStreamException e) {
+			throw new IOException(e);
+		}
+	}
+
+	/**
+	 * Writes the end of the document and flushes it to the underlying stream.
+	 * The stream itself is left open, since it belongs to the caller (it may be
+	 * standard output).
+	 * @throws IOException if there's a problem writing to the stream
+	 */
+	@Override
+	public void close() throws IOException {
+		try {
+			writer.writeCharacters("\n");
+			writer.writeEndElement();
+			writer.writeEndDocument();
+			writer.writeCharacters("\n");
+			writer.close();
+		} catch (XMLStreamException e) {
+			throw new IOException(e);
+		}
+		out.flush();
+	}
+
+	/**
+	 * Creates a stream writer.
+	 * @param out the writer to write to
+	 * @return the stream writer
+	 * @throws XMLStreamException if the stream writer can't be created
+	 */
+	static XMLStreamWriter createXMLStreamWriter(Writer out) throws XMLStreamException {
+		synchronized (OutputFactoryHolder.factory) {
+			return OutputFactoryHolder.factory.createXMLStreamWriter(out);
+		}
+	}
+
+	/**
+	 * Writes an element and all of its child elements, each on its own line.
+	 * @param writer the stream to write to
+	 * @param element the element
+	 * @param newline the string that starts each line (a line break, which
+	 * may be followed by the indentation of the enclosing element)
+	 * @param indent the string used to indent each level
+	 * @param depth the depth of the element (used for indentation)
+	 * @throws XMLStreamException if there's a problem writing to the stream
+	 */
+	static void writeElement(XMLStreamWriter writer, Element element, String newline, String indent, int depth) throws XMLStreamException {
+		indent(writer, newline, indent, depth);
+
+		boolean empty = (element.getFirstChild() == null);
+		if (empty) {
+			writer.writeEmptyElement(element.getTagName());
+		} else {
+			writer.writeStartElement(element.getTagName());
+		}
+
+		NamedNodeMap attributes = element.getAttributes();
+		for (int i = 0; i < attributes.getLength(); i++) {
+			Attr attribute = (Attr) attributes.item(i);
+			writer.writeAttribute(attribute.getName(), attribute.getValue());
+		}
+
+		if (empty) {
+			return;
+		}
+
+		for (Node child = element.getFirstChild(); child != null; child = child.getNextSibling()) {
+			if (child instanceof Element) {
+				writeElement(writer, (Element) child, newline, indent, depth + 1);
+			}
+		}
+		indent(writer, newline, indent, depth);
+		writer.writeEndElement();
+	}
+
+	/**
+	 * Starts a new line and indents it.
+	 * @param writer the stream to write to
+	 * @param newline the string that starts the line
+	 * @param indent the string used to indent each level
+	 * @param depth the indentation level
+	 * @throws XMLStreamException if there's a problem writing to the stream
+	 */
+	private static void indent(XMLStreamWriter writer, String newline, String indent, int depth) throws XMLStreamException {
+		StringBuilder sb = new StringBuilder(newline.length() + depth * indent.length());
+		sb.append(newline);
+		for (int i = 0; i < depth; i++) {
+			sb.append(indent);
+		}
+		writer.writeCharacters(sb.toString());
+	}
+
+	/**
+	 * Holds the factory that creates the stream writers. Looking up the
+	 * factory implementation searches the classpath, so it is only done once,
+	 * the first time a stream writer is created.
+	 * @author mangst
+	 */
+	private static class OutputFactoryHolder {
+		private static final XMLOutputFactory factory = XMLOutputFactory.newInstance();
+	}
+}
@@ -1,14 +1,29 @@
 package com.mangst.appcontext;
 
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintStream;
 import java.io.StringReader;
 import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
 
 import javax.xml.namespace.NamespaceContext;
+import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.transform.OutputKeys;
 import javax.xml.transform.Transformer;
 import javax.xml.transform.TransformerFactory;
@@ -20,7 +35,9 @@ import javax.xml.xpath.XPathFactory;
 
 import org.junit.Assert;
 import org.junit.BeforeClass;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 import org.w3c.dom.Document;
 import org.w3c.dom.NamedNodeMap;
 import org.w3c.dom.Node;
@@ -36,6 +53,9 @@ public class ApplicationContextGeneratorTest {
 	 */
 	private static XPath xpath;
 
+	@Rule
+	public TemporaryFolder temp = new TemporaryFolder();
+
 	@BeforeClass
 	public static void beforeClass() {
 		AppContextNamespaceContext nc = new AppContextNamespaceContext();
@@ -405,13 +425,306 @@ public class ApplicationContextGeneratorTest {
 		Assert.assertEquals(0, nodeList.getLength());
 	}
 
+	/**
+	 * A varargs parameter found by the regex parser should not stop the run.
+	 * @throws Exception
+	 */
+	@Test
+	public void testRegexVarargs() throws Exception {
+		ApplicationContextGenerator generator = new ApplicationContextGenerator("2.0");
+		generator.setParser(new RegexJavaSourceParser());
+		generator.addBean(new StringReader("public class Clazz{ public Clazz(Foo foo, int... n){} }"));
+		Document document = generator.getDocument();
+
+		NodeList nodeList = (NodeList) xpath.evaluate("/b:beans/bean[1]/constructor-arg", document, XPathConstants.NODESET);
+		Assert.assertEquals(2, nodeList.getLength());
+		Assert.assertEquals("foo", nodeList.item(0).getAttributes().getNamedItem("ref").getNodeValue());
+		Assert.assertNull(nodeList.item(1).getAttributes().getNamedItem("ref"));
+		Assert.assertEquals(1, ((NodeList) xpath.evaluate("/b:beans/bean[1]/constructor-arg[2]/list", document, XPathConstants.NODESET)).getLength());
+	}
+
+	/**
+	 * Array and varargs constructor parameters should get a &lt;list /&gt;
+	 * element, not a reference to a bean.
+	 * @throws Exception
+	 */
+	@Test
+	public void testArrayConstructorArgs() throws Exception {
+		ApplicationContextGenerator generator = new ApplicationContextGenerator("2.0");
+		generator.addBean(new StringReader("public class Clazz{ public Clazz(String[] names, int... n){} }"));
+		Document document = generator.getDocument();
+
+		NodeList nodeList = (NodeList) xpath.evaluate("/b:beans/bean[1]/constructor-arg", document, XPathConstants.NODESET);
+		Assert.assertEquals(2, nodeList.getLength());
+		for (int i = 0; i < nodeList.getLength(); i++) {
+			Assert.assertNull(nodeList.item(i).getAttributes().getNamedItem("ref"));
+		}
+		Assert.assertEquals(2, ((NodeList) xpath.evaluate("/b:beans/bean[1]/constructor-arg/list", document, XPathConstants.NODESET)).getLength());
+	}
+
+	/**
+	 * Parsing the files in parallel should generate exactly the same XML as
+	 * parsing them one after another.
+	 * @throws Exception
+	 */
+	@Test
+	public void testParallel() throws Exception {
+		List<File> files = new ArrayList<File>();
+		for (int i = 0; i < 100; i++) {
+			File file = temp.newFile("Clazz" + i + ".java");
+			String source = "package com.example; public class Clazz" + i + "{ public int num = " + i + "; public Clazz" + i + "(String arg){} public void setObj(AnObject obj){} }";
+			if (i % 10 == 0) {
+				source = "class NotPublic" + i + "{}";
+			}
+			Writer writer = new FileWriter(file);
+			writer.write(source);
+			writer.close();
+			files.add(file);
+		}
+
+		ApplicationContextGenerator serial = new ApplicationContextGenerator("2.0");
+		serial.addBeans(files, 1);
+		ApplicationContextGenerator parallel = new ApplicationContextGenerator("2.0");
+		parallel.addBeans(files, 4);
+
+		NodeList nodeList = (NodeList) xpath.evaluate("/b:beans/bean", parallel.getDocument(), XPathConstants.NODESET);
+		Assert.assertEquals(90, nodeList.getLength());
+		Assert.assertEquals(getXmlString(serial.getDocument()), getXmlString(parallel.getDocument()));
+	}
+
+	/**
+	 * Reading the files on I/O threads should generate exactly the same XML
+	 * as reading and parsing them one after another, even when there are
+	 * fewer I/O threads than files.
+	 * @throws Exception
+	 */
+	@Test
+	public void testIoThreads() throws Exception {
+		List<File> files = new ArrayList<File>();
+		for (int i = 0; i < 100; i++) {
+			String source = "package com.example; public class Clazz" + i + "{ public int num = " + i + "; public void setObj(AnObject obj){} }";
+			files.add(write(temp.newFile("Clazz" + i + ".java"), source));
+		}
+
+		ApplicationContextGenerator serial = new ApplicationContextGenerator("2.0");
+		serial.addBeans(files, 1);
+		for (int threads : new int[] { 1, 4 }) {
+			ApplicationContextGenerator prefetching = new ApplicationContextGenerator("2.0");
+			prefetching.setIoThreads(8);
+			prefetching.setStats(new GenerationStats());
+			prefetching.addBeans(files, threads);
+			Assert.assertEquals(getXmlString(serial.getDocument()), getXmlString(prefetching.getDocument()));
+		}
+
+		//a file that can't be read should fail the whole run
+		files.add(new File(temp.getRoot(), "Missing.java"));
+		ApplicationContextGenerator prefetching = new ApplicationContextGenerator("2.0");
+		prefetching.setIoThreads(8);
+		try {
+			prefetching.addBeans(files, 4);
+			Assert.fail();
+		} catch (IOException e) {
+			//expected
+		}
+	}
+
+	/**
+	 * With a parse cache, I/O threads should not read the files that haven't
+	 * changed.
+	 * @throws Exception
+	 */
+	@Test
+	public void testIoThreadsParseCache() throws Exception {
+		List<File> files = new ArrayList<File>();
+		for (int i = 0; i < 20; i++) {
+			files.add(write(temp.newFile("Clazz" + i + ".java"), "package com.example; public class Clazz" + i + "{ public int num = " + i + "; }"));
+		}
+
+		ParseCache cache = new ParseCache("test");
+		ApplicationContextGenerator first = new ApplicationContextGenerator("2.0");
+		first.setParseCache(cache);
+		first.setIoThreads(8);
+		first.addBeans(files, 4);
+
+		GenerationStats stats = new GenerationStats();
+		ApplicationContextGenerator second = new ApplicationContextGenerator("2.0");
+		second.setParseCache(cache);
+		second.setIoThreads(8);
+		second.setStats(stats);
+		second.addBeans(files, 4);
+		Assert.assertEquals(0, stats.getBytes());
+		Assert.assertEquals(getXmlString(first.getDocument()), getXmlString(second.getDocument()));
+
+		//a file that changed is still read on the I/O threads
+		write(files.get(3), "package com.example; public class Changed{}");
+		stats = new GenerationStats();
+		ApplicationContextGenerator third = new ApplicationContextGenerator("2.0");
+		third.setParseCache(cache);
+		third.setIoThreads(8);
+		third.setStats(stats);
+		third.addBeans(files, 4);
+		Assert.assertEquals(files.get(3).length(), stats.getBytes());
+		Assert.assertTrue(getXmlString(third.getDocument()).contains("com.example.Changed"));
+	}
+
+	/**
+	 * With a type index, references should point to generated beans, and
+	 * references that can't be resolved should be recorded.
+	 * @throws Exception
+	 */
+	@Test
+	public void testTypeIndex() throws Exception {
+		File dir = temp.newFolder("src");
+		new File(dir, "a").mkdir();
+		new File(dir, "b").mkdir();
+		List<File> files = new ArrayList<File>();
+		files.add(write(new File(dir, "a/Foo.java"), "package com.a; import com.b.Bar; public class Foo{ public Foo(Bar bar){} public void setBaz(Baz baz){} public void setDataSource(javax.sql.DataSource ds){} }"));
+		files.add(write(new File(dir, "a/Bar.java"), "package com.a; public class Bar{}"));
+		files.add(write(new File(dir, "a/Baz.java"), "package com.a; public class Baz{}"));
+		files.add(write(new File(dir, "b/Bar.java"), "package com.b; public class Bar{}"));
+
+		for (int threads : new int[] { 1, 4 }) {
+			TypeIndex index = new TypeIndex();
+			ApplicationContextGenerator generator = new ApplicationContextGenerator("2.5");
+			generator.setTypeIndex(index);
+			generator.addBeans(files, threads);
+			Document document = generator.getDocument();
+
+			Assert.assertEquals("com.b.Bar", xpath.evaluate("/b:beans/bean[@id='foo']/constructor-arg/@ref", document));
+			Assert.assertEquals("baz", xpath.evaluate("/b:beans/bean[@id='foo']/property[@name='baz']/@ref", document));
+			Assert.assertEquals("dataSource", xpath.evaluate("/b:beans/bean[@id='foo']/property[@name='dataSource']/@ref", document));
+			Assert.assertEquals("com.a.Bar", xpath.evaluate("/b:beans/bean[@class='com.a.Bar']/@id", document));
+			Assert.assertEquals(Arrays.asList("Bean \"foo\" property \"dataSource\" refers to type \"javax.sql.DataSource\", which has no bean."), index.getUnresolved());
+		}
+	}
+
+	private static File write(File file, String source) throws Exception {
+		Writer writer = new FileWriter(file);
+		writer.write(source);
+		writer.close();
+		return file;
+	}
+
+	/**
+	 * When duplicates are skipped, a class that is found a second time should
+	 * not get a second bean, whether the classes are added or returned.
+	 * @throws Exception
+	 */
+	@Test
+	public void testSkipDuplicates() throws Exception {
+		File dir1 = temp.newFolder("module1");
+		File dir2 = temp.newFolder("module2");
+		List<Path> paths = new ArrayList<Path>();
+		paths.add(write(new File(dir1, "Foo.java"), "package com.a; public class Foo{ public int one; }").toPath());
+		paths.add(write(new File(dir1, "Bar.java"), "package com.a; public class Bar{}").toPath());
+		paths.add(write(new File(dir2, "Foo.java"), "package com.a; public class Foo{ public int two; }").toPath());
+		paths.add(write(new File(dir2, "Baz.java"), "package com.b; public class Foo{}").toPath());
+
+		for (int threads : new int[] { 1, 4 }) {
+			ApplicationContextGenerator generator = new ApplicationContextGenerator("2.5");
+			generator.setSkipDuplicates(true);
+			generator.addBeanPaths(paths, threads);
+			Document document = generator.getDocument();
+			Assert.assertEquals("3", xpath.evaluate("count(/b:beans/bean)", document));
+			Assert.assertEquals("one", xpath.evaluate("/b:beans/bean[@class='com.a.Foo']/property/@name", document));
+			Assert.assertEquals(Arrays.asList("com.a.Foo"), generator.getDuplicates());
+
+			generator = new ApplicationContextGenerator("2.5");
+			generator.setSkipDuplicates(true);
+			JavaClass[] results = generator.parsePaths(paths, threads);
+			Assert.assertNotNull(results[0]);
+			Assert.assertNull(results[2]);
+			Assert.assertNotNull(results[3]);
+		}
+	}
+
+	/**
+	 * The modules of a multi-module build should be found and generated in a
+	 * single run, and a class that is in more than one module should only get
+	 * one bean.
+	 * @throws Exception
+	 */
+	@Test
+	public void testDiscoverModules() throws Exception {
+		File project = temp.newFolder("project");
+		write(new File(project, "pom.xml"), "<project/>");
+		for (String module : new String[] { "core", "web" }) {
+			File sourceDir = new File(project, module + "/src/main/java/com/example");
+			sourceDir.mkdirs();
+			write(new File(project, module + "/pom.xml"), "<project/>");
+			write(new File(sourceDir, "Shared.java"), "package com.example; public class Shared{}");
+			write(new File(sourceDir, module + "Service.java"), "package com.example; public class " + module + "Service{}");
+		}
+
+		ByteArrayOutputStream stdout = new ByteArrayOutputStream();
+		ByteArrayOutputStream stderr = new ByteArrayOutputStream();
+		String[] args = { "--discover-modules=project", "-p=com.example", "-o=out.xml" };
+		int status = ApplicationContextGenerator.run(new Arguments(args), temp.getRoot(), new PrintStream(stdout), new PrintStream(stderr), null);
+		Assert.assertEquals(0, status);
+		Assert.assertTrue(stderr.toString(), stderr.toString().contains("Warning: Class \"com.example.Shared\" is in more than one source directory."));
+
+		Document document = DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(new File(temp.getRoot(), "out.xml"));
+		Assert.assertEquals("3", xpath.evaluate("count(/*/*)", document));
+	}
+
+	/**
+	 * Source files should be read from a zip file without extracting them, and
+	 * produce the same beans as the same files on disk.
+	 * @throws Exception
+	 */
+	@Test
+	public void testArchive() throws Exception {
+		File dir = temp.newFolder("src");
+		File zip = new File(temp.getRoot(), "example-sources.jar");
+		ZipOutputStream out = new ZipOutputStream(new FileOutputStream(zip));
+		try {
+			for (int i = 0; i < 50; i++) {
+				String name = "com/example/" + ((i % 2 == 0) ? "" : "sub/") + "Clazz" + i + ".java";
+				String source = "package com.example; public class Clazz" + i + "{ public int num = " + i + "; public void setObj(AnObject obj){} }";
+				out.putNextEntry(new ZipEntry(name));
+				out.write(source.getBytes("UTF-8"));
+				out.closeEntry();
+
+				File file = new File(dir, name);
+				file.getParentFile().mkdirs();
+				Writer writer = new FileWriter(file);
+				writer.write(source);
+				writer.close();
+			}
+			out.putNextEntry(new ZipEntry("META-INF/MANIFEST.MF"));
+			out.closeEntry();
+		} finally {
+			out.close();
+		}
+
+		PackageSelection selection = new PackageSelection().include("com.example", true);
+		SourceWalker walker = new SourceWalker().setPackageSelection(selection);
+		ApplicationContextGenerator expected = new ApplicationContextGenerator("2.0");
+		expected.addBeanPaths(walker.walkPaths(Collections.singletonList(dir.toPath())), 1);
+
+		FileSystem fs = FileSystems.newFileSystem(zip.toPath(), (ClassLoader) null);
+		try {
+			List<Path> paths = walker.walkPaths(Collections.singletonList(fs.getPath("/")));
+			Assert.assertEquals(50, paths.size());
+
+			ApplicationContextGenerator serial = new ApplicationContextGenerator("2.0");
+			serial.addBeanPaths(paths, 1);
+			ApplicationContextGenerator parallel = new ApplicationContextGenerator("2.0");
+			parallel.addBeanPaths(paths, 4);
+
+			Assert.assertEquals(getXmlString(expected.getDocument()), getXmlString(serial.getDocument()));
+			Assert.assertEquals(getXmlString(expected.getDocument()), getXmlString(parallel.getDocument()));
+		} finally {
+			fs.close();
+		}
+	}
+
 	/**
 	 * Generates an XML string from a Document.
 	 * @param document the document
 	 * @return the XML string
 	 * @throws Exception
 	 */
-	@SuppressWarnings("unused")
 	private String getXmlString(Document document) throws Exception {
 		TransformerFactory transfac = TransformerFactory.newInstance();
 		Transformer trans = transfac.newTransformer();
@@ -0,0 +1,111 @@
+package com.mangst.appcontext;
+
+import java.io.File;
+import java.io.StringWriter;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import javax.tools.JavaCompiler;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests the ApplicationContextProcessor class.
+ * @author mangst
+ */
+public class ApplicationContextProcessorTest {
+	@Rule
+	public TemporaryFolder temp = new TemporaryFolder();
+
+	/**
+	 * The processor should generate the same XML as the class file parser,
+	 * and only include the selected packages.
+	 * @throws Exception
+	 */
+	@Test
+	public void testProcessor() throws Exception {
+		File src = temp.newFolder("src");
+		List<File> sources = new ArrayList<File>();
+		sources.add(write(src, "com/a/Foo.java", "package com.a;\nimport java.util.*;\npublic class Foo {\n  public int a; public final int b = 1; public static int c;\n  public List<String> list;\n  public Foo(Bar bar, String s) {}\n  public void setMap(Map<String, Integer> map) {}\n  public void setNothing() {}\n  public static class Nested {}\n}"));
+		sources.add(write(src, "com/a/Bar.java", "package com.a;\npublic class Bar { Bar() {} public void setFoo(Foo[] foos) {} }"));
+		sources.add(write(src, "com/a/Baz.java", "package com.a;\npublic abstract class Baz {}\nclass Qux {}"));
+		sources.add(write(src, "com/a/sub/Sub.java", "package com.a.sub;\npublic class Sub {}"));
+		sources.add(write(src, "com/b/Other.java", "package com.b;\npublic class Other {}"));
+
+		File classes = temp.newFolder("classes");
+		compile(sources, classes, "-Aappcontext.packages=com.a");
+
+		String actual = new String(Files.readAllBytes(new File(classes, "applicationContext.xml").toPath()), StandardCharsets.UTF_8);
+
+		StringWriter expected = new StringWriter();
+		XmlContextWriter writer = new XmlContextWriter(expected, "2.5");
+		ApplicationContextGenerator generator = new ApplicationContextGenerator("2.5", writer);
+		ClassFileParser parser = new ClassFileParser();
+		for (String className : Arrays.asList("Bar", "Foo")) {
+			generator.addBean(parser.parse(ByteBuffer.wrap(Files.readAllBytes(new File(classes, "com/a/" + className + ".class").toPath()))));
+		}
+		writer.close();
+
+		Assert.assertEquals(expected.toString(), actual);
+		Assert.assertFalse(actual.contains("com.a.sub.Sub"));
+		Assert.assertFalse(actual.contains("com.b.Other"));
+	}
+
+	/**
+	 * Sub-packages should be included when "appcontext.recurse" is true, and
+	 * the output path should be configurable.
+	 * @throws Exception
+	 */
+	@Test
+	public void testRecurse() throws Exception {
+		File src = temp.newFolder("src");
+		List<File> sources = new ArrayList<File>();
+		sources.add(write(src, "com/a/Foo.java", "package com.a;\npublic class Foo {}"));
+		sources.add(write(src, "com/a/sub/Sub.java", "package com.a.sub;\npublic class Sub {}"));
+		sources.add(write(src, "com/a/legacy/Old.java", "package com.a.legacy;\npublic class Old {}"));
+
+		File classes = temp.newFolder("classes");
+		compile(sources, classes, "-Aappcontext.packages=com.a", "-Aappcontext.recurse=true", "-Aappcontext.excludePackages=com.a.legacy", "-Aappcontext.output=META-INF/beans.xml");
+
+		String actual = new String(Files.readAllBytes(new File(classes, "META-INF/beans.xml").toPath()), StandardCharsets.UTF_8);
+		Assert.assertTrue(actual.contains("class=\"com.a.Foo\""));
+		Assert.assertTrue(actual.contains("class=\"com.a.sub.Sub\""));
+		Assert.assertFalse(actual.contains("com.a.legacy.Old"));
+		Assert.assertTrue(actual.indexOf("com.a.Foo") < actual.indexOf("com.a.sub.Sub"));
+	}
+
+	private void compile(List<File> sources, File classes, String... options) throws Exception {
+		JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+		Assume.assumeNotNull(compiler);
+
+		List<String> args = new ArrayList<String>(Arrays.asList(options));
+		args.add("-d");
+		args.add(classes.getPath());
+		StandardJavaFileManager fileManager = compiler.getStandardFileManager(null, null, StandardCharsets.UTF_8);
+		try {
+			JavaCompiler.CompilationTask task = compiler.getTask(null, fileManager, null, args, null, fileManager.getJavaFileObjectsFromFiles(sources));
+			task.setProcessors(Collections.singletonList(new ApplicationContextProcessor()));
+			Assert.assertTrue(task.call());
+		} finally {
+			fileManager.close();
+		}
+	}
+
+	private static File write(File dir, String path, String contents) throws Exception {
+		File file = new File(dir, path);
+		file.getParentFile().mkdirs();
+		Files.write(file.toPath(), contents.getBytes(StandardCharsets.UTF_8));
+		return file;
+	}
+}
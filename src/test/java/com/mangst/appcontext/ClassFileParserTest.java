@@ -0,0 +1,167 @@
+package com.mangst.appcontext;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import javax.lang.model.SourceVersion;
+import javax.tools.JavaCompiler;
+import javax.tools.ToolProvider;
+
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests the ClassFileParser class.
+ * @author mangst
+ */
+public class ClassFileParserTest {
+	@Rule
+	public TemporaryFolder temp = new TemporaryFolder();
+
+	/**
+	 * The class information should be read from the class file.
+	 * @throws Exception
+	 */
+	@Test
+	public void testParse() throws Exception {
+		File classes = compile("Foo", "package com.example;\n" +
+			"import java.util.*;\n" +
+			"public class Foo {\n" +
+			"  public int a, b[];\n" +
+			"  public static int notAField;\n" +
+			"  public final String notAFieldEither = \"x\";\n" +
+			"  protected String notPublic;\n" +
+			"  public List<String> list;\n" +
+			"  public Map.Entry<String, Integer> entry;\n" +
+			"  public Foo(String s, int... nums) {}\n" +
+			"  public void setBar(Bar bar) {}\n" +
+			"  public void setTwo(int a, int b) {}\n" +
+			"  public static void setStatic(int x) {}\n" +
+			"  void setPackagePrivate(int x) {}\n" +
+			"  public static class Nested { public int n; }\n" +
+			"}\n" +
+			"class Bar {}\n");
+
+		ClassFileParser parser = new ClassFileParser();
+		JavaClass javaClass = parser.parse(read(new File(classes, "com/example/Foo.class")));
+		Assert.assertEquals("com.example", javaClass.packageName);
+		Assert.assertEquals("Foo", javaClass.className);
+		Assert.assertEquals(Collections.singletonList(Arrays.asList("java.lang.String", "int[]")), javaClass.constructors);
+
+		Assert.assertEquals(5, javaClass.properties.size());
+		assertProperty(javaClass.properties.get(0), "a", "int");
+		assertProperty(javaClass.properties.get(1), "b", "int[]");
+		assertProperty(javaClass.properties.get(2), "list", "java.util.List");
+		assertProperty(javaClass.properties.get(3), "entry", "java.util.Map.Entry");
+		assertProperty(javaClass.properties.get(4), "bar", "com.example.Bar");
+
+		Assert.assertNull(parser.parse(read(new File(classes, "com/example/Bar.class"))));
+		Assert.assertNull(parser.parse(read(new File(classes, "com/example/Foo$Nested.class"))));
+	}
+
+	/**
+	 * The same XML should be generated from a class file as from its source
+	 * file (as long as the fields are not initialized).
+	 * @throws Exception
+	 */
+	@Test
+	public void testSameAsSource() throws Exception {
+		String source = "package com.example;\n" +
+			"import java.util.*;\n" +
+			"public class Foo {\n" +
+			"  public int num;\n" +
+			"  public Integer wrapper;\n" +
+			"  public String[] array;\n" +
+			"  public Set<String> set;\n" +
+			"  public Properties props;\n" +
+			"  public Foo(String s, Long l, AnObject obj) {}\n" +
+			"  public void setObj(AnObject obj) {}\n" +
+			"}\n" +
+			"class AnObject {}\n";
+		File classes = compile("Foo", source);
+
+		StringWriter expected = new StringWriter();
+		XmlContextWriter writer = new XmlContextWriter(expected, "2.5");
+		new ApplicationContextGenerator("2.5", writer).addBean(new StringReader(source));
+		writer.close();
+
+		StringWriter actual = new StringWriter();
+		writer = new XmlContextWriter(actual, "2.5");
+		new ApplicationContextGenerator("2.5", writer).addBean(new File(classes, "com/example/Foo.class"));
+		writer.close();
+
+		Assert.assertEquals(expected.toString(), actual.toString());
+	}
+
+	/**
+	 * Records should be skipped, as they are by the source parsers.
+	 * @throws Exception
+	 */
+	@Test
+	public void testRecord() throws Exception {
+		Assume.assumeTrue(SourceVersion.latest().ordinal() >= 16);
+		File classes = compile("Point", "package com.example;\npublic record Point(int x, int y) {}\n");
+		Assert.assertNull(new ClassFileParser().parse(read(new File(classes, "com/example/Point.class"))));
+		Assert.assertNull(new ScanningJavaSourceParser().parse("package com.example;\npublic record Point(int x, int y) {}\n"));
+	}
+
+	/**
+	 * A top-level class whose name contains a "$" is not a nested class.
+	 * @throws Exception
+	 */
+	@Test
+	public void testDollarSign() throws Exception {
+		File classes = compile("Foo$Bar", "package com.example;\npublic class Foo$Bar { public int a; public static class Nested {} }\n");
+		ClassFileParser parser = new ClassFileParser();
+		JavaClass javaClass = parser.parse(read(new File(classes, "com/example/Foo$Bar.class")));
+		Assert.assertEquals("Foo$Bar", javaClass.className);
+		assertProperty(javaClass.properties.get(0), "a", "int");
+		Assert.assertNull(parser.parse(read(new File(classes, "com/example/Foo$Bar$Nested.class"))));
+	}
+
+	/**
+	 * Files that aren't class files should be rejected.
+	 * @throws Exception
+	 */
+	@Test(expected = IOException.class)
+	public void testNotAClassFile() throws Exception {
+		new ClassFileParser().parse(ByteBuffer.wrap("public class Foo {}".getBytes("UTF-8")));
+	}
+
+	private File compile(String className, String source) throws Exception {
+		JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+		Assume.assumeNotNull(compiler);
+
+		File src = new File(temp.newFolder("src"), className + ".java");
+		Writer writer = new FileWriter(src);
+		writer.write(source);
+		writer.close();
+
+		File classes = temp.newFolder("classes");
+		List<String> args = Arrays.asList("-d", classes.getPath(), src.getPath());
+		Assert.assertEquals(0, compiler.run(null, null, null, args.toArray(new String[0])));
+		return classes;
+	}
+
+	private static ByteBuffer read(File file) throws Exception {
+		return ByteBuffer.wrap(Files.readAllBytes(file.toPath()));
+	}
+
+	private static void assertProperty(ClassProperty property, String name, String type) {
+		Assert.assertEquals(name, property.name);
+		Assert.assertEquals(type, property.type);
+		Assert.assertEquals("", property.value);
+	}
+}
@@ -0,0 +1,119 @@
+package com.mangst.appcontext;
+
+import java.io.File;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.w3c.dom.Document;
+
+/**
+ * Tests the ContextMerger class.
+ * @author mangst
+ */
+public class ContextMergerTest {
+	@Rule
+	public TemporaryFolder temp = new TemporaryFolder();
+
+	/**
+	 * Missing beans and properties should be added, and everything else
+	 * should be kept exactly as it was.
+	 * @throws Exception
+	 */
+	@Test
+	public void testMerge() throws Exception {
+		Document generated = generate("package com.a; public class FooDao { public void setDataSource(DataSource ds){} public void setTimeout(int t){} }", "package com.a; public class Bar { public void setName(String n){} }", "package com.a; public class Baz { public int x; }", "package com.a; public class Qux {}");
+
+		//@formatter:off
+		String existing =
+		"<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n" +
+		"<!DOCTYPE beans PUBLIC \"-//SPRING//DTD BEAN//EN\" \"http://localhost:1/spring-beans.dtd\">\n" +
+		"<!-- hand-maintained -->\n" +
+		"<beans>\n" +
+		"\t<bean id=\"fooDao\" class=\"com.a.FooDao\" init-method=\"init\">\n" +
+		"\t\t<property name=\"dataSource\"   ref=\"myDataSource\" /> <!-- customized -->\n" +
+		"\t</bean>\n" +
+		"\t<bean id=\"myBar\" class=\"com.a.Bar\"/>\n" +
+		"\t<bean id=\"baz\" class=\"com.a.Baz\"><property name=\"x\"><value>5</value></property></bean>\n" +
+		"\t<bean id=\"dataSource\" class=\"org.example.DataSource\"/>\n" +
+		"</beans>\n";
+
+		String expected =
+		"<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n" +
+		"<!DOCTYPE beans PUBLIC \"-//SPRING//DTD BEAN//EN\" \"http://localhost:1/spring-beans.dtd\">\n" +
+		"<!-- hand-maintained -->\n" +
+		"<beans>\n" +
+		"\t<bean id=\"fooDao\" class=\"com.a.FooDao\" init-method=\"init\">\n" +
+		"\t\t<property name=\"dataSource\"   ref=\"myDataSource\" /> <!-- customized -->\n" +
+		"\t\t<property name=\"timeout\" value=\"\"/>\n" +
+		"\t</bean>\n" +
+		"\t<bean id=\"myBar\" class=\"com.a.Bar\">\n" +
+		"\t\t<property name=\"name\" value=\"\"/>\n" +
+		"\t</bean>\n" +
+		"\t<bean id=\"baz\" class=\"com.a.Baz\"><property name=\"x\"><value>5</value></property></bean>\n" +
+		"\t<bean id=\"dataSource\" class=\"org.example.DataSource\"/>\n" +
+		"\t<bean class=\"com.a.Qux\" id=\"qux\"/>\n" +
+		"</beans>\n";
+		//@formatter:on
+
+		ContextMerger merger = new ContextMerger(generated);
+		Assert.assertEquals(expected, merger.merge(existing));
+		Assert.assertEquals(1, merger.getBeansAdded());
+		Assert.assertEquals(2, merger.getPropertiesAdded());
+		Assert.assertEquals(Arrays.asList("Missing property \"timeout\" in bean \"fooDao\".", "Missing property \"name\" in bean \"myBar\".", "Missing bean \"qux\" (com.a.Qux)."), merger.getChanges());
+
+		//merging again should change nothing
+		Assert.assertSame(expected, merger.merge(expected));
+		Assert.assertTrue(merger.getChanges().isEmpty());
+	}
+
+	/**
+	 * Windows line breaks and prefixed elements should be kept.
+	 * @throws Exception
+	 */
+	@Test
+	public void testLineBreaksAndPrefix() throws Exception {
+		Document generated = generate("package com.a; public class Foo { public int x; }", "package com.a; public class Bar {}");
+
+		String existing = "<b:beans xmlns:b=\"http://www.springframework.org/schema/beans\">\r\n  <b:bean id=\"foo\" class=\"com.a.Foo\" />\r\n</b:beans>";
+		String expected = "<b:beans xmlns:b=\"http://www.springframework.org/schema/beans\">\r\n  <b:bean id=\"foo\" class=\"com.a.Foo\" >\r\n    <property name=\"x\" value=\"\"/>\r\n  </b:bean>\r\n  <bean class=\"com.a.Bar\" id=\"bar\"/>\r\n</b:beans>";
+		Assert.assertEquals(expected, new ContextMerger(generated).merge(existing));
+	}
+
+	/**
+	 * The file should only be rewritten if something was added, and not at
+	 * all in diff mode.
+	 * @throws Exception
+	 */
+	@Test
+	public void testFile() throws Exception {
+		Document generated = generate("package com.a; public class Foo {}");
+		File file = temp.newFile("context.xml");
+		String existing = "<?xml version=\"1.0\" encoding=\"ISO-8859-1\"?>\n<beans>\n    <!-- \u00e9 -->\n</beans>\n";
+		Files.write(file.toPath(), existing.getBytes(StandardCharsets.ISO_8859_1));
+
+		ContextMerger merger = new ContextMerger(generated);
+		Assert.assertTrue(merger.merge(file, false));
+		Assert.assertEquals(existing, new String(Files.readAllBytes(file.toPath()), StandardCharsets.ISO_8859_1));
+
+		Assert.assertTrue(merger.merge(file, true));
+		Assert.assertEquals("<?xml version=\"1.0\" encoding=\"ISO-8859-1\"?>\n<beans>\n    <!-- \u00e9 -->\n    <bean class=\"com.a.Foo\" id=\"foo\"/>\n</beans>\n", new String(Files.readAllBytes(file.toPath()), StandardCharsets.ISO_8859_1));
+
+		file.setLastModified(1000);
+		Assert.assertFalse(merger.merge(file, true));
+		Assert.assertEquals(1000, file.lastModified());
+	}
+
+	private static Document generate(String... sources) throws Exception {
+		ApplicationContextGenerator generator = new ApplicationContextGenerator("2.5");
+		for (String source : sources) {
+			generator.addBean(new StringReader(source));
+		}
+		return generator.getDocument();
+	}
+}
@@ -0,0 +1,197 @@
+package com.mangst.appcontext;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests the ContextWatcher class.
+ * @author mangst
+ */
+public class ContextWatcherTest {
+	@Rule
+	public TemporaryFolder temp = new TemporaryFolder();
+
+	private File packageDir, output;
+	private ContextWatcher watcher;
+	private Thread thread;
+
+	@Before
+	public void before() throws Exception {
+		packageDir = temp.newFolder("example");
+		output = new File(temp.getRoot(), "context.xml");
+		write(new File(packageDir, "Foo.java"), "package example; public class Foo{ public int a; }");
+		write(new File(packageDir, "Bar.java"), "package example; public class Bar{}");
+
+		ApplicationContextGenerator generator = new ApplicationContextGenerator("2.5");
+		watcher = new ContextWatcher(generator, "2.5", Collections.singletonList(packageDir), true, output);
+		watcher.setDebounceMillis(50);
+		watcher.start();
+
+		thread = new Thread() {
+			@Override
+			public void run() {
+				watcher.run();
+			}
+		};
+		thread.start();
+	}
+
+	@After
+	public void after() throws Exception {
+		watcher.close();
+		thread.join(5000);
+	}
+
+	/**
+	 * The XML should be regenerated when files are created, modified, and
+	 * deleted.
+	 * @throws Exception
+	 */
+	@Test
+	public void testWatch() throws Exception {
+		String xml = read(output);
+		Assert.assertTrue(xml.contains("class=\"example.Foo\""));
+		Assert.assertTrue(xml.contains("class=\"example.Bar\""));
+		Assert.assertTrue(xml.contains("name=\"a\""));
+
+		//modify
+		write(new File(packageDir, "Foo.java"), "package example; public class Foo{ public int b; }");
+		xml = waitFor("name=\"b\"");
+		Assert.assertFalse(xml.contains("name=\"a\""));
+		Assert.assertTrue(xml.contains("class=\"example.Bar\""));
+
+		//create (in a new sub-package)
+		File subDir = new File(packageDir, "sub");
+		subDir.mkdir();
+		write(new File(subDir, "Baz.java"), "package example.sub; public class Baz{}");
+		waitFor("class=\"example.sub.Baz\"");
+
+		//create (the bean should be written in the same place as in a full run)
+		write(new File(packageDir, "Aaa.java"), "package example; public class Aaa{}");
+		xml = waitFor("class=\"example.Aaa\"");
+		Assert.assertTrue(xml.indexOf("example.Aaa") < xml.indexOf("example.Bar"));
+		Assert.assertTrue(xml.indexOf("example.Foo") < xml.indexOf("example.sub.Baz"));
+
+		//delete
+		new File(packageDir, "Bar.java").delete();
+		long end = System.currentTimeMillis() + 10000;
+		while (read(output).contains("class=\"example.Bar\"") && System.currentTimeMillis() < end) {
+			Thread.sleep(20);
+		}
+		Assert.assertFalse(read(output).contains("class=\"example.Bar\""));
+	}
+
+	/**
+	 * An error in one batch of changes should be reported, and the watcher
+	 * should keep watching.
+	 * @throws Exception
+	 */
+	@Test
+	public void testError() throws Exception {
+		File outputDir = temp.newFolder("out");
+		File otherOutput = new File(outputDir, "other.xml");
+		ByteArrayOutputStream stderr = new ByteArrayOutputStream();
+
+		ApplicationContextGenerator generator = new ApplicationContextGenerator("2.5");
+		final ContextWatcher watcher = new ContextWatcher(generator, "2.5", Collections.singletonList(packageDir), true, otherOutput);
+		watcher.setDebounceMillis(50);
+		watcher.setStderr(new PrintStream(stderr, true));
+		watcher.start();
+		Thread thread = new Thread() {
+			@Override
+			public void run() {
+				watcher.run();
+			}
+		};
+		thread.start();
+		try {
+			//the output directory is gone, so the XML can't be written
+			otherOutput.delete();
+			outputDir.delete();
+			write(new File(packageDir, "Foo.java"), "package example; public class Foo{ public int b; }");
+			long end = System.currentTimeMillis() + 10000;
+			while (!stderr.toString().contains("Warning: Could not regenerate") && System.currentTimeMillis() < end) {
+				Thread.sleep(20);
+			}
+			Assert.assertTrue(stderr.toString().contains("Warning: Could not regenerate"));
+
+			outputDir.mkdir();
+			write(new File(packageDir, "Foo.java"), "package example; public class Foo{ public int c; }");
+			end = System.currentTimeMillis() + 10000;
+			while (!(otherOutput.isFile() && read(otherOutput).contains("name=\"c\"")) && System.currentTimeMillis() < end) {
+				Thread.sleep(20);
+			}
+			Assert.assertTrue(read(otherOutput).contains("name=\"c\""));
+			Assert.assertTrue(stderr.toString().contains("Regenerated " + otherOutput));
+		} finally {
+			watcher.close();
+			thread.join(5000);
+		}
+	}
+
+	/**
+	 * A class that is in more than one source directory should only get one
+	 * bean.
+	 * @throws Exception
+	 */
+	@Test
+	public void testSkipDuplicates() throws Exception {
+		File otherDir = temp.newFolder("other");
+		write(new File(otherDir, "Foo.java"), "package example; public class Foo{ public int c; }");
+		File otherOutput = new File(temp.getRoot(), "other.xml");
+
+		ApplicationContextGenerator generator = new ApplicationContextGenerator("2.5");
+		ContextWatcher watcher = new ContextWatcher(generator, "2.5", Arrays.asList(packageDir, otherDir), true, otherOutput);
+		watcher.setSkipDuplicates(true);
+		try {
+			watcher.start();
+		} finally {
+			watcher.close();
+		}
+
+		String xml = read(otherOutput);
+		Assert.assertEquals(xml.indexOf("class=\"example.Foo\""), xml.lastIndexOf("class=\"example.Foo\""));
+		Assert.assertTrue(xml.contains("name=\"a\""));
+		Assert.assertFalse(xml.contains("name=\"c\""));
+	}
+
+	private String waitFor(String text) throws Exception {
+		long end = System.currentTimeMillis() + 10000;
+		while (System.currentTimeMillis() < end) {
+			String xml = read(output);
+			if (xml.contains(text)) {
+				return xml;
+			}
+			Thread.sleep(20);
+		}
+		Assert.fail("Timed out waiting for: " + text);
+		return null;
+	}
+
+	private static String read(File file) throws Exception {
+		return new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+	}
+
+	private static void write(File file, String contents) throws Exception {
+		OutputStream out = new FileOutputStream(file);
+		try {
+			out.write(contents.getBytes(StandardCharsets.UTF_8));
+		} finally {
+			out.close();
+		}
+	}
+}
@@ -0,0 +1,316 @@
+package com.mangst.appcontext;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+/**
+ * Generates a synthetic source tree that looks like a large enterprise
+ * codebase, for scale testing and benchmarking. The tree is deterministic: the
+ * same seed and settings always produce exactly the same files.
+ * <p>
+ * The tree contains a mix of simple beans (fields and setters), beans with
+ * multi-argument constructors, generics-heavy classes, very long files,
+ * comment-heavy files (whose comments contain code that must not be picked
+ * up), and files that do not produce a bean (non-public classes and
+ * interfaces).
+ * </p>
+ * @author mangst
+ */
+public class CorpusGenerator {
+	private static final String[] TYPES = { "int", "long", "boolean", "double", "String", "Integer", "List", "Map", "Set", "Properties" };
+	private static final String[] WORDS = { "account", "billing", "customer", "order", "invoice", "payment", "ledger", "report", "audit", "shipping", "catalog", "pricing", "inventory", "user", "session", "gateway" };
+
+	private final long seed;
+	private int classes = 1000;
+	private int classesPerPackage = 40;
+	private int maxDepth = 6;
+
+	/**
+	 * @param seed the seed for the random number generator
+	 */
+	public CorpusGenerator(long seed) {
+		this.seed = seed;
+	}
+
+	/**
+	 * Sets the total number of source files to generate.
+	 * @param classes the number of files (defaults to 1000)
+	 * @return this
+	 */
+	public CorpusGenerator setClasses(int classes) {
+		this.classes = classes;
+		return this;
+	}
+
+	/**
+	 * Sets the average number of source files in each package.
+	 * @param classesPerPackage the number of files (defaults to 40)
+	 * @return this
+	 */
+	public CorpusGenerator setClassesPerPackage(int classesPerPackage) {
+		this.classesPerPackage = classesPerPackage;
+		return this;
+	}
+
+	/**
+	 * Sets the maximum depth of the package tree below the root package.
+	 * @param maxDepth the maximum depth (defaults to 6)
+	 * @return this
+	 */
+	public CorpusGenerator setMaxDepth(int maxDepth) {
+		this.maxDepth = maxDepth;
+		return this;
+	}
+
+	/**
+	 * Writes the source tree.
+	 * @param sourceDir the source directory to write the tree to
+	 * @return information about the tree that was written
+	 * @throws IOException if there's a problem writing the files
+	 */
+	public Corpus generate(File sourceDir) throws IOException {
+		Random random = new Random(seed);
+		Corpus corpus = new Corpus(sourceDir, "com.corp");
+
+		int written = 0;
+		while (written < classes) {
+			//pick a package
+			StringBuilder packageName = new StringBuilder(corpus.rootPackage);
+			int depth = 1 + random.nextInt(maxDepth);
+			for (int i = 0; i < depth; i++) {
+				packageName.append('.').append(WORDS[random.nextInt(WORDS.length)]);
+			}
+			File packageDir = new File(sourceDir, packageName.toString().replace('.', File.separatorChar));
+			packageDir.mkdirs();
+
+			int count = Math.min(classes - written, 1 + random.nextInt(classesPerPackage * 2));
+			for (int i = 0; i < count; i++) {
+				String className = capitalize(WORDS[random.nextInt(WORDS.length)]) + capitalize(WORDS[random.nextInt(WORDS.length)]) + written;
+				File file = new File(packageDir, className + ".java");
+				int kind = random.nextInt(100);
+				String source;
+				if (kind < 40) {
+					source = simpleBean(random, packageName.toString(), className);
+					corpus.beans++;
+				} else if (kind < 60) {
+					source = constructorBean(random, packageName.toString(), className);
+					corpus.beans++;
+				} else if (kind < 75) {
+					source = genericBean(random, packageName.toString(), className);
+					corpus.beans++;
+				} else if (kind < 80) {
+					source = longBean(random, packageName.toString(), className);
+					corpus.beans++;
+				} else if (kind < 92) {
+					source = commentHeavyBean(random, packageName.toString(), className);
+					corpus.beans++;
+				} else if (kind < 96) {
+					source = "package " + packageName + ";\n\nclass " + className + " {\n\tpublic int notABean;\n}\n";
+				} else {
+					source = "package " + packageName + ";\n\npublic interface " + className + " {\n\tvoid setSomething(int something);\n}\n";
+				}
+
+				corpus.bytes += write(file, source);
+				corpus.files++;
+				written++;
+			}
+		}
+		return corpus;
+	}
+
+	private static String simpleBean(Random random, String packageName, String className) {
+		StringBuilder sb = header(packageName, className);
+		int fields = random.nextInt(8);
+		for (int i = 0; i < fields; i++) {
+			field(sb, random, "field" + i);
+		}
+		int setters = random.nextInt(8);
+		for (int i = 0; i < setters; i++) {
+			setter(sb, random, "Property" + i);
+		}
+		return sb.append("}\n").toString();
+	}
+
+	private static String constructorBean(Random random, String packageName, String className) {
+		StringBuilder sb = header(packageName, className);
+		int params = 1 + random.nextInt(6);
+		sb.append("\tpublic ").append(className).append('(');
+		for (int i = 0; i < params; i++) {
+			if (i > 0) {
+				sb.append(", ");
+			}
+			sb.append(random.nextBoolean() ? TYPES[random.nextInt(TYPES.length)] : capitalize(WORDS[random.nextInt(WORDS.length)]) + "Service").append(" arg").append(i);
+		}
+		sb.append(") {\n\t}\n\n");
+		int setters = random.nextInt(4);
+		for (int i = 0; i < setters; i++) {
+			setter(sb, random, "Property" + i);
+		}
+		return sb.append("}\n").toString();
+	}
+
+	private static String genericBean(Random random, String packageName, String className) {
+		StringBuilder sb = new StringBuilder();
+		sb.append("package ").append(packageName).append(";\n\n");
+		sb.append("import java.util.*;\n\n");
+		sb.append("public class ").append(className).append("<K extends Comparable<K>, V> implements Map.Entry<K, V> {\n");
+		sb.append("\tpublic Map<String, List<Integer>> index = new HashMap<String, List<Integer>>(), reverse;\n");
+		sb.append("\tpublic List<? extends Number> numbers;\n");
+		sb.append("\tpublic String[] names = { \"a\", \"b\" };\n\n");
+		sb.append("\tpublic ").append(className).append("(Map<K, List<V>> source, Comparator<? super K> comparator) {\n\t}\n\n");
+		sb.append("\tpublic <T extends V> void setItems(Set<T> items) {\n\t}\n\n");
+		sb.append("\tpublic K getKey() {\n\t\treturn null;\n\t}\n\n");
+		sb.append("\tpublic V getValue() {\n\t\treturn null;\n\t}\n\n");
+		sb.append("\tpublic V setValue(V value) {\n\t\treturn value;\n\t}\n");
+		int setters = random.nextInt(4);
+		for (int i = 0; i < setters; i++) {
+			setter(sb, random, "Property" + i);
+		}
+		return sb.append("}\n").toString();
+	}
+
+	private static String longBean(Random random, String packageName, String className) {
+		StringBuilder sb = header(packageName, className);
+		int fields = 50 + random.nextInt(200);
+		for (int i = 0; i < fields; i++) {
+			field(sb, random, "field" + i);
+		}
+		int methods = 100 + random.nextInt(400);
+		for (int i = 0; i < methods; i++) {
+			if (i % 3 == 0) {
+				setter(sb, random, "Property" + i);
+			} else {
+				sb.append("\tpublic int compute").append(i).append("(int x) {\n");
+				sb.append("\t\tint result = x;\n\t\tfor (int i = 0; i < ").append(i).append("; i++) {\n\t\t\tresult += i * x;\n\t\t}\n\t\treturn result;\n\t}\n\n");
+			}
+		}
+		return sb.append("}\n").toString();
+	}
+
+	private static String commentHeavyBean(Random random, String packageName, String className) {
+		StringBuilder sb = new StringBuilder();
+		sb.append("/*\n");
+		for (int i = 0; i < 30; i++) {
+			sb.append(" * Licensed under the Example License. public class Decoy").append(i).append(" { public int decoy; }\n");
+		}
+		sb.append(" */\n");
+		sb.append("package ").append(packageName).append(";\n\n");
+		sb.append("/**\n * Example usage:\n * <pre>\n * public void setDecoy(int decoy) {}\n * </pre>\n */\n");
+		sb.append("public class ").append(className).append(" {\n");
+		int fields = random.nextInt(6);
+		for (int i = 0; i < fields; i++) {
+			sb.append("\t/**\n\t * The value. public String commented = \"x\";\n\t */\n");
+			field(sb, random, "field" + i);
+		}
+		sb.append("\t// public void setCommentedOut(int x) {}\n");
+		sb.append("\tpublic String text = \"public int notAField; /* not a comment */\";\n\n");
+		int setters = random.nextInt(4);
+		for (int i = 0; i < setters; i++) {
+			sb.append("\t/** Sets the value. */\n");
+			setter(sb, random, "Property" + i);
+		}
+		return sb.append("}\n").toString();
+	}
+
+	private static StringBuilder header(String packageName, String className) {
+		StringBuilder sb = new StringBuilder();
+		sb.append("package ").append(packageName).append(";\n\n");
+		sb.append("import java.util.List;\nimport java.util.Map;\nimport java.util.Set;\nimport java.util.Properties;\n\n");
+		sb.append("public class ").append(className).append(" {\n");
+		return sb;
+	}
+
+	private static void field(StringBuilder sb, Random random, String name) {
+		String type = TYPES[random.nextInt(TYPES.length)];
+		sb.append("\tpublic ").append(type).append(' ').append(name);
+		if ("int".equals(type) || "long".equals(type)) {
+			sb.append(" = ").append(random.nextInt(1000));
+		} else if ("String".equals(type)) {
+			sb.append(" = \"value").append(random.nextInt(1000)).append('"');
+		}
+		sb.append(";\n");
+	}
+
+	private static void setter(StringBuilder sb, Random random, String name) {
+		String type = random.nextBoolean() ? TYPES[random.nextInt(TYPES.length)] : capitalize(WORDS[random.nextInt(WORDS.length)]) + "Dao";
+		sb.append("\tpublic void set").append(name).append('(').append(type).append(" value) {\n\t}\n\n");
+	}
+
+	private static String capitalize(String word) {
+		return Character.toUpperCase(word.charAt(0)) + word.substring(1);
+	}
+
+	private static long write(File file, String contents) throws IOException {
+		byte bytes[] = contents.getBytes(StandardCharsets.UTF_8);
+		OutputStream out = new FileOutputStream(file);
+		try {
+			out.write(bytes);
+		} finally {
+			out.close();
+		}
+		return bytes.length;
+	}
+
+	/**
+	 * Deletes a directory and all of its contents.
+	 * @param file the directory
+	 */
+	public static void delete(File file) {
+		File children[] = file.listFiles();
+		if (children != null) {
+			for (File child : children) {
+				delete(child);
+			}
+		}
+		file.delete();
+	}
+
+	/**
+	 * Information about a generated source tree.
+	 */
+	public static class Corpus {
+		/**
+		 * The source directory.
+		 */
+		public final File sourceDir;
+
+		/**
+		 * The package that all of the generated packages are in (use it with
+		 * recursion enabled to select the whole tree).
+		 */
+		public final String rootPackage;
+
+		/**
+		 * The number of source files.
+		 */
+		public int files;
+
+		/**
+		 * The number of source files that contain a public class (and so
+		 * should produce a &lt;bean /&gt; element).
+		 */
+		public int beans;
+
+		/**
+		 * The total size of the source files in bytes.
+		 */
+		public long bytes;
+
+		private Corpus(File sourceDir, String rootPackage) {
+			this.sourceDir = sourceDir;
+			this.rootPackage = rootPackage;
+		}
+
+		/**
+		 * Gets the directory of the root package.
+		 * @return the directory
+		 */
+		public File getRootPackageDir() {
+			return new File(sourceDir, rootPackage.replace('.', File.separatorChar));
+		}
+	}
+}
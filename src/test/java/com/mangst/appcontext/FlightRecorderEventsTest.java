@@ -0,0 +1,79 @@
+package com.mangst.appcontext;
+
+import java.io.File;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests the FlightRecorderEvents class.
+ * @author mangst
+ */
+public class FlightRecorderEventsTest {
+	@Rule
+	public TemporaryFolder temp = new TemporaryFolder();
+
+	/**
+	 * An event should be recorded for each file that is read and parsed and
+	 * for each bean that is built and written.
+	 * @throws Exception
+	 */
+	@Test
+	public void testEvents() throws Exception {
+		File foo = temp.newFile("Foo.java");
+		Files.write(foo.toPath(), "package com.a; public class Foo { public Foo(int a, String b){} public int x; }".getBytes(StandardCharsets.UTF_8));
+		File bar = temp.newFile("Bar.java");
+		Files.write(bar.toPath(), "package com.a; class Bar {}".getBytes(StandardCharsets.UTF_8));
+
+		FlightRecorderEvents events = new FlightRecorderEvents();
+		events.startRecording();
+		XmlContextWriter writer = new XmlContextWriter(new StringWriter(), "2.5");
+		ApplicationContextGenerator generator = new ApplicationContextGenerator("2.5", writer);
+		generator.setFlightRecorderEvents(events);
+		generator.addBean(foo);
+		generator.addBean(bar);
+		writer.close();
+		File recording = new File(temp.getRoot(), "recording.jfr");
+		events.stopRecording(recording);
+
+		List<RecordedEvent> read = new ArrayList<RecordedEvent>();
+		List<RecordedEvent> parse = new ArrayList<RecordedEvent>();
+		List<RecordedEvent> build = new ArrayList<RecordedEvent>();
+		List<RecordedEvent> write = new ArrayList<RecordedEvent>();
+		for (RecordedEvent event : RecordingFile.readAllEvents(recording.toPath())) {
+			String name = event.getEventType().getName();
+			if (name.equals("com.mangst.appcontext.ReadFile")) {
+				read.add(event);
+			} else if (name.equals("com.mangst.appcontext.ParseFile")) {
+				parse.add(event);
+			} else if (name.equals("com.mangst.appcontext.BuildBean")) {
+				build.add(event);
+			} else if (name.equals("com.mangst.appcontext.WriteBean")) {
+				write.add(event);
+			}
+		}
+
+		Assert.assertEquals(2, read.size());
+		Assert.assertEquals(2, parse.size());
+		Assert.assertEquals(1, build.size());
+		Assert.assertEquals(1, write.size());
+
+		Assert.assertEquals(foo.getPath(), read.get(0).getString("path"));
+		Assert.assertEquals(foo.length(), read.get(0).getLong("size"));
+		Assert.assertEquals("com.a.Foo", parse.get(0).getString("className"));
+		Assert.assertNull(parse.get(1).getString("className"));
+		Assert.assertEquals("com.a.Foo", build.get(0).getString("className"));
+		Assert.assertEquals(1, build.get(0).getInt("properties"));
+		Assert.assertEquals(2, build.get(0).getInt("constructorArgs"));
+	}
+}
@@ -0,0 +1,127 @@
+package com.mangst.appcontext;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests the GenerationPipeline class.
+ * @author mangst
+ */
+public class GenerationPipelineTest {
+	@Rule
+	public TemporaryFolder temp = new TemporaryFolder();
+
+	private File root;
+
+	@Before
+	public void before() throws Exception {
+		root = temp.newFolder("src");
+		for (int i = 0; i < 200; i++) {
+			String dir = "com/example/p" + (i % 7) + ((i % 3 == 0) ? "/sub" : "");
+			String source = "package com.example; public class Clazz" + i + "{ public int num = " + i + "; public void setObj(Clazz" + ((i + 1) % 200) + " obj){} }";
+			if (i % 10 == 0) {
+				source = "class NotPublic" + i + "{}";
+			}
+			write(dir + "/Clazz" + i + ".java", source);
+		}
+	}
+
+	/**
+	 * The pipeline should generate exactly the same XML as parsing the files
+	 * after the walk, no matter how small the queues are.
+	 * @throws Exception
+	 */
+	@Test
+	public void testSameOutput() throws Exception {
+		SourceWalker walker = new SourceWalker();
+		List<Path> files = walker.walkPaths(Collections.singletonList(root.toPath()));
+		String expected = generate(files, null, false);
+
+		for (int queueCapacity : new int[] { 1, 4, 256 }) {
+			GenerationPipeline pipeline = new GenerationPipeline(new SourceWalker().setThreads(2));
+			pipeline.setReadThreads(4).setParseThreads(3).setQueueCapacity(queueCapacity);
+			Assert.assertEquals(expected, generate(files, pipeline, false));
+
+			List<GenerationPipeline.Stage> stages = pipeline.getStages();
+			Assert.assertEquals(4, stages.size());
+			for (GenerationPipeline.Stage stage : stages) {
+				Assert.assertEquals(200, stage.getItems());
+				Assert.assertTrue(stage.getMaxQueueDepth() <= stage.getQueueCapacity());
+			}
+			Assert.assertEquals("walk", stages.get(0).getName());
+			Assert.assertEquals(0, stages.get(0).getQueueCapacity());
+			Assert.assertEquals(4, stages.get(1).getThreads());
+			Assert.assertEquals(3, stages.get(2).getThreads());
+		}
+
+		//with a type index, every class is parsed before the first bean is built
+		GenerationPipeline pipeline = new GenerationPipeline(new SourceWalker());
+		pipeline.setReadThreads(2).setParseThreads(2).setQueueCapacity(8);
+		Assert.assertEquals(generate(files, null, true), generate(files, pipeline, true));
+	}
+
+	/**
+	 * An error in one stage should stop the other stages and be thrown from
+	 * the run.
+	 * @throws Exception
+	 */
+	@Test(timeout = 10000)
+	public void testError() throws Exception {
+		final ScanningJavaSourceParser scanner = new ScanningJavaSourceParser();
+		ApplicationContextGenerator generator = new ApplicationContextGenerator("2.5");
+		generator.setParser(new JavaSourceParser() {
+			@Override
+			public JavaClass parse(CharSequence javaSource) {
+				JavaClass javaClass = scanner.parse(javaSource);
+				if (javaClass != null && "Clazz55".equals(javaClass.className)) {
+					throw new IllegalStateException("bad class");
+				}
+				return javaClass;
+			}
+		});
+
+		GenerationPipeline pipeline = new GenerationPipeline(new SourceWalker());
+		pipeline.setReadThreads(2).setParseThreads(2).setQueueCapacity(1);
+		try {
+			pipeline.run(generator, Collections.singletonList(root.toPath()));
+			Assert.fail();
+		} catch (IllegalStateException e) {
+			Assert.assertEquals("bad class", e.getMessage());
+		}
+	}
+
+	private String generate(List<Path> files, GenerationPipeline pipeline, boolean resolveRefs) throws Exception {
+		StringWriter out = new StringWriter();
+		XmlContextWriter writer = new XmlContextWriter(out, "2.5");
+		ApplicationContextGenerator generator = new ApplicationContextGenerator("2.5", writer);
+		if (resolveRefs) {
+			generator.setTypeIndex(new TypeIndex());
+		}
+		if (pipeline == null) {
+			generator.addBeanPaths(files, 1);
+		} else {
+			pipeline.run(generator, Collections.singletonList(root.toPath()));
+		}
+		writer.close();
+		return out.toString();
+	}
+
+	private void write(String path, String source) throws Exception {
+		File file = new File(root, path);
+		file.getParentFile().mkdirs();
+		Writer writer = new FileWriter(file);
+		writer.write(source);
+		writer.close();
+	}
+}
@@ -0,0 +1,104 @@
+package com.mangst.appcontext;
+
+import java.io.File;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests the GenerationStats class.
+ * @author mangst
+ */
+public class GenerationStatsTest {
+	@Rule
+	public TemporaryFolder temp = new TemporaryFolder();
+
+	/**
+	 * The generator should count the files, bytes, beans, properties, and
+	 * constructor arguments it processes.
+	 * @throws Exception
+	 */
+	@Test
+	public void testCounts() throws Exception {
+		List<File> files = new ArrayList<File>();
+		files.add(write("Foo.java", "package com.a; public class Foo { public int x; public void setY(String y){} }"));
+		files.add(write("Bar.java", "package com.a; public class Bar { public Bar(int a, Foo b){} }"));
+		files.add(write("Baz.java", "package com.a; class Baz {}"));
+		long bytes = 0;
+		for (File file : files) {
+			bytes += file.length();
+		}
+
+		GenerationStats stats = new GenerationStats();
+		XmlContextWriter writer = new XmlContextWriter(new StringWriter(), "2.5");
+		ApplicationContextGenerator generator = new ApplicationContextGenerator("2.5", writer);
+		generator.setStats(stats);
+		generator.addBeans(files, 2);
+		writer.close();
+		stats.finish();
+
+		Assert.assertEquals(3, stats.getFiles());
+		Assert.assertEquals(bytes, stats.getBytes());
+		Assert.assertEquals(2, stats.getBeans());
+		Assert.assertEquals(2, stats.getProperties());
+		Assert.assertEquals(2, stats.getConstructorArgs());
+		Assert.assertTrue(stats.getPeakHeapBytes() > 0);
+	}
+
+	/**
+	 * Files whose class information is taken from the cache should be counted,
+	 * but they are not read.
+	 * @throws Exception
+	 */
+	@Test
+	public void testCache() throws Exception {
+		File file = write("Foo.java", "package com.a; public class Foo { public int x; }");
+		ParseCache cache = new ParseCache("test");
+		new ApplicationContextGenerator("2.5").setParseCache(cache).addBean(file);
+
+		GenerationStats stats = new GenerationStats();
+		ApplicationContextGenerator generator = new ApplicationContextGenerator("2.5");
+		generator.setParseCache(cache).setStats(stats);
+		generator.addBean(file);
+		stats.setCache(cache);
+
+		Assert.assertEquals(1, stats.getFiles());
+		Assert.assertEquals(0, stats.getBytes());
+		Assert.assertEquals(1, stats.getBeans());
+		Assert.assertTrue(stats.toText().contains("Cache:            1 hit(s), 1 miss(es)"));
+	}
+
+	/**
+	 * The JSON report should contain every statistic.
+	 */
+	@Test
+	public void testJson() {
+		GenerationStats stats = new GenerationStats();
+		stats.addTime(GenerationStats.Phase.PARSE, 5000000L);
+		stats.addFile();
+		stats.addBytes(1024);
+		stats.finish();
+
+		String json = stats.toJson();
+		Assert.assertTrue(json, json.startsWith("{\"wallMillis\":"));
+		Assert.assertTrue(json, json.contains("\"phaseMillis\":{\"walk\":0,\"read\":0,\"parse\":5,\"build\":0,\"write\":0}"));
+		Assert.assertTrue(json, json.contains("\"files\":1,\"bytes\":1024,\"beans\":0,\"properties\":0,\"constructorArgs\":0,"));
+		Assert.assertTrue(json, json.contains("\"filesPerSecond\":"));
+		Assert.assertTrue(json, json.contains("\"peakHeapBytes\":"));
+		Assert.assertFalse(json, json.contains("cacheHits"));
+		Assert.assertTrue(json, json.endsWith("}"));
+	}
+
+	private File write(String name, String contents) throws Exception {
+		File file = temp.newFile(name);
+		Files.write(file.toPath(), contents.getBytes(StandardCharsets.UTF_8));
+		return file;
+	}
+}
@@ -0,0 +1,170 @@
+package com.mangst.appcontext;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.net.ConnectException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests the GeneratorDaemon and DaemonClient classes.
+ * @author mangst
+ */
+public class GeneratorDaemonTest {
+	@Rule
+	public TemporaryFolder temp = new TemporaryFolder();
+
+	private GeneratorDaemon daemon;
+	private File daemonFile;
+	private Thread thread;
+
+	@Before
+	public void before() throws Exception {
+		daemon = new GeneratorDaemon(0, true);
+		daemonFile = new File(temp.getRoot(), "daemon");
+		daemon.writeDaemonFile(daemonFile);
+		thread = new Thread() {
+			@Override
+			public void run() {
+				try {
+					daemon.run();
+				} catch (IOException e) {
+					throw new RuntimeException(e);
+				}
+			}
+		};
+		thread.start();
+	}
+
+	@After
+	public void after() throws Exception {
+		daemon.stop();
+		thread.join();
+	}
+
+	/**
+	 * The XML should be streamed back to the client, relative paths should be
+	 * resolved against the client's working directory, and the second request
+	 * should use the in-memory cache.
+	 * @throws Exception
+	 */
+	@Test
+	public void testRequests() throws Exception {
+		File src = temp.newFolder("src");
+		File dir = new File(src, "com/a");
+		dir.mkdirs();
+		Files.write(new File(dir, "Foo.java").toPath(), "package com.a; public class Foo { public int x; }".getBytes(StandardCharsets.UTF_8));
+
+		DaemonClient client = DaemonClient.fromDaemonFile(daemonFile);
+		ByteArrayOutputStream stdout = new ByteArrayOutputStream();
+		ByteArrayOutputStream stderr = new ByteArrayOutputStream();
+		int status = client.run(Arrays.asList("-s=src", "-p=com.a", "-t=1", "--stats=json"), temp.getRoot(), stdout, stderr);
+		Assert.assertEquals(stderr.toString(), 0, status);
+		Assert.assertTrue(stdout.toString("UTF-8").contains("class=\"com.a.Foo\""));
+		Assert.assertTrue(stderr.toString(), stderr.toString().contains("\"cacheHits\":0,\"cacheMisses\":1"));
+
+		stdout.reset();
+		stderr.reset();
+		status = client.run(Arrays.asList("-s=src", "-p=com.a", "-t=1", "--stats=json", "-o=out.xml"), temp.getRoot(), stdout, stderr);
+		Assert.assertEquals(stderr.toString(), 0, status);
+		Assert.assertEquals(0, stdout.size());
+		Assert.assertTrue(stderr.toString(), stderr.toString().contains("\"cacheHits\":1,\"cacheMisses\":0"));
+		Assert.assertTrue(new String(Files.readAllBytes(new File(temp.getRoot(), "out.xml").toPath()), StandardCharsets.UTF_8).contains("class=\"com.a.Foo\""));
+	}
+
+	/**
+	 * Requests should be able to run at the same time.
+	 * @throws Exception
+	 */
+	@Test
+	public void testConcurrentRequests() throws Exception {
+		File src = temp.newFolder("src");
+		File dir = new File(src, "com/a");
+		dir.mkdirs();
+		for (int i = 0; i < 20; i++) {
+			Files.write(new File(dir, "Foo" + i + ".java").toPath(), ("package com.a; public class Foo" + i + " { public int x; }").getBytes(StandardCharsets.UTF_8));
+		}
+
+		final DaemonClient client = DaemonClient.fromDaemonFile(daemonFile);
+		final AtomicInteger failures = new AtomicInteger();
+		Thread threads[] = new Thread[4];
+		for (int i = 0; i < threads.length; i++) {
+			final String output = "out" + i + ".xml";
+			threads[i] = new Thread() {
+				@Override
+				public void run() {
+					try {
+						ByteArrayOutputStream stderr = new ByteArrayOutputStream();
+						if (client.run(Arrays.asList("-s=src", "-p=com.a", "-t=1", "-o=" + output), temp.getRoot(), new ByteArrayOutputStream(), stderr) != 0) {
+							failures.incrementAndGet();
+						}
+					} catch (IOException e) {
+						failures.incrementAndGet();
+					}
+				}
+			};
+			threads[i].start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+
+		Assert.assertEquals(0, failures.get());
+		for (int i = 0; i < threads.length; i++) {
+			String xml = new String(Files.readAllBytes(new File(temp.getRoot(), "out" + i + ".xml").toPath()), StandardCharsets.UTF_8);
+			Assert.assertTrue(xml.contains("class=\"com.a.Foo19\""));
+		}
+	}
+
+	/**
+	 * Errors should be sent back along with a non-zero exit code.
+	 * @throws Exception
+	 */
+	@Test
+	public void testError() throws Exception {
+		DaemonClient client = DaemonClient.fromDaemonFile(daemonFile);
+		ByteArrayOutputStream stdout = new ByteArrayOutputStream();
+		ByteArrayOutputStream stderr = new ByteArrayOutputStream();
+		int status = client.run(Arrays.asList("-p=com.a"), temp.getRoot(), stdout, stderr);
+		Assert.assertEquals(1, status);
+		Assert.assertTrue(stderr.toString().contains("The source directory must be specified"));
+	}
+
+	/**
+	 * Requests with the wrong token should be rejected, and stopping the
+	 * daemon should delete the daemon file.
+	 * @throws Exception
+	 */
+	@Test
+	public void testTokenAndStop() throws Exception {
+		DaemonClient client = DaemonClient.fromDaemonFile(daemonFile);
+		DaemonClient impostor = new DaemonClient(daemon.getPort(), "wrong");
+		try {
+			impostor.run(Arrays.asList("-h"), temp.getRoot(), new ByteArrayOutputStream(), new ByteArrayOutputStream());
+			Assert.fail();
+		} catch (IOException e) {
+			//expected
+		}
+
+		client.stop();
+		thread.join(10000);
+		Assert.assertFalse(thread.isAlive());
+		Assert.assertFalse(daemonFile.exists());
+		try {
+			client.stop();
+			Assert.fail();
+		} catch (ConnectException e) {
+			//expected
+		}
+	}
+}
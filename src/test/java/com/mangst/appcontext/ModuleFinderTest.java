@@ -0,0 +1,62 @@
+package com.mangst.appcontext;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests the ModuleFinder class.
+ * @author mangst
+ */
+public class ModuleFinderTest {
+	@Rule
+	public TemporaryFolder temp = new TemporaryFolder();
+
+	/**
+	 * Every directory with a POM and a source directory should be found, in a
+	 * predictable order, without searching build output or source
+	 * directories.
+	 * @throws Exception
+	 */
+	@Test
+	public void testFind() throws Exception {
+		File root = temp.newFolder("project");
+		touch(root, "pom.xml");
+		touch(root, "web/pom.xml");
+		touch(root, "web/src/main/java/com/example/Web.java");
+		touch(root, "core/pom.xml");
+		touch(root, "core/src/main/java/com/example/Core.java");
+		touch(root, "core/target/classes/com/example/Core.class");
+		touch(root, "services/billing/pom.xml");
+		touch(root, "services/billing/src/main/java/com/example/Billing.java");
+		touch(root, "docs/pom.xml");
+		touch(root, "core/target/copy/pom.xml");
+		touch(root, "core/target/copy/src/main/java/Copy.java");
+		touch(root, "web/src/it/pom.xml");
+		touch(root, "web/src/it/src/main/java/It.java");
+
+		Assert.assertEquals(Arrays.asList("core/src/main/java", "services/billing/src/main/java", "web/src/main/java"), relative(root, new ModuleFinder().find(root)));
+		Assert.assertEquals(Arrays.asList("core/target/classes"), relative(root, new ModuleFinder().setSourceDirectory("target/classes").find(root)));
+	}
+
+	private static void touch(File root, String path) throws IOException {
+		File file = new File(root, path);
+		file.getParentFile().mkdirs();
+		file.createNewFile();
+	}
+
+	private static List<String> relative(File root, List<File> files) {
+		List<String> paths = new ArrayList<String>();
+		for (File file : files) {
+			paths.add(root.toPath().relativize(file.toPath()).toString().replace(File.separatorChar, '/'));
+		}
+		return paths;
+	}
+}
@@ -0,0 +1,77 @@
+package com.mangst.appcontext;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests the PackageSelection class.
+ * @author mangst
+ */
+public class PackageSelectionTest {
+	/**
+	 * Overlapping packages should be collapsed.
+	 */
+	@Test
+	public void testOverlapping() {
+		PackageSelection selection = new PackageSelection();
+		selection.include("com.acme.billing", true);
+		selection.include("com.acme", true);
+		selection.include(" com.acme.billing.invoice. ", false);
+		selection.include("org.example", false);
+		selection.include("org.example.sub", false);
+
+		Assert.assertEquals(Arrays.asList("com.acme", "org.example", "org.example.sub"), selection.getPackages());
+		Assert.assertTrue(selection.contains("com.acme"));
+		Assert.assertTrue(selection.contains("com.acme.billing.invoice.pdf"));
+		Assert.assertTrue(selection.contains("org.example"));
+		Assert.assertTrue(selection.contains("org.example.sub"));
+		Assert.assertFalse(selection.contains("org.example.other"));
+		Assert.assertFalse(selection.contains("com"));
+		Assert.assertFalse(selection.contains(""));
+
+		Assert.assertTrue(selection.mayContain(""));
+		Assert.assertTrue(selection.mayContain("com"));
+		Assert.assertTrue(selection.mayContain("com.acme.billing"));
+		Assert.assertTrue(selection.mayContain("org"));
+		Assert.assertFalse(selection.mayContain("org.example.other"));
+		Assert.assertFalse(selection.mayContain("net"));
+	}
+
+	/**
+	 * Excluded packages should be skipped, unless a more specific package is
+	 * included.
+	 */
+	@Test
+	public void testExclude() {
+		PackageSelection selection = new PackageSelection();
+		selection.include("com.acme", true);
+		selection.exclude("com.acme.legacy");
+		selection.include("com.acme.legacy.keep", false);
+
+		Assert.assertEquals(Arrays.asList("com.acme", "com.acme.legacy.keep"), selection.getPackages());
+		Assert.assertTrue(selection.contains("com.acme.billing"));
+		Assert.assertFalse(selection.contains("com.acme.legacy"));
+		Assert.assertFalse(selection.contains("com.acme.legacy.old"));
+		Assert.assertTrue(selection.contains("com.acme.legacy.keep"));
+		Assert.assertFalse(selection.contains("com.acme.legacy.keep.sub"));
+		Assert.assertTrue(selection.mayContain("com.acme.legacy"));
+		Assert.assertFalse(selection.mayContain("com.acme.legacy.old"));
+	}
+
+	/**
+	 * The default package should be selectable.
+	 */
+	@Test
+	public void testDefaultPackage() {
+		PackageSelection selection = new PackageSelection();
+		selection.include(null, false);
+
+		Assert.assertEquals(Collections.singletonList(""), selection.getPackages());
+		Assert.assertTrue(selection.contains(""));
+		Assert.assertFalse(selection.contains("com"));
+		Assert.assertFalse(selection.mayContain("com"));
+	}
+}
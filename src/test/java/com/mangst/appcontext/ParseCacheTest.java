@@ -0,0 +1,211 @@
+package com.mangst.appcontext;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests the ParseCache class.
+ * @author mangst
+ */
+public class ParseCacheTest {
+	@Rule
+	public TemporaryFolder temp = new TemporaryFolder();
+
+	private final SourceFileReader reader = new SourceFileReader(StandardCharsets.UTF_8);
+	private final CountingParser parser = new CountingParser();
+
+	/**
+	 * Files should only be parsed if they changed.
+	 * @throws Exception
+	 */
+	@Test
+	public void testParse() throws Exception {
+		File source = temp.newFile("Clazz.java");
+		write(source, "public class Clazz{ public int a = 1; }", 1000);
+
+		ParseCache cache = new ParseCache("config");
+		Assert.assertEquals("Clazz", cache.parse(source, reader, parser).className);
+		Assert.assertEquals(1, parser.count.get());
+		Assert.assertEquals("Clazz", cache.parse(source, reader, parser).className);
+		Assert.assertEquals(1, parser.count.get());
+
+		//only the last-modified time changed
+		write(source, "public class Clazz{ public int a = 1; }", 2000);
+		Assert.assertEquals("Clazz", cache.parse(source, reader, parser).className);
+		Assert.assertEquals(1, parser.count.get());
+
+		//the contents changed, but not the size
+		write(source, "public class Clazz{ public int a = 2; }", 3000);
+		Assert.assertEquals("2", cache.parse(source, reader, parser).properties.get(0).value);
+		Assert.assertEquals(2, parser.count.get());
+
+		Assert.assertEquals(2, cache.getHits());
+		Assert.assertEquals(2, cache.getMisses());
+	}
+
+	/**
+	 * The cache should be the same after it is saved and loaded.
+	 * @throws Exception
+	 */
+	@Test
+	public void testSaveAndLoad() throws Exception {
+		File source = temp.newFile("Clazz.java");
+		write(source, "package com.example; public class Clazz{ public Clazz(int a, AnObject b){} public String str = \"foo\"; public void setList(List list){} }", 1000);
+		File noClass = temp.newFile("NoClass.java");
+		write(noClass, "class NoClass{}", 1000);
+		File deleted = temp.newFile("Deleted.java");
+		write(deleted, "public class Deleted{}", 1000);
+		File cacheFile = new File(temp.getRoot(), "cache.bin");
+
+		ParseCache cache = new ParseCache("config");
+		cache.parse(source, reader, parser);
+		cache.parse(noClass, reader, parser);
+		cache.parse(deleted, reader, parser);
+		cache.save(cacheFile);
+		Assert.assertEquals(3, parser.count.get());
+
+		cache = ParseCache.load(cacheFile, "config");
+		JavaClass javaClass = cache.parse(source, reader, parser);
+		Assert.assertNull(cache.parse(noClass, reader, parser));
+		Assert.assertEquals(3, parser.count.get());
+
+		Assert.assertEquals("com.example", javaClass.packageName);
+		Assert.assertEquals("Clazz", javaClass.className);
+		Assert.assertEquals(Arrays.asList(Arrays.asList("int", "AnObject")), javaClass.constructors);
+		Assert.assertEquals(2, javaClass.properties.size());
+		Assert.assertEquals("str", javaClass.properties.get(0).name);
+		Assert.assertEquals("String", javaClass.properties.get(0).type);
+		Assert.assertEquals("foo", javaClass.properties.get(0).value);
+		Assert.assertEquals("list", javaClass.properties.get(1).name);
+
+		//"Deleted.java" was not looked up, so it is dropped from the cache
+		cache.save(cacheFile);
+		cache = ParseCache.load(cacheFile, "config");
+		cache.parse(deleted, reader, parser);
+		Assert.assertEquals(4, parser.count.get());
+	}
+
+	/**
+	 * The cache should be discarded if it was produced with a different
+	 * configuration.
+	 * @throws Exception
+	 */
+	@Test
+	public void testDifferentConfiguration() throws Exception {
+		File source = temp.newFile("Clazz.java");
+		write(source, "public class Clazz{}", 1000);
+		File cacheFile = new File(temp.getRoot(), "cache.bin");
+
+		ParseCache cache = new ParseCache("config");
+		cache.parse(source, reader, parser);
+		cache.save(cacheFile);
+
+		cache = ParseCache.load(cacheFile, "other config");
+		cache.parse(source, reader, parser);
+		Assert.assertEquals(2, parser.count.get());
+	}
+
+	/**
+	 * A cache file that doesn't exist should result in an empty cache.
+	 * @throws Exception
+	 */
+	@Test
+	public void testMissingFile() throws Exception {
+		ParseCache cache = ParseCache.load(new File(temp.getRoot(), "missing.bin"), "config");
+		Assert.assertEquals(0, cache.getHits());
+		Assert.assertEquals(0, cache.getMisses());
+	}
+
+	/**
+	 * A truncated cache file should result in an empty cache.
+	 * @throws Exception
+	 */
+	@Test
+	public void testTruncatedFile() throws Exception {
+		File source = temp.newFile("Clazz.java");
+		write(source, "package com.example; public class Clazz{ public int a = 1; }", 1000);
+		File cacheFile = new File(temp.getRoot(), "cache.bin");
+
+		ParseCache cache = new ParseCache("config");
+		cache.parse(source, reader, parser);
+		cache.save(cacheFile);
+		RandomAccessFile file = new RandomAccessFile(cacheFile, "rw");
+		try {
+			file.setLength(file.length() - 5);
+		} finally {
+			file.close();
+		}
+
+		cache = ParseCache.load(cacheFile, "config");
+		Assert.assertEquals("Clazz", cache.parse(source, reader, parser).className);
+		Assert.assertEquals(2, parser.count.get());
+	}
+
+	/**
+	 * A cache file with invalid counts or string lengths should result in an
+	 * empty cache, without allocating huge amounts of memory.
+	 * @throws Exception
+	 */
+	@Test
+	public void testCorruptFile() throws Exception {
+		File cacheFile = new File(temp.getRoot(), "cache.bin");
+		int corruptions[][] = { //@formatter:off
+			{ -5 }, //negative entry count
+			{ Integer.MAX_VALUE }, //huge entry count
+			{ 1, Integer.MAX_VALUE }, //huge path length
+			{ 1, -7 } //negative path length
+		}; //@formatter:on
+
+		for (int corruption[] : corruptions) {
+			DataOutputStream out = new DataOutputStream(new FileOutputStream(cacheFile));
+			try {
+				out.writeInt(0x41434743);
+				out.writeInt(2);
+				JavaClass.writeString(out, "config");
+				for (int i : corruption) {
+					out.writeInt(i);
+				}
+			} finally {
+				out.close();
+			}
+
+			ParseCache cache = ParseCache.load(cacheFile, "config");
+			Assert.assertEquals(0, cache.getHits());
+			Assert.assertEquals(0, cache.getMisses());
+		}
+	}
+
+	private static void write(File file, String contents, long lastModified) throws Exception {
+		OutputStream out = new FileOutputStream(file);
+		try {
+			out.write(contents.getBytes(StandardCharsets.UTF_8));
+		} finally {
+			out.close();
+		}
+		file.setLastModified(lastModified);
+	}
+
+	/**
+	 * Counts how many times a file is parsed.
+	 */
+	private static class CountingParser extends ScanningJavaSourceParser {
+		private final AtomicInteger count = new AtomicInteger();
+
+		@Override
+		public JavaClass parse(CharSequence javaSource) {
+			count.incrementAndGet();
+			return super.parse(javaSource);
+		}
+	}
+}
@@ -0,0 +1,147 @@
+package com.mangst.appcontext;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Runs the generator over a large synthetic source tree and checks that it
+ * stays within time and memory limits. The size of the tree and the limits
+ * can be changed with system properties (the "scale" Maven profile runs it
+ * with 100,000 classes):
+ * <ul>
+ * <li>appcontext.scale.classes - the number of source files (defaults to
+ * 2000)</li>
+ * <li>appcontext.scale.maxMillis - the maximum wall-clock time (defaults to
+ * 60000)</li>
+ * <li>appcontext.scale.maxHeapMb - the maximum heap high-water mark (defaults
+ * to 512)</li>
+ * </ul>
+ * @author mangst
+ */
+public class ScaleTest {
+	private static final int classes = Integer.getInteger("appcontext.scale.classes", 2000);
+	private static final long maxMillis = Long.getLong("appcontext.scale.maxMillis", 60000);
+	private static final long maxHeapMb = Long.getLong("appcontext.scale.maxHeapMb", 512);
+
+	private static File dir;
+	private static CorpusGenerator.Corpus corpus;
+
+	@BeforeClass
+	public static void beforeClass() throws Exception {
+		dir = File.createTempFile("corpus", "");
+		dir.delete();
+		dir.mkdir();
+		corpus = new CorpusGenerator(42).setClasses(classes).generate(dir);
+	}
+
+	@AfterClass
+	public static void afterClass() {
+		CorpusGenerator.delete(dir);
+	}
+
+	/**
+	 * The same seed should always produce the same tree.
+	 * @throws Exception
+	 */
+	@Test
+	public void testDeterministic() throws Exception {
+		File dir2 = File.createTempFile("corpus", "");
+		dir2.delete();
+		dir2.mkdir();
+		try {
+			CorpusGenerator.Corpus corpus2 = new CorpusGenerator(42).setClasses(classes).generate(dir2);
+			Assert.assertEquals(corpus.files, corpus2.files);
+			Assert.assertEquals(corpus.beans, corpus2.beans);
+			Assert.assertEquals(corpus.bytes, corpus2.bytes);
+		} finally {
+			CorpusGenerator.delete(dir2);
+		}
+	}
+
+	/**
+	 * Generates the application context for the whole tree.
+	 * @throws Exception
+	 */
+	@Test
+	public void testGenerate() throws Exception {
+		List<Path> files = new SourceWalker().walkPaths(Collections.singletonList(corpus.getRootPackageDir().toPath()));
+		Assert.assertEquals(corpus.files, files.size());
+
+		resetPeakHeapUsage();
+		long start = System.nanoTime();
+
+		final AtomicInteger beans = new AtomicInteger();
+		XmlContextWriter writer = new XmlContextWriter(new NullOutputStream(), "2.5");
+		ApplicationContextGenerator generator = new ApplicationContextGenerator("2.5", writer) {
+			@Override
+			public ApplicationContextGenerator addBean(JavaClass javaClass) throws IOException {
+				beans.incrementAndGet();
+				return super.addBean(javaClass);
+			}
+		};
+		generator.setSourceFileReader(new SourceFileReader(StandardCharsets.UTF_8));
+		generator.addBeanPaths(files, Runtime.getRuntime().availableProcessors());
+		writer.close();
+
+		long millis = (System.nanoTime() - start) / 1000000;
+		long heapMb = getPeakHeapUsage() / (1024 * 1024);
+		String size = corpus.files + " files (" + corpus.bytes / 1024 + " KB)";
+
+		Assert.assertEquals(corpus.beans, beans.get());
+		Assert.assertTrue(size + " took " + millis + " ms, limit is " + maxMillis + " ms", millis <= maxMillis);
+		Assert.assertTrue(size + " peaked at " + heapMb + " MB of heap, limit is " + maxHeapMb + " MB", heapMb <= maxHeapMb);
+	}
+
+	private static void resetPeakHeapUsage() {
+		System.gc();
+		for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+			if (pool.getType() == MemoryType.HEAP) {
+				pool.resetPeakUsage();
+			}
+		}
+	}
+
+	/**
+	 * Gets the heap high-water mark since the last call to
+	 * {@link #resetPeakHeapUsage}.
+	 * @return the sum of the peak usage of each heap memory pool, in bytes
+	 */
+	private static long getPeakHeapUsage() {
+		long peak = 0;
+		for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+			if (pool.getType() == MemoryType.HEAP) {
+				peak += pool.getPeakUsage().getUsed();
+			}
+		}
+		return peak;
+	}
+
+	/**
+	 * Discards everything that is written to it.
+	 */
+	private static class NullOutputStream extends OutputStream {
+		@Override
+		public void write(int b) {
+			//discard
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) {
+			//discard
+		}
+	}
+}
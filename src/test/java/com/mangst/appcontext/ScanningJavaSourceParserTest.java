@@ -0,0 +1,157 @@
+package com.mangst.appcontext;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests the ScanningJavaSourceParser class.
+ * @author mangst
+ */
+public class ScanningJavaSourceParserTest {
+	private final JavaSourceParser parser = new ScanningJavaSourceParser();
+
+	/**
+	 * Comments and string literals should be ignored.
+	 */
+	@Test
+	public void testCommentsAndStrings() {
+		String source = "/* license\n public class Wrong{} */\npackage com.example;\n// public class Wrong2{}\npublic class Clazz{\n //public int commented;\n /* public void setCommented(int c){} */\n public String str = \"public int notAField; }\";\n public char c = '}';\n public int num = 5; //five\n}";
+		JavaClass javaClass = parser.parse(source);
+
+		Assert.assertEquals("com.example", javaClass.packageName);
+		Assert.assertEquals("Clazz", javaClass.className);
+		Assert.assertEquals(3, javaClass.properties.size());
+		assertProperty(javaClass.properties.get(0), "str", "String", "public int notAField; }");
+		assertProperty(javaClass.properties.get(1), "c", "char", "}");
+		assertProperty(javaClass.properties.get(2), "num", "int", "5");
+	}
+
+	/**
+	 * Public fields that are declared together should each be added.
+	 */
+	@Test
+	public void testMultipleFields() {
+		String source = "public class Clazz{ public int a, b = 2, c; public Map map = new HashMap<String, Integer>(), map2; public String[] strs = {\"a\", \"b\"}; public int arr[]; }";
+		JavaClass javaClass = parser.parse(source);
+
+		Assert.assertEquals(7, javaClass.properties.size());
+		assertProperty(javaClass.properties.get(0), "a", "int", "");
+		assertProperty(javaClass.properties.get(1), "b", "int", "2");
+		assertProperty(javaClass.properties.get(2), "c", "int", "");
+		assertProperty(javaClass.properties.get(3), "map", "Map", "new HashMap<String, Integer>()");
+		assertProperty(javaClass.properties.get(4), "map2", "Map", "");
+		Assert.assertEquals("String[]", javaClass.properties.get(5).type);
+		Assert.assertEquals("int[]", javaClass.properties.get(6).type);
+	}
+
+	/**
+	 * Static and final fields, static setters, and members of nested classes
+	 * should be ignored.
+	 */
+	@Test
+	public void testIgnoredMembers() {
+		String source = "public final class Clazz{ public static final int CONSTANT = 1; public final int fin = 2; public static int stat; public static void setStat(int s){} public class Inner { public int inner; public void setInner(int i){} } static { int x = 1; } public int getA(){ return 1; } }";
+		JavaClass javaClass = parser.parse(source);
+
+		Assert.assertEquals("Clazz", javaClass.className);
+		Assert.assertTrue(javaClass.properties.isEmpty());
+		Assert.assertTrue(javaClass.constructors.isEmpty());
+	}
+
+	/**
+	 * Only public, non-abstract, top-level classes should be parsed.
+	 */
+	@Test
+	public void testNoPublicClass() {
+		Assert.assertNull(parser.parse("class Clazz{ public class Inner{} }"));
+		Assert.assertNull(parser.parse("public abstract class Clazz{}"));
+		Assert.assertNull(parser.parse("public interface Clazz{}"));
+		Assert.assertNull(parser.parse("public enum Clazz{ A, B }"));
+		Assert.assertNull(parser.parse(""));
+
+		JavaClass javaClass = parser.parse("class Helper{ public int a; } public class Clazz{}");
+		Assert.assertEquals("Clazz", javaClass.className);
+		Assert.assertTrue(javaClass.properties.isEmpty());
+	}
+
+	/**
+	 * Generic type arguments, annotations, and "final" should be removed from
+	 * constructor and setter parameters.
+	 */
+	@Test
+	public void testParameters() {
+		String source = "import java.util.*; @Component public class Clazz<T> extends Base<T> implements Foo { @Autowired public Clazz(final @Qualifier(\"a\") List<String> list, java.util.Map<String, List<Integer>> map, String... strs, int arr[]){} @Override public <E> void setItems(Set<E> items){} }";
+		JavaClass javaClass = parser.parse(source);
+
+		Assert.assertEquals(1, javaClass.constructors.size());
+		Assert.assertEquals(Arrays.asList("List", "java.util.Map", "String[]", "int[]"), javaClass.constructors.get(0));
+		Assert.assertEquals(1, javaClass.properties.size());
+		assertProperty(javaClass.properties.get(0), "items", "Set", "");
+	}
+
+	/**
+	 * Type variables should be replaced with their bounds. Setters and fields
+	 * whose type is an unbounded type variable should be ignored.
+	 */
+	@Test
+	public void testTypeVariables() {
+		String source = "public class Clazz<T, N extends Number & Comparable<N>> { public T value; public N num; public Clazz(T t, N n, T[] ts){} public <X> void setGen(X x){} public <X extends java.io.Serializable> void setSer(X x){} public void setArr(T[] arr){} public <@NonNull Y extends N> void setY(Y y){} }";
+		JavaClass javaClass = parser.parse(source);
+
+		Assert.assertEquals("Clazz", javaClass.className);
+		Assert.assertEquals(Arrays.asList("java.lang.Object", "Number", "java.lang.Object[]"), javaClass.constructors.get(0));
+		Assert.assertEquals(4, javaClass.properties.size());
+		assertProperty(javaClass.properties.get(0), "num", "Number", "");
+		assertProperty(javaClass.properties.get(1), "ser", "java.io.Serializable", "");
+		assertProperty(javaClass.properties.get(2), "arr", "java.lang.Object[]", "");
+		assertProperty(javaClass.properties.get(3), "y", "Number", "");
+	}
+
+	/**
+	 * For simple classes, the scanner should produce the same results as the
+	 * regex parser.
+	 */
+	@Test
+	public void testSameAsRegex() {
+		JavaSourceParser regex = new RegexJavaSourceParser();
+		List<String> sources = Arrays.asList( //@formatter:off
+			"public class Clazz{}",
+			"package com.example; public class Clazz{ public Clazz(int a, String b, AnObject c){} }",
+			"package com.example;\n\nimport java.util.List;\n\npublic class Clazz {\n\tprivate int hidden;\n\tpublic byte b;\n\tpublic long num = 56L;\n\tpublic String str = \"foo\";\n\tpublic Clazz(){}\n\tpublic Clazz(int arg){}\n\tpublic void setFoo(int f){}\n\tpublic void setBar(AnObject b){}\n\tpublic void setTooMany(int a, int b){}\n}"
+		); //@formatter:on
+
+		for (String source : sources) {
+			JavaClass expected = regex.parse(source);
+			JavaClass actual = parser.parse(source);
+			Assert.assertEquals(expected.packageName, actual.packageName);
+			Assert.assertEquals(expected.className, actual.className);
+			Assert.assertEquals(expected.constructors, actual.constructors);
+			Assert.assertEquals(expected.properties.size(), actual.properties.size());
+			for (int i = 0; i < expected.properties.size(); i++) {
+				ClassProperty p = expected.properties.get(i);
+				assertProperty(actual.properties.get(i), p.name, p.type, p.value);
+			}
+		}
+	}
+
+	/**
+	 * Imports should be recorded, except for static imports.
+	 */
+	@Test
+	public void testImports() {
+		String source = "package com.example;\nimport java.util.List;\nimport static java.util.Collections.emptyList;\nimport com.example.dao.*;\nimport com.example.Outer . Inner;\npublic class Clazz{}";
+		JavaClass javaClass = parser.parse(source);
+
+		Assert.assertEquals(Arrays.asList("java.util.List", "com.example.dao.*", "com.example.Outer.Inner"), javaClass.imports);
+		Assert.assertEquals(javaClass.imports, new RegexJavaSourceParser().parse(source.replace("Outer . Inner", "Outer.Inner")).imports);
+	}
+
+	private static void assertProperty(ClassProperty property, String name, String type, String value) {
+		Assert.assertEquals(name, property.name);
+		Assert.assertEquals(type, property.type);
+		Assert.assertEquals(value, property.value);
+	}
+}
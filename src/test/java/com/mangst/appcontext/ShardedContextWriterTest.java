@@ -0,0 +1,163 @@
+package com.mangst.appcontext;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests the ShardedContextWriter class.
+ * @author mangst
+ */
+public class ShardedContextWriterTest {
+	@Rule
+	public TemporaryFolder temp = new TemporaryFolder();
+
+	/**
+	 * There should be one file per package, and the master file should
+	 * import all of them.
+	 * @throws Exception
+	 */
+	@Test
+	public void testPerPackage() throws Exception {
+		File dir = new File(temp.getRoot(), "context");
+		ShardedContextWriter writer = new ShardedContextWriter(dir, "2.5");
+		writer.add(parse("package com.a; public class Foo { public int x; }"));
+		writer.add(parse("package com.b; public class Bar {}"));
+		writer.add(parse("package com.a; public class Baz {}"));
+		writer.add(parse("public class Qux {}"));
+		writer.write(4);
+
+		Assert.assertEquals(4, writer.getFilesWritten());
+		Assert.assertEquals(Arrays.asList("applicationContext.xml", "com.a.xml", "com.b.xml", "default.xml"), sorted(dir.list()));
+
+		String master = read(new File(dir, "applicationContext.xml"));
+		Assert.assertTrue(master.contains("<import resource=\"com.a.xml\"/>\n    <import resource=\"com.b.xml\"/>\n    <import resource=\"default.xml\"/>"));
+
+		String shard = read(new File(dir, "com.a.xml"));
+		Assert.assertTrue(shard.contains("class=\"com.a.Foo\""));
+		Assert.assertTrue(shard.contains("class=\"com.a.Baz\""));
+		Assert.assertFalse(shard.contains("class=\"com.b.Bar\""));
+	}
+
+	/**
+	 * Files whose contents did not change should not be rewritten.
+	 * @throws Exception
+	 */
+	@Test
+	public void testUnchanged() throws Exception {
+		File dir = temp.newFolder("context");
+		ShardedContextWriter writer = new ShardedContextWriter(dir, "2.5");
+		writer.add(parse("package com.a; public class Foo {}"));
+		writer.add(parse("package com.b; public class Bar {}"));
+		writer.write(1);
+		Assert.assertEquals(3, writer.getFilesWritten());
+
+		File shardA = new File(dir, "com.a.xml");
+		shardA.setLastModified(1000);
+
+		writer = new ShardedContextWriter(dir, "2.5");
+		writer.add(parse("package com.a; public class Foo {}"));
+		writer.add(parse("package com.b; public class Bar { public int x; }"));
+		writer.write(1);
+		Assert.assertEquals(1, writer.getFilesWritten());
+		Assert.assertEquals(2, writer.getFilesUnchanged());
+		Assert.assertEquals(1000, shardA.lastModified());
+		Assert.assertTrue(read(new File(dir, "com.b.xml")).contains("name=\"x\""));
+	}
+
+	/**
+	 * Shards from an earlier run that are no longer imported should be
+	 * deleted, and other files in the directory should be left alone.
+	 * @throws Exception
+	 */
+	@Test
+	public void testStaleShards() throws Exception {
+		File dir = temp.newFolder("context");
+		ShardedContextWriter writer = new ShardedContextWriter(dir, "2.5");
+		writer.add(parse("package com.a; public class Foo {}"));
+		writer.add(parse("package com.b; public class Bar {}"));
+		writer.write(1);
+		Files.write(new File(dir, "other.xml").toPath(), "<beans/>".getBytes(StandardCharsets.UTF_8));
+
+		//a package was deleted
+		writer = new ShardedContextWriter(dir, "2.5");
+		writer.add(parse("package com.a; public class Foo {}"));
+		writer.write(1);
+		Assert.assertEquals(1, writer.getFilesDeleted());
+		Assert.assertEquals(Arrays.asList("applicationContext.xml", "com.a.xml", "other.xml"), sorted(dir.list()));
+
+		//the shard size changed
+		writer = new ShardedContextWriter(dir, "2.5");
+		writer.setShardSize(1);
+		writer.add(parse("package com.a; public class Foo {}"));
+		writer.write(1);
+		Assert.assertEquals(1, writer.getFilesDeleted());
+		Assert.assertEquals(Arrays.asList("applicationContext.xml", "beans-0001.xml", "other.xml"), sorted(dir.list()));
+	}
+
+	/**
+	 * Each file should contain a fixed number of beans if a shard size is
+	 * set.
+	 * @throws Exception
+	 */
+	@Test
+	public void testShardSize() throws Exception {
+		File dir = temp.newFolder("context");
+		ShardedContextWriter writer = new ShardedContextWriter(dir, "2.5").setShardSize(2);
+		for (int i = 0; i < 5; i++) {
+			writer.add(parse("package com.a; public class Foo" + i + " {}"));
+		}
+		writer.write(2);
+
+		Assert.assertEquals(Arrays.asList("applicationContext.xml", "beans-0001.xml", "beans-0002.xml", "beans-0003.xml"), sorted(dir.list()));
+		String shard = read(new File(dir, "beans-0003.xml"));
+		Assert.assertTrue(shard.contains("class=\"com.a.Foo4\""));
+	}
+
+	/**
+	 * Spilling beans to disk should produce the same files as keeping them
+	 * all in memory.
+	 * @throws Exception
+	 */
+	@Test
+	public void testMaxHeapBeans() throws Exception {
+		File expectedDir = temp.newFolder("expected");
+		File actualDir = temp.newFolder("actual");
+		ShardedContextWriter expected = new ShardedContextWriter(expectedDir, "2.5");
+		ShardedContextWriter actual = new ShardedContextWriter(actualDir, "2.5").setMaxHeapBeans(3);
+		for (int i = 0; i < 10; i++) {
+			String source = "package com." + (char) ('a' + i % 3) + "; public class Foo" + i + " { public Foo" + i + "(String s) {} public void setBar(Bar bar) {} }";
+			expected.add(parse(source));
+			actual.add(parse(source));
+		}
+		expected.write(1);
+		actual.write(2);
+
+		Assert.assertEquals(0, expected.getBeansSpilled());
+		Assert.assertEquals(9, actual.getBeansSpilled());
+		Assert.assertEquals(sorted(expectedDir.list()), sorted(actualDir.list()));
+		for (String name : expectedDir.list()) {
+			Assert.assertEquals(read(new File(expectedDir, name)), read(new File(actualDir, name)));
+		}
+	}
+
+	private static JavaClass parse(String source) throws Exception {
+		return new ScanningJavaSourceParser().parse(source);
+	}
+
+	private static String read(File file) throws Exception {
+		return new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+	}
+
+	private static List<String> sorted(String[] names) {
+		Arrays.sort(names);
+		return Arrays.asList(names);
+	}
+}
@@ -0,0 +1,115 @@
+package com.mangst.appcontext;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests the SourceFileReader class.
+ * @author mangst
+ */
+public class SourceFileReaderTest {
+	@Rule
+	public TemporaryFolder temp = new TemporaryFolder();
+
+	/**
+	 * Files smaller than the threshold should be read into a buffer.
+	 * @throws Exception
+	 */
+	@Test
+	public void testSmallFile() throws Exception {
+		String source = "public class Caf\u00e9 { public String str = \"\u00fcber\"; }";
+		File file = write(source, StandardCharsets.UTF_8);
+
+		SourceFileReader reader = new SourceFileReader(StandardCharsets.UTF_8, 1024);
+		CharBuffer contents = reader.read(file);
+		Assert.assertEquals(source, contents.toString());
+
+		//the buffer is reused for the next file
+		File file2 = write("public class Foo{}", StandardCharsets.UTF_8);
+		Assert.assertEquals("public class Foo{}", reader.read(file2).toString());
+		Assert.assertEquals(source, contents.toString());
+	}
+
+	/**
+	 * Files that are at least as large as the threshold should be
+	 * memory-mapped.
+	 * @throws Exception
+	 */
+	@Test
+	public void testLargeFile() throws Exception {
+		StringBuilder sb = new StringBuilder("public class Clazz {\n");
+		for (int i = 0; i < 1000; i++) {
+			sb.append("\tpublic int field").append(i).append(" = ").append(i).append(";\n");
+		}
+		sb.append("}");
+		String source = sb.toString();
+		File file = write(source, StandardCharsets.UTF_8);
+
+		SourceFileReader reader = new SourceFileReader(StandardCharsets.UTF_8, 1024);
+		Assert.assertEquals(source, reader.read(file).toString());
+	}
+
+	/**
+	 * Files read into a new buffer should never share it with the next file,
+	 * and large files should be read instead of memory-mapped.
+	 * @throws Exception
+	 */
+	@Test
+	public void testReadNewBytes() throws Exception {
+		File file = write("public class Foo{}", StandardCharsets.UTF_8);
+		File file2 = write("public class Bar{}", StandardCharsets.UTF_8);
+
+		SourceFileReader reader = new SourceFileReader(StandardCharsets.UTF_8, 10);
+		ByteBuffer bytes = reader.readNewBytes(file.toPath());
+		Assert.assertFalse(bytes.isDirect());
+		Assert.assertEquals("public class Bar{}", reader.read(file2).toString());
+		Assert.assertEquals("public class Foo{}", reader.decode(bytes).toString());
+	}
+
+	/**
+	 * The specified character encoding should be used.
+	 * @throws Exception
+	 */
+	@Test
+	public void testEncoding() throws Exception {
+		String source = "public class Clazz { public String str = \"\u00e9\u00e8\"; }";
+		Charset latin1 = StandardCharsets.ISO_8859_1;
+		File file = write(source, latin1);
+
+		Assert.assertEquals(source, new SourceFileReader(latin1).read(file).toString());
+		Assert.assertEquals(source, new SourceFileReader(latin1, 0).read(file).toString());
+	}
+
+	/**
+	 * Empty files should be read.
+	 * @throws Exception
+	 */
+	@Test
+	public void testEmptyFile() throws Exception {
+		File file = write("", StandardCharsets.UTF_8);
+		Assert.assertEquals(0, new SourceFileReader(StandardCharsets.UTF_8).read(file).length());
+	}
+
+	private int fileCount = 0;
+
+	private File write(String contents, Charset charset) throws Exception {
+		File file = temp.newFile("Source" + (fileCount++) + ".java");
+		OutputStream out = new FileOutputStream(file);
+		try {
+			out.write(contents.getBytes(charset));
+		} finally {
+			out.close();
+		}
+		return file;
+	}
+}
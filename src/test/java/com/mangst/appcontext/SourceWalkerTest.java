@@ -0,0 +1,177 @@
+package com.mangst.appcontext;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests the SourceWalker class.
+ * @author mangst
+ */
+public class SourceWalkerTest {
+	@Rule
+	public TemporaryFolder temp = new TemporaryFolder();
+
+	private File root;
+
+	@Before
+	public void before() throws Exception {
+		root = temp.newFolder("com");
+		touch("B.java");
+		touch("A.java");
+		touch("notes.txt");
+		touch("sub/C.java");
+		touch("sub/CTest.java");
+		touch("sub/generated/D.java");
+		touch("target/E.java");
+		touch(".git/F.java");
+		touch("node_modules/G.java");
+	}
+
+	/**
+	 * Files should be returned in a predictable order, and version control
+	 * and build directories should be skipped.
+	 * @throws Exception
+	 */
+	@Test
+	public void testWalk() throws Exception {
+		List<File> files = new SourceWalker().walk(Collections.singletonList(root));
+		Assert.assertEquals(Arrays.asList("A.java", "B.java", "sub/C.java", "sub/CTest.java", "sub/generated/D.java"), relative(files));
+
+		files = new SourceWalker().setRecurse(false).walk(Collections.singletonList(root));
+		Assert.assertEquals(Arrays.asList("A.java", "B.java"), relative(files));
+	}
+
+	/**
+	 * Include and exclude patterns should be applied to files and directories.
+	 * @throws Exception
+	 */
+	@Test
+	public void testGlobs() throws Exception {
+		SourceWalker walker = new SourceWalker().exclude("generated").exclude("*Test.java");
+		List<File> files = walker.walk(Collections.singletonList(root));
+		Assert.assertEquals(Arrays.asList("A.java", "B.java", "sub/C.java"), relative(files));
+		Assert.assertTrue(walker.accept(root, new File(root, "sub/C.java")));
+		Assert.assertFalse(walker.accept(root, new File(root, "sub/CTest.java")));
+		Assert.assertFalse(walker.accept(root, new File(root, "sub/generated/D.java")));
+		Assert.assertFalse(walker.accept(root, new File(root, "target/E.java")));
+		Assert.assertFalse(walker.acceptDirectory(root, new File(root, "sub/generated")));
+
+		walker = new SourceWalker().include("sub/**");
+		files = walker.walk(Collections.singletonList(root));
+		Assert.assertEquals(Arrays.asList("sub/C.java", "sub/CTest.java", "sub/generated/D.java"), relative(files));
+	}
+
+	/**
+	 * When a package selection is used, each file should only be found once,
+	 * no matter how the packages overlap.
+	 * @throws Exception
+	 */
+	@Test
+	public void testPackageSelection() throws Exception {
+		PackageSelection selection = new PackageSelection();
+		selection.include("com.sub", true);
+		selection.include("com.sub.generated", true);
+		selection.include("com", false);
+		selection.exclude("com.sub.generated");
+
+		SourceWalker walker = new SourceWalker().setPackageSelection(selection);
+		List<File> files = walker.walk(Collections.singletonList(temp.getRoot()));
+		Assert.assertEquals(Arrays.asList("A.java", "B.java", "sub/C.java", "sub/CTest.java"), relative(files));
+		Assert.assertEquals(Arrays.asList(temp.getRoot(), root, new File(root, "sub")), walker.walkDirectories(Collections.singletonList(temp.getRoot())));
+	}
+
+	/**
+	 * Package directories that don't exist should be skipped.
+	 * @throws Exception
+	 */
+	@Test
+	public void testMissingDirectory() throws Exception {
+		List<File> files = new SourceWalker().walk(Arrays.asList(new File(root, "missing"), new File(root, "sub")));
+		Assert.assertEquals(Arrays.asList("sub/C.java", "sub/CTest.java", "sub/generated/D.java"), relative(files));
+	}
+
+	/**
+	 * Symbolic links that point to a parent directory should not be followed.
+	 * @throws Exception
+	 */
+	@Test
+	public void testSymbolicLinkLoop() throws Exception {
+		try {
+			Files.createSymbolicLink(new File(root, "sub/loop").toPath(), root.toPath());
+		} catch (UnsupportedOperationException e) {
+			return;
+		} catch (IOException e) {
+			//symbolic links are not allowed (Windows)
+			return;
+		}
+
+		List<File> files = new SourceWalker().walk(Collections.singletonList(root));
+		Assert.assertEquals(Arrays.asList("A.java", "B.java", "sub/C.java", "sub/CTest.java", "sub/generated/D.java"), relative(files));
+	}
+
+	/**
+	 * Walking the directories in parallel should return the files in the same
+	 * order.
+	 * @throws Exception
+	 */
+	@Test
+	public void testParallel() throws Exception {
+		for (int i = 0; i < 20; i++) {
+			touch("p" + i + "/q/H" + i + ".java");
+		}
+		List<File> expected = new SourceWalker().walk(Collections.singletonList(root));
+		List<File> actual = new SourceWalker().setThreads(4).walk(Collections.singletonList(root));
+		Assert.assertEquals(expected, actual);
+	}
+
+	/**
+	 * Handing each file to a callback should find the same files in the same
+	 * order as returning them in a list.
+	 * @throws Exception
+	 */
+	@Test
+	public void testCallback() throws Exception {
+		for (int i = 0; i < 20; i++) {
+			touch("p" + i + "/q/H" + i + ".java");
+			touch("p" + i + "/I" + i + ".java");
+		}
+		touch("p3/target/Skipped.java");
+		List<Path> expected = new SourceWalker().walkPaths(Collections.singletonList(root.toPath()));
+		for (int threads : new int[] { 1, 4 }) {
+			final List<Path> actual = new ArrayList<Path>();
+			new SourceWalker().setThreads(threads).walkPaths(Collections.singletonList(root.toPath()), new SourceWalker.Callback() {
+				@Override
+				public void found(Path file) {
+					actual.add(file);
+				}
+			});
+			Assert.assertEquals(expected, actual);
+		}
+	}
+
+	private void touch(String path) throws IOException {
+		File file = new File(root, path);
+		file.getParentFile().mkdirs();
+		file.createNewFile();
+	}
+
+	private List<String> relative(List<File> files) {
+		List<String> paths = new ArrayList<String>();
+		for (File file : files) {
+			paths.add(root.toPath().relativize(file.toPath()).toString().replace(File.separatorChar, '/'));
+		}
+		return paths;
+	}
+}
@@ -0,0 +1,93 @@
+package com.mangst.appcontext;
+
+import java.util.Arrays;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests the TypeIndex class.
+ * @author mangst
+ */
+public class TypeIndexTest {
+	/**
+	 * Simple names should be resolved using single-type imports, then the
+	 * class' package, then on-demand imports.
+	 */
+	@Test
+	public void testResolve() {
+		TypeIndex index = new TypeIndex();
+		index.add(javaClass("com.a", "Foo"));
+		index.add(javaClass("com.a", "Bar"));
+		index.add(javaClass("com.b", "Bar"));
+		index.add(javaClass("com.c", "Baz"));
+		index.add(javaClass("com.c", "Qux"));
+		index.add(javaClass("com.d", "Qux"));
+		index.add(javaClass("com.e", "Outer.Inner"));
+
+		JavaClass from = javaClass("com.a", "Foo");
+		from.imports.addAll(Arrays.asList("com.b.Bar", "com.c.*", "com.e.Outer", "java.util.List"));
+
+		Assert.assertEquals("com.b.Bar", index.resolve("Bar", from));
+		Assert.assertEquals("com.a.Bar", index.resolve("com.a.Bar", from));
+		Assert.assertEquals("com.a.Foo", index.resolve("Foo", from));
+		Assert.assertEquals("com.c.Baz", index.resolve("Baz", from));
+		Assert.assertEquals("com.c.Qux", index.resolve("Qux", from));
+		Assert.assertEquals("com.e.Outer.Inner", index.resolve("Outer.Inner", from));
+		Assert.assertNull(index.resolve("List", from));
+		Assert.assertNull(index.resolve("Missing", from));
+	}
+
+	/**
+	 * A class in the default package should not hide an imported class with
+	 * the same simple name, and should only be visible from the default
+	 * package.
+	 */
+	@Test
+	public void testResolveDefaultPackage() {
+		TypeIndex index = new TypeIndex();
+		index.add(javaClass(null, "Foo"));
+		index.add(javaClass("com.x", "Foo"));
+		index.add(javaClass(null, "Bar"));
+
+		JavaClass from = javaClass("com.a", "Baz");
+		from.imports.add("com.x.Foo");
+		Assert.assertEquals("com.x.Foo", index.resolve("Foo", from));
+		Assert.assertNull(index.resolve("Bar", from));
+
+		from = javaClass(null, "Baz");
+		Assert.assertEquals("Foo", index.resolve("Foo", from));
+		Assert.assertEquals("Bar", index.resolve("Bar", from));
+
+		//even in the default package, a single-type import comes first
+		from.imports.add("com.x.Foo");
+		Assert.assertEquals("com.x.Foo", index.resolve("Foo", from));
+	}
+
+	/**
+	 * Beans should be given their fully qualified class names as IDs only if
+	 * their simple names collide.
+	 */
+	@Test
+	public void testBeanId() {
+		TypeIndex index = new TypeIndex();
+		index.add(javaClass("com.a", "FooDao"));
+		index.add(javaClass("com.a", "Bar"));
+		index.add(javaClass("com.b", "Bar"));
+		index.add(javaClass(null, "Baz"));
+		index.add(javaClass("com.a", "FooDao"));
+
+		Assert.assertEquals(4, index.size());
+		Assert.assertEquals("fooDao", index.getBeanId("com.a.FooDao"));
+		Assert.assertEquals("com.a.Bar", index.getBeanId("com.a.Bar"));
+		Assert.assertEquals("com.b.Bar", index.getBeanId(javaClass("com.b", "Bar")));
+		Assert.assertEquals("baz", index.getBeanId("Baz"));
+	}
+
+	private static JavaClass javaClass(String packageName, String className) {
+		JavaClass javaClass = new JavaClass();
+		javaClass.packageName = packageName;
+		javaClass.className = className;
+		return javaClass;
+	}
+}
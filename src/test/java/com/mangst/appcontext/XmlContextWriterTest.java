@@ -0,0 +1,97 @@
+package com.mangst.appcontext;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+/**
+ * Tests the XmlContextWriter class.
+ * @author mangst
+ */
+public class XmlContextWriterTest {
+	/**
+	 * Tests the exact XML that is written.
+	 * @throws Exception
+	 */
+	@Test
+	public void testWrite() throws Exception {
+		StringWriter sw = new StringWriter();
+		XmlContextWriter writer = new XmlContextWriter(sw, "2.0");
+		ApplicationContextGenerator generator = new ApplicationContextGenerator("2.0", writer);
+		generator.addBean(new StringReader("package com.example; public class Clazz{ public Clazz(AnObject obj){} public int num = 5; public List list; }"));
+		generator.addBean(new StringReader("public class Empty{}"));
+		writer.close();
+
+		//@formatter:off
+		String expected =
+		"<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n" +
+		"<beans xmlns=\"http://www.springframework.org/schema/beans\" xmlns:xsi=\"http://www.w3.org/2001/XMLSchema-instance\" xsi:schemaLocation=\"http://www.springframework.org/schema/beans http://www.springframework.org/schema/beans/spring-beans-2.0.xsd\">\n" +
+		"    <bean class=\"com.example.Clazz\" id=\"clazz\">\n" +
+		"        <constructor-arg index=\"0\" ref=\"anObject\"/>\n" +
+		"        <property name=\"num\" value=\"5\"/>\n" +
+		"        <property name=\"list\">\n" +
+		"            <list/>\n" +
+		"        </property>\n" +
+		"    </bean>\n" +
+		"    <bean class=\"Empty\" id=\"empty\"/>\n" +
+		"</beans>\n";
+		//@formatter:on
+		Assert.assertEquals(expected, sw.toString());
+
+		//beans should not be added to the DOM when streaming
+		Assert.assertNull(generator.getDocument().getDocumentElement().getFirstChild());
+	}
+
+	/**
+	 * Closing the writer should flush the XML, but leave the caller's stream
+	 * open.
+	 * @throws Exception
+	 */
+	@Test
+	public void testCloseLeavesStreamOpen() throws Exception {
+		final boolean closed[] = { false };
+		ByteArrayOutputStream out = new ByteArrayOutputStream() {
+			@Override
+			public void close() {
+				closed[0] = true;
+			}
+		};
+		XmlContextWriter writer = new XmlContextWriter(out, "2.5");
+		writer.close();
+		Assert.assertFalse(closed[0]);
+		Assert.assertTrue(out.toString("UTF-8").endsWith("</beans>\n"));
+	}
+
+	/**
+	 * The written XML should be well-formed and use the Spring beans
+	 * namespace.
+	 * @throws Exception
+	 */
+	@Test
+	public void testWellFormed() throws Exception {
+		StringWriter sw = new StringWriter();
+		XmlContextWriter writer = new XmlContextWriter(sw, "2.5");
+		ApplicationContextGenerator generator = new ApplicationContextGenerator("2.5", writer);
+		generator.addBean(new StringReader("public class Clazz{ public String str = \"<a & b>\"; }"));
+		writer.close();
+
+		DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+		factory.setNamespaceAware(true);
+		Document document = factory.newDocumentBuilder().parse(new ByteArrayInputStream(sw.toString().getBytes(StandardCharsets.UTF_8)));
+		Element root = document.getDocumentElement();
+		Assert.assertEquals(ApplicationContextGenerator.BEANS_NAMESPACE, root.getNamespaceURI());
+		Assert.assertEquals(ApplicationContextGenerator.schemaLocation("2.5"), root.getAttributeNS(ApplicationContextGenerator.XSI_NAMESPACE, "schemaLocation"));
+
+		Element property = (Element) root.getElementsByTagNameNS(ApplicationContextGenerator.BEANS_NAMESPACE, "property").item(0);
+		Assert.assertEquals("<a & b>", property.getAttribute("value"));
+	}
+}